@@ -0,0 +1,52 @@
+package ru.xing.springcourse.petproject3rest.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import ru.xing.springcourse.petproject3rest.util.AdaptiveConcurrencyLimiter;
+
+@Configuration
+@ConditionalOnProperty(value = "ingest.admission.enabled", havingValue = "true", matchIfMissing = true)
+public class IngestAdmissionConfig {
+
+    @Bean
+    public AdaptiveConcurrencyLimiter ingestConcurrencyLimiter(
+            MeterRegistry meterRegistry,
+            @Value("${ingest.admission.initial-limit:20}") int initialLimit,
+            @Value("${ingest.admission.min-limit:4}") int minLimit,
+            @Value("${ingest.admission.max-limit:200}") int maxLimit,
+            @Value("${ingest.admission.latency-tolerance:1.5}") double tolerance) {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(initialLimit, minLimit, maxLimit, tolerance);
+
+        Gauge.builder("ingest.admission.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                .description("Current adaptive limit of concurrent ingest requests")
+                .register(meterRegistry);
+        Gauge.builder("ingest.admission.in_flight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                .description("Ingest requests currently in progress")
+                .register(meterRegistry);
+        return limiter;
+    }
+
+    // Только короткие запросы записи: долгие потоковые загрузки исказили бы оценку латентности
+    @Bean
+    public FilterRegistrationBean<IngestAdmissionFilter> ingestAdmissionFilter(
+            AdaptiveConcurrencyLimiter ingestConcurrencyLimiter,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${ingest.admission.retry-after-seconds:1}") long retryAfterSeconds) {
+        Counter rejected = Counter.builder("ingest.admission.rejected")
+                .description("Ingest requests shed with 429")
+                .register(meterRegistry);
+
+        FilterRegistrationBean<IngestAdmissionFilter> registration = new FilterRegistrationBean<>(
+                new IngestAdmissionFilter(ingestConcurrencyLimiter, objectMapper, rejected, retryAfterSeconds));
+        registration.addUrlPatterns("/api/measurements/add", "/api/measurements/batch");
+        return registration;
+    }
+}
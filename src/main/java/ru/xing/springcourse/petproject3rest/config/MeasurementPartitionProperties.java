@@ -0,0 +1,84 @@
+package ru.xing.springcourse.petproject3rest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.temporal.TemporalAdjusters;
+
+// measurement.partitioning.* : секции measurement по времени (MeasurementPartitionService)
+@Component
+@ConfigurationProperties(prefix = "measurement.partitioning")
+@Getter
+@Setter
+public class MeasurementPartitionProperties {
+    private boolean enabled = true;
+
+    // Ширина новых секций. Смена не трогает уже созданные секции: новые заполняют промежутки между ними
+    private Interval interval = Interval.MONTH;
+
+    // Сколько секций держать созданными после текущей
+    private int premake = 3;
+
+    // Секции, целиком старше этого срока, убираются вместе с предагрегатами их времени; null - хранить всё
+    private Period retention;
+
+    private RetentionMode retentionMode = RetentionMode.DROP;
+
+    // Ожидание блокировки measurement при создании и удалении секций: не вставать надолго в очередь перед записью
+    private Duration lockTimeout = Duration.ofSeconds(5);
+
+    public enum RetentionMode {
+        // Секция удаляется
+        DROP,
+        // Секция становится обычной таблицей measurement_p... - для архивации и удаления вручную
+        DETACH
+    }
+
+    public enum Interval {
+        DAY {
+            @Override
+            public LocalDateTime start(LocalDateTime time) {
+                return time.toLocalDate().atStartOfDay();
+            }
+
+            @Override
+            public LocalDateTime next(LocalDateTime start) {
+                return start.plusDays(1);
+            }
+        },
+        // С понедельника
+        WEEK {
+            @Override
+            public LocalDateTime start(LocalDateTime time) {
+                return time.toLocalDate().with(TemporalAdjusters.previousOrSame(DayOfWeek.MONDAY)).atStartOfDay();
+            }
+
+            @Override
+            public LocalDateTime next(LocalDateTime start) {
+                return start.plusWeeks(1);
+            }
+        },
+        MONTH {
+            @Override
+            public LocalDateTime start(LocalDateTime time) {
+                return time.toLocalDate().withDayOfMonth(1).atStartOfDay();
+            }
+
+            @Override
+            public LocalDateTime next(LocalDateTime start) {
+                return start.plusMonths(1);
+            }
+        };
+
+        // Начало секции, в которую попадает time
+        public abstract LocalDateTime start(LocalDateTime time);
+
+        public abstract LocalDateTime next(LocalDateTime start);
+    }
+}
@@ -0,0 +1,40 @@
+package ru.xing.springcourse.petproject3rest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+// ingest.rate-limit.* : общий лимит и переопределения по имени сенсора
+@Component
+@ConfigurationProperties(prefix = "ingest.rate-limit")
+@Getter
+@Setter
+public class RateLimitProperties {
+    private boolean enabled = true;
+
+    // Как часто выбрасывать простаивающие (полные) корзины
+    private Duration evictionInterval = Duration.ofMinutes(1);
+
+    private Limit defaults = new Limit();
+
+    // ingest.rate-limit.sensors.Sensor_Home.rate=5
+    private Map<String, Limit> sensors = new HashMap<>();
+
+    public Limit limitFor(String sensorName) {
+        return sensors.getOrDefault(sensorName, defaults);
+    }
+
+    @Getter
+    @Setter
+    public static class Limit {
+        // Измерений в секунду
+        private double rate = 50;
+        // Сколько измерений можно прислать разом сверх равномерного темпа
+        private int burst = 100;
+    }
+}
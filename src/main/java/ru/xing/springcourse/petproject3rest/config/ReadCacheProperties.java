@@ -0,0 +1,44 @@
+package ru.xing.springcourse.petproject3rest.config;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// read-cache.* : размеры и время жизни локальных кэшей чтения (ReadCache)
+@Component
+@ConfigurationProperties(prefix = "read-cache")
+@Getter
+@Setter
+public class ReadCacheProperties {
+    private boolean enabled = true;
+
+    // Кэшируются только страницы с номером меньше этого: дальние страницы читают редко
+    private int firstPages = 3;
+
+    // Измерения по id: строки не меняются, живут долго
+    private Spec measurements = new Spec(10_000, Duration.ofMinutes(10));
+
+    // Карточки сенсоров, инвалидируются записью в сенсор
+    private Spec sensors = new Spec(1_000, Duration.ofMinutes(1));
+
+    // Первые страницы списков, инвалидируются любой записью
+    private Spec pages = new Spec(200, Duration.ofSeconds(30));
+
+    // Результаты запросов агрегатов, инвалидируются записью в любой из сенсоров запроса
+    private Spec aggregates = new Spec(1_000, Duration.ofMinutes(5));
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Spec {
+        private long maximumSize;
+        // Предел устаревания при записи с другого экземпляра приложения
+        private Duration ttl;
+    }
+}
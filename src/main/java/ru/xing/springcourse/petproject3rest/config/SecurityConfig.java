@@ -71,6 +71,8 @@ public class SecurityConfig {
                                 "/actuator/health",
                                 "/actuator/info")
                         .permitAll()
+                        // Потоковая выгрузка истории сенсора - только с аутентификацией
+                        .requestMatchers(HttpMethod.GET, "/api/sensors/*/measurements/stream").authenticated()
                         // Public read endpoints
                         .requestMatchers(HttpMethod.GET, "/api/sensors/**").permitAll()
                         .requestMatchers(HttpMethod.GET, "/api/measurements/**").permitAll()
@@ -0,0 +1,28 @@
+package ru.xing.springcourse.petproject3rest.config;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+
+@Configuration
+@ConditionalOnProperty(value = "shared-cache.enabled", havingValue = "true", matchIfMissing = true)
+public class SharedCacheConfig {
+
+    // Запускает CacheInvalidationBus, когда Redis доступен: старт без Redis ждал бы подписку и ронял контекст.
+    // После запуска подписка переживает недоступность Redis - контейнер переподписывается раз в retry-interval
+    @Bean
+    public RedisMessageListenerContainer cacheInvalidationListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                            SharedCacheProperties properties) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer() {
+            @Override
+            public boolean isAutoStartup() {
+                return false;
+            }
+        };
+        container.setConnectionFactory(connectionFactory);
+        container.setRecoveryInterval(properties.getRetryInterval().toMillis());
+        return container;
+    }
+}
@@ -0,0 +1,37 @@
+package ru.xing.springcourse.petproject3rest.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+// shared-cache.* : общий кэш L2 в Redis (SharedCache) и шина инвалидации между экземплярами
+@Component
+@ConfigurationProperties(prefix = "shared-cache")
+@Getter
+@Setter
+public class SharedCacheProperties {
+    private boolean enabled = true;
+
+    // Общий для всех экземпляров одного приложения; к нему добавляется версия бинарного формата
+    private String keyPrefix = "pp3:";
+
+    private Duration ttl = Duration.ofMinutes(5);
+
+    // Случайная добавка к ttl (доля), чтобы записи, созданные разом, не истекали разом
+    private double ttlJitter = 0.1;
+
+    // Время жизни блокировки загрузки ключа: дольше загрузка - ключ может загрузить и другой экземпляр
+    private Duration lockTtl = Duration.ofSeconds(5);
+
+    // Сколько ждать чужую загрузку, прежде чем идти в БД самому
+    private Duration lockWait = Duration.ofSeconds(1);
+
+    // Пауза после ошибки Redis: всё это время работаем только с L1, затем проверяем PING
+    private Duration retryInterval = Duration.ofSeconds(5);
+
+    // Сколько живёт ETag при нескольких экземплярах: дольше этого пропущенное сообщение шины не держит 304
+    private Duration validatorTtl = Duration.ofMinutes(1);
+}
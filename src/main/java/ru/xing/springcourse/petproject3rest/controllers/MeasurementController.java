@@ -15,14 +15,29 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.xing.springcourse.petproject3rest.dto.CursorPageDTO;
+import ru.xing.springcourse.petproject3rest.dto.IngestResultDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBatchDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBucketDTO;
 import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SliceDTO;
+import ru.xing.springcourse.petproject3rest.dto.TotalMode;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
 import ru.xing.springcourse.petproject3rest.services.MeasurementService;
 import ru.xing.springcourse.petproject3rest.util.ErrorUtil;
+import ru.xing.springcourse.petproject3rest.util.MeasurementCursor;
+import ru.xing.springcourse.petproject3rest.util.MeasurementFrameCodec;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
@@ -33,6 +48,7 @@ import java.util.Map;
 @Slf4j
 public class MeasurementController {
     private final MeasurementService measurementService;
+    private final DataVersions dataVersions;
 
     @Operation(
             summary = "Add new measurement (User role required)",
@@ -44,10 +60,18 @@ public class MeasurementController {
                     responseCode = "200",
                     description = "Measurement added successfully"
             ),
+            @ApiResponse(
+                    responseCode = "202",
+                    description = "Measurement accepted for asynchronous writing (write-behind mode)"
+            ),
             @ApiResponse(
                     responseCode = "400",
                     description = "Invalid input or sensor not found"
             ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "Ingest queue is full (write-behind mode)"
+            ),
             @ApiResponse(
                     responseCode = "401",
                     description = "Unauthorized - authentication required"
@@ -80,9 +104,149 @@ public class MeasurementController {
         }
         log.info("Adding measurement for sensor {}", sensorName);
         measurementService.addMeasurement(sensorName, measurementDTO);
+
+        if (measurementService.isWriteBehindEnabled()) {
+            return ResponseEntity.accepted().body("Measurement has been accepted");
+        }
         return ResponseEntity.ok("Measurement has been added successfully");
     }
 
+    @Operation(
+            summary = "Add a batch of measurements (User role required)",
+            description = "Add many measurements for one or more sensors in a single transaction. " +
+                    "Up to " + MeasurementService.MAX_BATCH_SIZE + " measurements per request. Requires USER or ADMIN role",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Measurements added successfully"
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid input, batch too large or sensor not found"
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Unauthorized - authentication required"
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Forbidden - USER role required"
+            )
+    })
+    @PostMapping("/batch")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<Map<String, Object>> addMeasurements(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Measurements grouped by sensor",
+                    required = true,
+                    content = @Content(
+                            schema = @Schema(implementation = MeasurementBatchDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Batch example",
+                                    value = "{\"sensors\": [{\"sensorName\": \"Sensor_Home\", " +
+                                            "\"measurements\": [{\"value\": 23.5, \"raining\": false}, " +
+                                            "{\"value\": 22.1, \"raining\": true}]}]}"
+                            )
+                    )
+            )
+            @RequestBody @Valid MeasurementBatchDTO batchDTO, BindingResult bindingResult) {
+        if (bindingResult.hasErrors()) {
+            ErrorUtil.throwErrors(bindingResult);
+        }
+        log.info("Adding batch of {} measurements", batchDTO.size());
+        int count = measurementService.addMeasurements(batchDTO);
+
+        return ResponseEntity.ok(Map.of(
+                "message", "Measurements have been added successfully",
+                "count", count
+        ));
+    }
+
+    @Operation(
+            summary = "Add measurements as a binary frame (User role required)",
+            description = "Compact alternative to JSON for constrained sensors, accepted on /add and /batch with " +
+                    "Content-Type " + MeasurementFrameCodec.MEDIA_TYPE + ". Frame (big-endian): magic \"MF\", version 1, " +
+                    "uint16 record count, then 17-byte records: int32 sensor id, int64 epoch millis (0 = now), " +
+                    "float32 value, flags byte (bit 0 = raining). Requires USER or ADMIN role",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Measurements added successfully"
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Malformed frame, value out of range or sensor not found"
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "Sensor rate limit exceeded"
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Unauthorized - authentication required"
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Forbidden - USER role required"
+            )
+    })
+    @PostMapping(value = {"/add", "/batch"}, consumes = MeasurementFrameCodec.MEDIA_TYPE)
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<Map<String, Object>> addFrame(@RequestBody byte[] frame) {
+        log.info("Adding binary frame of {} bytes", frame.length);
+        int count = measurementService.addFrame(ByteBuffer.wrap(frame));
+
+        return ResponseEntity.ok(Map.of(
+                "message", "Measurements have been added successfully",
+                "count", count
+        ));
+    }
+
+    @Operation(
+            summary = "Stream measurements as NDJSON (User role required)",
+            description = "Accepts application/x-ndjson: one measurement per line with its sensor name. " +
+                    "The body is parsed and stored incrementally in chunks of " + MeasurementService.STREAM_CHUNK_SIZE +
+                    " rows, invalid lines are skipped and reported. Each chunk is charged to the per-sensor rate " +
+                    "limit; lines of a sensor over its limit are skipped and reported too. Requires USER or ADMIN role",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Stream processed, see accepted/rejected counters"
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Unauthorized - authentication required"
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Forbidden - USER role required"
+            )
+    })
+    @PostMapping(value = "/stream", consumes = "application/x-ndjson")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public IngestResultDTO ingestStream(
+            @io.swagger.v3.oas.annotations.parameters.RequestBody(
+                    description = "Newline-delimited measurements",
+                    required = true,
+                    content = @Content(
+                            mediaType = "application/x-ndjson",
+                            examples = @ExampleObject(
+                                    name = "NDJSON example",
+                                    value = "{\"sensorName\": \"Sensor_Home\", \"value\": 23.5, \"raining\": false}\n" +
+                                            "{\"sensorName\": \"Sensor_Home\", \"value\": 22.1, \"raining\": true}"
+                            )
+                    )
+            )
+            InputStream body) throws IOException {
+        log.info("Starting NDJSON stream ingest");
+        return measurementService.ingestStream(body);
+    }
 
     @Operation(
             summary = "Get all measurements",
@@ -109,7 +273,13 @@ public class MeasurementController {
 
                                                    @Parameter(description = "Sort direction", example = "asc",
                                                            schema = @Schema(allowableValues = {"asc", "desc"}))
-                                                   @RequestParam(defaultValue = "desc") String direction) {
+                                                   @RequestParam(defaultValue = "desc") String direction,
+
+                                                   ServletWebRequest webRequest) {
+        // Ничего не записано с прошлого ответа - 304 без запроса в БД
+        if (dataVersions.global().checkNotModified(webRequest)) {
+            return null;
+        }
 
         // Валидация параметров
         if (page < 0) page = 0;
@@ -125,6 +295,137 @@ public class MeasurementController {
         return measurementService.getAllMeasurements(pageable);
     }
 
+    @Operation(
+            summary = "Get all measurements without exact total",
+            description = "Same listing as GET /api/measurements, but returns a slice (content + hasNext) without " +
+                    "the COUNT(*) query. total=approximate adds an estimated total from PostgreSQL statistics"
+    )
+    @GetMapping(params = {"total", "total!=exact"})
+    public SliceDTO<MeasurementDTO> getAllMeasurementsSlice(
+            @Parameter(description = "Page number (0-based)", example = "0")
+            @RequestParam(defaultValue = "0") int page,
+
+            @Parameter(description = "Number of items per page", example = "20")
+            @RequestParam(defaultValue = "20") int size,
+
+            @Parameter(description = "Sort by field", example = "id")
+            @RequestParam(defaultValue = "id") String sort,
+
+            @Parameter(description = "Sort direction", example = "desc",
+                    schema = @Schema(allowableValues = {"asc", "desc"}))
+            @RequestParam(defaultValue = "desc") String direction,
+
+            @Parameter(description = "none - no total, approximate - estimated total from planner statistics",
+                    schema = @Schema(allowableValues = {"none", "approximate"}))
+            @RequestParam String total,
+
+            ServletWebRequest webRequest) {
+        if (dataVersions.global().checkNotModified(webRequest)) {
+            return null;
+        }
+
+        if (page < 0) page = 0;
+        if (size <= 0 || size > 100) size = 20;
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(direction), sort));
+
+        return measurementService.getMeasurementsSlice(pageable, TotalMode.fromParam(total) == TotalMode.APPROXIMATE);
+    }
+
+    @Operation(
+            summary = "Get measurements by cursor",
+            description = "Keyset pagination for walking large tables: every page costs the same regardless of depth. " +
+                    "Pass nextCursor from the previous response as 'after'; sort and direction are then taken from the cursor"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Successfully retrieved measurements"
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Invalid cursor or sort field"
+            )
+    })
+    @GetMapping("/cursor")
+    public CursorPageDTO<MeasurementDTO> getMeasurementsByCursor(
+            @Parameter(description = "Cursor from the previous page (nextCursor), empty for the first page")
+            @RequestParam(required = false) String after,
+
+            @Parameter(description = "Number of items per page", example = "20")
+            @RequestParam(defaultValue = "20") int size,
+
+            @Parameter(description = "Sort by field", example = "id",
+                    schema = @Schema(allowableValues = {"id", "measurementDateTime"}))
+            @RequestParam(defaultValue = "id") String sort,
+
+            @Parameter(description = "Sort direction", example = "desc",
+                    schema = @Schema(allowableValues = {"asc", "desc"}))
+            @RequestParam(defaultValue = "desc") String direction) {
+        if (size <= 0 || size > 100) size = 20;
+
+        return measurementService.getMeasurementsAfter(after, size, MeasurementCursor.SortKey.fromParam(sort),
+                Sort.Direction.fromString(direction), false);
+    }
+
+    @Operation(
+            summary = "Get rainy measurements by cursor",
+            description = "Keyset pagination over measurements where raining = true, see /api/measurements/cursor"
+    )
+    @GetMapping("/rainy-days/cursor")
+    public CursorPageDTO<MeasurementDTO> getRainingMeasurementsByCursor(
+            @Parameter(description = "Cursor from the previous page (nextCursor), empty for the first page")
+            @RequestParam(required = false) String after,
+
+            @Parameter(description = "Number of items per page", example = "20")
+            @RequestParam(defaultValue = "20") int size,
+
+            @Parameter(description = "Sort by field", example = "id",
+                    schema = @Schema(allowableValues = {"id", "measurementDateTime"}))
+            @RequestParam(defaultValue = "id") String sort,
+
+            @Parameter(description = "Sort direction", example = "desc",
+                    schema = @Schema(allowableValues = {"asc", "desc"}))
+            @RequestParam(defaultValue = "desc") String direction) {
+        if (size <= 0 || size > 100) size = 20;
+
+        return measurementService.getMeasurementsAfter(after, size, MeasurementCursor.SortKey.fromParam(sort),
+                Sort.Direction.fromString(direction), true);
+    }
+
+    @Operation(
+            summary = "Get aggregated measurements",
+            description = "min, max, avg, count and rain fraction per sensor and time bucket in [from, to), " +
+                    "computed in the database. Buckets without measurements are omitted. Up to " +
+                    MeasurementService.MAX_AGGREGATE_SENSORS + " sensors and " + MeasurementService.MAX_AGGREGATE_BUCKETS +
+                    " buckets per sensor"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Buckets ordered by sensor name and bucket start"
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Unknown sensor, invalid bucket or range, too many buckets"
+            )
+    })
+    @GetMapping("/aggregate")
+    public List<MeasurementBucketDTO> aggregateMeasurements(
+            @Parameter(description = "Sensor names (repeat the parameter or separate with commas)", example = "Sensor_Home")
+            @RequestParam List<String> sensorName,
+
+            @Parameter(description = "From (inclusive), ISO date-time", example = "2024-10-01T00:00:00")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+
+            @Parameter(description = "To (exclusive), ISO date-time", example = "2024-10-02T00:00:00")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+
+            @Parameter(description = "Bucket width: number + unit (m, h, d), at least 1m", example = "5m")
+            @RequestParam(defaultValue = "1h") String bucket) {
+        return measurementService.aggregate(sensorName, from, to, bucket);
+    }
+
     @Operation(
             summary = "Get measurement by id",
             description = "Returns a specific measurement by its ID"
@@ -147,11 +448,16 @@ public class MeasurementController {
 
     @Operation(
             summary = "Count a raining measurements",
-            description = "Returns the total count of measurements where raining = true"
+            description = "Returns the count of measurements where raining = true, overall or for one sensor. " +
+                    "Served from counters maintained on ingest and periodically reconciled with the database"
     )
     @GetMapping("/rainy-days/count")
-    public Map<String, Long> countRainingMeasurements() {
-        long count = measurementService.countRainingMeasurements();
+    public Map<String, Long> countRainingMeasurements(
+            @Parameter(description = "Only this sensor", example = "Sensor_Home")
+            @RequestParam(required = false) String sensorName) {
+        long count = sensorName == null
+                ? measurementService.countRainingMeasurements()
+                : measurementService.countRainingMeasurements(sensorName);
         log.info("Raining measurement count {}", count);
         return Map.of("count", count);
     }
@@ -187,4 +493,38 @@ public class MeasurementController {
 
         return measurementService.getRainingMeasurements(pageable);
     }
+
+    @Operation(
+            summary = "Get rainy measurements without exact total",
+            description = "Same listing as GET /api/measurements/rainy-days, but without the COUNT(*) query. " +
+                    "total=approximate adds an estimated total from the query plan"
+    )
+    @GetMapping(value = "/rainy-days", params = {"total", "total!=exact"})
+    public SliceDTO<MeasurementDTO> getRainingMeasurementsSlice(
+            @Parameter(description = "Page number (0-based)", example = "0")
+            @RequestParam(defaultValue = "0") int page,
+
+            @Parameter(description = "Number of items per page", example = "20")
+            @RequestParam(defaultValue = "20") int size,
+
+            @Parameter(description = "Sort by field", example = "id")
+            @RequestParam(defaultValue = "id") String sort,
+
+            @Parameter(description = "Sort direction", example = "desc")
+            @RequestParam(defaultValue = "desc") String direction,
+
+            @Parameter(description = "none - no total, approximate - estimated total from planner statistics",
+                    schema = @Schema(allowableValues = {"none", "approximate"}))
+            @RequestParam String total) {
+
+        if (page < 0) page = 0;
+        if (size <= 0 || size > 100) size = 20;
+
+        List<String> allowedSortFields = Arrays.asList("id", "value", "raining", "createdAt");
+        String safeSortField = allowedSortFields.contains(sort) ? sort : "id";
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(direction), safeSortField));
+
+        return measurementService.getRainingMeasurementsSlice(pageable, TotalMode.fromParam(total) == TotalMode.APPROXIMATE);
+    }
 }
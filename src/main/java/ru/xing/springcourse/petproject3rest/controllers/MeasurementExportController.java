@@ -0,0 +1,114 @@
+package ru.xing.springcourse.petproject3rest.controllers;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.media.Schema;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.xing.springcourse.petproject3rest.dto.ExportFormat;
+import ru.xing.springcourse.petproject3rest.services.MeasurementExportService;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/api/measurements")
+@Slf4j
+public class MeasurementExportController {
+
+    private final MeasurementExportService measurementExportService;
+
+    @Operation(
+            summary = "Export measurements (User role required)",
+            description = "Streams all matching measurements ordered by measurementDateTime as CSV " +
+                    "(sensor,value,raining,measurement_date_time) or NDJSON, the same formats the admin import accepts. " +
+                    "Rows are read with a database cursor, so the size of the export is not limited. " +
+                    "The response is gzip-compressed when the client sends Accept-Encoding: gzip. Requires USER or ADMIN role",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "Export stream"
+            ),
+            @ApiResponse(
+                    responseCode = "400",
+                    description = "Unknown sensor or format, 'from' after 'to'"
+            ),
+            @ApiResponse(
+                    responseCode = "401",
+                    description = "Unauthorized - authentication required"
+            ),
+            @ApiResponse(
+                    responseCode = "403",
+                    description = "Forbidden - USER role required"
+            )
+    })
+    @GetMapping("/export")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<StreamingResponseBody> export(
+            @Parameter(description = "Output format", schema = @Schema(allowableValues = {"csv", "ndjson"}))
+            @RequestParam(defaultValue = "csv") String format,
+
+            @Parameter(description = "Only this sensor", example = "Sensor_Home")
+            @RequestParam(required = false) String sensorName,
+
+            @Parameter(description = "From (inclusive), ISO date-time", example = "2024-10-01T00:00:00")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+
+            @Parameter(description = "To (exclusive), ISO date-time", example = "2024-11-01T00:00:00")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+
+            @Parameter(description = "Only raining (true) or dry (false) measurements")
+            @RequestParam(required = false) Boolean raining,
+
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+
+        // Ошибки параметров - до начала потока, пока ещё можно ответить 400
+        ExportFormat exportFormat = ExportFormat.fromParam(format);
+        MeasurementExportService.ExportFilter filter = measurementExportService.filter(sensorName, from, to, raining);
+
+        log.info("Exporting measurements as {}: {}", exportFormat, filter);
+        return stream(measurementExportService, filter, exportFormat, acceptEncoding, "measurements");
+    }
+
+    // Общий ответ для потоковых выгрузок; filter и format проверены до вызова
+    static ResponseEntity<StreamingResponseBody> stream(MeasurementExportService measurementExportService,
+                                                        MeasurementExportService.ExportFilter filter,
+                                                        ExportFormat exportFormat, String acceptEncoding,
+                                                        String filename) {
+        boolean gzip = acceptEncoding != null && acceptEncoding.toLowerCase().contains("gzip");
+
+        StreamingResponseBody body = out -> {
+            try {
+                measurementExportService.export(filter, exportFormat, gzip, out);
+            } catch (SQLException e) {
+                throw new IOException("Export query failed", e);
+            }
+        };
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_TYPE, exportFormat.getMediaType() + ";charset=UTF-8")
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(filename + "." + exportFormat.getExtension())
+                        .build()
+                        .toString())
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.body(body);
+    }
+}
@@ -0,0 +1,85 @@
+package ru.xing.springcourse.petproject3rest.controllers;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.Parameter;
+import io.swagger.v3.oas.annotations.responses.ApiResponse;
+import io.swagger.v3.oas.annotations.responses.ApiResponses;
+import io.swagger.v3.oas.annotations.security.SecurityRequirement;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import ru.xing.springcourse.petproject3rest.dto.ImportFormat;
+import ru.xing.springcourse.petproject3rest.dto.ImportResultDTO;
+import ru.xing.springcourse.petproject3rest.services.MeasurementImportService;
+import ru.xing.springcourse.petproject3rest.services.MeasurementRollupService;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/measurements")
+@PreAuthorize("hasRole('ADMIN')")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Admin", description = "User manager endpoints (Admin only)")
+public class MeasurementImportController {
+
+    private final MeasurementImportService measurementImportService;
+    private final MeasurementRollupService measurementRollupService;
+
+    @Operation(
+            summary = "Bulk import measurements",
+            description = "Streams CSV (sensor,value,raining,measurement_date_time) or NDJSON into the measurement " +
+                    "table with PostgreSQL COPY. Rejected rows are written to an error file on the server. " +
+                    "Requires ADMIN role.",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Import finished, see imported/rejected counters"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "403", description = "Forbidden - ADMIN role required")
+    })
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson", "application/octet-stream"})
+    public ImportResultDTO importMeasurements(
+            @Parameter(description = "Input format", example = "CSV")
+            @RequestParam(defaultValue = "CSV") ImportFormat format,
+            InputStream body) throws IOException, SQLException {
+        log.info("Admin: Importing measurements in {} format", format);
+        return measurementImportService.importMeasurements(body, format);
+    }
+
+    @Operation(
+            summary = "Rebuild measurement rollups",
+            description = "Recomputes the minute/hour/day rollups used by /api/measurements/aggregate from raw " +
+                    "measurements in [from, to), widened to whole days. Needed only after rows were changed " +
+                    "bypassing the insert trigger (manual fixes, deletes). Requires ADMIN role.",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "Rollups rebuilt"),
+            @ApiResponse(responseCode = "400", description = "'from' is not before 'to'"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized"),
+            @ApiResponse(responseCode = "403", description = "Forbidden - ADMIN role required")
+    })
+    @PostMapping("/rollups/rebuild")
+    public Map<String, Object> rebuildRollups(
+            @Parameter(description = "From (inclusive), ISO date-time", example = "2024-10-01T00:00:00")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+
+            @Parameter(description = "To (exclusive), ISO date-time", example = "2024-11-01T00:00:00")
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        log.info("Admin: Rebuilding measurement rollups for {}..{}", from, to);
+        long measurements = measurementRollupService.rebuild(from, to);
+
+        return Map.of(
+                "message", "Rollups rebuilt successfully",
+                "measurements", measurements
+        );
+    }
+}
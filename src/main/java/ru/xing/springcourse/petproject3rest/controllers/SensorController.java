@@ -16,14 +16,29 @@ import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.domain.Sort;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import ru.xing.springcourse.petproject3rest.dto.CursorPageDTO;
+import ru.xing.springcourse.petproject3rest.dto.ExportFormat;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
 import ru.xing.springcourse.petproject3rest.dto.SensorDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SliceDTO;
+import ru.xing.springcourse.petproject3rest.dto.TotalMode;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.MeasurementExportService;
 import ru.xing.springcourse.petproject3rest.services.SensorService;
 import ru.xing.springcourse.petproject3rest.util.ErrorUtil;
 
+import java.time.LocalDateTime;
+import java.util.List;
+
 @Slf4j
 @RestController
 @RequestMapping("/api/sensors")
@@ -31,10 +46,14 @@ import ru.xing.springcourse.petproject3rest.util.ErrorUtil;
 @Tag(name = "sensor", description = "Sensor management API") //swagger tag
 public class SensorController {
     private final SensorService sensorService;
+    private final MeasurementExportService measurementExportService;
+    private final DataVersions dataVersions;
 
     @Operation(
             summary = "Get all sensors",
-            description = "Return a paginated list of all registered list"
+            description = "Return a paginated list of all registered list. Each sensor carries a summary " +
+                    "(measurement count, first/last measurement time, last value, rain ratio) instead of its " +
+                    "measurements; use GET /api/sensors/{name}/measurements to page through them"
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200",
@@ -56,7 +75,13 @@ public class SensorController {
 
                                          @Parameter(description = "Sort direction", example = "asc",
                                                  schema = @Schema(allowableValues = {"asc", "desc"}))
-                                             @RequestParam(defaultValue = "asc") String direction) {
+                                             @RequestParam(defaultValue = "asc") String direction,
+
+                                         ServletWebRequest webRequest) {
+        // Ничего не записано с прошлого ответа - 304 без запроса в БД
+        if (dataVersions.global().checkNotModified(webRequest)) {
+            return null;
+        }
 
         // Валидация параметров
         if (page < 0) page = 0;
@@ -72,9 +97,48 @@ public class SensorController {
         return sensorService.getAllSensors(pageable);
     }
 
+    @Operation(
+            summary = "Get all sensors without exact total",
+            description = "Same listing as GET /api/sensors, but without the COUNT(*) query. " +
+                    "total=approximate adds an estimated total from PostgreSQL statistics"
+    )
+    @GetMapping(params = {"total", "total!=exact"})
+    public SliceDTO<SensorDTO> getAllSensorsSlice(@Parameter(description = "Page number (0-based)", example = "0")
+                                                  @RequestParam(defaultValue = "0") int page,
+
+                                                  @Parameter(description = "Number of items per page", example = "20")
+                                                  @RequestParam(defaultValue = "20") int size,
+
+                                                  @Parameter(description = "Sort by field", example = "name")
+                                                  @RequestParam(defaultValue = "name") String sort,
+
+                                                  @Parameter(description = "Sort direction", example = "asc",
+                                                          schema = @Schema(allowableValues = {"asc", "desc"}))
+                                                  @RequestParam(defaultValue = "asc") String direction,
+
+                                                  @Parameter(description = "none - no total, approximate - estimated total",
+                                                          schema = @Schema(allowableValues = {"none", "approximate"}))
+                                                  @RequestParam String total,
+
+                                                  ServletWebRequest webRequest) {
+        if (dataVersions.global().checkNotModified(webRequest)) {
+            return null;
+        }
+
+        if (page < 0) page = 0;
+        if (size <= 0 || size > 100) size = 20;
+
+        Pageable pageable = PageRequest.of(page, size, Sort.by(Sort.Direction.fromString(direction), sort));
+
+        return sensorService.getSensorsSlice(pageable, TotalMode.fromParam(total) == TotalMode.APPROXIMATE);
+    }
+
     @Operation(
             summary = "Get sensor by name",
-            description = "Return detailed information about a specific sensor including its measurements"
+            description = "Return a sensor with its measurement summary and at most " +
+                    SensorService.MAX_RECENT_MEASUREMENTS + " most recent measurements. Older measurements are paged " +
+                    "via GET /api/sensors/{name}/measurements?after={nextCursor} or streamed via " +
+                    "GET /api/sensors/{name}/measurements/stream"
     )
     @ApiResponses(value = {
             @ApiResponse(responseCode = "200",
@@ -87,9 +151,109 @@ public class SensorController {
                     description = "Sensor not found")
     })
     @GetMapping("/{name}")
-    public SensorDTO getSensorByName(@PathVariable String name) {
+    public SensorDTO getSensorByName(@PathVariable String name,
+
+                                     @Parameter(description = "Number of most recent measurements, 0.." +
+                                             SensorService.MAX_RECENT_MEASUREMENTS, example = "20")
+                                     @RequestParam(defaultValue = "20") int recent,
+
+                                     ServletWebRequest webRequest) {
+        if (notModified(name, webRequest)) {
+            return null;
+        }
+        if (recent < 0 || recent > SensorService.MAX_RECENT_MEASUREMENTS) recent = 20;
+
         log.info("Getting sensor by name {}", name);
-        return sensorService.getSensorByName(name);
+        return sensorService.getSensorByName(name, recent);
+    }
+
+    @Operation(
+            summary = "Get current readings",
+            description = "Latest measurement of every sensor (or of the requested sensors), served from memory " +
+                    "without a database query. Sensors without measurements are not listed"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200",
+                    description = "Latest measurement per sensor, ordered by sensor name")
+    })
+    @GetMapping("/current")
+    public List<SensorMeasurementDTO> getCurrentReadings(
+            @Parameter(description = "Only these sensors (repeat the parameter for several)", example = "Sensor_Home")
+            @RequestParam(name = "name", required = false) List<String> names) {
+        return sensorService.getCurrentReadings(names);
+    }
+
+    @Operation(
+            summary = "Get sensor measurements in a time window",
+            description = "Measurements of one sensor with from <= measurementDateTime < to, ordered by " +
+                    "measurementDateTime. Keyset pagination: pass nextCursor as 'after' together with the same " +
+                    "from/to; the direction is then taken from the cursor"
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200",
+                    description = "Successfully retrieved measurements"),
+            @ApiResponse(responseCode = "400",
+                    description = "Sensor not found, invalid cursor or 'from' after 'to'")
+    })
+    @GetMapping("/{name}/measurements")
+    public CursorPageDTO<MeasurementDTO> getSensorMeasurements(
+            @PathVariable String name,
+
+            @Parameter(description = "From (inclusive), ISO date-time", example = "2024-10-01T00:00:00")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+
+            @Parameter(description = "To (exclusive), ISO date-time", example = "2024-10-02T00:00:00")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+
+            @Parameter(description = "Cursor from the previous page (nextCursor), empty for the first page")
+            @RequestParam(required = false) String after,
+
+            @Parameter(description = "Number of items per page", example = "20")
+            @RequestParam(defaultValue = "20") int size,
+
+            @Parameter(description = "Sort direction by measurementDateTime", example = "desc",
+                    schema = @Schema(allowableValues = {"asc", "desc"}))
+            @RequestParam(defaultValue = "desc") String direction,
+
+            ServletWebRequest webRequest) {
+        if (notModified(name, webRequest)) {
+            return null;
+        }
+        if (size <= 0 || size > 100) size = 20;
+
+        return sensorService.getSensorMeasurements(name, from, to, after, size, Sort.Direction.fromString(direction));
+    }
+
+    @Operation(
+            summary = "Stream sensor measurements (User role required)",
+            description = "Streams all measurements of one sensor in the window as NDJSON, ordered by " +
+                    "measurementDateTime, with a database cursor - for reading the whole history in one request. " +
+                    "gzip-compressed when the client sends Accept-Encoding: gzip. Requires USER or ADMIN role",
+            security = @SecurityRequirement(name = "basicAuth")
+    )
+    @ApiResponses(value = {
+            @ApiResponse(responseCode = "200", description = "NDJSON stream"),
+            @ApiResponse(responseCode = "400", description = "Sensor not found or 'from' after 'to'"),
+            @ApiResponse(responseCode = "401", description = "Unauthorized - authentication required"),
+            @ApiResponse(responseCode = "403", description = "Forbidden - USER role required")
+    })
+    @GetMapping("/{name}/measurements/stream")
+    @PreAuthorize("hasAnyRole('USER', 'ADMIN')")
+    public ResponseEntity<StreamingResponseBody> streamSensorMeasurements(
+            @PathVariable String name,
+
+            @Parameter(description = "From (inclusive), ISO date-time", example = "2024-10-01T00:00:00")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+
+            @Parameter(description = "To (exclusive), ISO date-time", example = "2024-10-02T00:00:00")
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        MeasurementExportService.ExportFilter filter = measurementExportService.filter(name, from, to, null);
+
+        log.info("Streaming measurements of sensor {}: {}", name, filter);
+        return MeasurementExportController.stream(measurementExportService, filter, ExportFormat.NDJSON,
+                acceptEncoding, name);
     }
 
 
@@ -129,4 +293,11 @@ public class SensorController {
 
         return ResponseEntity.ok("Sensor registered successfully");
     }
+
+    // Версия сенсора не менялась; для неизвестного сенсора проверки нет - ответит сервис ошибкой
+    private boolean notModified(String name, ServletWebRequest webRequest) {
+        return dataVersions.sensor(name)
+                .map(validator -> validator.checkNotModified(webRequest))
+                .orElse(false);
+    }
 }
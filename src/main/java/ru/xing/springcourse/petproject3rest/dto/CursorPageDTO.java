@@ -0,0 +1,23 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Schema(description = "One page of a cursor (keyset) listing")
+public class CursorPageDTO<T> {
+
+    @Schema(description = "Page content")
+    private List<T> content;
+
+    @Schema(description = "Opaque token for the next page, null on the last page", example = "SUR8REVTQ3w0MjF8")
+    private String nextCursor;
+
+    @Schema(description = "Whether there are more rows after this page", example = "true")
+    private boolean hasNext;
+}
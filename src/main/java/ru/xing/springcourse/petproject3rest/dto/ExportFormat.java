@@ -0,0 +1,37 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import ru.xing.springcourse.petproject3rest.util.BusinessException;
+
+import java.util.Locale;
+
+// Форматы выгрузки совпадают с ImportFormat: файл экспорта можно загрузить обратно через импорт
+public enum ExportFormat {
+    // sensor,value,raining,measurement_date_time с заголовком
+    CSV("text/csv", "csv"),
+    // одна строка - один SensorMeasurementDTO
+    NDJSON("application/x-ndjson", "ndjson");
+
+    private final String mediaType;
+    private final String extension;
+
+    ExportFormat(String mediaType, String extension) {
+        this.mediaType = mediaType;
+        this.extension = extension;
+    }
+
+    public String getMediaType() {
+        return mediaType;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    public static ExportFormat fromParam(String format) {
+        try {
+            return valueOf(format.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("Unsupported format: " + format + ", use csv or ndjson");
+        }
+    }
+}
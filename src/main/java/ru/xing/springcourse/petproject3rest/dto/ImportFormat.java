@@ -0,0 +1,8 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+public enum ImportFormat {
+    // sensor,value,raining,measurement_date_time (заголовок необязателен)
+    CSV,
+    // одна строка - один SensorMeasurementDTO
+    NDJSON
+}
@@ -0,0 +1,27 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Schema(description = "Result of a bulk import")
+public class ImportResultDTO {
+
+    @Schema(description = "Rows written to the measurement table", example = "1500000")
+    private long imported;
+
+    @Schema(description = "Rows written to the error file", example = "12")
+    private long rejected;
+
+    @Schema(description = "Import duration in seconds", example = "18.4")
+    private double seconds;
+
+    @Schema(description = "Import throughput", example = "81521")
+    private long rowsPerSecond;
+
+    @Schema(description = "Path of the error file on the server, null if nothing was rejected")
+    private String errorFile;
+}
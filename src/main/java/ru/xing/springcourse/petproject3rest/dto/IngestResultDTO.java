@@ -0,0 +1,24 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import ru.xing.springcourse.petproject3rest.util.LineErrorDto;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Schema(description = "Result of a streaming ingest")
+public class IngestResultDTO {
+
+    @Schema(description = "Number of stored measurements", example = "125000")
+    private long accepted;
+
+    @Schema(description = "Number of rejected lines", example = "3")
+    private long rejected;
+
+    @Schema(description = "First rejected lines with reasons")
+    private List<LineErrorDto> errors;
+}
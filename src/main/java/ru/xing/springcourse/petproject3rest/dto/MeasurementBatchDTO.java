@@ -0,0 +1,27 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Schema(description = "Batch of measurements for one or more sensors")
+public class MeasurementBatchDTO {
+
+    @Schema(description = "Measurements grouped by sensor")
+    @NotEmpty(message = "Batch should not be empty")
+    private List<@Valid SensorReadingsDTO> sensors;
+
+    // Общее количество измерений в пакете
+    public int size() {
+        return sensors == null ? 0 : sensors.stream()
+                .mapToInt(readings -> readings.getMeasurements() == null ? 0 : readings.getMeasurements().size())
+                .sum();
+    }
+}
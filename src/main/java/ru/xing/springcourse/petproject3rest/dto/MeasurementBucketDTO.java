@@ -0,0 +1,35 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Schema(description = "Aggregated measurements of one sensor in one time bucket")
+public class MeasurementBucketDTO {
+
+    @Schema(description = "Sensor name", example = "Sensor_Home")
+    private String sensorName;
+
+    @Schema(description = "Bucket start (inclusive), buckets are aligned to 2000-01-01T00:00", example = "2024-10-17T14:00:00")
+    private LocalDateTime bucketStart;
+
+    @Schema(description = "Minimum value in the bucket", example = "18.2")
+    private double min;
+
+    @Schema(description = "Maximum value in the bucket", example = "24.9")
+    private double max;
+
+    @Schema(description = "Average value in the bucket", example = "21.43")
+    private double avg;
+
+    @Schema(description = "Number of measurements in the bucket", example = "60")
+    private long count;
+
+    @Schema(description = "Share of measurements with raining = true, 0..1", example = "0.25")
+    private double rainFraction;
+}
@@ -1,5 +1,6 @@
 package ru.xing.springcourse.petproject3rest.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.*;
 import lombok.*;
@@ -36,4 +37,13 @@ public class MeasurementDTO {
             accessMode = Schema.AccessMode.READ_ONLY
     )
     private LocalDateTime measurementDateTime;
+
+    @Schema(
+            description = "Optional client-generated key. Retries with the same key for the same sensor are stored once",
+            example = "gw-7-000123",
+            maxLength = 64
+    )
+    @Size(max = 64, message = "Idempotency key should be at most 64 characters")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String idempotencyKey;
 }
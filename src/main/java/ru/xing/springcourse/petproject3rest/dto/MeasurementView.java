@@ -0,0 +1,8 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import java.time.LocalDateTime;
+
+// Проекция для чтения: ровно нужные колонки, без сущности, прокси сенсора и снапшота для dirty checking.
+// sensorId - значение внешнего ключа, JOIN на sensor не нужен
+public record MeasurementView(int id, int sensorId, double value, boolean raining, LocalDateTime measurementDateTime) {
+}
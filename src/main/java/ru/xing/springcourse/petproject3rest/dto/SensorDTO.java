@@ -1,5 +1,6 @@
 package ru.xing.springcourse.petproject3rest.dto;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Size;
@@ -25,8 +26,26 @@ public class SensorDTO {
     private String name;
 
     @Schema(
-            description = "List of measurements for this sensor",
+            description = "Measurement summary; filled in sensor listings",
             accessMode = Schema.AccessMode.READ_ONLY
     )
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private SensorSummaryDTO summary;
+
+    @Schema(
+            description = "Most recent measurements, newest first; filled only in the sensor detail view. " +
+                    "Listings carry only the summary, measurements are paged via GET /api/sensors/{name}/measurements",
+            accessMode = Schema.AccessMode.READ_ONLY
+    )
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<MeasurementDTO> measurements;
+
+    @Schema(
+            description = "Pass as 'after' to GET /api/sensors/{name}/measurements for older measurements, " +
+                    "absent when there are none",
+            accessMode = Schema.AccessMode.READ_ONLY,
+            example = "TUVBU1VSRU1FTlR8..."
+    )
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String nextCursor;
 }
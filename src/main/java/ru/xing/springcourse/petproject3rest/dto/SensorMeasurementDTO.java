@@ -0,0 +1,26 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonUnwrapped;
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import lombok.*;
+
+// Одна строка NDJSON-потока: имя сенсора + поля измерения на одном уровне
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Schema(description = "Single measurement with its sensor name (one NDJSON line)")
+public class SensorMeasurementDTO {
+
+    @Schema(description = "Sensor name", example = "Sensor_Home")
+    @NotBlank(message = "Sensor name should not be empty")
+    private String sensorName;
+
+    @JsonUnwrapped
+    @Valid
+    @NotNull
+    private MeasurementDTO measurement;
+}
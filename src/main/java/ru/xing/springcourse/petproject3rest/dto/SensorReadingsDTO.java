@@ -0,0 +1,25 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.*;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Schema(description = "Measurements of a single sensor inside a batch")
+public class SensorReadingsDTO {
+
+    @Schema(description = "Sensor name", example = "Sensor_Home")
+    @NotBlank(message = "Sensor name should not be empty")
+    private String sensorName;
+
+    @Schema(description = "Measurements of this sensor")
+    @NotEmpty(message = "Measurements should not be empty")
+    private List<@Valid MeasurementDTO> measurements;
+}
@@ -0,0 +1,34 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Schema(description = "Summary of all measurements of one sensor")
+public class SensorSummaryDTO {
+
+    @Schema(description = "Number of measurements", example = "525600")
+    private long measurementCount;
+
+    @Schema(description = "Time of the first measurement, null if there are none", example = "2024-01-01T00:00:00")
+    private LocalDateTime firstMeasurementAt;
+
+    @Schema(description = "Time of the last measurement, null if there are none", example = "2024-12-31T23:59:00")
+    private LocalDateTime lastMeasurementAt;
+
+    @Schema(description = "Value of the last measurement, null if there are none", example = "21.4")
+    private Double lastValue;
+
+    @Schema(description = "Share of measurements with raining = true, 0..1, null if there are none", example = "0.12")
+    private Double rainRatio;
+
+    // Сенсор без измерений
+    public static SensorSummaryDTO empty() {
+        return new SensorSummaryDTO(0, null, null, null, null);
+    }
+}
@@ -0,0 +1,5 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+// Проекция сенсора для списков
+public record SensorView(int id, String name) {
+}
@@ -0,0 +1,37 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import org.springframework.data.domain.Slice;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Builder
+@Schema(description = "One page of a listing without an exact total (no COUNT query)")
+public class SliceDTO<T> {
+
+    @Schema(description = "Page content")
+    private List<T> content;
+
+    @Schema(description = "Page number (0-based)", example = "0")
+    private int page;
+
+    @Schema(description = "Requested page size", example = "20")
+    private int size;
+
+    @Schema(description = "Whether there is a next page", example = "true")
+    private boolean hasNext;
+
+    @Schema(description = "Approximate total from PostgreSQL planner statistics, only with total=approximate. " +
+            "Not exact: it reflects the last ANALYZE", example = "100000000")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long approximateTotal;
+
+    public static <T> SliceDTO<T> of(Slice<T> slice, Long approximateTotal) {
+        return new SliceDTO<>(slice.getContent(), slice.getNumber(), slice.getSize(), slice.hasNext(), approximateTotal);
+    }
+}
@@ -0,0 +1,21 @@
+package ru.xing.springcourse.petproject3rest.dto;
+
+import ru.xing.springcourse.petproject3rest.util.BusinessException;
+
+import java.util.Locale;
+
+// Параметр total у списков: exact - Page с COUNT(*), none - Slice, approximate - Slice с оценкой total.
+// Значение сравнивается с учётом регистра, как и в маппинге params = "total!=exact": иначе total=EXACT
+// попал бы в обработчик Slice
+public enum TotalMode {
+    EXACT, NONE, APPROXIMATE;
+
+    public static TotalMode fromParam(String total) {
+        for (TotalMode mode : values()) {
+            if (mode.name().toLowerCase(Locale.ROOT).equals(total)) {
+                return mode;
+            }
+        }
+        throw new BusinessException("Unsupported total: " + total + ", use exact, none or approximate");
+    }
+}
@@ -10,7 +10,20 @@ import lombok.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "measurement")
+// Таблица секционирована по measurement_date_time (V6): первичный ключ в БД - (id, measurement_date_time),
+// id уникален по последовательности. Уникальность ключа идемпотентности - в measurement_idempotency (V7)
+@Table(name = "measurement",
+        // Индексы создаются миграциями (db/migration), здесь - для справки
+        indexes = {
+                // Keyset-пагинация по времени: (measurement_date_time, id) < (?, ?)
+                @Index(name = "idx_measurement_date_time_id", columnList = "measurement_date_time, id"),
+                // Окно времени одного сенсора: sensor = ? AND measurement_date_time ...,
+                // в миграции ещё INCLUDE (value, raining) для агрегатов
+                @Index(name = "idx_measurement_sensor_date_time_covering", columnList = "sensor, measurement_date_time, id"),
+                // Дождевые измерения, в миграции частичные (WHERE raining)
+                @Index(name = "idx_measurement_raining_id", columnList = "id"),
+                @Index(name = "idx_measurement_raining_date_time_id", columnList = "measurement_date_time, id")
+        })
 @Getter
 @Setter
 @Builder
@@ -37,6 +50,10 @@ public class Measurement {
     @NotNull
     private LocalDateTime measurementDateTime;
 
+    //Ключ идемпотентности от клиента, повторы с тем же ключом для того же сенсора не пишутся
+    @Column(name = "idempotency_key", length = 64)
+    private String idempotencyKey;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "sensor")
     @JsonIgnore //Есть DTO
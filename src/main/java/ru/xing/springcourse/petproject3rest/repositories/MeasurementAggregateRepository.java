@@ -0,0 +1,151 @@
+package ru.xing.springcourse.petproject3rest.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBucketDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorSummaryDTO;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Агрегаты по интервалам времени (date_bin + GROUP BY) прямо в PostgreSQL: клиенту уходит по строке на интервал,
+ * а не все измерения. Условие sensor IN (...) + окно времени читает диапазоны покрывающего индекса
+ * idx_measurement_sensor_date_time_covering (index-only scan, без чтения таблицы).
+ * Если интервал кратен минуте, часу или суткам, агрегат собирается из таблиц предагрегатов (см. RollupResolution).
+ */
+@Repository
+@RequiredArgsConstructor
+public class MeasurementAggregateRepository {
+    // Начало отсчёта интервалов: полночь, поэтому часовые и суточные интервалы начинаются ровно с часа и суток
+    static final LocalDateTime BUCKET_ORIGIN = LocalDateTime.of(2000, 1, 1, 0, 0);
+
+    private static final String AGGREGATE_SQL =
+            "SELECT s.name, b.bucket, b.min_value, b.max_value, b.avg_value, b.count, b.rain_fraction " +
+                    "FROM (SELECT m.sensor, " +
+                    "             date_bin(make_interval(secs => :bucketSeconds), m.measurement_date_time, :origin) AS bucket, " +
+                    "             min(m.value) AS min_value, max(m.value) AS max_value, avg(m.value) AS avg_value, " +
+                    "             count(*) AS count, avg(m.raining::int) AS rain_fraction " +
+                    "      FROM measurement m " +
+                    "      WHERE m.sensor IN (:sensorIds) " +
+                    "        AND m.measurement_date_time >= :from AND m.measurement_date_time < :to " +
+                    "      GROUP BY m.sensor, bucket) b " +
+                    "JOIN sensor s ON s.id = b.sensor " +
+                    "ORDER BY s.name, b.bucket";
+
+    // Строки предагрегата плюс ещё не слитые приращения: оба источника читаются одним снимком,
+    // поэтому каждое измерение учитывается ровно один раз
+    private static final String ROLLUP_AGGREGATE_SQL =
+            "SELECT s.name, b.bucket, b.min_value, b.max_value, b.sum_value / b.count::float8, b.count, " +
+                    "       b.rain_count::float8 / b.count::float8 " +
+                    "FROM (SELECT r.sensor, " +
+                    "             date_bin(make_interval(secs => :bucketSeconds), r.bucket_start, :origin) AS bucket, " +
+                    "             min(r.min_value) AS min_value, max(r.max_value) AS max_value, " +
+                    "             sum(r.sum_value) AS sum_value, sum(r.count) AS count, " +
+                    "             sum(r.rain_count) AS rain_count " +
+                    "      FROM (SELECT sensor, bucket_start, count, sum_value, min_value, max_value, rain_count " +
+                    "            FROM %s " +
+                    "            WHERE sensor IN (:sensorIds) AND bucket_start >= :from AND bucket_start < :to " +
+                    "            UNION ALL " +
+                    "            SELECT sensor, bucket_start, count, sum_value, min_value, max_value, rain_count " +
+                    "            FROM measurement_rollup_delta " +
+                    "            WHERE sensor IN (:sensorIds) AND bucket_start >= :from AND bucket_start < :to) r " +
+                    "      GROUP BY r.sensor, bucket) b " +
+                    "JOIN sensor s ON s.id = b.sensor " +
+                    "ORDER BY s.name, b.bucket";
+
+    // На каждый сенсор - один спуск по индексу (sensor, measurement_date_time, id) INCLUDE (value, raining) с конца
+    private static final String LATEST_SQL =
+            "SELECT s.name, m.value, m.raining, m.measurement_date_time " +
+                    "FROM sensor s " +
+                    "CROSS JOIN LATERAL (SELECT value, raining, measurement_date_time FROM measurement " +
+                    "                    WHERE sensor = s.id " +
+                    "                    ORDER BY measurement_date_time DESC, id DESC LIMIT 1) m";
+
+    // Число измерений и дождевых - из суточных предагрегатов и не слитых приращений, первое и последнее
+    // измерение - по спуску по покрывающему индексу с каждого конца. Сырые строки не агрегируются
+    private static final String SUMMARY_SQL =
+            "SELECT s.id, coalesce(t.count, 0), coalesce(t.rain_count, 0), " +
+                    "       f.measurement_date_time, l.measurement_date_time, l.value " +
+                    "FROM sensor s " +
+                    "LEFT JOIN (SELECT sensor, sum(count) AS count, sum(rain_count) AS rain_count " +
+                    "           FROM (SELECT sensor, count, rain_count FROM measurement_rollup_day " +
+                    "                 WHERE sensor IN (:sensorIds) " +
+                    "                 UNION ALL " +
+                    "                 SELECT sensor, count, rain_count FROM measurement_rollup_delta " +
+                    "                 WHERE sensor IN (:sensorIds)) r " +
+                    "           GROUP BY sensor) t ON t.sensor = s.id " +
+                    "LEFT JOIN LATERAL (SELECT measurement_date_time FROM measurement " +
+                    "                   WHERE sensor = s.id " +
+                    "                   ORDER BY measurement_date_time, id LIMIT 1) f ON true " +
+                    "LEFT JOIN LATERAL (SELECT measurement_date_time, value FROM measurement " +
+                    "                   WHERE sensor = s.id " +
+                    "                   ORDER BY measurement_date_time DESC, id DESC LIMIT 1) l ON true " +
+                    "WHERE s.id IN (:sensorIds)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Пустые интервалы (без измерений) в ответ не попадают
+    public List<MeasurementBucketDTO> aggregate(Collection<Integer> sensorIds, LocalDateTime from, LocalDateTime to,
+                                                Duration bucket) {
+        return query(AGGREGATE_SQL, sensorIds, from, to, bucket);
+    }
+
+    // Последнее измерение каждого сенсора; сенсоры без измерений не попадают
+    public List<SensorMeasurementDTO> findLatestPerSensor() {
+        return jdbcTemplate.query(LATEST_SQL, (rs, rowNum) -> new SensorMeasurementDTO(
+                rs.getString(1),
+                new MeasurementDTO(rs.getDouble(2), rs.getBoolean(3), rs.getTimestamp(4).toLocalDateTime(), null)));
+    }
+
+    // Сводка по сенсорам страницы одним запросом; сенсоры без измерений - с нулевым числом
+    public Map<Integer, SensorSummaryDTO> summarize(Collection<Integer> sensorIds) {
+        Map<Integer, SensorSummaryDTO> summaries = new HashMap<>();
+        jdbcTemplate.query(SUMMARY_SQL, new MapSqlParameterSource("sensorIds", sensorIds), rs -> {
+            long count = rs.getLong(2);
+            Timestamp first = rs.getTimestamp(4);
+            Timestamp last = rs.getTimestamp(5);
+            summaries.put(rs.getInt(1), new SensorSummaryDTO(
+                    count,
+                    first == null ? null : first.toLocalDateTime(),
+                    last == null ? null : last.toLocalDateTime(),
+                    last == null ? null : rs.getDouble(6),
+                    count == 0 ? null : (double) rs.getLong(3) / count));
+        });
+        return summaries;
+    }
+
+    // bucket кратен ширине resolution, from и to выровнены по ней (RollupResolution.coarsestFor)
+    public List<MeasurementBucketDTO> aggregate(RollupResolution resolution, Collection<Integer> sensorIds,
+                                                LocalDateTime from, LocalDateTime to, Duration bucket) {
+        return query(ROLLUP_AGGREGATE_SQL.formatted(resolution.getTable()), sensorIds, from, to, bucket);
+    }
+
+    private List<MeasurementBucketDTO> query(String sql, Collection<Integer> sensorIds, LocalDateTime from,
+                                             LocalDateTime to, Duration bucket) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("sensorIds", sensorIds)
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to))
+                .addValue("bucketSeconds", bucket.toSeconds())
+                .addValue("origin", Timestamp.valueOf(BUCKET_ORIGIN));
+
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> new MeasurementBucketDTO(
+                rs.getString(1),
+                rs.getTimestamp(2).toLocalDateTime(),
+                rs.getDouble(3),
+                rs.getDouble(4),
+                rs.getDouble(5),
+                rs.getLong(6),
+                rs.getDouble(7)));
+    }
+}
@@ -0,0 +1,11 @@
+package ru.xing.springcourse.petproject3rest.repositories;
+
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+
+import java.util.List;
+
+// Пакетная вставка в обход Hibernate: для IDENTITY-ключей Hibernate отключает JDBC batching.
+// Возвращает записанные строки - без повторов по ключу идемпотентности
+public interface MeasurementBatchRepository {
+    List<Measurement> batchInsert(List<Measurement> measurements);
+}
@@ -0,0 +1,85 @@
+package ru.xing.springcourse.petproject3rest.repositories;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+public class MeasurementBatchRepositoryImpl implements MeasurementBatchRepository {
+    // Пачка приходит массивами и пишется одним оператором. Строка с ключом пишется, только если её ключ
+    // удалось занять в measurement_idempotency: повтор (sensor, idempotency_key) пропускается при любом времени
+    // измерения, а параллельная запись того же ключа ждёт коммита первой. Повтор ключа внутри пачки - первая строка
+    private static final String INSERT_SQL =
+            "WITH input AS (SELECT * FROM unnest(?::float8[], ?::boolean[], ?::timestamp[], ?::integer[], ?::varchar[]) " +
+                    "               WITH ORDINALITY AS t(value, raining, measurement_date_time, sensor, idempotency_key, ord)), " +
+                    "keyed AS (SELECT DISTINCT ON (sensor, idempotency_key) * FROM input " +
+                    "          WHERE idempotency_key IS NOT NULL ORDER BY sensor, idempotency_key, ord), " +
+                    "claimed AS (INSERT INTO measurement_idempotency (sensor, idempotency_key, measurement_date_time) " +
+                    "            SELECT sensor, idempotency_key, measurement_date_time FROM keyed " +
+                    "            ON CONFLICT DO NOTHING RETURNING sensor, idempotency_key), " +
+                    "accepted AS (SELECT * FROM input WHERE idempotency_key IS NULL " +
+                    "             UNION ALL " +
+                    "             SELECT k.* FROM keyed k JOIN claimed c USING (sensor, idempotency_key)), " +
+                    "inserted AS (INSERT INTO measurement (value, raining, measurement_date_time, sensor, idempotency_key) " +
+                    "             SELECT value, raining, measurement_date_time, sensor, idempotency_key " +
+                    "             FROM accepted ORDER BY ord) " +
+                    "SELECT ord FROM accepted ORDER BY ord";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    public MeasurementBatchRepositoryImpl(JdbcTemplate jdbcTemplate,
+                                          @Value("${measurement.batch.jdbc-batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = batchSize;
+    }
+
+    // id генерирует БД, поэтому в сущности он не заполняется.
+    // Вне транзакции сервиса каждый вызов коммитится отдельно (потоковая загрузка чанками)
+    @Override
+    @Transactional
+    public List<Measurement> batchInsert(List<Measurement> measurements) {
+        List<Measurement> inserted = new ArrayList<>(measurements.size());
+        for (int from = 0; from < measurements.size(); from += batchSize) {
+            List<Measurement> part = measurements.subList(from, Math.min(from + batchSize, measurements.size()));
+            // ord - номер строки в массивах, с 1
+            jdbcTemplate.query(connection -> prepare(connection, part),
+                    rs -> {
+                        inserted.add(part.get(rs.getInt(1) - 1));
+                    });
+        }
+        return inserted;
+    }
+
+    private static PreparedStatement prepare(Connection connection, List<Measurement> measurements) throws SQLException {
+        int size = measurements.size();
+        Double[] values = new Double[size];
+        Boolean[] raining = new Boolean[size];
+        Timestamp[] times = new Timestamp[size];
+        Integer[] sensors = new Integer[size];
+        String[] keys = new String[size];
+        for (int i = 0; i < size; i++) {
+            Measurement measurement = measurements.get(i);
+            values[i] = measurement.getValue();
+            raining[i] = measurement.isRaining();
+            times[i] = Timestamp.valueOf(measurement.getMeasurementDateTime());
+            sensors[i] = measurement.getSensor().getId();
+            keys[i] = measurement.getIdempotencyKey();
+        }
+
+        PreparedStatement ps = connection.prepareStatement(INSERT_SQL);
+        ps.setArray(1, connection.createArrayOf("float8", values));
+        ps.setArray(2, connection.createArrayOf("bool", raining));
+        ps.setArray(3, connection.createArrayOf("timestamp", times));
+        ps.setArray(4, connection.createArrayOf("int4", sensors));
+        ps.setArray(5, connection.createArrayOf("varchar", keys));
+        return ps;
+    }
+}
@@ -0,0 +1,140 @@
+package ru.xing.springcourse.petproject3rest.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Секции measurement (RANGE по measurement_date_time, см. V6__measurement_partitioning.sql).
+ * Границы секций читаются из каталога PostgreSQL, имена секций не разбираются.
+ * Изменения секций разных экземпляров исключают друг друга через advisory-блокировку транзакции:
+ * кто её не получил, ничего не меняет - секцию создаст или удалит тот, кто получил.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MeasurementPartitionRepository {
+    public static final String DEFAULT_PARTITION = "measurement_default";
+
+    private static final long PARTITION_LOCK_KEY = 0x7061727469746eL;
+
+    private static final String PARTITIONS_SQL =
+            "SELECT c.relname, pg_get_expr(c.relpartbound, c.oid) " +
+                    "FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                    "WHERE i.inhparent = 'measurement'::regclass";
+
+    // FOR VALUES FROM ('2024-10-01 00:00:00') TO ('2024-11-01 00:00:00')
+    private static final Pattern RANGE_BOUND = Pattern.compile("FROM \\('([^']+)'\\) TO \\('([^']+)'\\)");
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    // Секции с границами по возрастанию, без секции по умолчанию
+    public List<Partition> findPartitions() {
+        List<Partition> partitions = new ArrayList<>();
+        jdbcTemplate.query(PARTITIONS_SQL, rs -> {
+            Matcher bound = RANGE_BOUND.matcher(rs.getString(2));
+            if (bound.find()) {
+                partitions.add(new Partition(rs.getString(1), Timestamp.valueOf(bound.group(1)).toLocalDateTime(),
+                        Timestamp.valueOf(bound.group(2)).toLocalDateTime()));
+            }
+        });
+        partitions.sort(Comparator.comparing(Partition::from));
+        return partitions;
+    }
+
+    // Сутки, за которые есть строки в секции по умолчанию; обычно она пуста
+    public List<LocalDateTime> findDefaultPartitionDays() {
+        return jdbcTemplate.query("SELECT DISTINCT date_trunc('day', measurement_date_time) FROM " + DEFAULT_PARTITION +
+                        " ORDER BY 1",
+                (rs, rowNum) -> rs.getTimestamp(1).toLocalDateTime());
+    }
+
+    /**
+     * Создаёт секцию [from, to) и переносит в неё строки этого времени из секции по умолчанию.
+     * Таблица создаётся отдельно и присоединяется уже с данными: CREATE ... PARTITION OF не прошёл бы
+     * проверку секции по умолчанию. Перенесённые строки уже учтены в предагрегатах - вставка в ещё не
+     * присоединённую таблицу триггер measurement не вызывает.
+     * @return перенесено строк; -1 - не создана: диапазон пересекается с секцией или секции меняет другой экземпляр
+     */
+    @Transactional
+    public long createPartition(String name, LocalDateTime from, LocalDateTime to, Duration lockTimeout) {
+        if (!lock(lockTimeout) || findPartitions().stream().anyMatch(p -> p.overlaps(from, to))) {
+            return -1;
+        }
+
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+        String table = quote(name);
+        jdbcTemplate.update("CREATE TABLE " + table + " (LIKE measurement INCLUDING DEFAULTS INCLUDING CONSTRAINTS)",
+                params);
+        long moved = jdbcTemplate.update("WITH moved AS (DELETE FROM " + DEFAULT_PARTITION +
+                " WHERE measurement_date_time >= :from AND measurement_date_time < :to RETURNING *) " +
+                "INSERT INTO " + table + " SELECT * FROM moved", params);
+        // Границы в DDL параметрами не передаются; значения - наши LocalDateTime, не ввод клиента
+        jdbcTemplate.update("ALTER TABLE measurement ATTACH PARTITION " + table +
+                " FOR VALUES FROM ('" + Timestamp.valueOf(from) + "') TO ('" + Timestamp.valueOf(to) + "')", params);
+        return moved;
+    }
+
+    /**
+     * Удаляет (drop = true) или отсоединяет секцию.
+     * @return false - секции уже нет или секции меняет другой экземпляр
+     */
+    @Transactional
+    public boolean removePartition(String name, boolean drop, Duration lockTimeout) {
+        if (!lock(lockTimeout) || findPartitions().stream().noneMatch(p -> p.name().equals(name))) {
+            return false;
+        }
+        jdbcTemplate.update(drop
+                ? "DROP TABLE " + quote(name)
+                : "ALTER TABLE measurement DETACH PARTITION " + quote(name), new MapSqlParameterSource());
+        return true;
+    }
+
+    // Строки секции по умолчанию старше срока хранения: своих секций для них уже не будет
+    @Transactional
+    public long deleteFromDefaultPartition(LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE measurement_date_time < :before",
+                new MapSqlParameterSource("before", Timestamp.valueOf(before)));
+    }
+
+    // Ключи идемпотентности удалённых по сроку хранения измерений: повтор такого ключа уже нечем отсечь
+    @Transactional
+    public long deleteIdempotencyKeysBefore(LocalDateTime before) {
+        return jdbcTemplate.update("DELETE FROM measurement_idempotency WHERE measurement_date_time < :before",
+                new MapSqlParameterSource("before", Timestamp.valueOf(before)));
+    }
+
+    // lock_timeout - до конца транзакции: DDL ждёт запросы к measurement, а запись за ним ждала бы его
+    private boolean lock(Duration lockTimeout) {
+        Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(:key)",
+                new MapSqlParameterSource("key", PARTITION_LOCK_KEY), Boolean.class);
+        if (Boolean.TRUE.equals(locked)) {
+            jdbcTemplate.queryForObject("SELECT set_config('lock_timeout', :timeout, true)",
+                    new MapSqlParameterSource("timeout", lockTimeout.toMillis() + "ms"), String.class);
+            return true;
+        }
+        return false;
+    }
+
+    private static String quote(String name) {
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+    public record Partition(String name, LocalDateTime from, LocalDateTime to) {
+        public boolean overlaps(LocalDateTime otherFrom, LocalDateTime otherTo) {
+            return from.isBefore(otherTo) && otherFrom.isBefore(to);
+        }
+    }
+}
@@ -2,17 +2,41 @@ package ru.xing.springcourse.petproject3rest.repositories;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
 import ru.xing.springcourse.petproject3rest.models.Measurement;
 
 import java.util.List;
+import java.util.Optional;
 
-public interface MeasurementRepository extends JpaRepository<Measurement, Integer> {
+public interface MeasurementRepository extends JpaRepository<Measurement, Integer>, MeasurementBatchRepository,
+        MeasurementSeekRepository {
     long countByRainingTrue();
 
     List<Measurement> findByRainingTrue();
 
-    List<Measurement> findBySensorNameOrderByMeasurementDateTimeDesc(String sensorName);
-
     Page<Measurement> findByRainingTrue(Pageable pageable);
+
+    // Чтение через проекции: SELECT только нужных колонок, сущности не создаются
+    String VIEW = "select new ru.xing.springcourse.petproject3rest.dto.MeasurementView(m.id, m.sensor.id, m.value, m.raining, m.measurementDateTime) from Measurement m";
+
+    @Query(value = VIEW, countQuery = "select count(m) from Measurement m")
+    Page<MeasurementView> findAllViews(Pageable pageable);
+
+    @Query(value = VIEW + " where m.raining = true",
+            countQuery = "select count(m) from Measurement m where m.raining = true")
+    Page<MeasurementView> findRainingViews(Pageable pageable);
+
+    // Slice: без COUNT, запрашивается на одну строку больше для hasNext
+    @Query(VIEW)
+    Slice<MeasurementView> findAllViewsBy(Pageable pageable);
+
+    @Query(VIEW + " where m.raining = true")
+    Slice<MeasurementView> findRainingViewsBy(Pageable pageable);
+
+    @Query(VIEW + " where m.id = :id")
+    Optional<MeasurementView> findViewById(@Param("id") int id);
 }
@@ -0,0 +1,152 @@
+package ru.xing.springcourse.petproject3rest.repositories;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Обслуживание таблиц предагрегатов measurement_rollup_*.
+ * Триггер на measurement пишет приращения по минутам в measurement_rollup_delta, здесь они пачками
+ * сливаются в агрегаты одним оператором (upsert), а диапазоны после дозагрузки пересчитываются из сырых данных.
+ * Слияние и пересчёт исключают друг друга через advisory-блокировку транзакции.
+ */
+@Repository
+@RequiredArgsConstructor
+public class MeasurementRollupRepository {
+    private static final long ROLLUP_LOCK_KEY = 0x726f6c6c7570L;
+
+    private static final String COLUMNS = "sensor, bucket_start, count, sum_value, min_value, max_value, rain_count";
+
+    // Приращения минуты сначала складываются между собой, затем поднимаются до часа и суток
+    private static final String MERGE_SQL =
+            "WITH batch AS (DELETE FROM measurement_rollup_delta " +
+                    "               WHERE id IN (SELECT id FROM measurement_rollup_delta ORDER BY id LIMIT :batchSize) " +
+                    "               RETURNING " + COLUMNS + "), " +
+                    "minute AS (SELECT sensor, bucket_start, sum(count) AS count, sum(sum_value) AS sum_value, " +
+                    "                  min(min_value) AS min_value, max(max_value) AS max_value, " +
+                    "                  sum(rain_count) AS rain_count " +
+                    "           FROM batch GROUP BY sensor, bucket_start)" +
+                    Arrays.stream(RollupResolution.values())
+                            .map(resolution -> ", " + resolution.name().toLowerCase() + "_upsert AS (" +
+                                    "INSERT INTO " + resolution.getTable() + " AS r (" + COLUMNS + ") " +
+                                    rollUp("minute", resolution) +
+                                    " ON CONFLICT (sensor, bucket_start) DO UPDATE SET " +
+                                    "count = r.count + EXCLUDED.count, " +
+                                    "sum_value = r.sum_value + EXCLUDED.sum_value, " +
+                                    "min_value = LEAST(r.min_value, EXCLUDED.min_value), " +
+                                    "max_value = GREATEST(r.max_value, EXCLUDED.max_value), " +
+                                    "rain_count = r.rain_count + EXCLUDED.rain_count)")
+                            .collect(Collectors.joining()) +
+                    " SELECT count(*) FROM batch";
+
+    // Приращения диапазона удаляются тем же оператором, что читает сырые строки: один снимок,
+    // каждое измерение попадает либо в пересчёт, либо в ещё не слитое приращение
+    private static final String REBUILD_SQL =
+            "WITH pending AS (DELETE FROM measurement_rollup_delta " +
+                    "                 WHERE bucket_start >= :from AND bucket_start < :to), " +
+                    "minute AS (SELECT sensor, date_trunc('minute', measurement_date_time) AS bucket_start, " +
+                    "                  count(*) AS count, sum(value) AS sum_value, min(value) AS min_value, " +
+                    "                  max(value) AS max_value, count(*) FILTER (WHERE raining) AS rain_count " +
+                    "           FROM measurement " +
+                    "           WHERE measurement_date_time >= :from AND measurement_date_time < :to " +
+                    "             AND sensor IS NOT NULL " +
+                    "           GROUP BY 1, 2)" +
+                    Arrays.stream(RollupResolution.values())
+                            .map(resolution -> ", " + resolution.name().toLowerCase() + "_insert AS (" +
+                                    "INSERT INTO " + resolution.getTable() + " (" + COLUMNS + ") " +
+                                    rollUp("minute", resolution) + ")")
+                            .collect(Collectors.joining()) +
+                    " SELECT coalesce(sum(count), 0) FROM minute";
+
+    // Слитые суточные агрегаты плюс ещё не слитые приращения - все записанные измерения
+    private static final String RAINING_PER_SENSOR_SQL =
+            "SELECT sensor, sum(rain_count) " +
+                    "FROM (SELECT sensor, rain_count FROM measurement_rollup_day " +
+                    "      UNION ALL " +
+                    "      SELECT sensor, rain_count FROM measurement_rollup_delta) r " +
+                    "GROUP BY sensor";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    private static String rollUp(String source, RollupResolution resolution) {
+        return "SELECT sensor, date_trunc('" + resolution.getUnit() + "', bucket_start), sum(count), " +
+                "sum(sum_value), min(min_value), max(max_value), sum(rain_count) " +
+                "FROM " + source + " GROUP BY 1, 2 ORDER BY 1, 2";
+    }
+
+    /**
+     * Сливает до batchSize самых старых приращений во все таблицы агрегатов.
+     * @return сколько приращений слито; 0 - нечего сливать или идёт пересчёт
+     */
+    @Transactional
+    public int mergeDeltas(int batchSize) {
+        Boolean locked = jdbcTemplate.queryForObject("SELECT pg_try_advisory_xact_lock(:key)",
+                new MapSqlParameterSource("key", ROLLUP_LOCK_KEY), Boolean.class);
+        if (!Boolean.TRUE.equals(locked)) {
+            return 0;
+        }
+        Long merged = jdbcTemplate.queryForObject(MERGE_SQL,
+                new MapSqlParameterSource("batchSize", batchSize), Long.class);
+        return merged == null ? 0 : merged.intValue();
+    }
+
+    /**
+     * Пересчитывает агрегаты [from, to) из measurement. Границы должны быть выровнены по суткам,
+     * чтобы диапазон состоял из целых строк всех трёх таблиц.
+     * @return сколько измерений вошло в пересчёт
+     */
+    @Transactional
+    public long rebuild(LocalDateTime from, LocalDateTime to) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("key", ROLLUP_LOCK_KEY)
+                .addValue("from", Timestamp.valueOf(from))
+                .addValue("to", Timestamp.valueOf(to));
+
+        // Ждём текущее слияние: после блокировки строки агрегатов в диапазоне меняем только мы
+        jdbcTemplate.queryForObject("SELECT 1 FROM pg_advisory_xact_lock(:key)", params, Integer.class);
+        for (RollupResolution resolution : RollupResolution.values()) {
+            jdbcTemplate.update("DELETE FROM " + resolution.getTable()
+                    + " WHERE bucket_start >= :from AND bucket_start < :to", params);
+        }
+        Long rows = jdbcTemplate.queryForObject(REBUILD_SQL, params, Long.class);
+        return rows == null ? 0 : rows;
+    }
+
+    /**
+     * Удаляет агрегаты и приращения до before - после удаления сырых строк этого времени (срок хранения).
+     * before должен быть выровнен по суткам.
+     * @return сколько строк агрегатов удалено
+     */
+    @Transactional
+    public long deleteBefore(LocalDateTime before) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("key", ROLLUP_LOCK_KEY)
+                .addValue("before", Timestamp.valueOf(before));
+
+        jdbcTemplate.queryForObject("SELECT 1 FROM pg_advisory_xact_lock(:key)", params, Integer.class);
+        long rows = jdbcTemplate.update("DELETE FROM measurement_rollup_delta WHERE bucket_start < :before", params);
+        for (RollupResolution resolution : RollupResolution.values()) {
+            rows += jdbcTemplate.update("DELETE FROM " + resolution.getTable() + " WHERE bucket_start < :before",
+                    params);
+        }
+        return rows;
+    }
+
+    // Число дождевых измерений по сенсорам: строк агрегатов на порядки меньше, чем измерений
+    public Map<Integer, Long> countRainingPerSensor() {
+        Map<Integer, Long> counts = new HashMap<>();
+        jdbcTemplate.query(RAINING_PER_SENSOR_SQL, rs -> {
+            counts.put(rs.getInt(1), rs.getLong(2));
+        });
+        return counts;
+    }
+}
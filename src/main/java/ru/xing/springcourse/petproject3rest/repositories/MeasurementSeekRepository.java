@@ -0,0 +1,18 @@
+package ru.xing.springcourse.petproject3rest.repositories;
+
+import org.springframework.data.domain.Sort;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
+import ru.xing.springcourse.petproject3rest.util.MeasurementCursor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public interface MeasurementSeekRepository {
+    // Keyset-выборка: строки строго после after (null - первая страница) в порядке (ключ, id)
+    List<MeasurementView> seek(MeasurementCursor.SortKey sort, Sort.Direction direction,
+                           MeasurementCursor after, boolean rainingOnly, int limit);
+
+    // Keyset по (measurement_date_time, id) внутри окна [from, to) одного сенсора; from/to могут быть null
+    List<MeasurementView> seekBySensor(int sensorId, LocalDateTime from, LocalDateTime to, Sort.Direction direction,
+                                       MeasurementCursor after, int limit);
+}
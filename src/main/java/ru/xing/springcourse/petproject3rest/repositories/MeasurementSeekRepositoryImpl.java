@@ -0,0 +1,95 @@
+package ru.xing.springcourse.petproject3rest.repositories;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.data.domain.Sort;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
+import ru.xing.springcourse.petproject3rest.util.MeasurementCursor;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+public class MeasurementSeekRepositoryImpl implements MeasurementSeekRepository {
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    // Запрос собирается только из фиксированных кусков, значения идут параметрами.
+    // Сравнение кортежей (a, id) < (:a, :id) PostgreSQL отдаёт индексу одним range scan,
+    // поэтому цена страницы не зависит от того, насколько далеко она от начала.
+    // По кортежу секции не отсекаются, поэтому рядом то же условие на одно время (timeBound)
+    @Override
+    public List<MeasurementView> seek(MeasurementCursor.SortKey sort, Sort.Direction direction,
+                                  MeasurementCursor after, boolean rainingOnly, int limit) {
+        boolean byTime = sort == MeasurementCursor.SortKey.MEASUREMENT_DATE_TIME;
+        String op = direction.isAscending() ? ">" : "<";
+        String order = direction.isAscending() ? "asc" : "desc";
+
+        StringBuilder jpql = new StringBuilder(MeasurementRepository.VIEW + " where 1 = 1");
+        if (rainingOnly) {
+            jpql.append(" and m.raining = true");
+        }
+        if (after != null) {
+            jpql.append(byTime
+                    ? timeBound(op) + " and (m.measurementDateTime, m.id) " + op + " (:measurementDateTime, :id)"
+                    : " and m.id " + op + " :id");
+        }
+        jpql.append(" order by ");
+        if (byTime) {
+            jpql.append("m.measurementDateTime ").append(order).append(", ");
+        }
+        jpql.append("m.id ").append(order);
+
+        TypedQuery<MeasurementView> query = entityManager.createQuery(jpql.toString(), MeasurementView.class)
+                .setMaxResults(limit);
+        if (after != null) {
+            query.setParameter("id", after.id());
+            if (byTime) {
+                query.setParameter("measurementDateTime", after.measurementDateTime());
+            }
+        }
+        return query.getResultList();
+    }
+
+    // Следствие курсора, понятное планировщику: секции measurement целиком до (после) курсора не читаются
+    private static String timeBound(String op) {
+        return " and m.measurementDateTime " + op + "= :measurementDateTime";
+    }
+
+    // sensor = ? впереди ключа индекса (sensor, measurement_date_time, id) INCLUDE (value, raining): окно и позиция курсора
+    // сужают один и тот же диапазон индекса, сортировка не нужна
+    @Override
+    public List<MeasurementView> seekBySensor(int sensorId, LocalDateTime from, LocalDateTime to,
+                                              Sort.Direction direction, MeasurementCursor after, int limit) {
+        String op = direction.isAscending() ? ">" : "<";
+        String order = direction.isAscending() ? "asc" : "desc";
+
+        StringBuilder jpql = new StringBuilder(MeasurementRepository.VIEW + " where m.sensor.id = :sensorId");
+        if (from != null) {
+            jpql.append(" and m.measurementDateTime >= :from");
+        }
+        if (to != null) {
+            jpql.append(" and m.measurementDateTime < :to");
+        }
+        if (after != null) {
+            jpql.append(timeBound(op))
+                    .append(" and (m.measurementDateTime, m.id) ").append(op).append(" (:measurementDateTime, :id)");
+        }
+        jpql.append(" order by m.measurementDateTime ").append(order).append(", m.id ").append(order);
+
+        TypedQuery<MeasurementView> query = entityManager.createQuery(jpql.toString(), MeasurementView.class)
+                .setParameter("sensorId", sensorId)
+                .setMaxResults(limit);
+        if (from != null) {
+            query.setParameter("from", from);
+        }
+        if (to != null) {
+            query.setParameter("to", to);
+        }
+        if (after != null) {
+            query.setParameter("measurementDateTime", after.measurementDateTime());
+            query.setParameter("id", after.id());
+        }
+        return query.getResultList();
+    }
+}
@@ -0,0 +1,57 @@
+package ru.xing.springcourse.petproject3rest.repositories;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+// Таблицы предагрегатов (V4__measurement_rollups.sql), от самой крупной к самой мелкой
+public enum RollupResolution {
+    DAY("measurement_rollup_day", "day", Duration.ofDays(1)),
+    HOUR("measurement_rollup_hour", "hour", Duration.ofHours(1)),
+    MINUTE("measurement_rollup_minute", "minute", Duration.ofMinutes(1));
+
+    private final String table;
+    // Поле для date_trunc
+    private final String unit;
+    private final Duration width;
+
+    RollupResolution(String table, String unit, Duration width) {
+        this.table = table;
+        this.unit = unit;
+        this.width = width;
+    }
+
+    public String getTable() {
+        return table;
+    }
+
+    public String getUnit() {
+        return unit;
+    }
+
+    public Duration getWidth() {
+        return width;
+    }
+
+    // Самая крупная таблица, из которой интервалы bucket в окне [from, to) собираются целыми строками.
+    // Пусто - агрегат считается по сырым измерениям
+    public static Optional<RollupResolution> coarsestFor(Duration bucket, LocalDateTime from, LocalDateTime to) {
+        for (RollupResolution resolution : values()) {
+            if (resolution.divides(bucket) && resolution.isAligned(from) && resolution.isAligned(to)) {
+                return Optional.of(resolution);
+            }
+        }
+        return Optional.empty();
+    }
+
+    private boolean divides(Duration bucket) {
+        return bucket.getNano() == 0 && bucket.getSeconds() % width.getSeconds() == 0;
+    }
+
+    // Границы интервалов date_bin отсчитываются от того же начала, что и в MeasurementAggregateRepository
+    public boolean isAligned(LocalDateTime time) {
+        return time.getNano() == 0
+                && Duration.between(MeasurementAggregateRepository.BUCKET_ORIGIN, time).getSeconds()
+                % width.getSeconds() == 0;
+    }
+}
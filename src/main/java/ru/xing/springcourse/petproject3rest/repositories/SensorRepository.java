@@ -3,10 +3,14 @@ package ru.xing.springcourse.petproject3rest.repositories;
 import org.jetbrains.annotations.NotNull;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
-import org.springframework.data.jpa.repository.EntityGraph;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import ru.xing.springcourse.petproject3rest.dto.SensorView;
 import ru.xing.springcourse.petproject3rest.models.Sensor;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 public interface SensorRepository extends JpaRepository<Sensor, Integer> {
@@ -14,12 +18,15 @@ public interface SensorRepository extends JpaRepository<Sensor, Integer> {
 
     boolean existsByName(String name);
 
-    // Для пагинированного списка с измерениями
-    @EntityGraph(attributePaths = {"measurements"})
-    Page<Sensor> findAll(Pageable pageable);
+    // Один запрос на все сенсоры пакета
+    List<Sensor> findByNameIn(Collection<String> names);
 
-    // Для поиска по имени с измерениями
-    @EntityGraph(attributePaths = {"measurements"})
-    Optional<Sensor> findWithMeasurementsByName(String name);
+    // Списки через проекции: сенсоры без коллекции, измерения догружаются одним запросом
+    @Query(value = "select new ru.xing.springcourse.petproject3rest.dto.SensorView(s.id, s.name) from Sensor s",
+            countQuery = "select count(s) from Sensor s")
+    Page<SensorView> findAllViews(Pageable pageable);
+
+    @Query("select new ru.xing.springcourse.petproject3rest.dto.SensorView(s.id, s.name) from Sensor s")
+    Slice<SensorView> findAllViewsBy(Pageable pageable);
 
 }
@@ -0,0 +1,51 @@
+package ru.xing.springcourse.petproject3rest.repositories;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Оценки числа строк из статистики планировщика PostgreSQL - вместо COUNT(*), который читает всю таблицу.
+ * Точность - на момент последнего ANALYZE/autovacuum.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TableStatisticsRepository {
+    public static final String MEASUREMENT_TABLE = "measurement";
+    public static final String SENSOR_TABLE = "sensor";
+    public static final String RAINING_MEASUREMENTS_QUERY = "SELECT 1 FROM measurement WHERE raining";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ObjectMapper objectMapper;
+
+    // У секционированной таблицы (measurement) собственный reltuples обновляет только ручной ANALYZE -
+    // autovacuum анализирует лишь секции, поэтому складываем их. Ещё не анализированные секции (-1) считаем пустыми
+    private static final String RELTUPLES_SQL =
+            "SELECT CASE WHEN c.relkind <> 'p' THEN c.reltuples::bigint " +
+                    "            ELSE (SELECT CASE WHEN bool_and(l.reltuples < 0) THEN -1 " +
+                    "                              ELSE sum(greatest(l.reltuples, 0))::bigint END " +
+                    "                  FROM pg_partition_tree(c.oid) t JOIN pg_class l ON l.oid = t.relid " +
+                    "                  WHERE t.isleaf) END " +
+                    "FROM pg_class c WHERE c.oid = to_regclass(?)";
+
+    // pg_class.reltuples, а если таблицу ещё ни разу не анализировали (-1) - оценка планировщика
+    public long estimateTableRows(String table) {
+        Long reltuples = jdbcTemplate.queryForObject(RELTUPLES_SQL, Long.class, table);
+        if (reltuples != null && reltuples >= 0) {
+            return reltuples;
+        }
+        return estimateQueryRows("SELECT 1 FROM " + table);
+    }
+
+    // "Plan Rows" из EXPLAIN: подходит для запросов с условием. Только для SQL-констант, не для ввода клиента
+    public long estimateQueryRows(String sql) {
+        String plan = jdbcTemplate.queryForObject("EXPLAIN (FORMAT JSON) " + sql, String.class);
+        try {
+            return objectMapper.readTree(plan).path(0).path("Plan").path("Plan Rows").asLong();
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unexpected EXPLAIN output: " + plan, e);
+        }
+    }
+}
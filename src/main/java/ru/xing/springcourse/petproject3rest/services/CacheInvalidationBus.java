@@ -0,0 +1,183 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+import ru.xing.springcourse.petproject3rest.config.SharedCacheProperties;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Инвалидация между экземплярами через Redis pub/sub.
+ * Своя запись (после коммита): новое поколение сенсоров в L2 и сообщение с их id; получатель забирает
+ * последние показания этих сенсоров из L2 в свой снимок и сбрасывает L1 и версии ETag (DataVersions.applyRemote).
+ * Pub/sub доставляет не больше одного раза: то, что не удалось отправить при недоступном Redis, копится
+ * и отправляется после восстановления, а сам экземпляр тогда сбрасывает всё локальное - пропущенные
+ * за это время чужие сообщения уже не придут. Пока Redis или подписка недоступны, DataVersions не отвечает 304,
+ * а сообщения, потерянные при переподключении подписчика, перестают влиять на ETag через validatorTtl.
+ * Сообщение (big-endian): id экземпляра (2 x int64), флаги (1 байт, бит 0 - изменилось всё), число сенсоров (int32), их id.
+ */
+@Component
+@ConditionalOnProperty(value = "shared-cache.enabled", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class CacheInvalidationBus implements DataVersions.Listener, MessageListener {
+    private static final int FLAG_ALL = 1;
+
+    private final SharedCache sharedCache;
+    private final DataVersions dataVersions;
+    private final LatestMeasurementSnapshot latestMeasurementSnapshot;
+    private final SensorRegistry sensorRegistry;
+    private final RedisMessageListenerContainer listenerContainer;
+    private final UUID nodeId = UUID.randomUUID();
+    // Изменения, о которых Redis ещё не узнал
+    private final Set<Integer> pending = ConcurrentHashMap.newKeySet();
+    private volatile boolean pendingAll;
+
+    private final Counter sent;
+    private final Counter received;
+
+    public CacheInvalidationBus(SharedCache sharedCache, DataVersions dataVersions,
+                                LatestMeasurementSnapshot latestMeasurementSnapshot, SensorRegistry sensorRegistry,
+                                RedisMessageListenerContainer listenerContainer, SharedCacheProperties properties,
+                                MeterRegistry meterRegistry) {
+        this.sharedCache = sharedCache;
+        this.dataVersions = dataVersions;
+        this.latestMeasurementSnapshot = latestMeasurementSnapshot;
+        this.sensorRegistry = sensorRegistry;
+        this.listenerContainer = listenerContainer;
+
+        this.sent = Counter.builder("cache.invalidation.messages").tag("direction", "sent").register(meterRegistry);
+        this.received = Counter.builder("cache.invalidation.messages").tag("direction", "received")
+                .register(meterRegistry);
+
+        listenerContainer.addMessageListener(this, new ChannelTopic(sharedCache.channel()));
+        dataVersions.addListener(this);
+        dataVersions.limitValidators(properties.getValidatorTtl(),
+                () -> sharedCache.isAvailable() && listenerContainer.isRunning());
+        sharedCache.addRecoveryListener(this::recover);
+    }
+
+    @Override
+    public void sensorsChanged(Collection<Integer> sensorIds, boolean remote) {
+        if (remote) {
+            return;
+        }
+
+        if (sharedCache.invalidate(sensorIds) && sharedCache.publish(encode(false, sensorIds))) {
+            sent.increment();
+        } else {
+            pending.addAll(sensorIds);
+        }
+    }
+
+    @Override
+    public void allChanged(boolean remote) {
+        if (remote) {
+            return;
+        }
+
+        if (sharedCache.invalidateAll() && sharedCache.publish(encode(true, List.of()))) {
+            sent.increment();
+        } else {
+            pendingAll = true;
+        }
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        ByteBuffer buffer = ByteBuffer.wrap(message.getBody());
+        List<Integer> sensorIds;
+        boolean all;
+        try {
+            long mostBits = buffer.getLong();
+            long leastBits = buffer.getLong();
+            // Своё же сообщение: у себя всё уже сброшено
+            if (mostBits == nodeId.getMostSignificantBits() && leastBits == nodeId.getLeastSignificantBits()) {
+                return;
+            }
+            all = (buffer.get() & FLAG_ALL) != 0;
+            int count = buffer.getInt();
+            sensorIds = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                sensorIds.add(buffer.getInt());
+            }
+        } catch (BufferUnderflowException e) {
+            log.warn("Ignoring malformed cache invalidation message of {} bytes", message.getBody().length);
+            return;
+        }
+
+        received.increment();
+        if (all) {
+            latestMeasurementSnapshot.offerAll(sharedCache.latest());
+            dataVersions.touchAllRemote();
+        } else {
+            latestMeasurementSnapshot.offerAll(sharedCache.latest(sensorIds));
+            dataVersions.applyRemote(sensorIds);
+        }
+    }
+
+    // Redis снова доступен (или доступен впервые после старта)
+    void recover() {
+        // Сначала подписка: сообщения, отправленные после чтения latest() ниже, уже дойдут
+        if (!listenerContainer.isRunning()) {
+            try {
+                listenerContainer.start();
+            } catch (RuntimeException e) {
+                log.warn("Cannot subscribe to cache invalidations, will retry: {}", e.getMessage());
+            }
+        }
+
+        boolean all = pendingAll;
+        pendingAll = false;
+        List<Integer> sensorIds = new ArrayList<>(pending);
+        pending.removeAll(sensorIds);
+
+        Map<Integer, MeasurementDTO> readings = new HashMap<>();
+        for (Integer sensorId : sensorIds) {
+            sensorRegistry.findName(sensorId)
+                    .flatMap(latestMeasurementSnapshot::current)
+                    .map(SensorMeasurementDTO::getMeasurement)
+                    .ifPresent(reading -> readings.put(sensorId, reading));
+        }
+        sharedCache.offerLatest(readings);
+        if (all) {
+            allChanged(false);
+        } else if (!sensorIds.isEmpty()) {
+            sensorsChanged(sensorIds, false);
+        }
+        if (all || !sensorIds.isEmpty()) {
+            log.info("Replayed cache invalidations made while Redis was unavailable: {}",
+                    all ? "all sensors" : sensorIds.size() + " sensors");
+        }
+
+        latestMeasurementSnapshot.offerAll(sharedCache.latest());
+        dataVersions.touchAllRemote();
+    }
+
+    private byte[] encode(boolean all, Collection<Integer> sensorIds) {
+        ByteBuffer buffer = ByteBuffer.allocate(21 + 4 * sensorIds.size());
+        buffer.putLong(nodeId.getMostSignificantBits());
+        buffer.putLong(nodeId.getLeastSignificantBits());
+        buffer.put((byte) (all ? FLAG_ALL : 0));
+        buffer.putInt(sensorIds.size());
+        sensorIds.forEach(buffer::putInt);
+        return buffer.array();
+    }
+}
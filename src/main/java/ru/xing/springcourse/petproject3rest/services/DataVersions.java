@@ -0,0 +1,187 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Версии данных для условных GET (ETag / Last-Modified): общая и по каждому сенсору.
+ * Запись измерений и регистрация сенсора увеличивают версии после коммита, ETag строится из версии
+ * без запроса в БД - повторный опрос с тем же If-None-Match получает 304 до обращения к базе.
+ * Версии живут в памяти экземпляра; в ETag входит метка запуска, поэтому после рестарта
+ * или на другом экземпляре ETag не совпадёт и клиент получит полный ответ.
+ * Те же изменения получают подписчики (Listener) - локальные кэши сбрасывают по ним свои записи.
+ * Изменения с других экземпляров приходят через applyRemote/touchAllRemote (CacheInvalidationBus).
+ * Pub/sub доставляет не больше одного раза, поэтому с шиной (limitValidators) версии могут отставать от чужих записей:
+ * пока шина не доставляет сообщения, ETag не выдаётся и 304 нет, а в ETag и Last-Modified входит
+ * интервал времени - пропущенное сообщение держит устаревший ETag не дольше validatorTtl.
+ */
+@Component
+public class DataVersions {
+    private final SensorRegistry sensorRegistry;
+    private final Clock clock;
+    private final String epoch;
+    private final Version initial;
+    private final AtomicReference<Version> global;
+    private final Map<Integer, Version> perSensor = new ConcurrentHashMap<>();
+    // Меняет и общие, и посенсорные ETag: массовые изменения (пересчёт агрегатов)
+    private final AtomicReference<Version> generation;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    // null - версии меняет только этот экземпляр, ETag действует бессрочно
+    private volatile Limit limit;
+
+    @Autowired
+    public DataVersions(SensorRegistry sensorRegistry) {
+        this(sensorRegistry, Clock.systemUTC());
+    }
+
+    public DataVersions(SensorRegistry sensorRegistry, Clock clock) {
+        this.sensorRegistry = sensorRegistry;
+        this.clock = clock;
+        this.epoch = Long.toString(clock.millis(), 36);
+        this.initial = new Version(0, clock.millis());
+        this.global = new AtomicReference<>(initial);
+        this.generation = new AtomicReference<>(initial);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    // delivering - доходят ли сейчас изменения с других экземпляров
+    public void limitValidators(Duration validatorTtl, BooleanSupplier delivering) {
+        this.limit = new Limit(validatorTtl.toMillis(), delivering);
+    }
+
+    // Внутри транзакции версии меняются только после коммита: иначе клиент успел бы
+    // закэшировать старые данные под новым ETag
+    public void record(Collection<Measurement> measurements) {
+        Set<Integer> sensorIds = new HashSet<>();
+        measurements.forEach(measurement -> sensorIds.add(measurement.getSensor().getId()));
+        touch(sensorIds);
+    }
+
+    public void touch(Collection<Integer> sensorIds) {
+        if (sensorIds.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            Set<Integer> ids = Set.copyOf(sensorIds);
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(ids, false);
+                }
+            });
+        } else {
+            apply(sensorIds, false);
+        }
+    }
+
+    public void touchAll() {
+        bumpAll(false);
+    }
+
+    // Запись уже закоммичена другим экземпляром
+    public void applyRemote(Collection<Integer> sensorIds) {
+        apply(sensorIds, true);
+    }
+
+    public void touchAllRemote() {
+        bumpAll(true);
+    }
+
+    private void apply(Collection<Integer> sensorIds, boolean remote) {
+        for (Integer sensorId : sensorIds) {
+            perSensor.compute(sensorId, (id, version) -> (version == null ? initial : version).next(clock.millis()));
+        }
+        global.updateAndGet(version -> version.next(clock.millis()));
+        listeners.forEach(listener -> listener.sensorsChanged(sensorIds, remote));
+    }
+
+    private void bumpAll(boolean remote) {
+        generation.updateAndGet(version -> version.next(clock.millis()));
+        global.updateAndGet(version -> version.next(clock.millis()));
+        listeners.forEach(listener -> listener.allChanged(remote));
+    }
+
+    // Списки сенсоров и измерений
+    public Validator global() {
+        Version version = global.get();
+        return validator(Long.toString(version.counter()), version.lastModified());
+    }
+
+    // Карточка и измерения одного сенсора; пусто, если сенсора нет (ответ будет ошибкой, без ETag)
+    public Optional<Validator> sensor(String name) {
+        return sensorRegistry.findId(name).map(id -> {
+            Version version = perSensor.getOrDefault(id, initial);
+            Version bulk = generation.get();
+            return validator(bulk.counter() + "-" + id + "-" + version.counter(),
+                    Math.max(version.lastModified(), bulk.lastModified()));
+        });
+    }
+
+    private Validator validator(String version, long lastModified) {
+        Limit current = limit;
+        if (current == null) {
+            return new Validator("W/\"" + epoch + "-" + version + "\"", lastModified, true);
+        }
+
+        long now = clock.millis();
+        long interval = Math.floorDiv(now, current.ttlMillis());
+        return new Validator("W/\"" + epoch + "-" + Long.toString(interval, 36) + "-" + version + "\"",
+                Math.max(lastModified, interval * current.ttlMillis()), current.delivering().getAsBoolean());
+    }
+
+    // Вызывается после коммита, в потоке, который писал; remote - изменение пришло с другого экземпляра
+    public interface Listener {
+        void sensorsChanged(Collection<Integer> sensorIds, boolean remote);
+
+        // Массовое изменение: пересчёт агрегатов, удаление старых данных
+        void allChanged(boolean remote);
+    }
+
+    private record Version(long counter, long lastModified) {
+        Version next(long now) {
+            return new Version(counter + 1, Math.max(lastModified, now));
+        }
+    }
+
+    private record Limit(long ttlMillis, BooleanSupplier delivering) {
+    }
+
+    // lastModified - миллисекунды epoch, как ждёт WebRequest.checkNotModified;
+    // current = false - версии могли отстать от чужих записей, сравнивать по ним нельзя
+    public record Validator(String etag, long lastModified, boolean current) {
+
+        // ETag и Last-Modified выставляются и для полного ответа; no-cache - кэш клиента
+        // хранит ответ, но перед использованием перепроверяет его этим же запросом
+        public boolean checkNotModified(ServletWebRequest request) {
+            HttpServletResponse response = request.getResponse();
+            if (response != null) {
+                response.setHeader(HttpHeaders.CACHE_CONTROL, CacheControl.noCache().getHeaderValue());
+            }
+            return current && request.checkNotModified(etag, lastModified);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Окно недавно записанных ключей идемпотентности (sensor id + ключ клиента).
+ * Ограничено по размеру и времени жизни, поглощает повторы без запроса в БД.
+ * Всё, что выпало из окна (или пришло на другой экземпляр), отсекает первичный ключ measurement_idempotency
+ * (sensor, idempotency_key) через ON CONFLICT DO NOTHING.
+ */
+@Component
+public class IdempotencyWindow {
+    private final Map<String, Long> expirations = new ConcurrentHashMap<>();
+    private final Queue<String> order = new ConcurrentLinkedQueue<>();
+    private final int maxSize;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final Counter duplicates;
+
+    @Autowired
+    public IdempotencyWindow(MeterRegistry meterRegistry,
+                             @Value("${measurement.idempotency.window-size:100000}") int maxSize,
+                             @Value("${measurement.idempotency.ttl:10m}") Duration ttl) {
+        this(meterRegistry, maxSize, ttl, Clock.systemUTC());
+    }
+
+    public IdempotencyWindow(MeterRegistry meterRegistry, int maxSize, Duration ttl, Clock clock) {
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.clock = clock;
+
+        this.duplicates = Counter.builder("measurement.idempotency.duplicates")
+                .description("Retried measurements absorbed by the in-memory window")
+                .register(meterRegistry);
+        Gauge.builder("measurement.idempotency.window.size", expirations, Map::size)
+                .register(meterRegistry);
+    }
+
+    // null - у измерения нет ключа, дедупликация не нужна
+    public static String key(int sensorId, String idempotencyKey) {
+        return idempotencyKey == null ? null : sensorId + ":" + idempotencyKey;
+    }
+
+    public boolean isDuplicate(String key) {
+        if (key == null) {
+            return false;
+        }
+
+        Long expiresAt = expirations.get(key);
+        if (expiresAt != null && expiresAt > clock.millis()) {
+            duplicates.increment();
+            return true;
+        }
+        return false;
+    }
+
+    public void remember(String key) {
+        if (key == null) {
+            return;
+        }
+
+        if (expirations.put(key, clock.millis() + ttlMillis) == null) {
+            order.add(key);
+        }
+        evict();
+    }
+
+    // Запись с ключом не состоялась (например, упал сброс write-behind): повтор клиента должен записаться.
+    // Из очереди тоже: иначе старая позиция ключа вытеснила бы его повторную запись раньше срока
+    public void forget(String key) {
+        if (key != null) {
+            order.remove(key);
+            expirations.remove(key);
+        }
+    }
+
+    // Внутри транзакции запоминаем только после коммита: откатившаяся запись не должна глушить повтор
+    public void rememberAfterCommit(Collection<String> keys) {
+        List<String> present = keys.stream().filter(key -> key != null).toList();
+        if (present.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    present.forEach(IdempotencyWindow.this::remember);
+                }
+            });
+        } else {
+            present.forEach(this::remember);
+        }
+    }
+
+    public int size() {
+        return expirations.size();
+    }
+
+    private void evict() {
+        long now = clock.millis();
+        String oldest;
+        while ((oldest = order.peek()) != null) {
+            Long expiresAt = expirations.get(oldest);
+            if (expirations.size() <= maxSize && expiresAt != null && expiresAt > now) {
+                break;
+            }
+            if (order.remove(oldest)) {
+                expirations.remove(oldest);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementAggregateRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Последнее измерение каждого сенсора в памяти - ответ на "что сенсоры показывают сейчас" без запроса в БД.
+ * ConcurrentSkipListMap: чтение и замена без блокировок (CAS), обход сразу в порядке имён.
+ * Прогревается из БД при старте, дальше обновляется каждым успешным путём записи; при гонке
+ * побеждает более позднее measurementDateTime, поэтому запоздавшие и исторические данные снимок не откатывают.
+ * Свои записи уходят и в общий хэш L2 (SharedCache), откуда снимки других экземпляров
+ * забирают их по сообщению CacheInvalidationBus.
+ */
+@Component
+@Slf4j
+public class LatestMeasurementSnapshot {
+    private final MeasurementAggregateRepository measurementAggregateRepository;
+    private final SensorRegistry sensorRegistry;
+    private final SharedCache sharedCache;
+    private final ConcurrentNavigableMap<String, SensorMeasurementDTO> latest = new ConcurrentSkipListMap<>();
+
+    public LatestMeasurementSnapshot(MeasurementAggregateRepository measurementAggregateRepository,
+                                     SensorRegistry sensorRegistry,
+                                     SharedCache sharedCache,
+                                     MeterRegistry meterRegistry) {
+        this.measurementAggregateRepository = measurementAggregateRepository;
+        this.sensorRegistry = sensorRegistry;
+        this.sharedCache = sharedCache;
+
+        Gauge.builder("measurement.snapshot.sensors", latest, Map::size)
+                .description("Sensors in the latest-measurement snapshot")
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        List<SensorMeasurementDTO> rows = measurementAggregateRepository.findLatestPerSensor();
+        rows.forEach(row -> offer(row.getSensorName(), row.getMeasurement()));
+        log.info("Latest measurement snapshot warmed up with {} sensors", rows.size());
+    }
+
+    // Внутри транзакции снимок обновляется только после коммита: откаченные измерения в него не попадают
+    public void record(Collection<Measurement> measurements) {
+        Map<Integer, Measurement> newest = new HashMap<>();
+        for (Measurement measurement : measurements) {
+            newest.merge(measurement.getSensor().getId(), measurement, (current, candidate) ->
+                    candidate.getMeasurementDateTime().isBefore(current.getMeasurementDateTime()) ? current : candidate);
+        }
+        if (newest.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    apply(newest.values());
+                }
+            });
+        } else {
+            apply(newest.values());
+        }
+    }
+
+    private void apply(Collection<Measurement> measurements) {
+        Map<Integer, MeasurementDTO> readings = new HashMap<>();
+        for (Measurement measurement : measurements) {
+            MeasurementDTO reading = new MeasurementDTO(measurement.getValue(), measurement.isRaining(),
+                    measurement.getMeasurementDateTime(), null);
+            sensorRegistry.findName(measurement.getSensor().getId()).ifPresent(name -> offer(name, reading));
+            readings.put(measurement.getSensor().getId(), reading);
+        }
+        sharedCache.offerLatest(readings);
+    }
+
+    // Показания из L2 по id сенсора - записанные другими экземплярами
+    public void offerAll(Map<Integer, MeasurementDTO> readings) {
+        readings.forEach((sensorId, reading) ->
+                sensorRegistry.findName(sensorId).ifPresent(name -> offer(name, reading)));
+    }
+
+    // Уже записанное измерение; заменяет текущее, только если оно не новее
+    public void offer(String sensorName, MeasurementDTO measurement) {
+        latest.merge(sensorName, new SensorMeasurementDTO(sensorName, measurement), (current, candidate) ->
+                candidate.getMeasurement().getMeasurementDateTime()
+                        .isBefore(current.getMeasurement().getMeasurementDateTime()) ? current : candidate);
+    }
+
+    // Все сенсоры по имени
+    public List<SensorMeasurementDTO> current() {
+        return new ArrayList<>(latest.values());
+    }
+
+    public Optional<SensorMeasurementDTO> current(String sensorName) {
+        return Optional.ofNullable(latest.get(sensorName));
+    }
+}
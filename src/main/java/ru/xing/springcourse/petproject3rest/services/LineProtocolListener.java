@@ -0,0 +1,419 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
+import ru.xing.springcourse.petproject3rest.util.LineProtocolParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TCP-приёмник измерений в обход HTTP: строки "sensor,value,raining[,timestamp]\n".
+ * Один поток на неблокирующем Selector читает и разбирает строки, второй (MeasurementGroupWriter) пишет их
+ * группами тем же путём, что и write-behind буфер.
+ * Аутентификации нет - слушать стоит только внутреннюю сеть (ingest.line-protocol.bind-address).
+ * Если очередь записи заполнена, соединение ведёт себя по ingest.line-protocol.backpressure:
+ * PAUSE - перестаём читать сокет (отправитель упирается в TCP-окно), DROP - строка теряется,
+ * DISCONNECT - соединение закрывается.
+ */
+@Component
+@Slf4j
+public class LineProtocolListener implements SmartLifecycle {
+    // Останавливаемся после веб-сервера, но раньше write-behind буфера
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 2048;
+    private static final long STOP_TIMEOUT_MS = 30_000;
+    private static final long SELECT_TIMEOUT_MS = 50;
+
+    public enum BackpressurePolicy {
+        PAUSE, DROP, DISCONNECT
+    }
+
+    private final SensorRegistry sensorRegistry;
+    private final SensorRateLimiter rateLimiter;
+    private final boolean enabled;
+    private final String bindAddress;
+    private final int port;
+    private final int readBufferSize;
+    private final BackpressurePolicy backpressure;
+    private final MeasurementGroupWriter writer;
+
+    // Доступны только потоку селектора
+    private final Map<String, Sensor> sensors = new HashMap<>();
+    private final Set<SelectionKey> paused = new HashSet<>();
+
+    private final AtomicInteger connections = new AtomicInteger();
+    private final Counter accepted;
+    private final Counter rejected;
+    private final Counter rateLimited;
+    private final Counter dropped;
+    private final Counter failed;
+    private final Counter bytes;
+    private final Counter connectionsOpened;
+
+    private volatile boolean running;
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+
+    public LineProtocolListener(SensorRegistry sensorRegistry,
+                                SensorRateLimiter rateLimiter,
+                                MeasurementRepository measurementRepository,
+                                LatestMeasurementSnapshot latestMeasurementSnapshot,
+                                RainCounters rainCounters,
+                                DataVersions dataVersions,
+                                MeterRegistry meterRegistry,
+                                @Value("${ingest.line-protocol.enabled:false}") boolean enabled,
+                                @Value("${ingest.line-protocol.bind-address:127.0.0.1}") String bindAddress,
+                                @Value("${ingest.line-protocol.port:8089}") int port,
+                                @Value("${ingest.line-protocol.read-buffer-size:16384}") int readBufferSize,
+                                @Value("${ingest.line-protocol.queue-capacity:50000}") int queueCapacity,
+                                @Value("${ingest.line-protocol.flush-size:1000}") int flushSize,
+                                @Value("${ingest.line-protocol.flush-interval-ms:200}") long flushIntervalMs,
+                                @Value("${ingest.line-protocol.backpressure:PAUSE}") BackpressurePolicy backpressure) {
+        this.sensorRegistry = sensorRegistry;
+        this.rateLimiter = rateLimiter;
+        this.enabled = enabled;
+        this.bindAddress = bindAddress;
+        this.port = port;
+        this.readBufferSize = readBufferSize;
+        this.backpressure = backpressure;
+
+        Gauge.builder("ingest.line_protocol.connections", connections, AtomicInteger::get)
+                .description("Open line protocol connections")
+                .register(meterRegistry);
+        this.connectionsOpened = Counter.builder("ingest.line_protocol.connections.opened")
+                .register(meterRegistry);
+        this.bytes = Counter.builder("ingest.line_protocol.bytes")
+                .description("Bytes read from line protocol connections")
+                .baseUnit("bytes")
+                .register(meterRegistry);
+        this.accepted = recordCounter(meterRegistry, "accepted");
+        this.rejected = recordCounter(meterRegistry, "rejected");
+        this.rateLimited = recordCounter(meterRegistry, "rate_limited");
+        this.dropped = recordCounter(meterRegistry, "dropped");
+        this.failed = recordCounter(meterRegistry, "failed");
+        this.writer = new MeasurementGroupWriter("line-protocol-writer", "ingest.line_protocol",
+                measurementRepository, latestMeasurementSnapshot, rainCounters, dataVersions, meterRegistry,
+                queueCapacity, flushSize, flushIntervalMs, group -> failed.increment(group.size()));
+    }
+
+    private static Counter recordCounter(MeterRegistry meterRegistry, String result) {
+        return Counter.builder("ingest.line_protocol.records")
+                .description("Line protocol records by outcome")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    // Фактический порт (при port=0 выбирает ОС)
+    public int getLocalPort() {
+        try {
+            return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(bindAddress, port));
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open line protocol listener on " + bindAddress + ":" + port, e);
+        }
+
+        running = true;
+        writer.start();
+        selectorThread = new Thread(this::selectLoop, "line-protocol-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        log.info("Line protocol listener started on {}:{}, backpressure={}", bindAddress, getLocalPort(), backpressure);
+    }
+
+    @Override
+    public void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // Селектор больше ничего не положит - дописываем очередь
+        writer.stop();
+        log.info("Line protocol listener stopped");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void selectLoop() {
+        try {
+            while (running) {
+                selector.select(SELECT_TIMEOUT_MS);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else if (key.isReadable()) {
+                        read(key);
+                    }
+                }
+                resumePaused();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.error("Line protocol selector failed", e);
+        } finally {
+            closeAll();
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ, new Connection(ByteBuffer.allocate(readBufferSize)));
+        connections.incrementAndGet();
+        connectionsOpened.increment();
+        log.debug("Line protocol connection from {}", channel.getRemoteAddress());
+    }
+
+    private void read(SelectionKey key) {
+        Connection connection = (Connection) key.attachment();
+        SocketChannel channel = (SocketChannel) key.channel();
+        int read;
+        try {
+            read = channel.read(connection.buffer);
+        } catch (IOException e) {
+            log.debug("Line protocol connection read failed: {}", e.getMessage());
+            close(key);
+            return;
+        }
+
+        if (read > 0) {
+            bytes.increment(read);
+        }
+        connection.eof = read < 0;
+        connection.buffer.flip();
+        process(key, connection);
+    }
+
+    // Разбирает все полные строки из буфера. Буфер на входе в режиме чтения, на выходе - в режиме записи
+    private void process(SelectionKey key, Connection connection) {
+        ByteBuffer buffer = connection.buffer;
+        while (true) {
+            if (connection.pending != null) {
+                if (!enqueue(key, connection.pending)) {
+                    buffer.compact();
+                    return;
+                }
+                connection.pending = null;
+            }
+
+            int end = indexOf(buffer, (byte) '\n');
+            if (end < 0) {
+                if (connection.eof && buffer.hasRemaining()) {
+                    end = buffer.limit();
+                } else {
+                    break;
+                }
+            }
+
+            int length = end - buffer.position();
+            String line = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8).strip();
+            buffer.position(Math.min(end + 1, buffer.limit()));
+            if (!line.isEmpty()) {
+                connection.pending = toMeasurement(line);
+            }
+        }
+
+        buffer.compact();
+        if (connection.eof) {
+            close(key);
+        } else if (!buffer.hasRemaining()) {
+            log.warn("Line protocol record longer than {} bytes, closing connection", readBufferSize);
+            rejected.increment();
+            close(key);
+        }
+    }
+
+    // false - очередь полна и соединение приостановлено или закрыто
+    private boolean enqueue(SelectionKey key, Measurement measurement) {
+        if (writer.offer(measurement)) {
+            accepted.increment();
+            return true;
+        }
+
+        switch (backpressure) {
+            case DROP -> {
+                dropped.increment();
+                return true;
+            }
+            case DISCONNECT -> {
+                dropped.increment();
+                log.warn("Line protocol queue is full, closing connection");
+                close(key);
+                return false;
+            }
+            default -> {
+                if (paused.add(key)) {
+                    key.interestOps(0);
+                }
+                return false;
+            }
+        }
+    }
+
+    private void resumePaused() {
+        if (paused.isEmpty() || writer.remainingCapacity() == 0) {
+            return;
+        }
+
+        for (SelectionKey key : new ArrayList<>(paused)) {
+            paused.remove(key);
+            if (!key.isValid()) {
+                continue;
+            }
+            Connection connection = (Connection) key.attachment();
+            connection.buffer.flip();
+            process(key, connection);
+            if (key.isValid() && !paused.contains(key)) {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+    }
+
+    // null - строка отклонена (ошибка разбора, неизвестный сенсор или лимит сенсора)
+    private Measurement toMeasurement(String line) {
+        LineProtocolParser.LineRecord record;
+        try {
+            record = LineProtocolParser.parse(line);
+        } catch (IllegalArgumentException e) {
+            rejected.increment();
+            log.debug("Rejected line protocol record '{}': {}", line, e.getMessage());
+            return null;
+        }
+
+        Sensor sensor = sensors.get(record.sensorName());
+        if (sensor == null) {
+            sensor = sensorRegistry.findId(record.sensorName())
+                    .map(id -> new Sensor(id, record.sensorName(), null))
+                    .orElse(null);
+            if (sensor == null) {
+                rejected.increment();
+                log.debug("Rejected line protocol record for unknown sensor '{}'", record.sensorName());
+                return null;
+            }
+            sensors.put(record.sensorName(), sensor);
+        }
+
+        if (rateLimiter.tryAcquire(record.sensorName(), 1) > 0) {
+            rateLimited.increment();
+            return null;
+        }
+
+        return Measurement.builder()
+                .value(record.value())
+                .raining(record.raining())
+                .measurementDateTime(record.measurementDateTime())
+                .sensor(sensor)
+                .build();
+    }
+
+    private void close(SelectionKey key) {
+        if (!key.channel().isOpen()) {
+            return;
+        }
+        paused.remove(key);
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            log.debug("Failed to close line protocol connection: {}", e.getMessage());
+        }
+        connections.decrementAndGet();
+    }
+
+    private void closeAll() {
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection) {
+                close(key);
+            }
+        }
+        try {
+            serverChannel.close();
+            selector.close();
+        } catch (IOException e) {
+            log.debug("Failed to close line protocol selector: {}", e.getMessage());
+        }
+    }
+
+    private static int indexOf(ByteBuffer buffer, byte value) {
+        byte[] array = buffer.array();
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            if (array[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static final class Connection {
+        private final ByteBuffer buffer;
+        // Разобранная строка, которой не хватило места в очереди (PAUSE)
+        private Measurement pending;
+        private boolean eof;
+
+        private Connection(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
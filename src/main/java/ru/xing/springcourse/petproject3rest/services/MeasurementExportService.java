@@ -0,0 +1,270 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.util.MinimalPrettyPrinter;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.xing.springcourse.petproject3rest.dto.ExportFormat;
+import ru.xing.springcourse.petproject3rest.util.BusinessException;
+import ru.xing.springcourse.petproject3rest.util.CsvFields;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Потоковая выгрузка измерений в CSV или NDJSON.
+ * Строки читаются серверным курсором PostgreSQL (autocommit off + fetch size) и сразу пишутся в ответ,
+ * поэтому в памяти одновременно не больше fetch-size строк, сколько бы их ни было в выборке.
+ */
+@Service
+@Slf4j
+public class MeasurementExportService {
+    private static final String SELECT_SQL =
+            "SELECT s.name, m.value, m.raining, m.measurement_date_time " +
+                    "FROM measurement m JOIN sensor s ON s.id = m.sensor WHERE 1 = 1";
+    private static final String CSV_HEADER = "sensor,value,raining,measurement_date_time\n";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final DataSource dataSource;
+    private final SensorRegistry sensorRegistry;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+    private final int fetchSize;
+    private final AtomicInteger active = new AtomicInteger();
+
+    public MeasurementExportService(DataSource dataSource,
+                                    SensorRegistry sensorRegistry,
+                                    ObjectMapper objectMapper,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${measurement.export.fetch-size:1000}") int fetchSize) {
+        this.dataSource = dataSource;
+        this.sensorRegistry = sensorRegistry;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+        this.fetchSize = fetchSize;
+
+        Gauge.builder("measurement.export.active", active, AtomicInteger::get)
+                .description("Exports currently streaming")
+                .register(meterRegistry);
+    }
+
+    // Проверяется до начала ответа: после первого байта статус уже не поменять
+    public ExportFilter filter(String sensorName, LocalDateTime from, LocalDateTime to, Boolean raining) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new BusinessException("'from' must not be after 'to'");
+        }
+
+        Integer sensorId = null;
+        if (sensorName != null && !sensorName.isBlank()) {
+            sensorId = sensorRegistry.findId(sensorName)
+                    .orElseThrow(() -> new BusinessException("Sensor not found: " + sensorName));
+        }
+        return new ExportFilter(sensorId, from, to, raining);
+    }
+
+    // Возвращает число выгруженных строк. Поток out закрывается (gzip дописывает трейлер)
+    public long export(ExportFilter filter, ExportFormat format, boolean gzip, OutputStream out)
+            throws IOException, SQLException {
+        long start = System.nanoTime();
+        CountingOutputStream counted = new CountingOutputStream(out);
+        Counter rowsCounter = Counter.builder("measurement.export.rows")
+                .description("Rows written by measurement exports")
+                .tag("format", format.getExtension())
+                .register(meterRegistry);
+        Counter bytesCounter = Counter.builder("measurement.export.bytes")
+                .description("Bytes written by measurement exports (after compression)")
+                .baseUnit("bytes")
+                .tag("format", format.getExtension())
+                .register(meterRegistry);
+
+        long rows = 0;
+        long reportedRows = 0;
+        long reportedBytes = 0;
+        String result = "failed";
+        active.incrementAndGet();
+
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(
+                gzip ? new GZIPOutputStream(counted, BUFFER_SIZE) : counted, StandardCharsets.UTF_8), BUFFER_SIZE);
+             Connection connection = dataSource.getConnection()) {
+            // Без транзакции драйвер PostgreSQL игнорирует fetch size и читает весь результат в память
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+
+            try (PreparedStatement statement = prepare(connection, filter)) {
+                statement.setFetchSize(fetchSize);
+                RowWriter rowWriter = format == ExportFormat.CSV ? new CsvRowWriter(writer) : new NdjsonRowWriter(writer);
+
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        rowWriter.write(resultSet.getString(1), resultSet.getDouble(2), resultSet.getBoolean(3),
+                                resultSet.getTimestamp(4).toLocalDateTime());
+                        rows++;
+
+                        // Метрики обновляются по ходу, чтобы rows/sec и bytes/sec были видны и у долгих выгрузок
+                        if (rows % fetchSize == 0) {
+                            rowsCounter.increment(rows - reportedRows);
+                            bytesCounter.increment(counted.count - reportedBytes);
+                            reportedRows = rows;
+                            reportedBytes = counted.count;
+                        }
+                    }
+                }
+                rowWriter.finish();
+            } finally {
+                connection.rollback();
+            }
+            writer.flush();
+            result = "completed";
+        } finally {
+            active.decrementAndGet();
+            rowsCounter.increment(rows - reportedRows);
+            bytesCounter.increment(counted.count - reportedBytes);
+
+            long elapsedNanos = Math.max(1, System.nanoTime() - start);
+            Timer.builder("measurement.export")
+                    .description("Measurement export duration")
+                    .tag("format", format.getExtension())
+                    .tag("result", result)
+                    .register(meterRegistry)
+                    .record(elapsedNanos, TimeUnit.NANOSECONDS);
+
+            log.info("Export {}: {} rows, {} bytes{} in {} ms ({} rows/sec, {} bytes/sec)",
+                    result, rows, counted.count, gzip ? " gzip" : "", TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                    rows * 1_000_000_000L / elapsedNanos, counted.count * 1_000_000_000L / elapsedNanos);
+        }
+        return rows;
+    }
+
+    // Порядок (measurement_date_time, id) идёт по индексу idx_measurement_date_time_id без сортировки
+    private PreparedStatement prepare(Connection connection, ExportFilter filter) throws SQLException {
+        StringBuilder sql = new StringBuilder(SELECT_SQL);
+        List<Object> params = new ArrayList<>();
+        if (filter.sensorId() != null) {
+            sql.append(" AND m.sensor = ?");
+            params.add(filter.sensorId());
+        }
+        if (filter.from() != null) {
+            sql.append(" AND m.measurement_date_time >= ?");
+            params.add(Timestamp.valueOf(filter.from()));
+        }
+        if (filter.to() != null) {
+            sql.append(" AND m.measurement_date_time < ?");
+            params.add(Timestamp.valueOf(filter.to()));
+        }
+        if (filter.raining() != null) {
+            sql.append(" AND m.raining = ?");
+            params.add(filter.raining());
+        }
+        sql.append(" ORDER BY m.measurement_date_time, m.id");
+
+        PreparedStatement statement = connection.prepareStatement(sql.toString(),
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        for (int i = 0; i < params.size(); i++) {
+            statement.setObject(i + 1, params.get(i));
+        }
+        return statement;
+    }
+
+    // from включительно, to не включительно; null - без ограничения
+    public record ExportFilter(Integer sensorId, LocalDateTime from, LocalDateTime to, Boolean raining) {
+    }
+
+    private interface RowWriter {
+        void write(String sensorName, double value, boolean raining, LocalDateTime measurementDateTime)
+                throws IOException;
+
+        void finish() throws IOException;
+    }
+
+    private static final class CsvRowWriter implements RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(Writer writer) throws IOException {
+            this.writer = writer;
+            writer.write(CSV_HEADER);
+        }
+
+        @Override
+        public void write(String sensorName, double value, boolean raining, LocalDateTime measurementDateTime)
+                throws IOException {
+            writer.write(CsvFields.quote(sensorName));
+            writer.write(',');
+            writer.write(Double.toString(value));
+            writer.write(',');
+            writer.write(raining ? "true" : "false");
+            writer.write(',');
+            writer.write(measurementDateTime.toString());
+            writer.write('\n');
+        }
+
+        @Override
+        public void finish() {
+        }
+    }
+
+    private final class NdjsonRowWriter implements RowWriter {
+        private final JsonGenerator generator;
+
+        NdjsonRowWriter(Writer writer) throws IOException {
+            // Разделитель между объектами пишем сами, иначе Jackson ставит пробел
+            this.generator = objectMapper.getFactory().createGenerator(writer)
+                    .setPrettyPrinter(new MinimalPrettyPrinter(""))
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        }
+
+        @Override
+        public void write(String sensorName, double value, boolean raining, LocalDateTime measurementDateTime)
+                throws IOException {
+            generator.writeStartObject();
+            generator.writeStringField("sensorName", sensorName);
+            generator.writeNumberField("value", value);
+            generator.writeBooleanField("raining", raining);
+            generator.writeStringField("measurementDateTime", measurementDateTime.toString());
+            generator.writeEndObject();
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        public void finish() throws IOException {
+            generator.flush();
+        }
+    }
+
+    private static final class CountingOutputStream extends FilterOutputStream {
+        private long count;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            count += len;
+        }
+    }
+}
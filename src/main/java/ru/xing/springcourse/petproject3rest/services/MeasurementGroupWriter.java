@@ -0,0 +1,171 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Групповая запись измерений из ограниченной очереди: фоновый поток сбрасывает группы через batchInsert
+ * каждые flushIntervalMs или каждые flushSize строк, затем обновляет снимок последних показаний,
+ * счётчики дождя и версии - как синхронная запись MeasurementService.
+ * Общая для write-behind буфера и line protocol; у каждого свой экземпляр и свои метрики
+ * (metricPrefix.queue.depth, metricPrefix.flush.latency, metricPrefix.flush.size).
+ */
+@Slf4j
+public class MeasurementGroupWriter {
+    private static final long STOP_TIMEOUT_MS = 30_000;
+    // Дольше этого писатель не ждёт в poll: остановку он замечает, не дожидаясь конца flushIntervalMs
+    private static final long STOP_CHECK_MS = 100;
+
+    private final String name;
+    private final MeasurementRepository measurementRepository;
+    private final LatestMeasurementSnapshot latestMeasurementSnapshot;
+    private final RainCounters rainCounters;
+    private final DataVersions dataVersions;
+    private final int flushSize;
+    private final long flushIntervalMs;
+    // Группа, которую не удалось записать: вызывающий считает потери и откатывает своё
+    private final Consumer<List<Measurement>> onFailure;
+    private final BlockingQueue<Measurement> queue;
+
+    private final Timer flushLatency;
+    private final DistributionSummary flushSizes;
+
+    private volatile boolean running;
+    private Thread writer;
+
+    public MeasurementGroupWriter(String name,
+                                  String metricPrefix,
+                                  MeasurementRepository measurementRepository,
+                                  LatestMeasurementSnapshot latestMeasurementSnapshot,
+                                  RainCounters rainCounters,
+                                  DataVersions dataVersions,
+                                  MeterRegistry meterRegistry,
+                                  int queueCapacity,
+                                  int flushSize,
+                                  long flushIntervalMs,
+                                  Consumer<List<Measurement>> onFailure) {
+        this.name = name;
+        this.measurementRepository = measurementRepository;
+        this.latestMeasurementSnapshot = latestMeasurementSnapshot;
+        this.rainCounters = rainCounters;
+        this.dataVersions = dataVersions;
+        this.flushSize = flushSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.onFailure = onFailure;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder(metricPrefix + ".queue.depth", queue, Collection::size)
+                .description("Measurements waiting to be written")
+                .register(meterRegistry);
+        this.flushLatency = Timer.builder(metricPrefix + ".flush.latency")
+                .description("Time to write one group of measurements")
+                .register(meterRegistry);
+        this.flushSizes = DistributionSummary.builder(metricPrefix + ".flush.size")
+                .description("Measurements written per flush")
+                .register(meterRegistry);
+    }
+
+    // false - писатель остановлен или очередь переполнена
+    public boolean offer(Measurement measurement) {
+        return running && queue.offer(measurement);
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public int remainingCapacity() {
+        return queue.remainingCapacity();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public void start() {
+        running = true;
+        writer = new Thread(this::writeLoop, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    // Дописывает всё, что успело попасть в очередь
+    public void stop() {
+        if (!running) {
+            return;
+        }
+
+        running = false;
+        try {
+            writer.join(STOP_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        // То, что успело попасть в очередь после выхода писателя
+        List<Measurement> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        flush(rest);
+    }
+
+    private void writeLoop() {
+        List<Measurement> group = new ArrayList<>(flushSize);
+        long deadline = System.currentTimeMillis() + flushIntervalMs;
+
+        while (running || !queue.isEmpty()) {
+            try {
+                long waitMs = Math.min(STOP_CHECK_MS, Math.max(0, deadline - System.currentTimeMillis()));
+                Measurement measurement = queue.poll(waitMs, TimeUnit.MILLISECONDS);
+                if (measurement != null) {
+                    group.add(measurement);
+                    queue.drainTo(group, flushSize - group.size());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                running = false;
+            }
+
+            if (group.size() >= flushSize || System.currentTimeMillis() >= deadline || !running) {
+                flush(group);
+                group.clear();
+                deadline = System.currentTimeMillis() + flushIntervalMs;
+            }
+        }
+
+        flush(group);
+    }
+
+    private void flush(List<Measurement> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+
+        long start = System.nanoTime();
+        try {
+            List<Measurement> inserted = measurementRepository.batchInsert(group);
+            latestMeasurementSnapshot.record(inserted);
+            rainCounters.record(inserted);
+            dataVersions.record(inserted);
+            flushSizes.record(group.size());
+            log.debug("{}: flushed {} measurements", name, group.size());
+        } catch (RuntimeException e) {
+            onFailure.accept(group);
+            log.error("{}: failed to flush {} measurements", name, group.size(), e);
+        } finally {
+            flushLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -0,0 +1,299 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
+import lombok.extern.slf4j.Slf4j;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.xing.springcourse.petproject3rest.dto.ImportFormat;
+import ru.xing.springcourse.petproject3rest.dto.ImportResultDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+import ru.xing.springcourse.petproject3rest.util.CsvFields;
+
+import javax.sql.DataSource;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Массовая загрузка исторических измерений через COPY ... FROM STDIN.
+ * Вход читается построчно, сенсоры разрешаются один раз на имя, строки уходят в COPY чанками
+ * (каждый чанк - отдельный коммит). Отклонённые строки, в том числе отклонённые БД, пишутся в файл ошибок,
+ * загрузка продолжается.
+ */
+@Service
+@Slf4j
+public class MeasurementImportService {
+    private static final String COPY_SQL =
+            "COPY measurement (value, raining, measurement_date_time, sensor) FROM STDIN WITH (FORMAT csv)";
+    private static final DateTimeFormatter ERROR_FILE_SUFFIX = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    // Класс SQLSTATE ошибок соединения: повтор частями бессмыслен
+    private static final String CONNECTION_EXCEPTION_CLASS = "08";
+
+    private final DataSource dataSource;
+    private final SensorRegistry sensorRegistry;
+    private final LatestMeasurementSnapshot latestMeasurementSnapshot;
+    private final RainCounters rainCounters;
+    private final DataVersions dataVersions;
+    private final ObjectReader ndjsonReader;
+    private final Validator validator;
+    private final int chunkRows;
+    private final Path errorDir;
+
+    public MeasurementImportService(DataSource dataSource,
+                                    SensorRegistry sensorRegistry,
+                                    LatestMeasurementSnapshot latestMeasurementSnapshot,
+                                    RainCounters rainCounters,
+                                    DataVersions dataVersions,
+                                    ObjectMapper objectMapper,
+                                    Validator validator,
+                                    @Value("${measurement.import.copy-chunk-rows:100000}") int chunkRows,
+                                    @Value("${measurement.import.error-dir:${java.io.tmpdir}}") Path errorDir) {
+        this.dataSource = dataSource;
+        this.sensorRegistry = sensorRegistry;
+        this.latestMeasurementSnapshot = latestMeasurementSnapshot;
+        this.rainCounters = rainCounters;
+        this.dataVersions = dataVersions;
+        this.ndjsonReader = objectMapper.readerFor(SensorMeasurementDTO.class);
+        this.validator = validator;
+        this.chunkRows = chunkRows;
+        this.errorDir = errorDir;
+    }
+
+    // Файл ошибок создаётся в measurement.import.error-dir; случайная часть имени - для загрузок в одну секунду
+    public ImportResultDTO importMeasurements(InputStream input, ImportFormat format) throws IOException, SQLException {
+        Files.createDirectories(errorDir);
+        Path errorFile = Files.createTempFile(errorDir,
+                "measurement-import-" + LocalDateTime.now().format(ERROR_FILE_SUFFIX) + "-", ".err");
+        return importMeasurements(input, format, errorFile);
+    }
+
+    public ImportResultDTO importMeasurements(InputStream input, ImportFormat format, Path errorFile)
+            throws IOException, SQLException {
+        long start = System.nanoTime();
+        Map<String, Optional<Integer>> sensorIds = new HashMap<>();
+        // Строки чанка вместе с исходным текстом: отклонённые БД строки пишутся в файл ошибок
+        List<PendingRow> chunk = new ArrayList<>();
+        long lineNumber = 0;
+        long imported = 0;
+        long rejected = 0;
+
+        log.info("Starting {} import, error file {}", format, errorFile);
+
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+             BufferedWriter errors = Files.newBufferedWriter(errorFile, StandardCharsets.UTF_8);
+             Connection connection = dataSource.getConnection()) {
+            // Каждый COPY коммитится сам: упавший чанк не откатывает уже загруженные
+            connection.setAutoCommit(true);
+            CopyManager copyManager = connection.unwrap(PGConnection.class).getCopyAPI();
+
+            String line;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank() || (lineNumber == 1 && format == ImportFormat.CSV && isHeader(line))) {
+                    continue;
+                }
+                // Имя сенсора в кавычках может содержать перевод строки - запись продолжается на следующих строках
+                long recordLine = lineNumber;
+                String next;
+                while (format == ImportFormat.CSV && !CsvFields.isComplete(line) && (next = lines.readLine()) != null) {
+                    lineNumber++;
+                    line = line + "\n" + next;
+                }
+
+                try {
+                    Row row = format == ImportFormat.CSV ? parseCsv(line) : parseNdjson(line);
+                    int sensorId = sensorIds.computeIfAbsent(row.sensorName(), sensorRegistry::findId)
+                            .orElseThrow(() -> new IllegalArgumentException("Sensor not found: " + row.sensorName()));
+
+                    chunk.add(new PendingRow(recordLine, line, row, sensorId));
+                } catch (IllegalArgumentException e) {
+                    rejected++;
+                    writeError(errors, String.valueOf(recordLine), e.getMessage(), line);
+                }
+
+                if (chunk.size() >= chunkRows) {
+                    long copied = copy(copyManager, chunk, errors);
+                    imported += copied;
+                    rejected += chunk.size() - copied;
+                    log.info("Imported {} rows, {} rejected ({} rows/sec)", imported, rejected, rate(imported, start));
+                    chunk.clear();
+                }
+            }
+
+            if (!chunk.isEmpty()) {
+                long copied = copy(copyManager, chunk, errors);
+                imported += copied;
+                rejected += chunk.size() - copied;
+            }
+        }
+
+        if (rejected == 0) {
+            Files.deleteIfExists(errorFile);
+        }
+
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        long rowsPerSecond = rate(imported, start);
+        log.info("Import finished: {} rows imported, {} rejected in {} s ({} rows/sec)",
+                imported, rejected, String.format("%.1f", seconds), rowsPerSecond);
+
+        return new ImportResultDTO(imported, rejected, seconds, rowsPerSecond,
+                rejected > 0 ? errorFile.toAbsolutePath().toString() : null);
+    }
+
+    // Ошибка на стороне БД (например, CHECK) отклоняет весь COPY: чанк повторяется половинами,
+    // пока отклонённые строки не останутся по одной - они уходят в файл ошибок, остальные загружаются
+    private long copy(CopyManager copyManager, List<PendingRow> rows, BufferedWriter errors)
+            throws IOException, SQLException {
+        StringBuilder data = new StringBuilder();
+        for (PendingRow pending : rows) {
+            Row row = pending.row();
+            data.append(row.value()).append(',')
+                    .append(row.raining()).append(',')
+                    .append(row.measurementDateTime()).append(',')
+                    .append(pending.sensorId()).append('\n');
+        }
+
+        long copied;
+        try {
+            copied = copyManager.copyIn(COPY_SQL, new StringReader(data.toString()));
+        } catch (SQLException e) {
+            if (e.getSQLState() != null && e.getSQLState().startsWith(CONNECTION_EXCEPTION_CLASS)) {
+                throw e;
+            }
+            if (rows.size() == 1) {
+                PendingRow pending = rows.get(0);
+                writeError(errors, String.valueOf(pending.line()), "Rejected by database: " + e.getMessage(),
+                        pending.source());
+                return 0;
+            }
+            log.debug("COPY of lines {}-{} failed, retrying in halves: {}",
+                    rows.get(0).line(), rows.get(rows.size() - 1).line(), e.getMessage());
+            int half = rows.size() / 2;
+            return copy(copyManager, rows.subList(0, half), errors)
+                    + copy(copyManager, rows.subList(half, rows.size()), errors);
+        }
+
+        publishCopied(rows);
+        return copied;
+    }
+
+    // COPY загружает строки целиком или не загружает ничего: публикуются только загруженные
+    private void publishCopied(List<PendingRow> rows) {
+        // Самая поздняя строка по каждому сенсору - для снимка последних показаний
+        Map<String, Row> latest = new HashMap<>();
+        // Число дождевых строк по id каждого сенсора - для счётчиков и версий данных
+        Map<Integer, Long> raining = new HashMap<>();
+        for (PendingRow pending : rows) {
+            Row row = pending.row();
+            latest.merge(row.sensorName(), row, (current, candidate) ->
+                    candidate.measurementDateTime().isBefore(current.measurementDateTime()) ? current : candidate);
+            raining.merge(pending.sensorId(), row.raining() ? 1L : 0L, Long::sum);
+        }
+
+        latest.values().forEach(row -> latestMeasurementSnapshot.offer(row.sensorName(),
+                new MeasurementDTO(row.value(), row.raining(), row.measurementDateTime(), null)));
+        raining.forEach(rainCounters::add);
+        dataVersions.touch(Set.copyOf(raining.keySet()));
+    }
+
+    private Row parseCsv(String line) {
+        List<String> fields = CsvFields.split(line);
+        if (fields.size() != 4) {
+            throw new IllegalArgumentException("Expected 4 fields: sensor,value,raining,measurement_date_time");
+        }
+
+        double value;
+        try {
+            value = Double.parseDouble(fields.get(1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value: " + fields.get(1));
+        }
+        // NaN проходит любые сравнения, Infinity отклонила бы CHECK таблицы
+        if (!(value >= -100 && value <= 100)) {
+            throw new IllegalArgumentException("Value must be between -100.0 and 100.0");
+        }
+
+        return new Row(fields.get(0), value, parseRaining(fields.get(2)), parseDateTime(fields.get(3)));
+    }
+
+    private Row parseNdjson(String line) {
+        SensorMeasurementDTO dto;
+        try {
+            dto = ndjsonReader.readValue(line);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON: " + e.getOriginalMessage());
+        }
+
+        Set<ConstraintViolation<SensorMeasurementDTO>> violations = validator.validate(dto);
+        if (!violations.isEmpty()) {
+            throw new IllegalArgumentException(violations.stream()
+                    .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                    .sorted()
+                    .collect(Collectors.joining("; ")));
+        }
+
+        MeasurementDTO measurement = dto.getMeasurement();
+        if (measurement.getMeasurementDateTime() == null) {
+            throw new IllegalArgumentException("measurementDateTime is required for import");
+        }
+
+        return new Row(dto.getSensorName(), measurement.getValue(), measurement.getRaining(),
+                measurement.getMeasurementDateTime());
+    }
+
+    private boolean parseRaining(String raining) {
+        return switch (raining.toLowerCase()) {
+            case "true", "1" -> true;
+            case "false", "0" -> false;
+            default -> throw new IllegalArgumentException("Invalid raining flag: " + raining);
+        };
+    }
+
+    private LocalDateTime parseDateTime(String dateTime) {
+        try {
+            return LocalDateTime.parse(dateTime.replace(' ', 'T'));
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid measurement_date_time: " + dateTime);
+        }
+    }
+
+    private boolean isHeader(String line) {
+        return line.toLowerCase().startsWith("sensor");
+    }
+
+    private void writeError(BufferedWriter errors, String lines, String reason, String line) throws IOException {
+        errors.write(lines + "\t" + reason + "\t" + line);
+        errors.newLine();
+    }
+
+    private long rate(long rows, long start) {
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+        return rows * 1_000_000_000L / elapsedNanos;
+    }
+
+    private record Row(String sensorName, double value, boolean raining, LocalDateTime measurementDateTime) {
+    }
+
+    private record PendingRow(long line, String source, Row row, int sensorId) {
+    }
+}
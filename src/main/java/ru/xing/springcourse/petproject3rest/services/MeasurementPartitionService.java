@@ -0,0 +1,228 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.xing.springcourse.petproject3rest.config.MeasurementPartitionProperties;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementPartitionRepository;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementPartitionRepository.Partition;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRollupRepository;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Обслуживание секций measurement: раз в maintenance-interval (и сразу при старте планировщика)
+ * 1) строки из секции по умолчанию переносятся в свои секции, старше срока хранения - удаляются;
+ * 2) создаются секции на premake интервалов вперёд;
+ * 3) секции, целиком старше срока хранения, удаляются или отсоединяются вместе с предагрегатами и ключами
+ *    идемпотентности их времени.
+ * Каждая секция - отдельная короткая транзакция; ошибка (например, lock_timeout) откладывает её до следующего запуска.
+ */
+@Service
+@Slf4j
+public class MeasurementPartitionService {
+    private static final DateTimeFormatter NAME_FORMAT = DateTimeFormatter.ofPattern("'measurement_p'yyyyMMdd");
+
+    private final MeasurementPartitionRepository measurementPartitionRepository;
+    private final MeasurementRollupRepository measurementRollupRepository;
+    private final DataVersions dataVersions;
+    private final RainCounters rainCounters;
+    private final MeasurementPartitionProperties properties;
+    private final Clock clock;
+
+    private final Counter created;
+    private final Map<MeasurementPartitionProperties.RetentionMode, Counter> removed =
+            new EnumMap<>(MeasurementPartitionProperties.RetentionMode.class);
+    private final Counter movedFromDefault;
+
+    @Autowired
+    public MeasurementPartitionService(MeasurementPartitionRepository measurementPartitionRepository,
+                                       MeasurementRollupRepository measurementRollupRepository,
+                                       DataVersions dataVersions, RainCounters rainCounters,
+                                       MeasurementPartitionProperties properties, MeterRegistry meterRegistry) {
+        this(measurementPartitionRepository, measurementRollupRepository, dataVersions, rainCounters, properties,
+                meterRegistry, Clock.systemDefaultZone());
+    }
+
+    public MeasurementPartitionService(MeasurementPartitionRepository measurementPartitionRepository,
+                                       MeasurementRollupRepository measurementRollupRepository,
+                                       DataVersions dataVersions, RainCounters rainCounters,
+                                       MeasurementPartitionProperties properties, MeterRegistry meterRegistry,
+                                       Clock clock) {
+        this.measurementPartitionRepository = measurementPartitionRepository;
+        this.measurementRollupRepository = measurementRollupRepository;
+        this.dataVersions = dataVersions;
+        this.rainCounters = rainCounters;
+        this.properties = properties;
+        this.clock = clock;
+
+        this.created = Counter.builder("measurement.partitions.created")
+                .description("Partitions created ahead or for rows of the default partition")
+                .register(meterRegistry);
+        for (MeasurementPartitionProperties.RetentionMode mode : MeasurementPartitionProperties.RetentionMode.values()) {
+            removed.put(mode, Counter.builder("measurement.partitions.removed")
+                    .description("Partitions dropped or detached past retention")
+                    .tag("mode", mode.name().toLowerCase())
+                    .register(meterRegistry));
+        }
+        this.movedFromDefault = Counter.builder("measurement.partitions.default.moved")
+                .description("Rows moved from the default partition into their own partition")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${measurement.partitioning.maintenance-interval:1h}")
+    public void maintain() {
+        if (!properties.isEnabled()) {
+            return;
+        }
+
+        LocalDateTime now = LocalDateTime.now(clock);
+        LocalDateTime cutoff = retentionCutoff(now);
+        boolean removedData = drainDefaultPartition(cutoff);
+        createAhead(now);
+        if (cutoff != null) {
+            removedData = applyRetention(cutoff, removedData);
+        }
+
+        if (removedData) {
+            // Удалённые строки были в сводках, счётчиках дождя и кэшах
+            rainCounters.reconcile();
+            dataVersions.touchAll();
+        }
+    }
+
+    // Начало секции, в которую попадает now - retention: всё, что целиком раньше, хранить не нужно
+    private LocalDateTime retentionCutoff(LocalDateTime now) {
+        return properties.getRetention() == null
+                ? null
+                : properties.getInterval().start(now.minus(properties.getRetention()));
+    }
+
+    private boolean drainDefaultPartition(LocalDateTime cutoff) {
+        List<LocalDateTime> days = measurementPartitionRepository.findDefaultPartitionDays();
+        if (days.isEmpty()) {
+            return false;
+        }
+
+        boolean deleted = false;
+        if (cutoff != null && days.get(0).isBefore(cutoff)) {
+            long rows = measurementPartitionRepository.deleteFromDefaultPartition(cutoff);
+            log.info("Deleted {} measurements older than {} from the default partition", rows, cutoff);
+            deleted = rows > 0;
+        }
+
+        Set<LocalDateTime> starts = new LinkedHashSet<>();
+        for (LocalDateTime day : days) {
+            if (cutoff == null || !day.isBefore(cutoff)) {
+                starts.add(properties.getInterval().start(day));
+            }
+        }
+        starts.forEach(this::createPartitions);
+        return deleted;
+    }
+
+    private void createAhead(LocalDateTime now) {
+        LocalDateTime start = properties.getInterval().start(now);
+        for (int i = 0; i <= properties.getPremake(); i++) {
+            createPartitions(start);
+            start = properties.getInterval().next(start);
+        }
+    }
+
+    // Интервал, начинающийся в start, за вычетом уже существующих секций (после смены interval они могут не совпадать)
+    private void createPartitions(LocalDateTime start) {
+        List<Partition> existing = measurementPartitionRepository.findPartitions();
+        for (Partition gap : gaps(start, properties.getInterval().next(start), existing)) {
+            try {
+                long moved = measurementPartitionRepository.createPartition(gap.name(), gap.from(), gap.to(),
+                        properties.getLockTimeout());
+                if (moved >= 0) {
+                    created.increment();
+                    movedFromDefault.increment(moved);
+                    log.info("Created partition {} for {}..{}, moved {} rows from the default partition",
+                            gap.name(), gap.from(), gap.to(), moved);
+                }
+            } catch (DataAccessException e) {
+                log.warn("Cannot create partition {}, will retry: {}", gap.name(), e.getMessage());
+            }
+        }
+    }
+
+    // removedData - из секции по умолчанию уже удалены строки до cutoff, их агрегаты тоже нужно удалить
+    private boolean applyRetention(LocalDateTime cutoff, boolean removedData) {
+        MeasurementPartitionProperties.RetentionMode mode = properties.getRetentionMode();
+        boolean drop = mode == MeasurementPartitionProperties.RetentionMode.DROP;
+        List<Partition> partitions = measurementPartitionRepository.findPartitions();
+        // Агрегаты удаляются до начала самой старой оставшейся секции, если она начинается раньше cutoff
+        LocalDateTime rollupCutoff = cutoff;
+        boolean removedAny = removedData;
+        for (Partition partition : partitions) {
+            if (partition.to().isAfter(cutoff)) {
+                if (partition.from().isBefore(rollupCutoff)) {
+                    rollupCutoff = partition.from();
+                }
+                continue;
+            }
+            try {
+                if (measurementPartitionRepository.removePartition(partition.name(), drop,
+                        properties.getLockTimeout())) {
+                    removed.get(mode).increment();
+                    removedAny = true;
+                    log.info("{} partition {} ({}..{}) past retention", drop ? "Dropped" : "Detached",
+                            partition.name(), partition.from(), partition.to());
+                }
+            } catch (DataAccessException e) {
+                log.warn("Cannot remove partition {}, will retry: {}", partition.name(), e.getMessage());
+                if (partition.from().isBefore(rollupCutoff)) {
+                    rollupCutoff = partition.from();
+                }
+            }
+        }
+
+        if (removedAny) {
+            long rows = measurementRollupRepository.deleteBefore(rollupCutoff);
+            log.info("Deleted {} rollup rows before {}", rows, rollupCutoff);
+            long keys = measurementPartitionRepository.deleteIdempotencyKeysBefore(rollupCutoff);
+            log.info("Deleted {} idempotency keys before {}", keys, rollupCutoff);
+        }
+        return removedAny;
+    }
+
+    /**
+     * Части [from, to), не покрытые секциями existing (отсортированы по from), с именами по началу части.
+     */
+    public static List<Partition> gaps(LocalDateTime from, LocalDateTime to, List<Partition> existing) {
+        List<Partition> gaps = new ArrayList<>();
+        LocalDateTime cursor = from;
+        for (Partition partition : existing) {
+            if (!cursor.isBefore(to)) {
+                break;
+            }
+            if (!partition.overlaps(cursor, to)) {
+                continue;
+            }
+            if (cursor.isBefore(partition.from())) {
+                gaps.add(new Partition(NAME_FORMAT.format(cursor), cursor, partition.from()));
+            }
+            if (partition.to().isAfter(cursor)) {
+                cursor = partition.to();
+            }
+        }
+        if (cursor.isBefore(to)) {
+            gaps.add(new Partition(NAME_FORMAT.format(cursor), cursor, to));
+        }
+        return gaps;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRollupRepository;
+import ru.xing.springcourse.petproject3rest.util.BusinessException;
+
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Поддержка предагрегатов по минутам, часам и суткам.
+ * Приращения от записей сливаются в агрегаты фоном пачками по merge-batch-size; пока приращение не слито,
+ * агрегатный запрос досчитывает его сам, поэтому задержка слияния на результат не влияет.
+ * Пересчёт нужен только после изменений в обход триггера (ручные правки, удаление строк).
+ */
+@Service
+@Slf4j
+public class MeasurementRollupService {
+    private final MeasurementRollupRepository measurementRollupRepository;
+    private final DataVersions dataVersions;
+    private final int mergeBatchSize;
+    private final Counter merged;
+
+    public MeasurementRollupService(MeasurementRollupRepository measurementRollupRepository,
+                                    DataVersions dataVersions,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${measurement.rollup.merge-batch-size:5000}") int mergeBatchSize) {
+        this.measurementRollupRepository = measurementRollupRepository;
+        this.dataVersions = dataVersions;
+        this.mergeBatchSize = mergeBatchSize;
+        this.merged = Counter.builder("measurement.rollup.merged")
+                .description("Rollup deltas merged into the rollup tables")
+                .register(meterRegistry);
+    }
+
+    // Пачки идут, пока очередь приращений не опустеет; каждая пачка - своя короткая транзакция
+    @Scheduled(fixedDelayString = "${measurement.rollup.merge-interval:1s}")
+    public void mergePending() {
+        int total = 0;
+        int batch;
+        do {
+            batch = measurementRollupRepository.mergeDeltas(mergeBatchSize);
+            total += batch;
+        } while (batch == mergeBatchSize);
+
+        if (total > 0) {
+            merged.increment(total);
+            log.debug("Merged {} rollup deltas", total);
+        }
+    }
+
+    // Диапазон расширяется до целых суток и пересчитывается по суткам, каждые сутки - отдельной транзакцией
+    public long rebuild(LocalDateTime from, LocalDateTime to) {
+        if (from == null || to == null || !from.isBefore(to)) {
+            throw new BusinessException("'from' must be before 'to'");
+        }
+
+        LocalDateTime start = from.toLocalDate().atStartOfDay();
+        LocalDateTime end = to.toLocalTime().equals(LocalTime.MIDNIGHT)
+                ? to
+                : to.toLocalDate().plusDays(1).atStartOfDay();
+
+        long rows = 0;
+        for (LocalDateTime day = start; day.isBefore(end); day = day.plusDays(1)) {
+            rows += measurementRollupRepository.rebuild(day, day.plusDays(1));
+        }
+        // Сводки сенсоров читаются из предагрегатов - прежние ETag больше не верны
+        dataVersions.touchAll();
+        log.info("Rebuilt rollups for {}..{}: {} measurements", start, end, rows);
+        return rows;
+    }
+}
@@ -1,21 +1,63 @@
 package ru.xing.springcourse.petproject3rest.services;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import jakarta.validation.ConstraintViolation;
 import jakarta.validation.Valid;
+import jakarta.validation.Validator;
 import jakarta.validation.constraints.NotBlank;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.boot.convert.DurationStyle;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.validation.annotation.Validated;
+import ru.xing.springcourse.petproject3rest.dto.CursorPageDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBatchDTO;
+import ru.xing.springcourse.petproject3rest.dto.IngestResultDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBucketDTO;
 import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorReadingsDTO;
+import ru.xing.springcourse.petproject3rest.dto.SliceDTO;
 import ru.xing.springcourse.petproject3rest.models.Measurement;
 import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementAggregateRepository;
 import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
-import ru.xing.springcourse.petproject3rest.repositories.SensorRepository;
+import ru.xing.springcourse.petproject3rest.repositories.RollupResolution;
+import ru.xing.springcourse.petproject3rest.repositories.TableStatisticsRepository;
 import ru.xing.springcourse.petproject3rest.util.BusinessException;
+import ru.xing.springcourse.petproject3rest.util.LineErrorDto;
+import ru.xing.springcourse.petproject3rest.util.MeasurementCursor;
+import ru.xing.springcourse.petproject3rest.util.MeasurementFrameCodec;
 import ru.xing.springcourse.petproject3rest.util.MeasurementMapper;
+import ru.xing.springcourse.petproject3rest.util.TooManyRequestsException;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
@@ -23,52 +65,399 @@ import ru.xing.springcourse.petproject3rest.util.MeasurementMapper;
 @Transactional(readOnly = true)
 @Validated
 public class MeasurementService {
-    private final SensorRepository sensorRepository;
+    // Верхняя граница размера одного пакета
+    public static final int MAX_BATCH_SIZE = 10_000;
+    // Размер чанка потоковой загрузки: столько строк держим в памяти и коммитим за раз
+    public static final int STREAM_CHUNK_SIZE = 1_000;
+    // Сколько ошибочных строк возвращаем клиенту
+    private static final int MAX_REPORTED_ERRORS = 100;
+    // Границы запроса агрегатов: сенсоров за раз и интервалов на сенсор
+    public static final int MAX_AGGREGATE_SENSORS = 20;
+    public static final long MAX_AGGREGATE_BUCKETS = 10_000;
+
+    private final SensorRegistry sensorRegistry;
     private final MeasurementRepository measurementRepository;
     private final MeasurementMapper measurementMapper;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final MeasurementWriteBehindBuffer writeBehindBuffer;
+    private final IdempotencyWindow idempotencyWindow;
+    private final SensorRateLimiter rateLimiter;
+    private final TableStatisticsRepository tableStatisticsRepository;
+    private final MeasurementAggregateRepository measurementAggregateRepository;
+    private final LatestMeasurementSnapshot latestMeasurementSnapshot;
+    private final RainCounters rainCounters;
+    private final DataVersions dataVersions;
+    private final ReadCache readCache;
 
-    //Добавить новое измерение
-    @Transactional
+    //Добавить новое измерение.
+    //Без транзакции: в режиме write-behind запрос только ставит измерение в очередь и не должен занимать
+    //соединение из пула; синхронная запись идёт одной транзакцией batchInsert репозитория
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public void addMeasurement(@NotBlank String sensorName, @Valid MeasurementDTO measurementDTO) {
-        Sensor sensor = sensorRepository.findByName(sensorName)
+        //Сенсор берём из реестра: ссылка только с id, без SELECT
+        Sensor sensor = sensorRegistry.resolve(sensorName)
                 .orElseThrow(() -> new BusinessException("Sensor not found: " + sensorName));
 
+        checkRateLimit(sensorName, 1);
+
         //С маппингом
         Measurement measurement = measurementMapper.toEntity(measurementDTO, sensor);
 
-        measurementRepository.save(measurement);
+        //Повтор запроса с тем же ключом - отвечаем как на успешную запись, но не пишем
+        String key = IdempotencyWindow.key(sensor.getId(), measurement.getIdempotencyKey());
+        if (idempotencyWindow.isDuplicate(key)) {
+            log.info("Duplicate measurement for sensor '{}' ignored, key = {}", sensorName, measurement.getIdempotencyKey());
+            return;
+        }
+
+        //В режиме write-behind только ставим в очередь, запись сделает фоновый поток
+        if (writeBehindBuffer.isEnabled()) {
+            if (!writeBehindBuffer.offer(measurement)) {
+                throw new TooManyRequestsException("Ingest queue is full, retry later", 1);
+            }
+            idempotencyWindow.remember(key);
+            log.debug("Queued measurement for sensor '{}'", sensorName);
+            return;
+        }
+
+        insertDeduplicated(List.of(measurement));
 
         log.info("Added measurement for sensor '{}': value = {}, raining = {} ",
                 sensorName, measurementDTO.getValue(), measurementDTO.getRaining());
     }
 
-    //Добавим пагинацию, чтобы проект мог обрабатывать огромное количество измерений без потери памяти
+    //Per-sensor rate limit: 429 с Retry-After, если сенсор шлёт быстрее разрешённого
+    private void checkRateLimit(String sensorName, int readings) {
+        long retryAfter = rateLimiter.tryAcquire(sensorName, readings);
+        if (retryAfter > 0) {
+            log.warn("Rate limit exceeded for sensor '{}', {} readings rejected", sensorName, readings);
+            throw new TooManyRequestsException("Rate limit exceeded for sensor: " + sensorName, retryAfter);
+        }
+    }
+
+    //Если true - addMeasurement только принимает измерение в очередь (202 Accepted)
+    public boolean isWriteBehindEnabled() {
+        return writeBehindBuffer.isEnabled();
+    }
+
+    //Пакетное добавление: сенсоры из реестра, одна транзакция и JDBC batch вместо INSERT на каждую строку
+    @Transactional
+    public int addMeasurements(@Valid MeasurementBatchDTO batchDTO) {
+        int size = batchDTO.size();
+        if (size > MAX_BATCH_SIZE) {
+            throw new BusinessException("Batch is too large: " + size + " > " + MAX_BATCH_SIZE);
+        }
+
+        Set<String> sensorNames = batchDTO.getSensors().stream()
+                .map(SensorReadingsDTO::getSensorName)
+                .collect(Collectors.toSet());
+
+        Map<String, Sensor> sensors = sensorRegistry.resolveAll(sensorNames);
+
+        Map<String, Integer> readingsPerSensor = new HashMap<>();
+        for (SensorReadingsDTO readings : batchDTO.getSensors()) {
+            if (!sensors.containsKey(readings.getSensorName())) {
+                throw new BusinessException("Sensor not found: " + readings.getSensorName());
+            }
+            readingsPerSensor.merge(readings.getSensorName(), readings.getMeasurements().size(), Integer::sum);
+        }
+
+        //Лимит превышен хотя бы у одного сенсора - отклоняем весь пакет
+        readingsPerSensor.forEach(this::checkRateLimit);
+
+        List<Measurement> measurements = new ArrayList<>(size);
+        for (SensorReadingsDTO readings : batchDTO.getSensors()) {
+            Sensor sensor = sensors.get(readings.getSensorName());
+
+            for (MeasurementDTO measurementDTO : readings.getMeasurements()) {
+                measurements.add(measurementMapper.toEntity(measurementDTO, sensor));
+            }
+        }
+
+        int inserted = insertDeduplicated(measurements);
+
+        log.info("Added batch of {} measurements for {} sensors", inserted, sensors.size());
+        return inserted;
+    }
+
+    //Бинарный кадр (MeasurementFrameCodec): декодируем сразу в сущности и пишем одним JDBC batch
+    @Transactional
+    public int addFrame(ByteBuffer frame) {
+        if (frame.remaining() > MeasurementFrameCodec.HEADER_SIZE + MAX_BATCH_SIZE * MeasurementFrameCodec.RECORD_SIZE) {
+            throw new BusinessException("Batch is too large: more than " + MAX_BATCH_SIZE + " measurements");
+        }
+
+        Map<Integer, Optional<Sensor>> sensors = new HashMap<>();
+        List<Measurement> measurements = MeasurementFrameCodec.decode(frame,
+                id -> sensors.computeIfAbsent(id, sensorRegistry::resolveById).orElse(null));
+
+        Map<Integer, Integer> readingsPerSensor = new HashMap<>();
+        for (Measurement measurement : measurements) {
+            readingsPerSensor.merge(measurement.getSensor().getId(), 1, Integer::sum);
+        }
+        readingsPerSensor.forEach((id, readings) -> checkRateLimit(
+                sensorRegistry.findName(id).orElse(String.valueOf(id)), readings));
+
+        int inserted = insertDeduplicated(measurements);
+
+        log.info("Added frame of {} measurements for {} sensors", inserted, sensors.size());
+        return inserted;
+    }
+
+    //Потоковая загрузка NDJSON: читаем построчно и пишем чанками, тело целиком в память не попадает.
+    //Транзакции на весь поток нет - каждый чанк коммитится отдельно.
+    //Лимит сенсора списывается за его строки в чанке; строки сверх лимита отклоняются, как и невалидные
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public IngestResultDTO ingestStream(InputStream inputStream) throws IOException {
+        ObjectReader reader = objectMapper.readerFor(SensorMeasurementDTO.class);
+        Map<String, Optional<Sensor>> sensors = new HashMap<>();
+        List<StreamLine> chunk = new ArrayList<>(STREAM_CHUNK_SIZE);
+        List<StreamLine> limited = new ArrayList<>();
+        List<LineErrorDto> errors = new ArrayList<>();
+        long accepted = 0;
+        long rejected = 0;
+        long lineNumber = 0;
+
+        try (BufferedReader lines = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = lines.readLine()) != null) {
+                lineNumber++;
+                if (line.isBlank()) {
+                    continue;
+                }
+
+                String error;
+                try {
+                    SensorMeasurementDTO dto = reader.readValue(line);
+                    error = validate(dto);
+                    if (error == null) {
+                        Optional<Sensor> sensor = sensors.computeIfAbsent(dto.getSensorName(), sensorRegistry::resolve);
+                        if (sensor.isPresent()) {
+                            chunk.add(new StreamLine(lineNumber, dto.getSensorName(),
+                                    measurementMapper.toEntity(dto.getMeasurement(), sensor.get())));
+                        } else {
+                            error = "Sensor not found: " + dto.getSensorName();
+                        }
+                    }
+                } catch (JsonProcessingException e) {
+                    error = "Malformed JSON: " + e.getOriginalMessage();
+                }
+
+                if (error != null) {
+                    rejected++;
+                    if (errors.size() < MAX_REPORTED_ERRORS) {
+                        errors.add(new LineErrorDto(lineNumber, error));
+                    }
+                }
+
+                if (chunk.size() >= STREAM_CHUNK_SIZE) {
+                    accepted += insertDeduplicated(admit(chunk, limited));
+                    chunk.clear();
+                }
+            }
+        }
+
+        accepted += insertDeduplicated(admit(chunk, limited));
+
+        rejected += limited.size();
+        for (StreamLine line : limited) {
+            if (errors.size() >= MAX_REPORTED_ERRORS) {
+                break;
+            }
+            errors.add(new LineErrorDto(line.number(), "Rate limit exceeded for sensor: " + line.sensorName()));
+        }
+        errors.sort(Comparator.comparingLong(LineErrorDto::line));
+
+        log.info("Stream ingest finished: {} lines, {} accepted, {} rejected", lineNumber, accepted, rejected);
+        return new IngestResultDTO(accepted, rejected, errors);
+    }
+
+    //Строки чанка, прошедшие лимит своего сенсора; остальные - в limited
+    private List<Measurement> admit(List<StreamLine> chunk, List<StreamLine> limited) {
+        Map<String, Integer> readingsPerSensor = new HashMap<>();
+        chunk.forEach(line -> readingsPerSensor.merge(line.sensorName(), 1, Integer::sum));
+
+        Set<String> overLimit = new HashSet<>();
+        readingsPerSensor.forEach((sensorName, readings) -> {
+            if (rateLimiter.tryAcquire(sensorName, readings) > 0) {
+                log.warn("Rate limit exceeded for sensor '{}', {} stream lines rejected", sensorName, readings);
+                overLimit.add(sensorName);
+            }
+        });
+
+        List<Measurement> admitted = new ArrayList<>(chunk.size());
+        for (StreamLine line : chunk) {
+            if (overLimit.contains(line.sensorName())) {
+                limited.add(line);
+            } else {
+                admitted.add(line.measurement());
+            }
+        }
+        return admitted;
+    }
+
+    private record StreamLine(long number, String sensorName, Measurement measurement) {
+    }
+
+    //Общая запись для всех путей: повторы из окна идемпотентности (и внутри самой пачки) отбрасываем,
+    //остальное пишем JDBC batch-ем, ключи и последние показания сенсоров запоминаем после коммита
+    private int insertDeduplicated(List<Measurement> measurements) {
+        Set<String> keys = new HashSet<>();
+        List<Measurement> fresh = new ArrayList<>(measurements.size());
+
+        for (Measurement measurement : measurements) {
+            String key = IdempotencyWindow.key(measurement.getSensor().getId(), measurement.getIdempotencyKey());
+            if (key == null || (!idempotencyWindow.isDuplicate(key) && keys.add(key))) {
+                fresh.add(measurement);
+            }
+        }
+
+        // Повторы, отсечённые в БД (ключ уже занят), в счётчики и версии не попадают
+        List<Measurement> inserted = measurementRepository.batchInsert(fresh);
+        idempotencyWindow.rememberAfterCommit(keys);
+        latestMeasurementSnapshot.record(inserted);
+        rainCounters.record(inserted);
+        dataVersions.record(inserted);
+        return inserted.size();
+    }
+
+    private String validate(SensorMeasurementDTO dto) {
+        Set<ConstraintViolation<SensorMeasurementDTO>> violations = validator.validate(dto);
+        if (violations.isEmpty()) {
+            return null;
+        }
+
+        return violations.stream()
+                .map(v -> v.getPropertyPath() + ": " + v.getMessage())
+                .sorted()
+                .collect(Collectors.joining("; "));
+    }
+
+    //Добавим пагинацию, чтобы проект мог обрабатывать огромное количество измерений без потери памяти.
+    //Первые страницы - из ReadCache; без транзакции, чтобы попадание в кэш не брало соединение из пула
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Page<MeasurementDTO> getAllMeasurements(Pageable pageable) {
-        Page<Measurement> measurements = measurementRepository.findAll(pageable);
+        return readCache.measurementPage(false, pageable,
+                () -> measurementRepository.findAllViews(pageable).map(measurementMapper::toDTO));
+    }
+
+    //Keyset-пагинация: after - токен из nextCursor предыдущей страницы, сортировка берётся из него
+    public CursorPageDTO<MeasurementDTO> getMeasurementsAfter(String after, int size, MeasurementCursor.SortKey sort,
+                                                              Sort.Direction direction, boolean rainingOnly) {
+        MeasurementCursor cursor = after != null && !after.isBlank() ? MeasurementCursor.decode(after) : null;
+        if (cursor != null) {
+            sort = cursor.sort();
+            direction = cursor.direction();
+        }
 
-        return measurements.map(measurementMapper::toDTO);
+        //Одна лишняя строка показывает, есть ли следующая страница, без COUNT
+        List<MeasurementView> rows = measurementRepository.seek(sort, direction, cursor, rainingOnly, size + 1);
+        boolean hasNext = rows.size() > size;
+        if (hasNext) {
+            rows = rows.subList(0, size);
+        }
+
+        String nextCursor = hasNext
+                ? MeasurementCursor.after(rows.get(rows.size() - 1), sort, direction).encode()
+                : null;
+        return new CursorPageDTO<>(rows.stream().map(measurementMapper::toDTO).toList(), nextCursor, hasNext);
     }
 
-    public MeasurementDTO getMeasurementById(int id) {
-        Measurement measurement = measurementRepository.findById(id)
-                .orElseThrow(() -> new BusinessException("Measurement not found: " + id));
+    //Страница без COUNT(*); при approximateTotal - оценка общего числа строк из pg_class.reltuples
+    public SliceDTO<MeasurementDTO> getMeasurementsSlice(Pageable pageable, boolean approximateTotal) {
+        Slice<MeasurementDTO> measurements = measurementRepository.findAllViewsBy(pageable).map(measurementMapper::toDTO);
+
+        return SliceDTO.of(measurements, approximateTotal
+                ? tableStatisticsRepository.estimateTableRows(TableStatisticsRepository.MEASUREMENT_TABLE)
+                : null);
+    }
+
+    //min/max/avg/count/доля дождя по интервалам bucket в окне [from, to), считается в PostgreSQL.
+    //Результат - через ReadCache (L1) и общий кэш L2, запись в любой из сенсоров запроса его сбрасывает
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<MeasurementBucketDTO> aggregate(List<String> sensorNames, LocalDateTime from, LocalDateTime to,
+                                                String bucket) {
+        Duration width;
+        try {
+            width = DurationStyle.SIMPLE.parse(bucket);
+        } catch (IllegalArgumentException e) {
+            throw new BusinessException("Invalid bucket: " + bucket + ", use e.g. 5m, 1h or 1d");
+        }
+        if (width.compareTo(Duration.ofMinutes(1)) < 0) {
+            throw new BusinessException("Bucket must be at least 1m");
+        }
+        if (!from.isBefore(to)) {
+            throw new BusinessException("'from' must be before 'to'");
+        }
+        if (Duration.between(from, to).dividedBy(width) >= MAX_AGGREGATE_BUCKETS) {
+            throw new BusinessException("Too many buckets, use a wider bucket or a shorter range (max "
+                    + MAX_AGGREGATE_BUCKETS + ")");
+        }
 
-        return measurementMapper.toDTO(measurement);
+        Set<String> names = new LinkedHashSet<>(sensorNames);
+        if (names.isEmpty() || names.size() > MAX_AGGREGATE_SENSORS) {
+            throw new BusinessException("Specify from 1 to " + MAX_AGGREGATE_SENSORS + " sensors");
+        }
+        List<Integer> sensorIds = names.stream()
+                .map(name -> sensorRegistry.findId(name)
+                        .orElseThrow(() -> new BusinessException("Sensor not found: " + name)))
+                .toList();
+
+        return readCache.aggregate(sensorIds, from, to, width, () -> {
+            //Самая крупная подходящая таблица предагрегатов, иначе - сырые измерения
+            Optional<RollupResolution> rollup = RollupResolution.coarsestFor(width, from, to);
+            List<MeasurementBucketDTO> buckets = rollup.isPresent()
+                    ? measurementAggregateRepository.aggregate(rollup.get(), sensorIds, from, to, width)
+                    : measurementAggregateRepository.aggregate(sensorIds, from, to, width);
+            log.info("Aggregated {} sensors over {}..{} by {} from {}: {} buckets", sensorIds.size(), from, to, bucket,
+                    rollup.map(RollupResolution::getTable).orElse("measurement"), buckets.size());
+            return buckets;
+        });
+    }
+
+    //Измерения не меняются после записи - кэшируем надолго
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public MeasurementDTO getMeasurementById(int id) {
+        return readCache.measurement(id, () -> measurementRepository.findViewById(id)
+                .map(measurementMapper::toDTO)
+                .orElseThrow(() -> new BusinessException("Measurement not found: " + id)));
     }
 
-    //Количество дождевых измерений
+    //Количество дождевых измерений: поддерживаемый счётчик вместо COUNT(*) по таблице
     public long countRainingMeasurements() {
-        long count = measurementRepository.countByRainingTrue();
+        long count = rainCounters.total();
 
         log.info("Number of raining measurements: {}", count);
         return count;
     }
 
+    //То же для одного сенсора
+    public long countRainingMeasurements(String sensorName) {
+        int sensorId = sensorRegistry.findId(sensorName)
+                .orElseThrow(() -> new BusinessException("Sensor not found: " + sensorName));
+        long count = rainCounters.count(sensorId);
+
+        log.info("Number of raining measurements for sensor '{}': {}", sensorName, count);
+        return count;
+    }
+
     //Список всех дождевых измерений
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Page<MeasurementDTO> getRainingMeasurements(Pageable pageable) {
-        Page<Measurement> measurements = measurementRepository.findByRainingTrue(pageable);
+        Page<MeasurementDTO> measurements = readCache.measurementPage(true, pageable,
+                () -> measurementRepository.findRainingViews(pageable).map(measurementMapper::toDTO));
         log.info("List of raining measurements: {}", measurements.getTotalElements());
 
-        return measurements.map(measurementMapper::toDTO);
+        return measurements;
+    }
+
+    public SliceDTO<MeasurementDTO> getRainingMeasurementsSlice(Pageable pageable, boolean approximateTotal) {
+        Slice<MeasurementDTO> measurements = measurementRepository.findRainingViewsBy(pageable)
+                .map(measurementMapper::toDTO);
+
+        return SliceDTO.of(measurements, approximateTotal
+                ? tableStatisticsRepository.estimateQueryRows(TableStatisticsRepository.RAINING_MEASUREMENTS_QUERY)
+                : null);
     }
 }
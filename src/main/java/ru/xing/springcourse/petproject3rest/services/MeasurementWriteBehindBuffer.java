@@ -0,0 +1,104 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
+
+import java.util.List;
+
+/**
+ * Асинхронная запись измерений (write-behind).
+ * Запрос только кладёт измерение в ограниченную очередь, фоновый поток (MeasurementGroupWriter) сбрасывает
+ * группы строк одной транзакцией - каждые flush-interval-ms или каждые flush-size строк.
+ */
+@Component
+@Slf4j
+public class MeasurementWriteBehindBuffer implements SmartLifecycle {
+    // Останавливаемся после веб-сервера, чтобы дописать всё, что он успел принять
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    private final IdempotencyWindow idempotencyWindow;
+    private final boolean enabled;
+    private final int flushSize;
+    private final long flushIntervalMs;
+    private final MeasurementGroupWriter writer;
+    private final Counter dropped;
+
+    public MeasurementWriteBehindBuffer(MeasurementRepository measurementRepository,
+                                        LatestMeasurementSnapshot latestMeasurementSnapshot,
+                                        RainCounters rainCounters,
+                                        DataVersions dataVersions,
+                                        IdempotencyWindow idempotencyWindow,
+                                        MeterRegistry meterRegistry,
+                                        @Value("${measurement.write-behind.enabled:false}") boolean enabled,
+                                        @Value("${measurement.write-behind.queue-capacity:100000}") int queueCapacity,
+                                        @Value("${measurement.write-behind.flush-size:1000}") int flushSize,
+                                        @Value("${measurement.write-behind.flush-interval-ms:200}") long flushIntervalMs) {
+        this.idempotencyWindow = idempotencyWindow;
+        this.enabled = enabled;
+        this.flushSize = flushSize;
+        this.flushIntervalMs = flushIntervalMs;
+
+        this.dropped = Counter.builder("measurement.write_behind.dropped")
+                .description("Measurements lost because a flush failed")
+                .register(meterRegistry);
+        this.writer = new MeasurementGroupWriter("measurement-write-behind", "measurement.write_behind",
+                measurementRepository, latestMeasurementSnapshot, rainCounters, dataVersions, meterRegistry,
+                queueCapacity, flushSize, flushIntervalMs, this::flushFailed);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // false - буфер остановлен или очередь переполнена
+    public boolean offer(Measurement measurement) {
+        return writer.offer(measurement);
+    }
+
+    public int getQueueDepth() {
+        return writer.getQueueDepth();
+    }
+
+    @Override
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+
+        writer.start();
+        log.info("Write-behind buffer started: flushSize={}, flushIntervalMs={}", flushSize, flushIntervalMs);
+    }
+
+    @Override
+    public void stop() {
+        if (!writer.isRunning()) {
+            return;
+        }
+
+        writer.stop();
+        log.info("Write-behind buffer stopped, queue drained");
+    }
+
+    @Override
+    public boolean isRunning() {
+        return writer.isRunning();
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    private void flushFailed(List<Measurement> group) {
+        dropped.increment(group.size());
+        // Ключи запомнены при постановке в очередь (клиент уже получил 202) - иначе его повтор был бы поглощён
+        group.forEach(measurement -> idempotencyWindow.forget(
+                IdempotencyWindow.key(measurement.getSensor().getId(), measurement.getIdempotencyKey())));
+    }
+}
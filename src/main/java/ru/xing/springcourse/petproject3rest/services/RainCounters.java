@@ -0,0 +1,121 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRollupRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Счётчики дождевых измерений, всего и по сенсорам, вместо COUNT(*) по таблице на каждый запрос.
+ * Значение = base (последняя сверка с БД) + LongAdder приращений от записей после неё:
+ * инкремент на пути записи не спорит за одну ячейку памяти.
+ * Периодическая сверка с таблицами предагрегатов убирает расхождения - записи других экземпляров
+ * приложения.
+ */
+@Component
+@Slf4j
+public class RainCounters {
+    private final MeasurementRollupRepository measurementRollupRepository;
+    private final Map<Integer, Count> perSensor = new ConcurrentHashMap<>();
+    private final Count total = new Count();
+    private boolean reconciled;
+
+    public RainCounters(MeasurementRollupRepository measurementRollupRepository, MeterRegistry meterRegistry) {
+        this.measurementRollupRepository = measurementRollupRepository;
+
+        Gauge.builder("measurement.raining.count", total, Count::get)
+                .description("Raining measurements (maintained counter)")
+                .register(meterRegistry);
+    }
+
+    // Внутри транзакции счётчики увеличиваются только после коммита
+    public void record(Collection<Measurement> measurements) {
+        Map<Integer, Long> raining = new HashMap<>();
+        for (Measurement measurement : measurements) {
+            if (measurement.isRaining()) {
+                raining.merge(measurement.getSensor().getId(), 1L, Long::sum);
+            }
+        }
+        if (raining.isEmpty()) {
+            return;
+        }
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    raining.forEach(RainCounters.this::add);
+                }
+            });
+        } else {
+            raining.forEach(this::add);
+        }
+    }
+
+    // Уже записанные дождевые измерения сенсора
+    public void add(int sensorId, long raining) {
+        perSensor.computeIfAbsent(sensorId, id -> new Count()).delta.add(raining);
+        total.delta.add(raining);
+    }
+
+    public long total() {
+        return total.get();
+    }
+
+    public long count(int sensorId) {
+        Count count = perSensor.get(sensorId);
+        return count == null ? 0 : count.get();
+    }
+
+    // Первая сверка - сразу при старте планировщика.
+    // Приращения до запроса переносятся в base: они учтены после коммита, значит запрос их уже видит.
+    // Коммиты между переносом и снимком запроса до следующей сверки посчитаны дважды
+    @Scheduled(fixedDelayString = "${measurement.rain-counters.reconcile-interval:5m}")
+    public synchronized void reconcile() {
+        perSensor.values().forEach(Count::fold);
+        long recordedTotal = total.fold();
+
+        Map<Integer, Long> actual = measurementRollupRepository.countRainingPerSensor();
+
+        perSensor.forEach((id, count) -> count.base = actual.getOrDefault(id, 0L));
+        actual.forEach((id, raining) -> perSensor.computeIfAbsent(id, key -> new Count()).base = raining);
+        long actualTotal = actual.values().stream().mapToLong(Long::longValue).sum();
+        total.base = actualTotal;
+
+        long drift = recordedTotal - actualTotal;
+        if (drift != 0 && reconciled) {
+            log.info("Rain counters reconciled: {} raining measurements, drift {}", actualTotal, drift);
+        } else {
+            log.debug("Rain counters reconciled: {} raining measurements", actualTotal);
+        }
+        reconciled = true;
+    }
+
+    private static final class Count {
+        private volatile long base;
+        private final LongAdder delta = new LongAdder();
+
+        long get() {
+            return base + delta.sum();
+        }
+
+        // Накопленные приращения - в base; новые продолжают копиться в delta. Пишет только reconcile()
+        long fold() {
+            long pending = delta.sum();
+            base += pending;
+            delta.add(-pending);
+            return base;
+        }
+    }
+}
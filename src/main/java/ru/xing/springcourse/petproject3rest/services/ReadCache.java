@@ -0,0 +1,190 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Component;
+import ru.xing.springcourse.petproject3rest.config.ReadCacheProperties;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBucketDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorDTO;
+import ru.xing.springcourse.petproject3rest.util.CacheValueCodec;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Локальные кэши чтения (Caffeine) с ограничением размера и времени жизни.
+ * Сбрасываются после коммита записи по сигналам DataVersions (свои записи и записи других экземпляров):
+ * карточки сенсоров и агрегаты - только для сенсоров, в которые писали; первые страницы списков - при любой
+ * записи (в них общий счётчик и сводки всех сенсоров); измерения по id не меняются и сбрасываются
+ * только массовыми изменениями. Промах по карточке или агрегату идёт в общий кэш L2 (SharedCache), затем в БД.
+ * Загрузка идёт внутри Caffeine get(key, loader): сброс ключа ждёт его загрузку, поэтому прочитанное
+ * до коммита в кэше не остаётся. invalidateAll() идущие загрузки не видит - для групповых сбросов
+ * в ключ входит поколение, после сброса старые ключи недостижимы и вытесняются по размеру и TTL.
+ * TTL ограничивает устаревание при записи через другой экземпляр приложения.
+ */
+@Component
+public class ReadCache implements DataVersions.Listener {
+    private final boolean enabled;
+    private final int firstPages;
+    private final Cache<MeasurementKey, MeasurementDTO> measurements;
+    private final Cache<SensorKey, SensorDTO> sensors;
+    private final Cache<PageKey, Page<MeasurementDTO>> measurementPages;
+    private final Cache<PageKey, Page<SensorDTO>> sensorPages;
+    private final Cache<AggregateKey, List<MeasurementBucketDTO>> aggregates;
+    private final SharedCache sharedCache;
+    // Ключи карточек по сенсору: сброс сенсора без обхода всего кэша
+    private final Map<Integer, Set<SensorKey>> sensorKeys = new ConcurrentHashMap<>();
+    // Поколения сенсоров для агрегатов: ключей на сенсор неограниченно много (любые окна),
+    // поэтому вместо индекса ключей поколения сенсоров входят в ключ
+    private final Map<Integer, Long> sensorGenerations = new ConcurrentHashMap<>();
+    // Растёт при массовых изменениях
+    private final AtomicLong generation = new AtomicLong();
+    // Растёт при любой записи
+    private final AtomicLong pageGeneration = new AtomicLong();
+
+    public ReadCache(ReadCacheProperties properties, SharedCache sharedCache, DataVersions dataVersions,
+                     MeterRegistry meterRegistry) {
+        this.sharedCache = sharedCache;
+        this.enabled = properties.isEnabled();
+        this.firstPages = properties.getFirstPages();
+        this.measurements = build("measurements", properties.getMeasurements(), meterRegistry);
+        this.sensors = build("sensors", properties.getSensors(), meterRegistry);
+        this.measurementPages = build("measurement-pages", properties.getPages(), meterRegistry);
+        this.sensorPages = build("sensor-pages", properties.getPages(), meterRegistry);
+        this.aggregates = build("aggregates", properties.getAggregates(), meterRegistry);
+
+        dataVersions.addListener(this);
+    }
+
+    // Стандартные метрики Caffeine (cache.gets по hit/miss, cache.evictions, cache.size) плюс доля
+    // попаданий и время загрузки: их Micrometer сам регистрирует только для LoadingCache
+    private static <K, V> Cache<K, V> build(String name, ReadCacheProperties.Spec spec, MeterRegistry meterRegistry) {
+        Cache<K, V> cache = Caffeine.newBuilder()
+                .maximumSize(spec.getMaximumSize())
+                .expireAfterWrite(spec.getTtl())
+                .recordStats()
+                .build();
+
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, name);
+        Gauge.builder("cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .tag("cache", name)
+                .description("Share of lookups served from the cache")
+                .register(meterRegistry);
+        FunctionTimer.builder("cache.loads", cache, c -> c.stats().loadCount(),
+                        c -> c.stats().totalLoadTime(), TimeUnit.NANOSECONDS)
+                .tag("cache", name)
+                .description("Loads on cache misses and the time spent on them")
+                .register(meterRegistry);
+        return cache;
+    }
+
+    public MeasurementDTO measurement(int id, Supplier<MeasurementDTO> loader) {
+        return enabled
+                ? measurements.get(new MeasurementKey(generation.get(), id), key -> loader.get())
+                : loader.get();
+    }
+
+    // recent уже приведён к границам
+    public SensorDTO sensor(int sensorId, int recent, Supplier<SensorDTO> loader) {
+        Supplier<SensorDTO> shared = () -> sharedCache.get("sensor", sensorId + ":" + recent, List.of(sensorId),
+                CacheValueCodec.SENSOR, loader);
+        if (!enabled) {
+            return shared.get();
+        }
+
+        return sensors.get(new SensorKey(generation.get(), sensorId, recent), key -> {
+            // До чтения из БД: сброс, пришедший после этой отметки, найдёт и эту загрузку
+            sensorKeys.computeIfAbsent(sensorId, id -> ConcurrentHashMap.newKeySet()).add(key);
+            return shared.get();
+        });
+    }
+
+    public List<MeasurementBucketDTO> aggregate(List<Integer> sensorIds, LocalDateTime from, LocalDateTime to,
+                                                Duration width, Supplier<List<MeasurementBucketDTO>> loader) {
+        Supplier<List<MeasurementBucketDTO>> shared = () -> sharedCache.get("aggregate",
+                sensorIds.stream().map(String::valueOf).collect(Collectors.joining(",")) + "|" + from + "|" + to
+                        + "|" + width.toSeconds(),
+                sensorIds, CacheValueCodec.BUCKETS, loader);
+        if (!enabled) {
+            return shared.get();
+        }
+
+        List<Long> generations = sensorIds.stream().map(id -> sensorGenerations.getOrDefault(id, 0L)).toList();
+        return aggregates.get(new AggregateKey(generation.get(), generations, sensorIds, from, to, width),
+                key -> shared.get());
+    }
+
+    public Page<MeasurementDTO> measurementPage(boolean rainingOnly, Pageable pageable,
+                                                Supplier<Page<MeasurementDTO>> loader) {
+        return isCached(pageable)
+                ? measurementPages.get(new PageKey(pageGeneration.get(), rainingOnly, pageable), key -> loader.get())
+                : loader.get();
+    }
+
+    public Page<SensorDTO> sensorPage(Pageable pageable, Supplier<Page<SensorDTO>> loader) {
+        return isCached(pageable)
+                ? sensorPages.get(new PageKey(pageGeneration.get(), false, pageable), key -> loader.get())
+                : loader.get();
+    }
+
+    private boolean isCached(Pageable pageable) {
+        return enabled && pageable.isPaged() && pageable.getPageNumber() < firstPages;
+    }
+
+    @Override
+    public void sensorsChanged(Collection<Integer> sensorIds, boolean remote) {
+        for (Integer sensorId : sensorIds) {
+            sensorGenerations.merge(sensorId, 1L, Long::sum);
+            Set<SensorKey> keys = sensorKeys.remove(sensorId);
+            if (keys != null) {
+                sensors.invalidateAll(keys);
+            }
+        }
+        invalidatePages();
+    }
+
+    @Override
+    public void allChanged(boolean remote) {
+        generation.incrementAndGet();
+        measurements.invalidateAll();
+        sensorKeys.clear();
+        sensors.invalidateAll();
+        aggregates.invalidateAll();
+        invalidatePages();
+    }
+
+    private void invalidatePages() {
+        pageGeneration.incrementAndGet();
+        measurementPages.invalidateAll();
+        sensorPages.invalidateAll();
+    }
+
+    private record MeasurementKey(long generation, int id) {
+    }
+
+    private record SensorKey(long generation, int sensorId, int recent) {
+    }
+
+    private record PageKey(long generation, boolean rainingOnly, Pageable pageable) {
+    }
+
+    private record AggregateKey(long generation, List<Long> sensorGenerations, List<Integer> sensorIds,
+                                LocalDateTime from, LocalDateTime to, Duration width) {
+    }
+}
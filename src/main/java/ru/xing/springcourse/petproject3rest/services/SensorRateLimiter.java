@@ -0,0 +1,121 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.xing.springcourse.petproject3rest.config.RateLimitProperties;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Ограничение частоты измерений по сенсору.
+ * Корзина - GCRA (эквивалент token bucket): одно AtomicLong "теоретическое время прибытия" на сенсор,
+ * захват - один CAS, без блокировок. Полная корзина ничем не отличается от новой, поэтому простаивающие
+ * корзины можно просто выбрасывать.
+ */
+@Component
+@Slf4j
+public class SensorRateLimiter {
+    private final RateLimitProperties properties;
+    private final MeterRegistry meterRegistry;
+    private final LongSupplier nanoClock;
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Map<String, Counter> rejected = new ConcurrentHashMap<>();
+
+    @Autowired
+    public SensorRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry) {
+        this(properties, meterRegistry, System::nanoTime);
+    }
+
+    public SensorRateLimiter(RateLimitProperties properties, MeterRegistry meterRegistry, LongSupplier nanoClock) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.nanoClock = nanoClock;
+
+        Gauge.builder("ingest.rate_limit.buckets", buckets, Map::size)
+                .description("Active per-sensor rate limit buckets")
+                .register(meterRegistry);
+    }
+
+    /**
+     * @return 0 - измерения приняты, иначе через сколько секунд можно повторить
+     */
+    public long tryAcquire(String sensorName, int readings) {
+        if (!properties.isEnabled()) {
+            return 0;
+        }
+
+        long waitNanos = buckets.computeIfAbsent(sensorName, this::newBucket).tryAcquire(readings, nanoClock.getAsLong());
+        if (waitNanos == 0) {
+            return 0;
+        }
+
+        rejected.computeIfAbsent(sensorName, name -> Counter.builder("ingest.rate_limit.rejected")
+                        .description("Measurements rejected by the per-sensor rate limit")
+                        .tag("sensor", name)
+                        .register(meterRegistry))
+                .increment(readings);
+        return Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    @Scheduled(fixedDelayString = "${ingest.rate-limit.eviction-interval:1m}")
+    public void evictIdleBuckets() {
+        long now = nanoClock.getAsLong();
+        int before = buckets.size();
+        buckets.values().removeIf(bucket -> bucket.isFull(now));
+        log.debug("Evicted {} idle rate limit buckets", before - buckets.size());
+    }
+
+    public int bucketCount() {
+        return buckets.size();
+    }
+
+    private Bucket newBucket(String sensorName) {
+        RateLimitProperties.Limit limit = properties.limitFor(sensorName);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / limit.getRate());
+        return new Bucket(intervalNanos, intervalNanos * Math.max(0, limit.getBurst() - 1), nanoClock.getAsLong());
+    }
+
+    private static final class Bucket {
+        // Интервал между измерениями при равномерном темпе
+        private final long intervalNanos;
+        // Насколько "теоретическое время" может опережать текущее
+        private final long burstNanos;
+        private final AtomicLong theoreticalArrival;
+
+        Bucket(long intervalNanos, long burstNanos, long now) {
+            this.intervalNanos = intervalNanos;
+            this.burstNanos = burstNanos;
+            this.theoreticalArrival = new AtomicLong(now);
+        }
+
+        // 0 - разрешено, иначе сколько наносекунд ждать
+        long tryAcquire(int readings, long now) {
+            while (true) {
+                long tat = theoreticalArrival.get();
+                long newTat = Math.max(tat, now) + readings * intervalNanos;
+                long ahead = newTat - now;
+
+                // Полная корзина пропускает даже пачку больше burst: дальше сенсор "отрабатывает" долг
+                if (ahead - intervalNanos > burstNanos && tat > now) {
+                    return ahead - intervalNanos - burstNanos;
+                }
+                if (theoreticalArrival.compareAndSet(tat, newTat)) {
+                    return 0;
+                }
+            }
+        }
+
+        boolean isFull(long now) {
+            return theoreticalArrival.get() <= now;
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.SensorRepository;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Кэш имя сенсора -> id для пути записи.
+ * Прогревается при старте, пополняется при регистрации сенсора и при промахах.
+ * Вместо загрузки сенсора отдаёт ссылку только с id (getReferenceById) - без запроса в БД.
+ */
+@Component
+@Slf4j
+public class SensorRegistry {
+    private final SensorRepository sensorRepository;
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    // Обратное отображение для бинарного формата, где сенсор передаётся по id
+    private final Map<Integer, String> names = new ConcurrentHashMap<>();
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public SensorRegistry(SensorRepository sensorRepository, MeterRegistry meterRegistry) {
+        this.sensorRepository = sensorRepository;
+
+        this.hits = Counter.builder("sensor.registry.lookups")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("sensor.registry.lookups")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        Gauge.builder("sensor.registry.size", ids, Map::size)
+                .register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        List<Sensor> sensors = sensorRepository.findAll();
+        sensors.forEach(this::register);
+        log.info("Sensor registry warmed up with {} sensors", sensors.size());
+    }
+
+    public void register(Sensor sensor) {
+        ids.put(sensor.getName(), sensor.getId());
+        names.put(sensor.getId(), sensor.getName());
+    }
+
+    public Optional<Integer> findId(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            hits.increment();
+            return Optional.of(id);
+        }
+
+        misses.increment();
+        Optional<Sensor> sensor = sensorRepository.findByName(name);
+        sensor.ifPresent(this::register);
+        return sensor.map(Sensor::getId);
+    }
+
+    public Optional<Sensor> resolve(String name) {
+        return findId(name).map(sensorRepository::getReferenceById);
+    }
+
+    public Optional<String> findName(int id) {
+        String name = names.get(id);
+        if (name != null) {
+            hits.increment();
+            return Optional.of(name);
+        }
+
+        misses.increment();
+        Optional<Sensor> sensor = sensorRepository.findById(id);
+        sensor.ifPresent(this::register);
+        return sensor.map(Sensor::getName);
+    }
+
+    public Optional<Sensor> resolveById(int id) {
+        return findName(id).map(name -> sensorRepository.getReferenceById(id));
+    }
+
+    // Разрешение всех имён пакета: промахи добираются одним запросом
+    public Map<String, Sensor> resolveAll(Collection<String> names) {
+        Map<String, Sensor> result = new HashMap<>();
+        List<String> missing = names.stream()
+                .filter(name -> !ids.containsKey(name))
+                .toList();
+
+        hits.increment(names.size() - missing.size());
+        if (!missing.isEmpty()) {
+            misses.increment(missing.size());
+            sensorRepository.findByNameIn(missing).forEach(this::register);
+        }
+
+        for (String name : names) {
+            Integer id = ids.get(name);
+            if (id != null) {
+                result.put(name, sensorRepository.getReferenceById(id));
+            }
+        }
+        return result;
+    }
+}
@@ -4,41 +4,163 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import ru.xing.springcourse.petproject3rest.dto.CursorPageDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
 import ru.xing.springcourse.petproject3rest.dto.SensorDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorSummaryDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorView;
+import ru.xing.springcourse.petproject3rest.dto.SliceDTO;
 import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementAggregateRepository;
 import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
 import ru.xing.springcourse.petproject3rest.repositories.SensorRepository;
+import ru.xing.springcourse.petproject3rest.repositories.TableStatisticsRepository;
 import ru.xing.springcourse.petproject3rest.util.BusinessException;
+import ru.xing.springcourse.petproject3rest.util.MeasurementCursor;
+import ru.xing.springcourse.petproject3rest.util.MeasurementMapper;
 import ru.xing.springcourse.petproject3rest.util.SensorMapper;
 
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 @Service
 @RequiredArgsConstructor
 @Transactional(readOnly = true)
 @Slf4j
 public class SensorService {
+    // Жёсткий предел измерений в карточке сенсора
+    public static final int MAX_RECENT_MEASUREMENTS = 100;
+
     private final SensorRepository sensorRepository;
     private final SensorMapper sensorMapper;
     private final MeasurementRepository measurementRepository;
+    private final SensorRegistry sensorRegistry;
+    private final TableStatisticsRepository tableStatisticsRepository;
+    private final MeasurementMapper measurementMapper;
+    private final LatestMeasurementSnapshot latestMeasurementSnapshot;
+    private final MeasurementAggregateRepository measurementAggregateRepository;
+    private final DataVersions dataVersions;
+    private final ReadCache readCache;
+
+    // Последние показания из снимка в памяти. Без транзакции: класс read-only транзакционный,
+    // а начало транзакции само по себе берёт соединение из пула
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public List<SensorMeasurementDTO> getCurrentReadings(List<String> names) {
+        if (names == null || names.isEmpty()) {
+            return latestMeasurementSnapshot.current();
+        }
+        return names.stream()
+                .distinct()
+                .map(latestMeasurementSnapshot::current)
+                .flatMap(Optional::stream)
+                .toList();
+    }
 
-    public SensorDTO getSensorByName(String name) {
-        // Используем метод с @EntityGraph
-        Sensor sensor = sensorRepository.findWithMeasurementsByName(name)
+    // Сенсор со сводкой и не больше MAX_RECENT_MEASUREMENTS последних измерений: память запроса
+    // не растёт с историей сенсора. Остальное - по nextCursor через getSensorMeasurements.
+    // Карточка берётся из ReadCache, запись в сенсор сбрасывает только его карточки
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public SensorDTO getSensorByName(String name, int recent) {
+        int sensorId = sensorRegistry.findId(name)
                 .orElseThrow(() -> new BusinessException("Sensor not found"));
+        int limit = Math.min(Math.max(recent, 0), MAX_RECENT_MEASUREMENTS);
+
+        return readCache.sensor(sensorId, limit, () -> loadSensor(name, sensorId, limit));
+    }
+
+    private SensorDTO loadSensor(String name, int sensorId, int limit) {
+        SensorSummaryDTO summary = measurementAggregateRepository.summarize(List.of(sensorId))
+                .getOrDefault(sensorId, SensorSummaryDTO.empty());
+        CursorPageDTO<MeasurementDTO> page = limit == 0
+                ? new CursorPageDTO<>(List.of(), null, false)
+                : seek(sensorId, null, null, null, limit, Sort.Direction.DESC);
 
-        log.info("Found sensor '{}' with {} measurements",
-                name, sensor.getMeasurements().size());
-        return sensorMapper.toDTO(sensor);
+        log.info("Found sensor '{}' with {} measurements, returning {} recent",
+                name, summary.getMeasurementCount(), page.getContent().size());
+        return SensorDTO.builder()
+                .name(name)
+                .summary(summary)
+                .measurements(page.getContent())
+                .nextCursor(page.getNextCursor())
+                .build();
     }
 
-    // Получить список всех сенсоров с измерениями
+    // Получить список всех сенсоров со сводкой по измерениям: страница сенсоров и сводка - два запроса,
+    // объём ответа не зависит от числа измерений. Сами измерения - GET /api/sensors/{name}/measurements.
+    // Первые страницы - из ReadCache
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public Page<SensorDTO> getAllSensors(Pageable pageable) {
-        // Используем метод с @EntityGraph
-        Page<Sensor> sensors = sensorRepository.findAll(pageable);
+        return readCache.sensorPage(pageable, () -> {
+            Page<SensorView> sensors = sensorRepository.findAllViews(pageable);
+            Map<Integer, SensorSummaryDTO> summaries = loadSummaries(sensors);
+
+            log.info("Retrieved {} sensors with summaries", sensors.getNumberOfElements());
+            return sensors.map(sensor -> sensorMapper.toDTO(sensor, summaries.getOrDefault(sensor.id(), SensorSummaryDTO.empty())));
+        });
+    }
+
+    // То же без COUNT(*); при approximateTotal - оценка числа сенсоров из pg_class.reltuples
+    public SliceDTO<SensorDTO> getSensorsSlice(Pageable pageable, boolean approximateTotal) {
+        Slice<SensorView> views = sensorRepository.findAllViewsBy(pageable);
+        Map<Integer, SensorSummaryDTO> summaries = loadSummaries(views);
+        Slice<SensorDTO> sensors = views.map(
+                sensor -> sensorMapper.toDTO(sensor, summaries.getOrDefault(sensor.id(), SensorSummaryDTO.empty())));
+
+        return SliceDTO.of(sensors, approximateTotal
+                ? tableStatisticsRepository.estimateTableRows(TableStatisticsRepository.SENSOR_TABLE)
+                : null);
+    }
+
+    // Измерения сенсора за окно [from, to) постранично по курсору; направление берётся из курсора
+    public CursorPageDTO<MeasurementDTO> getSensorMeasurements(String name, LocalDateTime from, LocalDateTime to,
+                                                              String after, int size, Sort.Direction direction) {
+        if (from != null && to != null && from.isAfter(to)) {
+            throw new BusinessException("'from' must not be after 'to'");
+        }
+        int sensorId = sensorRegistry.findId(name)
+                .orElseThrow(() -> new BusinessException("Sensor not found: " + name));
+
+        MeasurementCursor cursor = null;
+        if (after != null && !after.isBlank()) {
+            cursor = MeasurementCursor.decode(after);
+            if (cursor.sort() != MeasurementCursor.SortKey.MEASUREMENT_DATE_TIME) {
+                throw new BusinessException("Invalid cursor: " + after);
+            }
+            direction = cursor.direction();
+        }
+        return seek(sensorId, from, to, cursor, size, direction);
+    }
+
+    private CursorPageDTO<MeasurementDTO> seek(int sensorId, LocalDateTime from, LocalDateTime to,
+                                               MeasurementCursor cursor, int size, Sort.Direction direction) {
+        List<MeasurementView> rows = measurementRepository.seekBySensor(sensorId, from, to, direction, cursor, size + 1);
+        boolean hasNext = rows.size() > size;
+        if (hasNext) {
+            rows = rows.subList(0, size);
+        }
+
+        String nextCursor = hasNext
+                ? MeasurementCursor.after(rows.get(rows.size() - 1),
+                        MeasurementCursor.SortKey.MEASUREMENT_DATE_TIME, direction).encode()
+                : null;
+        return new CursorPageDTO<>(rows.stream().map(measurementMapper::toDTO).toList(), nextCursor, hasNext);
+    }
+
+    private Map<Integer, SensorSummaryDTO> loadSummaries(Slice<SensorView> sensors) {
+        if (sensors.isEmpty()) {
+            return Map.of();
+        }
 
-        log.info("Retrieved {} sensors with measurements", sensors.getNumberOfElements());
-        return sensors.map(sensorMapper::toDTO);
+        return measurementAggregateRepository.summarize(sensors.map(SensorView::id).getContent());
     }
 
     @Transactional
@@ -49,7 +171,9 @@ public class SensorService {
 
         Sensor sensor = new Sensor();
         sensor.setName(name);
-        sensorRepository.save(sensor);
+        Sensor saved = sensorRepository.save(sensor);
+        sensorRegistry.register(saved);
+        dataVersions.touch(List.of(saved.getId()));
 
         log.info("Sensor registered: {}", name);
     }
@@ -0,0 +1,365 @@
+package ru.xing.springcourse.petproject3rest.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.lang.Nullable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import ru.xing.springcourse.petproject3rest.config.SharedCacheProperties;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.util.CacheValueCodec;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Общий кэш L2 в Redis за локальными кэшами экземпляров: сводки и карточки сенсоров, агрегаты,
+ * последние показания. Значения - в бинарном формате CacheValueCodec.
+ * Инвалидация по сенсорам без удаления ключей: у каждого сенсора счётчик поколения (INCR при записи),
+ * поколения всех сенсоров значения входят в его ключ - после записи старые ключи недостижимы и истекают по TTL.
+ * Поколения читаются тем же Lua-скриптом, что и значение, до загрузки из БД, поэтому загрузка,
+ * начатая до записи, кладёт результат под старый ключ.
+ * Промах по ключу загружает один экземпляр (SET NX блокировка), остальные ждут его результат до lockWait.
+ * Любая ошибка Redis переводит кэш в режим "только L1" на retryInterval; восстановление проверяет
+ * probe() и сообщает подписчикам (addRecoveryListener).
+ */
+@Component
+@Slf4j
+public class SharedCache {
+    private static final long POLL_MILLIS = 20;
+
+    // KEYS - счётчики поколений, ARGV[1] - ключ без поколений; {полный ключ, значение или nil}
+    private static final RedisScript<List> READ = RedisScript.of("""
+            local gens = redis.call('MGET', unpack(KEYS))
+            for i = 1, #KEYS do
+              if not gens[i] then gens[i] = '0' end
+            end
+            local key = ARGV[1] .. ':' .. table.concat(gens, '.')
+            return {key, redis.call('GET', key)}
+            """, List.class);
+
+    // KEYS[1] - хэш последних показаний, ARGV - пары id сенсора / показание; заменяет только более новым.
+    // Сравнение побайтно: время в начале показания big-endian, а строки Lua сравниваются по локали
+    private static final RedisScript<Long> OFFER_LATEST = RedisScript.of("""
+            local function newer(a, b)
+              for i = 1, %d do
+                local x, y = string.byte(a, i), string.byte(b, i)
+                if x ~= y then return x > y end
+              end
+              return false
+            end
+            local replaced = 0
+            for i = 1, #ARGV, 2 do
+              local current = redis.call('HGET', KEYS[1], ARGV[i])
+              if not current or newer(ARGV[i + 1], current) then
+                redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+                replaced = replaced + 1
+              end
+            end
+            return replaced
+            """.formatted(CacheValueCodec.READING_TIME_BYTES), Long.class);
+
+    private final SharedCacheProperties properties;
+    private final RedisTemplate<String, byte[]> redis;
+    private final String prefix;
+    private final byte[] nodeId = UUID.randomUUID().toString().getBytes(StandardCharsets.UTF_8);
+    private final List<Runnable> recoveryListeners = new CopyOnWriteArrayList<>();
+    // До первой успешной проверки работаем только с L1
+    private volatile boolean available;
+    private volatile long retryAt = System.nanoTime();
+
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter errors;
+    private final Counter lockWaitHits;
+    private final Counter lockWaitTimeouts;
+
+    // connectionFactory не нужен, если shared-cache.enabled=false
+    public SharedCache(@Nullable RedisConnectionFactory connectionFactory, SharedCacheProperties properties,
+                       MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.prefix = properties.getKeyPrefix() + "v" + CacheValueCodec.FORMAT_VERSION + ":";
+
+        if (properties.isEnabled()) {
+            redis = new RedisTemplate<>();
+            redis.setConnectionFactory(connectionFactory);
+            redis.setKeySerializer(RedisSerializer.string());
+            redis.setValueSerializer(RedisSerializer.byteArray());
+            redis.setHashKeySerializer(RedisSerializer.string());
+            redis.setHashValueSerializer(RedisSerializer.byteArray());
+            redis.afterPropertiesSet();
+        } else {
+            redis = null;
+        }
+
+        this.hits = Counter.builder("cache.shared.gets").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("cache.shared.gets").tag("result", "miss").register(meterRegistry);
+        this.errors = Counter.builder("cache.shared.errors")
+                .description("Failed Redis calls; each opens the L1-only fallback")
+                .register(meterRegistry);
+        this.lockWaitHits = Counter.builder("cache.shared.lock.waits").tag("result", "hit")
+                .description("Misses served by another instance's load")
+                .register(meterRegistry);
+        this.lockWaitTimeouts = Counter.builder("cache.shared.lock.waits").tag("result", "timeout")
+                .register(meterRegistry);
+        Gauge.builder("cache.shared.available", this, cache -> cache.isAvailable() ? 1 : 0)
+                .description("1 when Redis is used as L2, 0 when serving from L1 only")
+                .register(meterRegistry);
+    }
+
+    public boolean isAvailable() {
+        return available;
+    }
+
+    public String channel() {
+        return prefix + "invalidation";
+    }
+
+    public void addRecoveryListener(Runnable listener) {
+        recoveryListeners.add(listener);
+    }
+
+    /**
+     * Значение из L2 или loader (результат кладётся в L2). Ошибки loader-а пробрасываются как есть,
+     * ошибки Redis - нет: без Redis это просто loader.get().
+     * @param sensorIds сенсоры, запись в которые меняет значение
+     */
+    public <T> T get(String cache, String key, Collection<Integer> sensorIds, CacheValueCodec.Codec<T> codec,
+                     Supplier<T> loader) {
+        if (!available) {
+            return loader.get();
+        }
+
+        String fullKey;
+        try {
+            List<?> found = redis.execute(READ, generationKeys(sensorIds), bytes(cache + ":" + key));
+            fullKey = new String((byte[]) found.get(0), StandardCharsets.UTF_8);
+            T value = found.size() > 1 ? decode(codec, (byte[]) found.get(1)) : null;
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+        } catch (DataAccessException e) {
+            fail(e);
+            return loader.get();
+        }
+        misses.increment();
+
+        String lockKey = fullKey + ":lock";
+        boolean locked = false;
+        try {
+            locked = Boolean.TRUE.equals(redis.opsForValue().setIfAbsent(lockKey, nodeId, properties.getLockTtl()));
+            if (!locked) {
+                T value = awaitLoad(fullKey, lockKey, codec);
+                if (value != null) {
+                    return value;
+                }
+            }
+        } catch (DataAccessException e) {
+            fail(e);
+            return loader.get();
+        }
+
+        try {
+            T value = loader.get();
+            if (value != null) {
+                put(fullKey, CacheValueCodec.encode(codec, value));
+            }
+            return value;
+        } finally {
+            if (locked) {
+                // Блокировка могла истечь и достаться другому - тогда он лишь загрузит ключ ещё раз
+                call(() -> redis.delete(lockKey));
+            }
+        }
+    }
+
+    // Ждём, пока держатель блокировки положит значение; null - не дождались или он загрузку бросил
+    private <T> T awaitLoad(String fullKey, String lockKey, CacheValueCodec.Codec<T> codec) {
+        long deadline = System.nanoTime() + properties.getLockWait().toNanos();
+        while (System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+            List<byte[]> values = redis.opsForValue().multiGet(List.of(fullKey, lockKey));
+            T value = values == null ? null : decode(codec, values.get(0));
+            if (value != null) {
+                lockWaitHits.increment();
+                return value;
+            }
+            if (values == null || values.get(1) == null) {
+                return null;
+            }
+        }
+        lockWaitTimeouts.increment();
+        return null;
+    }
+
+    private void put(String fullKey, byte[] value) {
+        long ttl = properties.getTtl().toMillis();
+        long jitter = (long) (ttl * properties.getTtlJitter());
+        long millis = ttl + (jitter > 0 ? ThreadLocalRandom.current().nextLong(jitter) : 0);
+        call(() -> redis.opsForValue().set(fullKey, value, millis, TimeUnit.MILLISECONDS));
+    }
+
+    // Запись в сенсоры: новое поколение делает недостижимыми все их значения в L2
+    public boolean invalidate(Collection<Integer> sensorIds) {
+        if (sensorIds.isEmpty()) {
+            return true;
+        }
+        return call(() -> redis.executePipelined((RedisCallback<Object>) connection -> {
+            for (Integer sensorId : sensorIds) {
+                connection.stringCommands().incr(bytes(prefix + "gen:" + sensorId));
+            }
+            return null;
+        }));
+    }
+
+    public boolean invalidateAll() {
+        return call(() -> redis.opsForValue().increment(prefix + "gen:all"));
+    }
+
+    public boolean publish(byte[] message) {
+        return call(() -> redis.convertAndSend(channel(), message));
+    }
+
+    // Последние показания по id сенсора; в L2 остаётся более новое из имеющегося и предложенного
+    public boolean offerLatest(Map<Integer, MeasurementDTO> readings) {
+        if (readings.isEmpty()) {
+            return true;
+        }
+
+        List<byte[]> args = new ArrayList<>(readings.size() * 2);
+        readings.forEach((sensorId, reading) -> {
+            args.add(bytes(String.valueOf(sensorId)));
+            args.add(CacheValueCodec.encode(CacheValueCodec.READING, reading));
+        });
+        return call(() -> redis.execute(OFFER_LATEST, List.of(prefix + "latest"), args.toArray()));
+    }
+
+    // Пустая карта, если Redis недоступен
+    public Map<Integer, MeasurementDTO> latest(Collection<Integer> sensorIds) {
+        Map<Integer, MeasurementDTO> readings = new HashMap<>();
+        if (!available || sensorIds.isEmpty()) {
+            return readings;
+        }
+
+        List<Integer> ids = List.copyOf(sensorIds);
+        call(() -> {
+            List<Object> values = redis.opsForHash().multiGet(prefix + "latest",
+                    ids.stream().map(id -> (Object) String.valueOf(id)).toList());
+            for (int i = 0; i < ids.size(); i++) {
+                MeasurementDTO reading = decode(CacheValueCodec.READING, (byte[]) values.get(i));
+                if (reading != null) {
+                    readings.put(ids.get(i), reading);
+                }
+            }
+        });
+        return readings;
+    }
+
+    public Map<Integer, MeasurementDTO> latest() {
+        Map<Integer, MeasurementDTO> readings = new HashMap<>();
+        if (!available) {
+            return readings;
+        }
+
+        call(() -> {
+            redis.<String, byte[]>opsForHash().entries(prefix + "latest").forEach((sensorId, value) -> {
+                MeasurementDTO reading = decode(CacheValueCodec.READING, value);
+                if (reading != null) {
+                    readings.put(Integer.valueOf(sensorId), reading);
+                }
+            });
+        });
+        return readings;
+    }
+
+    // Пока Redis недоступен - раз в retryInterval; первая проверка - сразу при старте планировщика
+    @Scheduled(fixedDelayString = "${shared-cache.retry-interval:5s}")
+    public void probe() {
+        if (!properties.isEnabled() || available || System.nanoTime() - retryAt < 0) {
+            return;
+        }
+
+        try {
+            redis.execute((RedisCallback<String>) connection -> connection.ping());
+        } catch (DataAccessException e) {
+            log.debug("Shared cache is still unavailable: {}", e.getMessage());
+            return;
+        }
+        available = true;
+        log.info("Shared cache (Redis) is available, using it as L2");
+        recoveryListeners.forEach(Runnable::run);
+    }
+
+    // true - команда выполнена; ошибка Redis открывает режим "только L1"
+    private boolean call(Runnable command) {
+        if (!available) {
+            return false;
+        }
+
+        try {
+            command.run();
+            return true;
+        } catch (DataAccessException e) {
+            fail(e);
+            return false;
+        }
+    }
+
+    private void fail(DataAccessException e) {
+        errors.increment();
+        retryAt = System.nanoTime() + properties.getRetryInterval().toNanos();
+        if (available) {
+            available = false;
+            log.warn("Shared cache (Redis) is unavailable, serving from local cache only: {}", e.getMessage());
+        }
+    }
+
+    private List<String> generationKeys(Collection<Integer> sensorIds) {
+        List<String> keys = new ArrayList<>(sensorIds.size() + 1);
+        keys.add(prefix + "gen:all");
+        sensorIds.forEach(sensorId -> keys.add(prefix + "gen:" + sensorId));
+        return keys;
+    }
+
+    // Значение другой версии формата или повреждённое - считаем промахом
+    private <T> T decode(CacheValueCodec.Codec<T> codec, @Nullable byte[] value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return CacheValueCodec.decode(codec, value);
+        } catch (IOException e) {
+            log.warn("Discarding unreadable shared cache value: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
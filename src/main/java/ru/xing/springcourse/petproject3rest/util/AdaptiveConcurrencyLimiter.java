@@ -0,0 +1,86 @@
+package ru.xing.springcourse.petproject3rest.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Адаптивный лимит одновременных запросов (градиентный алгоритм в духе Netflix concurrency-limits).
+ * Сравнивает краткосрочную латентность с долгосрочной базовой: если запросы замедляются,
+ * лимит сжимается, если латентность в норме и лимит используется - растёт на sqrt(limit).
+ */
+public class AdaptiveConcurrencyLimiter {
+    private static final double SHORT_ALPHA = 0.2;
+    private static final double LONG_ALPHA = 0.005;
+    private static final double SMOOTHING = 0.2;
+    private static final double MIN_GRADIENT = 0.5;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final double tolerance;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private volatile double limit;
+    // Доступ только под this
+    private double shortRtt;
+    private double longRtt;
+
+    public AdaptiveConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance) {
+        this.limit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.tolerance = tolerance;
+    }
+
+    public boolean tryAcquire() {
+        while (true) {
+            int current = inFlight.get();
+            if (current >= (int) limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    // dropped - запрос завершился ошибкой сервера, считаем это признаком перегрузки
+    public void release(long rttNanos, boolean dropped) {
+        int inFlightAtStart = inFlight.getAndDecrement();
+        onSample(rttNanos, dropped, inFlightAtStart);
+    }
+
+    public int getLimit() {
+        return (int) limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    private synchronized void onSample(long rttNanos, boolean dropped, int inFlightAtStart) {
+        if (longRtt == 0) {
+            shortRtt = rttNanos;
+            longRtt = rttNanos;
+        }
+
+        shortRtt = shortRtt * (1 - SHORT_ALPHA) + rttNanos * SHORT_ALPHA;
+        longRtt = longRtt * (1 - LONG_ALPHA) + rttNanos * LONG_ALPHA;
+
+        // После долгой перегрузки база уезжает вверх - возвращаем её, когда латентность снова упала
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        double gradient = dropped
+                ? MIN_GRADIENT
+                : Math.max(MIN_GRADIENT, Math.min(1.0, tolerance * longRtt / shortRtt));
+        double newLimit = limit * gradient + Math.sqrt(limit);
+
+        // Не раздуваем лимит, которым никто не пользуется
+        if (newLimit > limit && inFlightAtStart < limit / 2) {
+            return;
+        }
+
+        newLimit = limit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+        limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+    }
+}
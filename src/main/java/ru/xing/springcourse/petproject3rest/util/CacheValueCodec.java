@@ -0,0 +1,198 @@
+package ru.xing.springcourse.petproject3rest.util;
+
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBucketDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorSummaryDTO;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Бинарный формат значений общего кэша (Redis): DataOutput, big-endian, без имён полей и схемы.
+ * Время - секунды и наносекунды от 1970-01-01T00:00 без часового пояса (LocalDateTime как есть),
+ * необязательные поля - с байтом присутствия. Версия формата входит в префикс ключей SharedCache:
+ * после смены формата старые записи просто не находятся.
+ */
+public final class CacheValueCodec {
+    public static final int FORMAT_VERSION = 1;
+    // Время в начале последнего показания - 12 байт, сравнимых побайтно (см. SharedCache)
+    public static final int READING_TIME_BYTES = 12;
+
+    public static final Codec<SensorDTO> SENSOR = new Codec<>() {
+        @Override
+        public void write(DataOutput out, SensorDTO sensor) throws IOException {
+            out.writeUTF(sensor.getName());
+
+            SensorSummaryDTO summary = sensor.getSummary();
+            out.writeBoolean(summary != null);
+            if (summary != null) {
+                out.writeLong(summary.getMeasurementCount());
+                writeTime(out, summary.getFirstMeasurementAt());
+                writeTime(out, summary.getLastMeasurementAt());
+                writeDouble(out, summary.getLastValue());
+                writeDouble(out, summary.getRainRatio());
+            }
+
+            List<MeasurementDTO> measurements = sensor.getMeasurements();
+            out.writeInt(measurements == null ? -1 : measurements.size());
+            if (measurements != null) {
+                for (MeasurementDTO measurement : measurements) {
+                    writeDouble(out, measurement.getValue());
+                    writeBoolean(out, measurement.getRaining());
+                    writeTime(out, measurement.getMeasurementDateTime());
+                    writeString(out, measurement.getIdempotencyKey());
+                }
+            }
+            writeString(out, sensor.getNextCursor());
+        }
+
+        @Override
+        public SensorDTO read(DataInput in) throws IOException {
+            String name = in.readUTF();
+
+            SensorSummaryDTO summary = null;
+            if (in.readBoolean()) {
+                summary = new SensorSummaryDTO(in.readLong(), readTime(in), readTime(in), readDouble(in), readDouble(in));
+            }
+
+            int size = in.readInt();
+            List<MeasurementDTO> measurements = null;
+            if (size >= 0) {
+                measurements = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    measurements.add(new MeasurementDTO(readDouble(in), readBoolean(in), readTime(in), readString(in)));
+                }
+            }
+            return new SensorDTO(name, summary, measurements, readString(in));
+        }
+    };
+
+    public static final Codec<List<MeasurementBucketDTO>> BUCKETS = new Codec<>() {
+        @Override
+        public void write(DataOutput out, List<MeasurementBucketDTO> buckets) throws IOException {
+            out.writeInt(buckets.size());
+            for (MeasurementBucketDTO bucket : buckets) {
+                out.writeUTF(bucket.getSensorName());
+                writeTime(out, bucket.getBucketStart());
+                out.writeDouble(bucket.getMin());
+                out.writeDouble(bucket.getMax());
+                out.writeDouble(bucket.getAvg());
+                out.writeLong(bucket.getCount());
+                out.writeDouble(bucket.getRainFraction());
+            }
+        }
+
+        @Override
+        public List<MeasurementBucketDTO> read(DataInput in) throws IOException {
+            int size = in.readInt();
+            List<MeasurementBucketDTO> buckets = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                buckets.add(new MeasurementBucketDTO(in.readUTF(), readTime(in), in.readDouble(), in.readDouble(),
+                        in.readDouble(), in.readLong(), in.readDouble()));
+            }
+            return buckets;
+        }
+    };
+
+    // Последнее показание сенсора: время (обязательно, неотрицательное) первым, без байта присутствия
+    public static final Codec<MeasurementDTO> READING = new Codec<>() {
+        @Override
+        public void write(DataOutput out, MeasurementDTO measurement) throws IOException {
+            LocalDateTime time = measurement.getMeasurementDateTime();
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+            out.writeDouble(measurement.getValue());
+            out.writeBoolean(measurement.getRaining());
+        }
+
+        @Override
+        public MeasurementDTO read(DataInput in) throws IOException {
+            LocalDateTime time = LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+            return new MeasurementDTO(in.readDouble(), in.readBoolean(), time, null);
+        }
+    };
+
+    private CacheValueCodec() {
+    }
+
+    public static <T> byte[] encode(Codec<T> codec, T value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            codec.write(out, value);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // IOException - значение обрезано или в другом формате
+    public static <T> T decode(Codec<T> codec, byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        T value = codec.read(in);
+        if (in.available() > 0) {
+            throw new IOException("Trailing bytes after cached value: " + in.available());
+        }
+        return value;
+    }
+
+    private static void writeTime(DataOutput out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime readTime(DataInput in) throws IOException {
+        return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+    }
+
+    private static void writeDouble(DataOutput out, Double value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeDouble(value);
+        }
+    }
+
+    private static Double readDouble(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readDouble() : null;
+    }
+
+    // 0 - null, 1 - false, 2 - true
+    private static void writeBoolean(DataOutput out, Boolean value) throws IOException {
+        out.writeByte(value == null ? 0 : value ? 2 : 1);
+    }
+
+    private static Boolean readBoolean(DataInput in) throws IOException {
+        byte value = in.readByte();
+        return value == 0 ? null : value == 2;
+    }
+
+    private static void writeString(DataOutput out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(DataInput in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    public interface Codec<T> {
+        void write(DataOutput out, T value) throws IOException;
+
+        T read(DataInput in) throws IOException;
+    }
+}
@@ -0,0 +1,76 @@
+package ru.xing.springcourse.petproject3rest.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Поля CSV по RFC 4180: поле с запятой, кавычкой или переводом строки берётся в кавычки, кавычка внутри удваивается.
+ * Общий формат выгрузки (MeasurementExportService) и загрузки (MeasurementImportService).
+ */
+public final class CsvFields {
+    private CsvFields() {
+    }
+
+    public static String quote(String field) {
+        if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+            return field;
+        }
+        return '"' + field.replace("\"", "\"\"") + '"';
+    }
+
+    // false - запись продолжается на следующей строке: внутри кавычек был перевод строки
+    public static boolean isComplete(String record) {
+        int quotes = 0;
+        for (int i = 0; i < record.length(); i++) {
+            if (record.charAt(i) == '"') {
+                quotes++;
+            }
+        }
+        return quotes % 2 == 0;
+    }
+
+    // Поля без кавычек обрезаются по пробелам, в кавычках - берутся как есть.
+    // IllegalArgumentException, если после закрывающей кавычки не запятая
+    public static List<String> split(String record) {
+        List<String> fields = new ArrayList<>();
+        int i = 0;
+        while (true) {
+            while (i < record.length() && record.charAt(i) == ' ') {
+                i++;
+            }
+            if (i < record.length() && record.charAt(i) == '"') {
+                StringBuilder field = new StringBuilder();
+                i++;
+                while (true) {
+                    if (i >= record.length()) {
+                        throw new IllegalArgumentException("Unterminated quoted field");
+                    }
+                    char c = record.charAt(i++);
+                    if (c != '"') {
+                        field.append(c);
+                    } else if (i < record.length() && record.charAt(i) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        break;
+                    }
+                }
+                while (i < record.length() && record.charAt(i) == ' ') {
+                    i++;
+                }
+                if (i < record.length() && record.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Unexpected character after quoted field");
+                }
+                fields.add(field.toString());
+            } else {
+                int end = record.indexOf(',', i);
+                fields.add(record.substring(i, end < 0 ? record.length() : end).trim());
+                i = end < 0 ? record.length() : end;
+            }
+            if (i >= record.length()) {
+                return fields;
+            }
+            i++;
+        }
+    }
+}
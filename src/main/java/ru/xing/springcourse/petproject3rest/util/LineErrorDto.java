@@ -0,0 +1,4 @@
+package ru.xing.springcourse.petproject3rest.util;
+
+public record LineErrorDto(long line, String message) {
+}
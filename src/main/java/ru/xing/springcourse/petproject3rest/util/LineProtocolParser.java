@@ -0,0 +1,66 @@
+package ru.xing.springcourse.petproject3rest.util;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Разбор строки TCP line-протокола: sensor,value,raining[,timestamp].
+ * timestamp - epoch-millis или ISO-8601 без зоны, пустой - текущее время.
+ */
+public final class LineProtocolParser {
+    private static final double MIN_VALUE = -100.0;
+    private static final double MAX_VALUE = 100.0;
+
+    private LineProtocolParser() {
+    }
+
+    public record LineRecord(String sensorName, double value, boolean raining, LocalDateTime measurementDateTime) {
+    }
+
+    // IllegalArgumentException с причиной, если строка не разбирается
+    public static LineRecord parse(String line) {
+        String[] fields = line.split(",", -1);
+        if (fields.length < 3 || fields.length > 4) {
+            throw new IllegalArgumentException("Expected sensor,value,raining[,timestamp]");
+        }
+
+        String sensorName = fields[0].trim();
+        if (sensorName.isEmpty()) {
+            throw new IllegalArgumentException("Sensor name is empty");
+        }
+
+        double value;
+        try {
+            value = Double.parseDouble(fields[1].trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Value is not a number: " + fields[1]);
+        }
+        if (!(value >= MIN_VALUE && value <= MAX_VALUE)) {
+            throw new IllegalArgumentException("Value is out of range: " + value);
+        }
+
+        String raining = fields[2].trim();
+        if (!raining.equalsIgnoreCase("true") && !raining.equalsIgnoreCase("false")) {
+            throw new IllegalArgumentException("Raining should be true or false: " + raining);
+        }
+
+        return new LineRecord(sensorName, value, Boolean.parseBoolean(raining),
+                fields.length == 4 ? parseTimestamp(fields[3].trim()) : LocalDateTime.now());
+    }
+
+    private static LocalDateTime parseTimestamp(String timestamp) {
+        if (timestamp.isEmpty()) {
+            return LocalDateTime.now();
+        }
+        try {
+            if (Character.isDigit(timestamp.charAt(0)) && timestamp.chars().allMatch(Character::isDigit)) {
+                return LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(timestamp)), ZoneId.systemDefault());
+            }
+            return LocalDateTime.parse(timestamp);
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid timestamp: " + timestamp);
+        }
+    }
+}
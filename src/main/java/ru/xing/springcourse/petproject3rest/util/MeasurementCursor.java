@@ -0,0 +1,71 @@
+package ru.xing.springcourse.petproject3rest.util;
+
+import org.springframework.data.domain.Sort;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Позиция keyset-пагинации: последний (ключ сортировки, id) отданной страницы.
+ * Клиенту уходит непрозрачным base64url-токеном, сортировка и направление зашиты в него.
+ */
+public record MeasurementCursor(SortKey sort, Sort.Direction direction, LocalDateTime measurementDateTime, int id) {
+
+    public enum SortKey {
+        ID("id"),
+        MEASUREMENT_DATE_TIME("measurementDateTime");
+
+        private final String param;
+
+        SortKey(String param) {
+            this.param = param;
+        }
+
+        public String param() {
+            return param;
+        }
+
+        public static SortKey fromParam(String param) {
+            for (SortKey key : values()) {
+                if (key.param.equals(param)) {
+                    return key;
+                }
+            }
+            throw new BusinessException("Unsupported cursor sort: " + param + ", use id or measurementDateTime");
+        }
+    }
+
+    public static MeasurementCursor after(MeasurementView last, SortKey sort, Sort.Direction direction) {
+        return new MeasurementCursor(sort, direction,
+                sort == SortKey.MEASUREMENT_DATE_TIME ? last.measurementDateTime() : null, last.id());
+    }
+
+    // sort|direction|id|measurementDateTime
+    public String encode() {
+        String raw = sort.name() + "|" + direction.name() + "|" + id + "|" +
+                (measurementDateTime != null ? measurementDateTime : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static MeasurementCursor decode(String token) {
+        try {
+            String[] parts = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8).split("\\|", -1);
+            if (parts.length != 4) {
+                throw new IllegalArgumentException("Wrong number of parts");
+            }
+
+            SortKey sort = SortKey.valueOf(parts[0]);
+            LocalDateTime measurementDateTime = parts[3].isEmpty() ? null : LocalDateTime.parse(parts[3]);
+            if (sort == SortKey.MEASUREMENT_DATE_TIME && measurementDateTime == null) {
+                throw new IllegalArgumentException("Missing measurementDateTime");
+            }
+            return new MeasurementCursor(sort, Sort.Direction.valueOf(parts[1]), measurementDateTime,
+                    Integer.parseInt(parts[2]));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new BusinessException("Invalid cursor: " + token);
+        }
+    }
+}
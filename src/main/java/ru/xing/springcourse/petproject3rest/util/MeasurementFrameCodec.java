@@ -0,0 +1,107 @@
+package ru.xing.springcourse.petproject3rest.util;
+
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/**
+ * Компактный бинарный формат измерений для сенсоров на медленных каналах.
+ * Кадр (big-endian): magic "MF" (2 байта), версия (1 байт), число записей (uint16),
+ * затем записи по 17 байт: id сенсора (int32), время в epoch-millis (int64, 0 - "сейчас"),
+ * значение (float32), флаги (1 байт, бит 0 - дождь).
+ */
+public final class MeasurementFrameCodec {
+    public static final String MEDIA_TYPE = "application/vnd.measurement-frame";
+
+    public static final short MAGIC = 0x4D46;
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 5;
+    public static final int RECORD_SIZE = 17;
+    public static final int MAX_RECORDS = 0xFFFF;
+
+    private static final int FLAG_RAINING = 1;
+    private static final double MIN_VALUE = -100.0;
+    private static final double MAX_VALUE = 100.0;
+    // float хранит ~7 значащих цифр: 23.4f -> 23.399999618530273, округляем до 5 знаков
+    private static final double VALUE_SCALE = 1e5;
+
+    private MeasurementFrameCodec() {
+    }
+
+    /**
+     * Декодирует кадр сразу в сущности, без промежуточных DTO.
+     * sensors возвращает ссылку на сенсор по id или null, если такого сенсора нет.
+     */
+    public static List<Measurement> decode(ByteBuffer frame, IntFunction<Sensor> sensors) {
+        try {
+            if (frame.getShort() != MAGIC) {
+                throw new BusinessException("Invalid frame: bad magic");
+            }
+            byte version = frame.get();
+            if (version != VERSION) {
+                throw new BusinessException("Invalid frame: unsupported version " + version);
+            }
+
+            int count = Short.toUnsignedInt(frame.getShort());
+            if (frame.remaining() != count * RECORD_SIZE) {
+                throw new BusinessException("Invalid frame: expected " + count * RECORD_SIZE +
+                        " bytes of records, got " + frame.remaining());
+            }
+
+            ZoneId zone = ZoneId.systemDefault();
+            List<Measurement> measurements = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int sensorId = frame.getInt();
+                long epochMillis = frame.getLong();
+                float value = frame.getFloat();
+                byte flags = frame.get();
+
+                Sensor sensor = sensors.apply(sensorId);
+                if (sensor == null) {
+                    throw new BusinessException("Sensor not found: id " + sensorId);
+                }
+                if (!(value >= MIN_VALUE && value <= MAX_VALUE)) {
+                    throw new BusinessException("Invalid frame: record " + i + " value " + value + " is out of range");
+                }
+
+                measurements.add(Measurement.builder()
+                        .value(Math.round(value * VALUE_SCALE) / VALUE_SCALE)
+                        .raining((flags & FLAG_RAINING) != 0)
+                        .measurementDateTime(epochMillis == 0
+                                ? LocalDateTime.now()
+                                : LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), zone))
+                        .sensor(sensor)
+                        .build());
+            }
+            return measurements;
+        } catch (BufferUnderflowException e) {
+            throw new BusinessException("Invalid frame: truncated header");
+        }
+    }
+
+    // Клиентская сторона формата: нужна тестам, бенчмарку и утилитам для сенсоров
+    public static ByteBuffer encode(int[] sensorIds, long[] epochMillis, float[] values, boolean[] raining) {
+        int count = sensorIds.length;
+        if (count > MAX_RECORDS) {
+            throw new IllegalArgumentException("Too many records for one frame: " + count);
+        }
+
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_SIZE + count * RECORD_SIZE);
+        frame.putShort(MAGIC).put(VERSION).putShort((short) count);
+        for (int i = 0; i < count; i++) {
+            frame.putInt(sensorIds[i])
+                    .putLong(epochMillis[i])
+                    .putFloat(values[i])
+                    .put((byte) (raining[i] ? FLAG_RAINING : 0));
+        }
+        return frame.flip();
+    }
+}
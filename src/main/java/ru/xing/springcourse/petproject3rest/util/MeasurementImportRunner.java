@@ -0,0 +1,56 @@
+package ru.xing.springcourse.petproject3rest.util;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+import ru.xing.springcourse.petproject3rest.dto.ImportFormat;
+import ru.xing.springcourse.petproject3rest.dto.ImportResultDTO;
+import ru.xing.springcourse.petproject3rest.services.MeasurementImportService;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * CLI-режим импорта:
+ * java -jar app.jar --spring.main.web-application-type=none
+ *      --measurement.import.file=backfill.csv [--measurement.import.format=NDJSON]
+ * Приложение загружает файл и завершается (код 0 - без отклонённых строк, 2 - есть ошибки, 1 - сбой).
+ */
+@Component
+@ConditionalOnProperty("measurement.import.file")
+@RequiredArgsConstructor
+@Slf4j
+public class MeasurementImportRunner implements ApplicationRunner {
+
+    private final MeasurementImportService measurementImportService;
+    private final ApplicationContext applicationContext;
+
+    @Value("${measurement.import.file}")
+    private Path file;
+
+    @Value("${measurement.import.format:CSV}")
+    private ImportFormat format;
+
+    @Override
+    public void run(ApplicationArguments args) {
+        int exitCode;
+        try (InputStream input = Files.newInputStream(file)) {
+            ImportResultDTO result = measurementImportService.importMeasurements(input, format);
+            log.info("Import of {} finished: {}", file, result);
+            exitCode = result.getRejected() > 0 ? 2 : 0;
+        } catch (Exception e) {
+            log.error("Import of {} failed", file, e);
+            exitCode = 1;
+        }
+
+        int code = exitCode;
+        System.exit(SpringApplication.exit(applicationContext, () -> code));
+    }
+}
@@ -2,6 +2,7 @@ package ru.xing.springcourse.petproject3rest.util;
 
 import org.springframework.stereotype.Component;
 import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
 import ru.xing.springcourse.petproject3rest.models.Measurement;
 import ru.xing.springcourse.petproject3rest.models.Sensor;
 
@@ -18,6 +19,14 @@ public class MeasurementMapper {
                 .build();
     }
 
+    public MeasurementDTO toDTO(MeasurementView view) {
+        return MeasurementDTO.builder()
+                .value(view.value())
+                .raining(view.raining())
+                .measurementDateTime(view.measurementDateTime())
+                .build();
+    }
+
     public Measurement toEntity(MeasurementDTO measurementDTO, Sensor sensor) {
         return Measurement.builder()
                 .value(measurementDTO.getValue())
@@ -25,6 +34,7 @@ public class MeasurementMapper {
                 .measurementDateTime(measurementDTO.getMeasurementDateTime() != null
                         ? measurementDTO.getMeasurementDateTime()
                         : LocalDateTime.now())
+                .idempotencyKey(measurementDTO.getIdempotencyKey())
                 .sensor(sensor)
                 .build();
     }
@@ -3,6 +3,8 @@ package ru.xing.springcourse.petproject3rest.util;
 import org.hibernate.Hibernate;
 import org.springframework.stereotype.Component;
 import ru.xing.springcourse.petproject3rest.dto.SensorDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorSummaryDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorView;
 import ru.xing.springcourse.petproject3rest.models.Sensor;
 
 import java.util.Collections;
@@ -27,6 +29,13 @@ public class SensorMapper {
                 .build();
     }
 
+    public SensorDTO toDTO(SensorView sensor, SensorSummaryDTO summary) {
+        return SensorDTO.builder()
+                .name(sensor.name())
+                .summary(summary)
+                .build();
+    }
+
     public Sensor toEntity(SensorDTO sensorDTO) {
         Sensor sensor = new Sensor();
         sensor.setName(sensorDTO.getName());
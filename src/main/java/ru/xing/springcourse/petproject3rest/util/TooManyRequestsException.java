@@ -0,0 +1,15 @@
+package ru.xing.springcourse.petproject3rest.util;
+
+import lombok.Getter;
+
+// Перегрузка на пути записи: отдаём 429 и подсказываем клиенту, когда повторить
+@Getter
+public class TooManyRequestsException extends RuntimeException {
+
+    private final long retryAfterSeconds;
+
+    public TooManyRequestsException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
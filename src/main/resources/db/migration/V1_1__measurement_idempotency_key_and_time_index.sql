@@ -0,0 +1,18 @@
+-- Ключ идемпотентности и индекс для курсоров по времени. До Flyway их добавлял ddl-auto=update,
+-- поэтому в базе, созданной между выпусками, они уже могут быть - каждая команда идемпотентна
+ALTER TABLE measurement ADD COLUMN IF NOT EXISTS idempotency_key varchar(64);
+
+DO
+$$
+    BEGIN
+        IF NOT EXISTS (SELECT 1
+                       FROM pg_constraint
+                       WHERE conrelid = 'measurement'::regclass
+                         AND conname = 'uk_measurement_sensor_idempotency_key') THEN
+            ALTER TABLE measurement
+                ADD CONSTRAINT uk_measurement_sensor_idempotency_key UNIQUE (sensor, idempotency_key);
+        END IF;
+    END
+$$;
+
+CREATE INDEX IF NOT EXISTS idx_measurement_date_time_id ON measurement (measurement_date_time, id);
@@ -0,0 +1,29 @@
+-- Схема выпуска до Flyway, которую создавал ddl-auto=update. Всё, что добавлено после, - в следующих миграциях:
+-- базу этого выпуска baseline помечает версией 1, и они на ней выполняются
+-- На существующей базе не выполняется: spring.flyway.baseline-on-migrate помечает её версией 1
+CREATE TABLE sensor
+(
+    id   integer GENERATED BY DEFAULT AS IDENTITY,
+    name varchar(255),
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE measurement
+(
+    id                    integer GENERATED BY DEFAULT AS IDENTITY,
+    raining               boolean      NOT NULL,
+    sensor                integer,
+    value                 float(53)    NOT NULL CHECK ((value <= 100) AND (value >= -100)),
+    measurement_date_time timestamp(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fknv3ap4qdi3jkkk6hfoxi7f8k2 FOREIGN KEY (sensor) REFERENCES sensor
+);
+
+CREATE TABLE my_user
+(
+    id       integer GENERATED BY DEFAULT AS IDENTITY,
+    password varchar(255),
+    role     varchar(255),
+    username varchar(255) NOT NULL UNIQUE,
+    PRIMARY KEY (id)
+);
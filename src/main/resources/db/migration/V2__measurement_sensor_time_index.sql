@@ -0,0 +1,4 @@
+-- Запросы по окну времени одного сенсора: WHERE sensor = ? AND measurement_date_time ... ORDER BY measurement_date_time, id
+-- читают один диапазон индекса. Одна команда в файле: CONCURRENTLY выполняется вне транзакции и не блокирует запись
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_measurement_sensor_date_time_id
+    ON measurement (sensor, measurement_date_time, id);
@@ -0,0 +1,6 @@
+-- Агрегаты по окну времени читают только value и raining: с INCLUDE индекс покрывает запрос (index-only scan).
+-- Ключ тот же, что у idx_measurement_sensor_date_time_id, поэтому старый индекс после создания нового удаляется
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_measurement_sensor_date_time_covering
+    ON measurement (sensor, measurement_date_time, id) INCLUDE (value, raining);
+
+DROP INDEX CONCURRENTLY IF EXISTS idx_measurement_sensor_date_time_id;
@@ -0,0 +1,77 @@
+-- Предагрегаты измерений по сенсору за минуту, час и сутки: агрегатный запрос читает строку на интервал
+-- вместо всех измерений. avg = sum_value / count, доля дождя = rain_count / count
+CREATE TABLE measurement_rollup_minute
+(
+    sensor       integer          NOT NULL REFERENCES sensor,
+    bucket_start timestamp(6)     NOT NULL,
+    count        bigint           NOT NULL,
+    sum_value    double precision NOT NULL,
+    min_value    double precision NOT NULL,
+    max_value    double precision NOT NULL,
+    rain_count   bigint           NOT NULL,
+    PRIMARY KEY (sensor, bucket_start)
+);
+
+CREATE TABLE measurement_rollup_hour (LIKE measurement_rollup_minute INCLUDING ALL);
+ALTER TABLE measurement_rollup_hour ADD FOREIGN KEY (sensor) REFERENCES sensor;
+
+CREATE TABLE measurement_rollup_day (LIKE measurement_rollup_minute INCLUDING ALL);
+ALTER TABLE measurement_rollup_day ADD FOREIGN KEY (sensor) REFERENCES sensor;
+
+-- Приращения по минутам от каждого INSERT/COPY. Запись только добавляет строки и не ждёт блокировок
+-- горячих строк агрегатов; в таблицы агрегатов их пачками сливает MeasurementRollupService
+CREATE TABLE measurement_rollup_delta
+(
+    id           bigint GENERATED ALWAYS AS IDENTITY PRIMARY KEY,
+    sensor       integer          NOT NULL,
+    bucket_start timestamp(6)     NOT NULL,
+    count        bigint           NOT NULL,
+    sum_value    double precision NOT NULL,
+    min_value    double precision NOT NULL,
+    max_value    double precision NOT NULL,
+    rain_count   bigint           NOT NULL
+);
+
+-- Триггер уровня оператора видит только реально вставленные строки (new_rows): дубликаты,
+-- отброшенные ON CONFLICT DO NOTHING по ключу идемпотентности, в агрегаты не попадают.
+-- Срабатывает на любой путь записи: одиночный и пакетный INSERT, write-behind, line protocol, COPY
+CREATE FUNCTION measurement_rollup_capture() RETURNS trigger
+    LANGUAGE plpgsql AS
+$$
+BEGIN
+    INSERT INTO measurement_rollup_delta (sensor, bucket_start, count, sum_value, min_value, max_value, rain_count)
+    SELECT sensor, date_trunc('minute', measurement_date_time), count(*), sum(value), min(value), max(value),
+           count(*) FILTER (WHERE raining)
+    FROM new_rows
+    WHERE sensor IS NOT NULL
+    GROUP BY 1, 2;
+    RETURN NULL;
+END
+$$;
+
+CREATE TRIGGER measurement_rollup_capture
+    AFTER INSERT ON measurement
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE FUNCTION measurement_rollup_capture();
+
+-- Уже накопленные измерения. Триггер создан выше в той же транзакции и держит блокировку таблицы,
+-- поэтому строка не может попасть и сюда, и в приращения
+INSERT INTO measurement_rollup_minute (sensor, bucket_start, count, sum_value, min_value, max_value, rain_count)
+SELECT sensor, date_trunc('minute', measurement_date_time), count(*), sum(value), min(value), max(value),
+       count(*) FILTER (WHERE raining)
+FROM measurement
+WHERE sensor IS NOT NULL
+GROUP BY 1, 2;
+
+INSERT INTO measurement_rollup_hour (sensor, bucket_start, count, sum_value, min_value, max_value, rain_count)
+SELECT sensor, date_trunc('hour', bucket_start), sum(count), sum(sum_value), min(min_value), max(max_value),
+       sum(rain_count)
+FROM measurement_rollup_minute
+GROUP BY 1, 2;
+
+INSERT INTO measurement_rollup_day (sensor, bucket_start, count, sum_value, min_value, max_value, rain_count)
+SELECT sensor, date_trunc('day', bucket_start), sum(count), sum(sum_value), min(min_value), max(max_value),
+       sum(rain_count)
+FROM measurement_rollup_hour
+GROUP BY 1, 2;
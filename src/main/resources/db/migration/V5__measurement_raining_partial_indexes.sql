@@ -0,0 +1,7 @@
+-- Дождевые измерения - малая доля таблицы. Частичные индексы содержат только их:
+-- страницы /rainy-days (сортировка по id или по времени) и COUNT для total читают их, не перебирая сухие строки
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_measurement_raining_id
+    ON measurement (id) WHERE raining;
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_measurement_raining_date_time_id
+    ON measurement (measurement_date_time, id) WHERE raining;
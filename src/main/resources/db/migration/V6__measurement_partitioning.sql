@@ -0,0 +1,77 @@
+-- measurement секционируется по measurement_date_time (RANGE, по месяцам): индексы и VACUUM работают
+-- с одной секцией, старые данные удаляются DROP/DETACH секции вместо DELETE. Следующие секции заранее создаёт
+-- и старые по сроку хранения убирает MeasurementPartitionService (measurement.partitioning.*).
+-- Таблица пересоздаётся с копированием строк под эксклюзивной блокировкой: запись на время миграции встаёт
+LOCK TABLE measurement IN ACCESS EXCLUSIVE MODE;
+
+CREATE TABLE measurement_partitioned
+(
+    id                    integer      NOT NULL,
+    raining               boolean      NOT NULL,
+    sensor                integer,
+    value                 float(53)    NOT NULL CHECK ((value <= 100) AND (value >= -100)),
+    measurement_date_time timestamp(6) NOT NULL,
+    idempotency_key       varchar(64)
+) PARTITION BY RANGE (measurement_date_time);
+
+-- Строки вне созданных секций (исторические или из будущего); MeasurementPartitionService переносит их
+-- в свои секции, поэтому обычно она пуста
+CREATE TABLE measurement_default PARTITION OF measurement_partitioned DEFAULT;
+
+-- Секции под месяцы, в которых уже есть измерения, и текущий месяц с тремя следующими
+DO
+$$
+    DECLARE
+        month timestamp;
+    BEGIN
+        FOR month IN
+            SELECT date_trunc('month', measurement_date_time) FROM measurement
+            UNION
+            SELECT date_trunc('month', localtimestamp) + make_interval(months => n) FROM generate_series(0, 3) n
+            ORDER BY 1
+            LOOP
+                EXECUTE format('CREATE TABLE %I PARTITION OF measurement_partitioned FOR VALUES FROM (%L) TO (%L)',
+                               'measurement_p' || to_char(month, 'YYYYMMDD'), month, month + interval '1 month');
+            END LOOP;
+    END
+$$;
+
+-- Индексы строятся после копирования - так быстрее, чем поддерживать их на каждой вставке
+INSERT INTO measurement_partitioned (id, raining, sensor, value, measurement_date_time, idempotency_key)
+SELECT id, raining, sensor, value, measurement_date_time, idempotency_key
+FROM measurement;
+
+-- Вместе с таблицей уходят её индексы, триггер предагрегатов и последовательность id
+DROP TABLE measurement;
+ALTER TABLE measurement_partitioned RENAME TO measurement;
+
+-- IDENTITY у секционированной таблицы появляется только в PostgreSQL 17, поэтому id из последовательности
+CREATE SEQUENCE measurement_id_seq AS integer OWNED BY measurement.id;
+SELECT setval('measurement_id_seq', coalesce((SELECT max(id) FROM measurement), 0) + 1, false);
+ALTER TABLE measurement ALTER COLUMN id SET DEFAULT nextval('measurement_id_seq');
+
+-- Уникальные ключи секционированной таблицы обязаны включать ключ секционирования.
+-- id уникален и так (последовательность); повтор по ключу идемпотентности отсекается,
+-- только если совпадает и время измерения
+ALTER TABLE measurement ADD PRIMARY KEY (id, measurement_date_time);
+ALTER TABLE measurement
+    ADD CONSTRAINT uk_measurement_sensor_idempotency_key UNIQUE (sensor, idempotency_key, measurement_date_time);
+ALTER TABLE measurement
+    ADD CONSTRAINT fknv3ap4qdi3jkkk6hfoxi7f8k2 FOREIGN KEY (sensor) REFERENCES sensor;
+
+-- Те же индексы, что в V1-V5; создаются на каждой секции, новые секции получают их автоматически
+CREATE INDEX idx_measurement_date_time_id ON measurement (measurement_date_time, id);
+CREATE INDEX idx_measurement_sensor_date_time_covering
+    ON measurement (sensor, measurement_date_time, id) INCLUDE (value, raining);
+CREATE INDEX idx_measurement_raining_id ON measurement (id) WHERE raining;
+CREATE INDEX idx_measurement_raining_date_time_id ON measurement (measurement_date_time, id) WHERE raining;
+
+-- Триггер уровня оператора на родительской таблице видит в new_rows строки всех секций.
+-- Скопированные выше строки уже учтены в предагрегатах, поэтому триггер создаётся после копирования
+CREATE TRIGGER measurement_rollup_capture
+    AFTER INSERT ON measurement
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT
+EXECUTE FUNCTION measurement_rollup_capture();
+
+ANALYZE measurement;
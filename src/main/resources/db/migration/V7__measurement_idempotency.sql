@@ -0,0 +1,22 @@
+-- Ключи идемпотентности в отдельной несекционированной таблице: уникальный индекс секционированной measurement
+-- обязан включать measurement_date_time, а повтор без времени от клиента получает новое время на сервере.
+-- Ключ занимается в том же операторе, что пишет измерение (MeasurementBatchRepositoryImpl)
+CREATE TABLE measurement_idempotency
+(
+    sensor                integer      NOT NULL REFERENCES sensor,
+    idempotency_key       varchar(64)  NOT NULL,
+    -- Время измерения, записанного с ключом: ключи удаляются вместе с секциями по сроку хранения
+    measurement_date_time timestamp(6) NOT NULL,
+    PRIMARY KEY (sensor, idempotency_key)
+);
+
+INSERT INTO measurement_idempotency (sensor, idempotency_key, measurement_date_time)
+SELECT DISTINCT ON (sensor, idempotency_key) sensor, idempotency_key, measurement_date_time
+FROM measurement
+WHERE sensor IS NOT NULL
+  AND idempotency_key IS NOT NULL
+ORDER BY sensor, idempotency_key, measurement_date_time;
+
+CREATE INDEX idx_measurement_idempotency_date_time ON measurement_idempotency (measurement_date_time);
+
+ALTER TABLE measurement DROP CONSTRAINT uk_measurement_sensor_idempotency_key;
@@ -0,0 +1,92 @@
+package ru.xing.springcourse.petproject3rest.benchmark;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBatchDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorReadingsDTO;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.util.MeasurementFrameCodec;
+import ru.xing.springcourse.petproject3rest.util.MeasurementMapper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Стоимость разбора пакета измерений: JSON (Jackson + MeasurementMapper) против бинарного кадра.
+ * Запуск: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=ru.xing.springcourse.petproject3rest.benchmark.MeasurementIngestBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeasurementIngestBenchmark {
+
+    @Param({"1", "100", "1000"})
+    private int readings;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final MeasurementMapper measurementMapper = new MeasurementMapper();
+    private final Sensor sensor = new Sensor();
+
+    private byte[] json;
+    private byte[] frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        sensor.setId(1);
+        sensor.setName("Sensor_Home");
+
+        List<MeasurementDTO> measurements = new ArrayList<>(readings);
+        int[] ids = new int[readings];
+        long[] millis = new long[readings];
+        float[] values = new float[readings];
+        boolean[] raining = new boolean[readings];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < readings; i++) {
+            values[i] = (float) (i % 200 - 100) / 2;
+            raining[i] = i % 3 == 0;
+            millis[i] = now + i;
+            ids[i] = 1;
+            measurements.add(new MeasurementDTO((double) values[i], raining[i], null, null));
+        }
+
+        json = objectMapper.writeValueAsBytes(new MeasurementBatchDTO(List.of(
+                new SensorReadingsDTO("Sensor_Home", measurements))));
+        frame = MeasurementFrameCodec.encode(ids, millis, values, raining).array();
+    }
+
+    @Benchmark
+    public List<Measurement> json() throws IOException {
+        MeasurementBatchDTO batch = objectMapper.readValue(json, MeasurementBatchDTO.class);
+        List<Measurement> result = new ArrayList<>(batch.size());
+        for (SensorReadingsDTO sensorReadings : batch.getSensors()) {
+            for (MeasurementDTO dto : sensorReadings.getMeasurements()) {
+                result.add(measurementMapper.toEntity(dto, sensor));
+            }
+        }
+        return result;
+    }
+
+    @Benchmark
+    public List<Measurement> frame() {
+        return MeasurementFrameCodec.decode(ByteBuffer.wrap(frame), id -> sensor);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MeasurementIngestBenchmark.class.getSimpleName())
+                .build())
+                .run();
+    }
+}
@@ -0,0 +1,121 @@
+package ru.xing.springcourse.petproject3rest.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.xing.springcourse.petproject3rest.PetProject3RestApplication;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
+import ru.xing.springcourse.petproject3rest.repositories.SensorRepository;
+import ru.xing.springcourse.petproject3rest.util.MeasurementMapper;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Чтение страницы измерений: сущности (persistence context + dirty checking) против DTO-проекции,
+ * с профилем gc - аллокации на операцию.
+ * Нужна PostgreSQL из docker-compose (или SPRING_DATASOURCE_URL); при нехватке строк таблица дозаполняется.
+ * Запуск: mvn test-compile exec:java -Dexec.classpathScope=test
+ * -Dexec.mainClass=ru.xing.springcourse.petproject3rest.benchmark.MeasurementReadBenchmark
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@org.openjdk.jmh.annotations.Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeasurementReadBenchmark {
+    private static final int ROWS = 50_000;
+
+    @Param({"20", "100"})
+    private int pageSize;
+
+    private ConfigurableApplicationContext context;
+    private MeasurementRepository measurementRepository;
+    private MeasurementMapper measurementMapper;
+    private TransactionTemplate readOnly;
+    private Pageable pageable;
+
+    @Setup
+    public void setUp() {
+        context = new SpringApplicationBuilder(PetProject3RestApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties("spring.jpa.show-sql=false",
+                        "spring.jpa.properties.hibernate.show_sql=false",
+                        "logging.level.root=WARN")
+                .run();
+        measurementRepository = context.getBean(MeasurementRepository.class);
+        measurementMapper = context.getBean(MeasurementMapper.class);
+        readOnly = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+        readOnly.setReadOnly(true);
+        pageable = PageRequest.of(10, pageSize, Sort.by(Sort.Direction.DESC, "measurementDateTime"));
+
+        seed(context.getBean(SensorRepository.class));
+    }
+
+    private void seed(SensorRepository sensorRepository) {
+        long missing = ROWS - measurementRepository.count();
+        if (missing <= 0) {
+            return;
+        }
+        Sensor sensor = sensorRepository.findByName("Benchmark_Sensor").orElseGet(() -> {
+            Sensor created = new Sensor();
+            created.setName("Benchmark_Sensor");
+            return sensorRepository.save(created);
+        });
+        LocalDateTime start = LocalDateTime.now().minusDays(30);
+        List<Measurement> batch = new ArrayList<>(1000);
+        for (int i = 0; i < missing; i++) {
+            batch.add(Measurement.builder()
+                    .value((double) (i % 200 - 100) / 2)
+                    .raining(i % 3 == 0)
+                    .measurementDateTime(start.plusSeconds(i))
+                    .sensor(sensor)
+                    .build());
+            if (batch.size() == 1000) {
+                measurementRepository.batchInsert(batch);
+                batch.clear();
+            }
+        }
+        measurementRepository.batchInsert(batch);
+    }
+
+    @TearDown
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public Page<MeasurementDTO> entities() {
+        return readOnly.execute(status -> measurementRepository.findAll(pageable).map(measurementMapper::toDTO));
+    }
+
+    @Benchmark
+    public Page<MeasurementDTO> projection() {
+        return readOnly.execute(status -> measurementRepository.findAllViews(pageable).map(measurementMapper::toDTO));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(MeasurementReadBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+}
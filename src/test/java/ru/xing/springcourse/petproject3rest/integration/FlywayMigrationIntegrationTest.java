@@ -0,0 +1,135 @@
+package ru.xing.springcourse.petproject3rest.integration;
+
+import org.flywaydb.core.Flyway;
+import org.flywaydb.core.api.output.MigrateResult;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Миграции V1-V7 на пустой базе и на базе выпуска до Flyway (ddl-auto=update),
+// с теми же настройками Flyway, что в application.properties
+@Testcontainers
+public class FlywayMigrationIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgreSQLContainer = new PostgreSQLContainer<>("postgres:14-alpine")
+            .withDatabaseName("PetProject3rest")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @Test
+    void shouldMigrateEmptyDatabase() {
+        DataSource dataSource = createDatabase("empty_database");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        MigrateResult result = flyway(dataSource).migrate();
+
+        assertThat(result.success).isTrue();
+        assertThat(result.targetSchemaVersion).isEqualTo("7");
+        assertThat(jdbcTemplate.queryForList("SELECT version FROM flyway_schema_history ORDER BY installed_rank",
+                String.class))
+                .containsExactly("1", "1.1", "2", "3", "4", "5", "6", "7");
+        // Секция по умолчанию, текущий месяц и три следующих
+        assertThat(partitions(jdbcTemplate)).hasSize(5).contains("measurement_default");
+
+        Integer sensor = jdbcTemplate.queryForObject("INSERT INTO sensor (name) VALUES ('sensor') RETURNING id",
+                Integer.class);
+        jdbcTemplate.update("INSERT INTO measurement (value, raining, measurement_date_time, sensor) " +
+                "VALUES (20, true, localtimestamp, ?)", sensor);
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM measurement_default", Long.class)).isZero();
+        assertThat(jdbcTemplate.queryForMap(
+                "SELECT sum(count)::bigint AS count, sum(rain_count)::bigint AS rain_count " +
+                        "FROM measurement_rollup_delta WHERE sensor = ?", sensor))
+                .containsEntry("count", 1L)
+                .containsEntry("rain_count", 1L);
+    }
+
+    @Test
+    void shouldMigratePreFlywayDatabase() {
+        DataSource dataSource = createDatabase("pre_flyway_database");
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+        // Схема, которую создавал ddl-auto=update: V1 и ключ идемпотентности, добавленный до перехода на Flyway
+        new ResourceDatabasePopulator(new ClassPathResource("db/migration/V1__baseline.sql")).execute(dataSource);
+        jdbcTemplate.execute("ALTER TABLE measurement ADD COLUMN idempotency_key varchar(64)");
+        jdbcTemplate.execute("ALTER TABLE measurement " +
+                "ADD CONSTRAINT uk_measurement_sensor_idempotency_key UNIQUE (sensor, idempotency_key)");
+
+        Integer sensor = jdbcTemplate.queryForObject("INSERT INTO sensor (name) VALUES ('sensor') RETURNING id",
+                Integer.class);
+        jdbcTemplate.update(
+                "INSERT INTO measurement (value, raining, measurement_date_time, sensor, idempotency_key) " +
+                        "VALUES (10, true, '2024-03-10 10:00', ?, 'key'), (20, false, '2024-03-10 10:30', ?, NULL), " +
+                        "(30, true, '2024-05-01 12:00', ?, NULL)",
+                sensor, sensor, sensor);
+        Integer maxId = jdbcTemplate.queryForObject("SELECT max(id) FROM measurement", Integer.class);
+
+        MigrateResult result = flyway(dataSource).migrate();
+
+        assertThat(result.success).isTrue();
+        assertThat(result.targetSchemaVersion).isEqualTo("7");
+        List<Map<String, Object>> history = jdbcTemplate.queryForList(
+                "SELECT version, type FROM flyway_schema_history ORDER BY installed_rank");
+        assertThat(history.get(0)).containsEntry("version", "1").containsEntry("type", "BASELINE");
+        assertThat(history).extracting(row -> row.get("version"))
+                .containsExactly("1", "1.1", "2", "3", "4", "5", "6", "7");
+
+        // Строки перенесены в секции своих месяцев, предагрегаты и ключи идемпотентности заполнены по ним
+        assertThat(partitions(jdbcTemplate)).contains("measurement_p20240301", "measurement_p20240501");
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM measurement_p20240301", Long.class))
+                .isEqualTo(2);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM measurement_p20240501", Long.class))
+                .isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM measurement_default", Long.class)).isZero();
+        assertThat(jdbcTemplate.queryForMap(
+                "SELECT sum(count)::bigint AS count, sum(rain_count)::bigint AS rain_count " +
+                        "FROM measurement_rollup_day WHERE sensor = ?", sensor))
+                .containsEntry("count", 3L)
+                .containsEntry("rain_count", 2L);
+        assertThat(jdbcTemplate.queryForList("SELECT idempotency_key FROM measurement_idempotency WHERE sensor = ?",
+                String.class, sensor))
+                .containsExactly("key");
+
+        // id новых строк продолжают старые
+        Integer id = jdbcTemplate.queryForObject(
+                "INSERT INTO measurement (value, raining, measurement_date_time, sensor) " +
+                        "VALUES (40, false, '2024-05-02 12:00', ?) RETURNING id", Integer.class, sensor);
+        assertThat(id).isGreaterThan(maxId);
+    }
+
+    private static Flyway flyway(DataSource dataSource) {
+        return Flyway.configure()
+                .dataSource(dataSource)
+                .baselineOnMigrate(true)
+                .baselineVersion("1")
+                .configuration(Map.of("flyway.postgresql.transactional.lock", "false"))
+                .load();
+    }
+
+    private static DataSource createDatabase(String name) {
+        new JdbcTemplate(dataSource(postgreSQLContainer.getJdbcUrl())).execute("CREATE DATABASE " + name);
+        return dataSource(postgreSQLContainer.getJdbcUrl()
+                .replace("/" + postgreSQLContainer.getDatabaseName(), "/" + name));
+    }
+
+    private static DataSource dataSource(String url) {
+        return new DriverManagerDataSource(url, postgreSQLContainer.getUsername(), postgreSQLContainer.getPassword());
+    }
+
+    private static List<String> partitions(JdbcTemplate jdbcTemplate) {
+        return jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+                "WHERE i.inhparent = 'measurement'::regclass", String.class);
+    }
+}
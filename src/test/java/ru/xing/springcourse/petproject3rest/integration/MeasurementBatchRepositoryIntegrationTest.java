@@ -0,0 +1,133 @@
+package ru.xing.springcourse.petproject3rest.integration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
+import ru.xing.springcourse.petproject3rest.repositories.SensorRepository;
+import ru.xing.springcourse.petproject3rest.services.MeasurementRollupService;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Пачка в два элемента: повторы ключа попадают и в один оператор, и в разные.
+// Фоновое слияние предагрегатов не успевает за тестом - приращения сливает сам тест
+@SpringBootTest(properties = {
+        "measurement.batch.jdbc-batch-size=2",
+        "measurement.rollup.merge-interval=1h"
+})
+@AutoConfigureTestDatabase
+@Testcontainers
+public class MeasurementBatchRepositoryIntegrationTest {
+
+    @Container
+    static PostgreSQLContainer<?> postgreSQLContainer = new PostgreSQLContainer<>("postgres:14-alpine")
+            .withDatabaseName("PetProject3rest")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgreSQLContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgreSQLContainer::getUsername);
+        registry.add("spring.datasource.password", postgreSQLContainer::getPassword);
+    }
+
+    @Autowired
+    private MeasurementRepository measurementRepository;
+
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    @Autowired
+    private MeasurementRollupService measurementRollupService;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Sensor testSensor;
+
+    @BeforeEach
+    void setUp() {
+        measurementRepository.deleteAll();
+        jdbcTemplate.execute("TRUNCATE measurement_rollup_minute, measurement_rollup_hour, measurement_rollup_day, " +
+                "measurement_rollup_delta, measurement_idempotency");
+        sensorRepository.deleteAll();
+
+        testSensor = new Sensor();
+        testSensor.setName("testSensor");
+        testSensor = sensorRepository.save(testSensor);
+    }
+
+    @Test
+    void shouldInsertFirstMeasurementOfRepeatedKey() {
+        LocalDateTime time = LocalDateTime.now().truncatedTo(ChronoUnit.SECONDS);
+        List<Measurement> first = List.of(
+                measurement(10, true, time, "a"),
+                measurement(15, true, time.plusSeconds(1), "a"),   // повтор в том же операторе
+                measurement(20, false, time, null),
+                measurement(30, false, time, "b"),
+                measurement(35, true, time.plusSeconds(2), "a"));  // повтор в следующем операторе
+
+        List<Measurement> inserted = measurementRepository.batchInsert(first);
+
+        assertThat(inserted).containsExactly(first.get(0), first.get(2), first.get(3));
+
+        // Повтор записанного ключа с другим временем тоже пропускается
+        List<Measurement> second = List.of(
+                measurement(40, true, time.plusMinutes(1), "a"),
+                measurement(50, true, time.plusMinutes(1), "c"));
+
+        assertThat(measurementRepository.batchInsert(second)).containsExactly(second.get(1));
+
+        assertThat(jdbcTemplate.queryForList("SELECT value FROM measurement ORDER BY value", Double.class))
+                .containsExactly(10.0, 20.0, 30.0, 50.0);
+        assertThat(jdbcTemplate.queryForList("SELECT idempotency_key, measurement_date_time " +
+                "FROM measurement_idempotency ORDER BY idempotency_key"))
+                .containsExactly(
+                        Map.of("idempotency_key", "a", "measurement_date_time", Timestamp.valueOf(time)),
+                        Map.of("idempotency_key", "b", "measurement_date_time", Timestamp.valueOf(time)),
+                        Map.of("idempotency_key", "c", "measurement_date_time",
+                                Timestamp.valueOf(time.plusMinutes(1))));
+
+        // В предагрегаты попадают только записанные строки
+        measurementRollupService.mergePending();
+
+        assertThat(jdbcTemplate.queryForObject("SELECT count(*) FROM measurement_rollup_delta", Long.class)).isZero();
+        for (String rollup : List.of("measurement_rollup_minute", "measurement_rollup_hour", "measurement_rollup_day")) {
+            assertThat(jdbcTemplate.queryForMap(
+                    "SELECT sum(count)::bigint AS count, sum(sum_value) AS sum_value, " +
+                            "sum(rain_count)::bigint AS rain_count FROM " + rollup + " WHERE sensor = ?",
+                    testSensor.getId()))
+                    .as(rollup)
+                    .containsEntry("count", 4L)
+                    .containsEntry("sum_value", 110.0)
+                    .containsEntry("rain_count", 2L);
+        }
+    }
+
+    private Measurement measurement(double value, boolean raining, LocalDateTime time, String idempotencyKey) {
+        return Measurement.builder()
+                .sensor(testSensor)
+                .value(value)
+                .raining(raining)
+                .measurementDateTime(time)
+                .idempotencyKey(idempotencyKey)
+                .build();
+    }
+}
@@ -0,0 +1,165 @@
+package ru.xing.springcourse.petproject3rest.integration;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementPartitionRepository;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
+import ru.xing.springcourse.petproject3rest.repositories.SensorRepository;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Секции за январь и март 2000 года - вне тех, что создаёт V6, их строки сначала попадают в measurement_default.
+// Обслуживание секций выключено: строки секции по умолчанию переносит только сам тест
+@SpringBootTest(properties = "measurement.partitioning.enabled=false")
+@AutoConfigureTestDatabase
+@Testcontainers
+public class MeasurementPartitionRepositoryIntegrationTest {
+
+    private static final String JANUARY = "measurement_p20000101";
+    private static final String MARCH = "measurement_p20000301";
+    private static final Duration LOCK_TIMEOUT = Duration.ofSeconds(5);
+
+    @Container
+    static PostgreSQLContainer<?> postgreSQLContainer = new PostgreSQLContainer<>("postgres:14-alpine")
+            .withDatabaseName("PetProject3rest")
+            .withUsername("postgres")
+            .withPassword("postgres");
+
+    @DynamicPropertySource
+    static void configureProperties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgreSQLContainer::getJdbcUrl);
+        registry.add("spring.datasource.username", postgreSQLContainer::getUsername);
+        registry.add("spring.datasource.password", postgreSQLContainer::getPassword);
+    }
+
+    @Autowired
+    private MeasurementPartitionRepository measurementPartitionRepository;
+
+    @Autowired
+    private MeasurementRepository measurementRepository;
+
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    private Sensor testSensor;
+
+    @BeforeEach
+    void setUp() {
+        measurementRepository.deleteAll();
+        jdbcTemplate.execute("TRUNCATE measurement_rollup_minute, measurement_rollup_hour, measurement_rollup_day, " +
+                "measurement_rollup_delta, measurement_idempotency");
+        sensorRepository.deleteAll();
+
+        testSensor = new Sensor();
+        testSensor.setName("testSensor");
+        testSensor = sensorRepository.save(testSensor);
+    }
+
+    // Отсоединённая секция сохраняет внешний ключ на sensor
+    @AfterEach
+    void dropPartitions() {
+        jdbcTemplate.execute("DROP TABLE IF EXISTS " + JANUARY + ", " + MARCH);
+    }
+
+    @Test
+    void shouldMoveRowsOfDefaultPartitionIntoCreatedPartition() {
+        measurementRepository.batchInsert(List.of(
+                measurement(LocalDateTime.of(2000, 1, 15, 10, 0)),
+                measurement(LocalDateTime.of(2000, 1, 31, 23, 59)),
+                measurement(LocalDateTime.of(2000, 2, 1, 0, 0))));
+        assertThat(count("measurement_default")).isEqualTo(3);
+
+        long moved = measurementPartitionRepository.createPartition(JANUARY,
+                LocalDateTime.of(2000, 1, 1, 0, 0), LocalDateTime.of(2000, 2, 1, 0, 0), LOCK_TIMEOUT);
+
+        assertThat(moved).isEqualTo(2);
+        assertThat(count(JANUARY)).isEqualTo(2);
+        assertThat(count("measurement_default")).isEqualTo(1);
+        assertThat(count("measurement")).isEqualTo(3);
+        assertThat(measurementPartitionRepository.findDefaultPartitionDays())
+                .containsExactly(LocalDateTime.of(2000, 2, 1, 0, 0));
+        // Перенос не вызывает триггер предагрегатов: строки учтены один раз, при записи
+        assertThat(jdbcTemplate.queryForObject("SELECT sum(count)::bigint FROM measurement_rollup_delta", Long.class))
+                .isEqualTo(3);
+
+        // Новые строки этого времени пишутся уже в созданную секцию
+        measurementRepository.batchInsert(List.of(measurement(LocalDateTime.of(2000, 1, 20, 12, 0))));
+        assertThat(count(JANUARY)).isEqualTo(3);
+        assertThat(count("measurement_default")).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotCreateOverlappingPartition() {
+        measurementPartitionRepository.createPartition(JANUARY,
+                LocalDateTime.of(2000, 1, 1, 0, 0), LocalDateTime.of(2000, 2, 1, 0, 0), LOCK_TIMEOUT);
+
+        long moved = measurementPartitionRepository.createPartition("measurement_p20000115",
+                LocalDateTime.of(2000, 1, 15, 0, 0), LocalDateTime.of(2000, 2, 15, 0, 0), LOCK_TIMEOUT);
+
+        assertThat(moved).isEqualTo(-1);
+        assertThat(jdbcTemplate.queryForObject("SELECT to_regclass('measurement_p20000115') IS NULL", Boolean.class))
+                .isTrue();
+    }
+
+    @Test
+    void shouldDetachAndDropPartitions() {
+        measurementPartitionRepository.createPartition(JANUARY,
+                LocalDateTime.of(2000, 1, 1, 0, 0), LocalDateTime.of(2000, 2, 1, 0, 0), LOCK_TIMEOUT);
+        measurementPartitionRepository.createPartition(MARCH,
+                LocalDateTime.of(2000, 3, 1, 0, 0), LocalDateTime.of(2000, 4, 1, 0, 0), LOCK_TIMEOUT);
+        measurementRepository.batchInsert(List.of(
+                measurement(LocalDateTime.of(2000, 1, 10, 0, 0)),
+                measurement(LocalDateTime.of(2000, 3, 10, 0, 0)),
+                measurement(LocalDateTime.of(2000, 5, 10, 0, 0))));
+
+        // Отсоединённая секция остаётся таблицей со своими строками
+        assertThat(measurementPartitionRepository.removePartition(JANUARY, false, LOCK_TIMEOUT)).isTrue();
+        assertThat(count(JANUARY)).isEqualTo(1);
+
+        assertThat(measurementPartitionRepository.removePartition(MARCH, true, LOCK_TIMEOUT)).isTrue();
+        assertThat(jdbcTemplate.queryForObject("SELECT to_regclass('" + MARCH + "') IS NULL", Boolean.class))
+                .isTrue();
+
+        // Секция по умолчанию не входит в findPartitions и не удаляется
+        assertThat(measurementPartitionRepository.removePartition(JANUARY, true, LOCK_TIMEOUT)).isFalse();
+        assertThat(measurementPartitionRepository.removePartition(
+                MeasurementPartitionRepository.DEFAULT_PARTITION, true, LOCK_TIMEOUT)).isFalse();
+        assertThat(measurementPartitionRepository.findPartitions())
+                .extracting(MeasurementPartitionRepository.Partition::name)
+                .doesNotContain(JANUARY, MARCH);
+        assertThat(count("measurement")).isEqualTo(1);
+        assertThat(count("measurement_default")).isEqualTo(1);
+    }
+
+    private long count(String table) {
+        return jdbcTemplate.queryForObject("SELECT count(*) FROM " + table, Long.class);
+    }
+
+    private Measurement measurement(LocalDateTime time) {
+        return Measurement.builder()
+                .sensor(testSensor)
+                .value(20)
+                .raining(false)
+                .measurementDateTime(time)
+                .build();
+    }
+}
@@ -43,7 +43,7 @@ public class SecurityIntegrationTest {
     @Test
     void shouldReject_WhenNoAuth() {
         // When - try to register sensor without auth
-        SensorDTO sensor = new SensorDTO("Test", null);
+        SensorDTO sensor = new SensorDTO("Test", null, null, null);
         ResponseEntity<String> response = restTemplate.postForEntity(
                 "/api/sensor/register", sensor, String.class);
 
@@ -54,7 +54,7 @@ public class SecurityIntegrationTest {
     @Test
     void shouldReject_WhenUserTriesToRegisterSensor() {
         // When - USER tries to register sensor (only ADMIN_ROLE)
-        SensorDTO sensor = new SensorDTO("Test", null);
+        SensorDTO sensor = new SensorDTO("Test", null, null, null);
 
         HttpHeaders headers = new HttpHeaders();
         headers.setBasicAuth("user", "user123");
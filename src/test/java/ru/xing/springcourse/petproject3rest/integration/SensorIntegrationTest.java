@@ -64,7 +64,7 @@ public class SensorIntegrationTest {
     @Order(1)
     void shouldRegisterSensor() {
         // Given entity
-        SensorDTO sensor = new SensorDTO("Sensor_Test", null);
+        SensorDTO sensor = new SensorDTO("Sensor_Test", null, null, null);
 
         HttpHeaders httpHeaders = new HttpHeaders();
         httpHeaders.setBasicAuth("admin", "admin123");
@@ -91,7 +91,7 @@ public class SensorIntegrationTest {
         existing.setName("Sensor_Test");
         sensorRepository.save(existing);
 
-        SensorDTO sensor = new SensorDTO("Sensor_Test", null);
+        SensorDTO sensor = new SensorDTO("Sensor_Test", null, null, null);
         HttpHeaders headers = new HttpHeaders();
         headers.setBasicAuth("admin", "admin123");
         HttpEntity<SensorDTO> request = new HttpEntity<>(sensor, headers);
@@ -0,0 +1,60 @@
+package ru.xing.springcourse.petproject3rest.unit.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import ru.xing.springcourse.petproject3rest.config.IngestAdmissionFilter;
+import ru.xing.springcourse.petproject3rest.util.AdaptiveConcurrencyLimiter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IngestAdmissionFilterTest {
+    private AdaptiveConcurrencyLimiter limiter;
+    private Counter rejected;
+    private IngestAdmissionFilter filter;
+
+    @BeforeEach
+    void setUp() {
+        limiter = new AdaptiveConcurrencyLimiter(1, 1, 10, 1.5);
+        rejected = new SimpleMeterRegistry().counter("ingest.admission.rejected");
+        filter = new IngestAdmissionFilter(limiter, new ObjectMapper().findAndRegisterModules(), rejected, 3);
+    }
+
+    @Test
+    void passesRequest_WhenBelowLimit() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/measurements/add"), response, new MockFilterChain());
+
+        assertEquals(200, response.getStatus());
+        assertEquals(0, limiter.getInFlight());
+    }
+
+    @Test
+    void shedsRequest_WithRetryAfter_WhenLimitReached() throws Exception {
+        assertTrue(limiter.tryAcquire()); // занимаем единственный слот
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("POST", "/api/measurements/add"), response, new MockFilterChain());
+
+        assertEquals(429, response.getStatus());
+        assertEquals("3", response.getHeader("Retry-After"));
+        assertTrue(response.getContentAsString().contains("Ingest is overloaded"));
+        assertEquals(1.0, rejected.count());
+    }
+
+    @Test
+    void ignoresReadRequests() throws Exception {
+        assertTrue(limiter.tryAcquire());
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(new MockHttpServletRequest("GET", "/api/measurements"), response, new MockFilterChain());
+
+        assertEquals(200, response.getStatus());
+    }
+}
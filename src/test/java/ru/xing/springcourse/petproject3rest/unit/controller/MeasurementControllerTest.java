@@ -8,29 +8,46 @@ import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import ru.xing.springcourse.petproject3rest.config.SecurityConfig;
 import ru.xing.springcourse.petproject3rest.controllers.MeasurementController;
+import ru.xing.springcourse.petproject3rest.dto.CursorPageDTO;
+import ru.xing.springcourse.petproject3rest.dto.IngestResultDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBatchDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBucketDTO;
 import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SliceDTO;
 import ru.xing.springcourse.petproject3rest.repositories.UserRepository;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
 import ru.xing.springcourse.petproject3rest.services.MeasurementService;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
+import ru.xing.springcourse.petproject3rest.util.MeasurementCursor;
+import ru.xing.springcourse.petproject3rest.util.MeasurementFrameCodec;
 
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.time.LocalDateTime;
 import java.util.List;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 @WebMvcTest(controllers = MeasurementController.class)
-@Import(SecurityConfig.class)
+@Import({SecurityConfig.class, DataVersions.class})
 public class MeasurementControllerTest {
 
     @Autowired
@@ -42,6 +59,9 @@ public class MeasurementControllerTest {
     @MockitoBean
     private UserRepository userRepository;
 
+    @MockitoBean
+    private SensorRegistry sensorRegistry;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -67,6 +87,20 @@ public class MeasurementControllerTest {
                 .andExpect(jsonPath("$.totalElements").value(1));
     }
 
+    @Test
+    void shouldAnswerNotModified_WhenNothingWasWritten() throws Exception {
+        when(measurementService.getMeasurementsSlice(any(Pageable.class), eq(false)))
+                .thenReturn(new SliceDTO<>(List.of(), 0, 20, false, null));
+
+        String etag = mockMvc.perform(get("/api/measurements").param("total", "none"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mockMvc.perform(get("/api/measurements").param("total", "none").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+        verify(measurementService, times(1)).getMeasurementsSlice(any(Pageable.class), eq(false));
+    }
+
     @Test
     @WithMockUser(username = "user", roles = {"USER"})
     void shouldAddMeasurement_withUserRole() throws Exception {
@@ -97,6 +131,18 @@ public class MeasurementControllerTest {
                 .andExpect(status().isOk());
     }
 
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void shouldAcceptMeasurement_WhenWriteBehindEnabled() throws Exception {
+        when(measurementService.isWriteBehindEnabled()).thenReturn(true);
+
+        mockMvc.perform(post("/api/measurements/add")
+                        .param("sensorName", "TestSensor")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"value\": 23.5, \"raining\": false}"))
+                .andExpect(status().isAccepted());
+    }
+
     @Test
     void shouldReject_AddMeasurement_WithoutAuth() throws Exception {
         // Act & Assert
@@ -106,4 +152,148 @@ public class MeasurementControllerTest {
                         .content("{\"value\": 23.5, \"isRaining\": false}"))
                 .andExpect(status().isUnauthorized()); // 401
     }
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void shouldAddMeasurementBatch_withUserRole() throws Exception {
+        when(measurementService.addMeasurements(any(MeasurementBatchDTO.class))).thenReturn(2);
+
+        mockMvc.perform(post("/api/measurements/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"sensors\": [{\"sensorName\": \"TestSensor\", \"measurements\": " +
+                                "[{\"value\": 23.5, \"raining\": false}, {\"value\": 22.0, \"raining\": true}]}]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(2));
+    }
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void shouldReject_EmptyMeasurementBatch() throws Exception {
+        mockMvc.perform(post("/api/measurements/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .content("{\"sensors\": []}"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void shouldIngestNdjsonStream() throws Exception {
+        when(measurementService.ingestStream(any(InputStream.class)))
+                .thenReturn(new IngestResultDTO(2, 0, List.of()));
+
+        mockMvc.perform(post("/api/measurements/stream")
+                        .contentType("application/x-ndjson")
+                        .content("{\"sensorName\": \"TestSensor\", \"value\": 23.5, \"raining\": false}\n" +
+                                "{\"sensorName\": \"TestSensor\", \"value\": 22.0, \"raining\": true}\n"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.rejected").value(0));
+    }
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void shouldAcceptBinaryFrame_onAddAndBatch() throws Exception {
+        byte[] frame = MeasurementFrameCodec.encode(
+                new int[]{1, 1}, new long[]{0, 0}, new float[]{23.5f, 22.0f}, new boolean[]{false, true}).array();
+        when(measurementService.addFrame(any(ByteBuffer.class))).thenReturn(2);
+
+        for (String path : List.of("/api/measurements/add", "/api/measurements/batch")) {
+            mockMvc.perform(post(path)
+                            .contentType(MeasurementFrameCodec.MEDIA_TYPE)
+                            .content(frame))
+                    .andExpect(status().isOk())
+                    .andExpect(jsonPath("$.count").value(2));
+        }
+    }
+
+    @Test
+    void shouldReturnCursorPage_withoutAuthentication() throws Exception {
+        when(measurementService.getMeasurementsAfter(null, 20, MeasurementCursor.SortKey.MEASUREMENT_DATE_TIME,
+                Sort.Direction.DESC, false))
+                .thenReturn(new CursorPageDTO<>(List.of(new MeasurementDTO(23.5, false, null, null)), "abc", true));
+
+        mockMvc.perform(get("/api/measurements/cursor")
+                        .param("sort", "measurementDateTime"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].value").value(23.5))
+                .andExpect(jsonPath("$.nextCursor").value("abc"))
+                .andExpect(jsonPath("$.hasNext").value(true));
+    }
+
+    @Test
+    void shouldReturnAggregates_forSeveralSensors() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2024, 10, 1, 0, 0);
+        when(measurementService.aggregate(List.of("Home", "Garden"), from, from.plusDays(1), "5m"))
+                .thenReturn(List.of(new MeasurementBucketDTO("Garden", from, 18.0, 24.0, 21.0, 12, 0.25)));
+
+        mockMvc.perform(get("/api/measurements/aggregate")
+                        .param("sensorName", "Home,Garden")
+                        .param("from", "2024-10-01T00:00:00")
+                        .param("to", "2024-10-02T00:00:00")
+                        .param("bucket", "5m"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].sensorName").value("Garden"))
+                .andExpect(jsonPath("$[0].count").value(12))
+                .andExpect(jsonPath("$[0].rainFraction").value(0.25));
+    }
+
+    @Test
+    void shouldRejectCursorPage_withUnsupportedSort() throws Exception {
+        mockMvc.perform(get("/api/measurements/rainy-days/cursor")
+                        .param("sort", "value"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldReturnSlice_whenTotalIsApproximate() throws Exception {
+        when(measurementService.getMeasurementsSlice(any(Pageable.class), eq(true)))
+                .thenReturn(new SliceDTO<>(List.of(new MeasurementDTO(23.5, false, null, null)), 0, 20, true, 1_000_000L));
+
+        mockMvc.perform(get("/api/measurements").param("total", "approximate"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hasNext").value(true))
+                .andExpect(jsonPath("$.approximateTotal").value(1_000_000))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+    }
+
+    @Test
+    void shouldReturnSliceWithoutTotal_forRainyDays() throws Exception {
+        when(measurementService.getRainingMeasurementsSlice(any(Pageable.class), eq(false)))
+                .thenReturn(new SliceDTO<>(List.of(), 0, 20, false, null));
+
+        mockMvc.perform(get("/api/measurements/rainy-days").param("total", "none"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.hasNext").value(false))
+                .andExpect(jsonPath("$.approximateTotal").doesNotExist());
+    }
+
+    @Test
+    void shouldRejectUnknownTotalMode() throws Exception {
+        mockMvc.perform(get("/api/measurements").param("total", "roughly"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    void shouldRejectTotalModeInOtherCase_insteadOfReturningSlice() throws Exception {
+        mockMvc.perform(get("/api/measurements").param("total", "EXACT"))
+                .andExpect(status().isBadRequest());
+        mockMvc.perform(get("/api/measurements/rainy-days").param("total", "None"))
+                .andExpect(status().isBadRequest());
+
+        verify(measurementService, never()).getMeasurementsSlice(any(Pageable.class), anyBoolean());
+        verify(measurementService, never()).getRainingMeasurementsSlice(any(Pageable.class), anyBoolean());
+    }
+
+    @Test
+    void shouldCountRainingMeasurements_overallAndPerSensor() throws Exception {
+        when(measurementService.countRainingMeasurements()).thenReturn(42L);
+        when(measurementService.countRainingMeasurements("Garden")).thenReturn(7L);
+
+        mockMvc.perform(get("/api/measurements/rainy-days/count"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(42));
+        mockMvc.perform(get("/api/measurements/rainy-days/count").param("sensorName", "Garden"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.count").value(7));
+    }
 }
@@ -7,28 +7,49 @@ import org.springframework.context.annotation.Import;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import ru.xing.springcourse.petproject3rest.config.SecurityConfig;
 import ru.xing.springcourse.petproject3rest.controllers.SensorController;
+import ru.xing.springcourse.petproject3rest.dto.CursorPageDTO;
+import ru.xing.springcourse.petproject3rest.dto.ExportFormat;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
 import ru.xing.springcourse.petproject3rest.dto.SensorDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorSummaryDTO;
+import ru.xing.springcourse.petproject3rest.dto.SliceDTO;
 import ru.xing.springcourse.petproject3rest.repositories.UserRepository;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.MeasurementExportService;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
 import ru.xing.springcourse.petproject3rest.services.SensorService;
+import ru.xing.springcourse.petproject3rest.util.BusinessException;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
 
 @WebMvcTest(controllers = SensorController.class)
-@Import(SecurityConfig.class)
+@Import({SecurityConfig.class, DataVersions.class})
 public class SensorControllerTest {
 
     @Autowired
@@ -37,6 +58,15 @@ public class SensorControllerTest {
     @MockitoBean
     private SensorService sensorService;
 
+    @MockitoBean
+    private MeasurementExportService measurementExportService;
+
+    @MockitoBean
+    private SensorRegistry sensorRegistry;
+
+    @Autowired
+    private DataVersions dataVersions;
+
     @MockitoBean
     private UserRepository userRepository;
 
@@ -62,9 +92,25 @@ public class SensorControllerTest {
                 .andExpect(status().isUnauthorized()); //401
     }
 
+    @Test
+    void shouldGetCurrentReadings_WithoutAuth() throws Exception {
+        SensorMeasurementDTO home = new SensorMeasurementDTO("Home",
+                new MeasurementDTO(20.5, true, LocalDateTime.of(2024, 10, 1, 12, 0), null));
+        when(sensorService.getCurrentReadings(List.of("Home", "Garden"))).thenReturn(List.of(home));
+
+        mvc.perform(get("/api/sensors/current")
+                .param("name", "Home", "Garden"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].sensorName").value("Home"))
+                .andExpect(jsonPath("$[0].value").value(20.5))
+                .andExpect(jsonPath("$[0].raining").value(true))
+                .andExpect(jsonPath("$[0].idempotencyKey").doesNotExist());
+    }
+
     @Test
     void shouldGetAllSensors_WithoutAuth() throws Exception {
-        SensorDTO sensorDTO = new SensorDTO("Sensor1", null);
+        SensorDTO sensorDTO = new SensorDTO("Sensor1", new SensorSummaryDTO(3, LocalDateTime.of(2024, 10, 1, 12, 0),
+                LocalDateTime.of(2024, 10, 1, 12, 2), 20.5, 1.0 / 3), null, null);
         Page<SensorDTO> page = new PageImpl<>(List.of(sensorDTO));
 
         when(sensorService.getAllSensors(any(Pageable.class))).thenReturn(page);
@@ -73,7 +119,11 @@ public class SensorControllerTest {
                 .param("page", "0")
                 .param("size", "10"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.content[0].name").value("Sensor1"));
+                .andExpect(jsonPath("$.content[0].name").value("Sensor1"))
+                .andExpect(jsonPath("$.content[0].summary.measurementCount").value(3))
+                .andExpect(jsonPath("$.content[0].summary.lastMeasurementAt").value("2024-10-01T12:02:00"))
+                .andExpect(jsonPath("$.content[0].summary.lastValue").value(20.5))
+                .andExpect(jsonPath("$.content[0].measurements").doesNotExist());
     }
 
 
@@ -103,12 +153,134 @@ public class SensorControllerTest {
 
     @Test
     void shouldGetSensorByName_Public() throws Exception {
-        SensorDTO sensorDTO = new SensorDTO("TestSensor", null);
+        SensorDTO sensorDTO = new SensorDTO("TestSensor", SensorSummaryDTO.empty(), List.of(), null);
 
-        when(sensorService.getSensorByName("TestSensor")).thenReturn(sensorDTO);
+        when(sensorService.getSensorByName("TestSensor", 20)).thenReturn(sensorDTO);
 
         mvc.perform(get("/api/sensors/TestSensor"))
                 .andExpect(status().isOk())
-                .andExpect(jsonPath("$.name").value("TestSensor"));
+                .andExpect(jsonPath("$.name").value("TestSensor"))
+                .andExpect(jsonPath("$.nextCursor").doesNotExist());
+    }
+
+    @Test
+    void shouldGetSensorByName_WithRecentWindowWithinCap() throws Exception {
+        SensorDTO sensorDTO = new SensorDTO("TestSensor", SensorSummaryDTO.empty(),
+                List.of(new MeasurementDTO(23.5, false, LocalDateTime.of(2024, 10, 1, 12, 0), null)), "abc");
+        when(sensorService.getSensorByName("TestSensor", 5)).thenReturn(sensorDTO);
+        when(sensorService.getSensorByName("TestSensor", 20)).thenReturn(sensorDTO);
+
+        mvc.perform(get("/api/sensors/TestSensor").param("recent", "5"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.measurements[0].value").value(23.5))
+                .andExpect(jsonPath("$.nextCursor").value("abc"));
+
+        // Сверх предела - значение по умолчанию
+        mvc.perform(get("/api/sensors/TestSensor").param("recent", "100000"))
+                .andExpect(status().isOk());
+        verify(sensorService).getSensorByName("TestSensor", 20);
+    }
+
+    @Test
+    void shouldReject_StreamSensorMeasurements_WithoutAuth() throws Exception {
+        mvc.perform(get("/api/sensors/TestSensor/measurements/stream"))
+                .andExpect(status().isUnauthorized());
+        verifyNoInteractions(measurementExportService);
+    }
+
+    @Test
+    @WithMockUser(username = "user", roles = {"USER"})
+    void shouldStreamSensorMeasurements_AsNdjson() throws Exception {
+        MeasurementExportService.ExportFilter filter = new MeasurementExportService.ExportFilter(1, null, null, null);
+        when(measurementExportService.filter("TestSensor", null, null, null)).thenReturn(filter);
+
+        MvcResult result = mvc.perform(get("/api/sensors/TestSensor/measurements/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        mvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson;charset=UTF-8"));
+
+        verify(measurementExportService).export(eq(filter), eq(ExportFormat.NDJSON), eq(false), any());
+    }
+
+    @Test
+    void shouldGetSensorsSlice_WithoutCount() throws Exception {
+        when(sensorService.getSensorsSlice(any(Pageable.class), eq(false)))
+                .thenReturn(new SliceDTO<>(List.of(new SensorDTO("Sensor1", null, null, null)), 0, 20, false, null));
+
+        mvc.perform(get("/api/sensors").param("total", "none"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].name").value("Sensor1"))
+                .andExpect(jsonPath("$.hasNext").value(false));
+    }
+
+    @Test
+    void shouldGetSensorMeasurementsInWindow_Public() throws Exception {
+        LocalDateTime from = LocalDateTime.of(2024, 10, 1, 0, 0);
+        when(sensorService.getSensorMeasurements("TestSensor", from, from.plusDays(1), null, 20, Sort.Direction.DESC))
+                .thenReturn(new CursorPageDTO<>(List.of(new MeasurementDTO(23.5, false, from, null)), "abc", true));
+
+        mvc.perform(get("/api/sensors/TestSensor/measurements")
+                        .param("from", "2024-10-01T00:00:00")
+                        .param("to", "2024-10-02T00:00:00"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].value").value(23.5))
+                .andExpect(jsonPath("$.nextCursor").value("abc"))
+                .andExpect(jsonPath("$.hasNext").value(true));
+    }
+
+    @Test
+    void shouldAnswerNotModified_WithoutQuery_UntilSomethingIsWritten() throws Exception {
+        when(sensorService.getAllSensors(any(Pageable.class))).thenReturn(new PageImpl<>(List.of()));
+
+        String etag = mvc.perform(get("/api/sensors"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists(HttpHeaders.LAST_MODIFIED))
+                .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        mvc.perform(get("/api/sensors").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        verify(sensorService, times(1)).getAllSensors(any(Pageable.class));
+
+        dataVersions.touch(List.of(7));
+
+        mvc.perform(get("/api/sensors").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, org.hamcrest.Matchers.not(etag)));
+        verify(sensorService, times(2)).getAllSensors(any(Pageable.class));
+    }
+
+    @Test
+    void shouldValidateSensorDetail_ByItsOwnVersion() throws Exception {
+        when(sensorRegistry.findId("TestSensor")).thenReturn(Optional.of(1));
+        when(sensorService.getSensorByName("TestSensor", 20))
+                .thenReturn(new SensorDTO("TestSensor", SensorSummaryDTO.empty(), List.of(), null));
+
+        String etag = mvc.perform(get("/api/sensors/TestSensor"))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+
+        // Запись другого сенсора карточку не меняет
+        dataVersions.touch(List.of(2));
+        mvc.perform(get("/api/sensors/TestSensor").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+
+        dataVersions.touch(List.of(1));
+        mvc.perform(get("/api/sensors/TestSensor").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isOk());
+        verify(sensorService, times(2)).getSensorByName("TestSensor", 20);
+    }
+
+    @Test
+    void shouldSkipValidators_ForUnknownSensor() throws Exception {
+        when(sensorService.getSensorByName("Ghost", 20)).thenThrow(new BusinessException("Sensor not found"));
+
+        mvc.perform(get("/api/sensors/Ghost").header(HttpHeaders.IF_NONE_MATCH, "*"))
+                .andExpect(status().isBadRequest())
+                .andExpect(header().doesNotExist(HttpHeaders.ETAG));
+        verify(sensorService, never()).getAllSensors(any(Pageable.class));
     }
 }
@@ -3,19 +3,26 @@ package ru.xing.springcourse.petproject3rest.unit.exception;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.context.annotation.Import;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.bean.override.mockito.MockitoBean;
 import org.springframework.test.web.servlet.MockMvc;
 import ru.xing.springcourse.petproject3rest.controllers.SensorController;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.MeasurementExportService;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
 import ru.xing.springcourse.petproject3rest.services.SensorService;
 import ru.xing.springcourse.petproject3rest.util.BusinessException;
 
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @WebMvcTest(SensorController.class)
+@Import(DataVersions.class)
 public class GlobalExceptionHandlerTest {
 
     @Autowired
@@ -24,10 +31,16 @@ public class GlobalExceptionHandlerTest {
     @MockitoBean
     private SensorService sensorService;
 
+    @MockitoBean
+    private MeasurementExportService measurementExportService;
+
+    @MockitoBean
+    private SensorRegistry sensorRegistry;
+
     @Test
     @WithMockUser
     void handleBusinessException_Returns400() throws Exception {
-        when(sensorService.getSensorByName("NonExistent"))
+        when(sensorService.getSensorByName(eq("NonExistent"), anyInt()))
                 .thenThrow(new BusinessException("Sensor not found"));
 
         mockMvc.perform(get("/api/sensors/NonExistent"))
@@ -38,7 +51,7 @@ public class GlobalExceptionHandlerTest {
     @Test
     @WithMockUser
     void handleBusinessException_ContainsTimestamp() throws Exception {
-        when(sensorService.getSensorByName("Error"))
+        when(sensorService.getSensorByName(eq("Error"), anyInt()))
                 .thenThrow(new BusinessException("Test error"));
 
         mockMvc.perform(get("/api/sensors/Error"))
@@ -49,7 +62,7 @@ public class GlobalExceptionHandlerTest {
     @Test
     @WithMockUser
     void handleBusinessException_ContainsStatus() throws Exception {
-        when(sensorService.getSensorByName("Error"))
+        when(sensorService.getSensorByName(eq("Error"), anyInt()))
                 .thenThrow(new BusinessException("Test error"));
 
         mockMvc.perform(get("/api/sensors/Error"))
@@ -3,6 +3,7 @@ package ru.xing.springcourse.petproject3rest.unit.mapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
 import ru.xing.springcourse.petproject3rest.models.Measurement;
 import ru.xing.springcourse.petproject3rest.models.Sensor;
 import ru.xing.springcourse.petproject3rest.util.MeasurementMapper;
@@ -102,7 +103,7 @@ public class MeasurementMapperTest {
 
     @Test
     void toDTO_HandlesNullInput() {
-        assertThrows(NullPointerException.class, () -> measurementMapper.toDTO(null));
+        assertThrows(NullPointerException.class, () -> measurementMapper.toDTO((Measurement) null));
     }
 
     @Test
@@ -116,4 +117,16 @@ public class MeasurementMapperTest {
 
         assertTrue(dto.getRaining());
     }
+
+    @Test
+    void toDTO_ConvertsViewToDTO() {
+        MeasurementView view = new MeasurementView(7, 1, -3.25, true,
+                LocalDateTime.of(2024, 10, 26, 15, 30));
+
+        MeasurementDTO dto = measurementMapper.toDTO(view);
+
+        assertEquals(-3.25, dto.getValue());
+        assertTrue(dto.getRaining());
+        assertEquals(LocalDateTime.of(2024, 10, 26, 15, 30), dto.getMeasurementDateTime());
+    }
 }
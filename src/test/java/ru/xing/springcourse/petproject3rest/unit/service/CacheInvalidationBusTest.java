@@ -0,0 +1,154 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.data.redis.listener.Topic;
+import ru.xing.springcourse.petproject3rest.config.SharedCacheProperties;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+import ru.xing.springcourse.petproject3rest.services.CacheInvalidationBus;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.LatestMeasurementSnapshot;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
+import ru.xing.springcourse.petproject3rest.services.SharedCache;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class CacheInvalidationBusTest {
+    private static final byte[] CHANNEL = "pp3:v1:invalidation".getBytes();
+    private static final MeasurementDTO READING = new MeasurementDTO(20.0, false, LocalDateTime.of(2024, 10, 1, 12, 0),
+            null);
+
+    @Mock
+    private SharedCache sharedCache;
+
+    @Mock
+    private DataVersions dataVersions;
+
+    @Mock
+    private LatestMeasurementSnapshot latestMeasurementSnapshot;
+
+    @Mock
+    private SensorRegistry sensorRegistry;
+
+    @Mock
+    private RedisMessageListenerContainer listenerContainer;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private CacheInvalidationBus bus;
+
+    @BeforeEach
+    void setUp() {
+        when(sharedCache.channel()).thenReturn(new String(CHANNEL));
+        bus = newBus();
+    }
+
+    // Ещё один экземпляр приложения с тем же Redis
+    private CacheInvalidationBus newBus() {
+        return new CacheInvalidationBus(sharedCache, dataVersions, latestMeasurementSnapshot, sensorRegistry,
+                listenerContainer, new SharedCacheProperties(), meterRegistry);
+    }
+
+    private byte[] published() {
+        ArgumentCaptor<byte[]> message = ArgumentCaptor.forClass(byte[].class);
+        verify(sharedCache, atLeastOnce()).publish(message.capture());
+        return message.getValue();
+    }
+
+    @Test
+    void constructor_SubscribesToChannel() {
+        verify(listenerContainer).addMessageListener(eq(bus), any(Topic.class));
+    }
+
+    @Test
+    void constructor_LimitsValidatorsToTimesWhenMessagesAreDelivered() {
+        ArgumentCaptor<BooleanSupplier> delivering = ArgumentCaptor.forClass(BooleanSupplier.class);
+        verify(dataVersions).limitValidators(eq(Duration.ofMinutes(1)), delivering.capture());
+
+        when(sharedCache.isAvailable()).thenReturn(true, true, false);
+        when(listenerContainer.isRunning()).thenReturn(true, false);
+
+        assertTrue(delivering.getValue().getAsBoolean());
+        assertFalse(delivering.getValue().getAsBoolean());
+        assertFalse(delivering.getValue().getAsBoolean());
+    }
+
+    @Test
+    void sensorsChanged_InvalidatesAndNotifiesOtherInstance() {
+        when(sharedCache.invalidate(List.of(1, 2))).thenReturn(true);
+        when(sharedCache.publish(any())).thenReturn(true);
+        when(sharedCache.latest(List.of(1, 2))).thenReturn(Map.of(1, READING));
+
+        bus.sensorsChanged(List.of(1, 2), false);
+        newBus().onMessage(new DefaultMessage(CHANNEL, published()), null);
+
+        verify(latestMeasurementSnapshot).offerAll(Map.of(1, READING));
+        verify(dataVersions).applyRemote(List.of(1, 2));
+        assertEquals(1, meterRegistry.get("cache.invalidation.messages").tag("direction", "sent").counter().count());
+        assertEquals(1, meterRegistry.get("cache.invalidation.messages").tag("direction", "received").counter()
+                .count());
+    }
+
+    @Test
+    void onMessage_IgnoresOwnAndMalformedMessages() {
+        when(sharedCache.invalidateAll()).thenReturn(true);
+        when(sharedCache.publish(any())).thenReturn(true);
+
+        bus.allChanged(false);
+        bus.onMessage(new DefaultMessage(CHANNEL, published()), null);
+        bus.onMessage(new DefaultMessage(CHANNEL, new byte[]{1, 2, 3}), null);
+
+        verify(dataVersions, never()).touchAllRemote();
+        verify(dataVersions, never()).applyRemote(any());
+    }
+
+    @Test
+    void remoteChanges_AreNotPublishedAgain() {
+        bus.sensorsChanged(List.of(1), true);
+        bus.allChanged(true);
+
+        verify(sharedCache, never()).invalidate(any());
+        verify(sharedCache, never()).invalidateAll();
+        verify(sharedCache, never()).publish(any());
+    }
+
+    @Test
+    void recovery_ReplaysChangesMadeWhileRedisWasDown() {
+        ArgumentCaptor<Runnable> recovery = ArgumentCaptor.forClass(Runnable.class);
+        verify(sharedCache).addRecoveryListener(recovery.capture());
+        when(sharedCache.invalidate(List.of(1))).thenReturn(false, true);
+        when(sharedCache.publish(any())).thenReturn(true);
+        when(sensorRegistry.findName(1)).thenReturn(Optional.of("A"));
+        when(latestMeasurementSnapshot.current("A")).thenReturn(Optional.of(new SensorMeasurementDTO("A", READING)));
+        when(sharedCache.latest()).thenReturn(Map.of(2, READING));
+
+        bus.sensorsChanged(List.of(1), false);
+        verify(sharedCache, never()).publish(any());
+
+        recovery.getValue().run();
+
+        verify(listenerContainer).start();
+        verify(sharedCache).offerLatest(Map.of(1, READING));
+        verify(sharedCache, times(2)).invalidate(List.of(1));
+        verify(sharedCache).publish(any());
+        // Чужие сообщения за время простоя потеряны: всё локальное сбрасывается
+        verify(latestMeasurementSnapshot).offerAll(Map.of(2, READING));
+        verify(dataVersions).touchAllRemote();
+    }
+}
@@ -0,0 +1,175 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.ServletWebRequest;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class DataVersionsTest {
+
+    @Mock
+    private SensorRegistry sensorRegistry;
+
+    private DataVersions dataVersions;
+
+    @BeforeEach
+    void setUp() {
+        dataVersions = new DataVersions(sensorRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private static ServletWebRequest conditionalGet(String etag) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/sensors");
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, etag);
+        return new ServletWebRequest(request, new MockHttpServletResponse());
+    }
+
+    private Measurement measurement(int sensorId) {
+        Sensor sensor = new Sensor();
+        sensor.setId(sensorId);
+        return Measurement.builder().value(10.0).sensor(sensor).build();
+    }
+
+    @Test
+    void record_ChangesGlobalAndOnlyWrittenSensorsEtags() {
+        when(sensorRegistry.findId("Home")).thenReturn(Optional.of(1));
+        when(sensorRegistry.findId("Garden")).thenReturn(Optional.of(2));
+        String global = dataVersions.global().etag();
+        String home = dataVersions.sensor("Home").orElseThrow().etag();
+        String garden = dataVersions.sensor("Garden").orElseThrow().etag();
+
+        dataVersions.record(List.of(measurement(1), measurement(1)));
+
+        assertNotEquals(global, dataVersions.global().etag());
+        assertNotEquals(home, dataVersions.sensor("Home").orElseThrow().etag());
+        assertEquals(garden, dataVersions.sensor("Garden").orElseThrow().etag());
+        assertTrue(dataVersions.global().etag().startsWith("W/\""));
+    }
+
+    @Test
+    void touch_InsideTransaction_AppliesOnlyAfterCommit() {
+        String global = dataVersions.global().etag();
+        TransactionSynchronizationManager.initSynchronization();
+
+        dataVersions.touch(List.of(1));
+        assertEquals(global, dataVersions.global().etag());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertNotEquals(global, dataVersions.global().etag());
+    }
+
+    @Test
+    void listeners_NotifiedAfterCommit() {
+        DataVersions.Listener listener = mock(DataVersions.Listener.class);
+        dataVersions.addListener(listener);
+        TransactionSynchronizationManager.initSynchronization();
+
+        dataVersions.touch(List.of(1, 2));
+        verifyNoInteractions(listener);
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(listener).sensorsChanged(argThat(ids -> ids.containsAll(List.of(1, 2)) && ids.size() == 2), eq(false));
+
+        dataVersions.touchAll();
+        verify(listener).allChanged(false);
+
+        dataVersions.applyRemote(List.of(3));
+        verify(listener).sensorsChanged(List.of(3), true);
+    }
+
+    @Test
+    void touchAll_ChangesEverySensorEtag() {
+        when(sensorRegistry.findId("Garden")).thenReturn(Optional.of(2));
+        String garden = dataVersions.sensor("Garden").orElseThrow().etag();
+
+        dataVersions.touchAll();
+
+        assertNotEquals(garden, dataVersions.sensor("Garden").orElseThrow().etag());
+    }
+
+    @Test
+    void sensor_IsEmptyForUnknownSensor() {
+        when(sensorRegistry.findId("Ghost")).thenReturn(Optional.empty());
+
+        assertTrue(dataVersions.sensor("Ghost").isEmpty());
+    }
+
+    @Test
+    void limitedValidators_ExpireAfterTtl() {
+        AtomicReference<Instant> now = new AtomicReference<>(Instant.parse("2024-10-01T12:00:10Z"));
+        DataVersions limited = new DataVersions(sensorRegistry, new Clock() {
+            @Override
+            public ZoneId getZone() {
+                return ZoneOffset.UTC;
+            }
+
+            @Override
+            public Clock withZone(ZoneId zone) {
+                return this;
+            }
+
+            @Override
+            public Instant instant() {
+                return now.get();
+            }
+        });
+        limited.limitValidators(Duration.ofMinutes(1), () -> true);
+        String etag = limited.global().etag();
+
+        now.set(Instant.parse("2024-10-01T12:00:50Z"));
+        assertTrue(limited.global().checkNotModified(conditionalGet(etag)));
+
+        // Записей не было (или сообщение о них потерялось), но интервал сменился
+        now.set(Instant.parse("2024-10-01T12:01:00Z"));
+        assertFalse(limited.global().checkNotModified(conditionalGet(etag)));
+        assertEquals(Instant.parse("2024-10-01T12:01:00Z").toEpochMilli(), limited.global().lastModified());
+    }
+
+    @Test
+    void limitedValidators_NoNotModifiedWhileChangesAreNotDelivered() {
+        AtomicBoolean delivering = new AtomicBoolean(true);
+        dataVersions.limitValidators(Duration.ofMinutes(1), delivering::get);
+        String etag = dataVersions.global().etag();
+
+        delivering.set(false);
+        ServletWebRequest request = conditionalGet(etag);
+
+        assertFalse(dataVersions.global().checkNotModified(request));
+        assertNull(request.getResponse().getHeader(HttpHeaders.ETAG));
+
+        delivering.set(true);
+        assertTrue(dataVersions.global().checkNotModified(conditionalGet(etag)));
+    }
+}
@@ -0,0 +1,98 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.xing.springcourse.petproject3rest.services.IdempotencyWindow;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyWindowTest {
+
+    @Test
+    void key_IsNull_WhenClientSentNoKey() {
+        assertNull(IdempotencyWindow.key(1, null));
+        assertEquals("1:abc", IdempotencyWindow.key(1, "abc"));
+    }
+
+    @Test
+    void isDuplicate_TrueOnlyForRememberedKeys() {
+        IdempotencyWindow window = new IdempotencyWindow(new SimpleMeterRegistry(), 10, Duration.ofMinutes(1));
+
+        window.rememberAfterCommit(List.of("1:a"));
+
+        assertTrue(window.isDuplicate("1:a"));
+        assertFalse(window.isDuplicate("2:a"));
+        assertFalse(window.isDuplicate(null));
+    }
+
+    @Test
+    void remember_EvictsOldestKeys_WhenWindowIsFull() {
+        IdempotencyWindow window = new IdempotencyWindow(new SimpleMeterRegistry(), 2, Duration.ofMinutes(1));
+
+        window.remember("1:a");
+        window.remember("1:b");
+        window.remember("1:c");
+
+        assertEquals(2, window.size());
+        assertFalse(window.isDuplicate("1:a"));
+        assertTrue(window.isDuplicate("1:c"));
+    }
+
+    @Test
+    void forget_RetriedKeyIsEvictedInItsNewTurn() {
+        IdempotencyWindow window = new IdempotencyWindow(new SimpleMeterRegistry(), 2, Duration.ofMinutes(1));
+
+        window.remember("1:a");
+        window.forget("1:a");
+        assertFalse(window.isDuplicate("1:a"));
+
+        window.remember("1:b");
+        window.remember("1:a");
+        window.remember("1:c");
+
+        assertEquals(2, window.size());
+        assertFalse(window.isDuplicate("1:b"));
+        assertTrue(window.isDuplicate("1:a"));
+        assertTrue(window.isDuplicate("1:c"));
+    }
+
+    @Test
+    void isDuplicate_FalseAfterTtl() {
+        MutableClock clock = new MutableClock();
+        IdempotencyWindow window = new IdempotencyWindow(new SimpleMeterRegistry(), 10, Duration.ofSeconds(30), clock);
+
+        window.remember("1:a");
+        clock.advance(Duration.ofSeconds(31));
+
+        assertFalse(window.isDuplicate("1:a"));
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.xing.springcourse.petproject3rest.config.SharedCacheProperties;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementAggregateRepository;
+import ru.xing.springcourse.petproject3rest.services.LatestMeasurementSnapshot;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
+import ru.xing.springcourse.petproject3rest.services.SharedCache;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class LatestMeasurementSnapshotTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 10, 1, 12, 0);
+
+    @Mock
+    private MeasurementAggregateRepository measurementAggregateRepository;
+
+    @Mock
+    private SensorRegistry sensorRegistry;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private LatestMeasurementSnapshot snapshot;
+
+    @BeforeEach
+    void setUp() {
+        SharedCacheProperties sharedCacheProperties = new SharedCacheProperties();
+        sharedCacheProperties.setEnabled(false);
+        snapshot = new LatestMeasurementSnapshot(measurementAggregateRepository, sensorRegistry,
+                new SharedCache(null, sharedCacheProperties, meterRegistry), meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Measurement measurement(int sensorId, double value, LocalDateTime time) {
+        Sensor sensor = new Sensor();
+        sensor.setId(sensorId);
+        return Measurement.builder().value(value).raining(false).measurementDateTime(time).sensor(sensor).build();
+    }
+
+    @Test
+    void warmUp_LoadsLatestPerSensorSortedByName() {
+        when(measurementAggregateRepository.findLatestPerSensor()).thenReturn(List.of(
+                new SensorMeasurementDTO("Home", new MeasurementDTO(20.0, false, TIME, null)),
+                new SensorMeasurementDTO("Garden", new MeasurementDTO(11.0, true, TIME, null))));
+
+        snapshot.warmUp();
+
+        assertEquals(List.of("Garden", "Home"),
+                snapshot.current().stream().map(SensorMeasurementDTO::getSensorName).toList());
+        assertEquals(2, meterRegistry.get("measurement.snapshot.sensors").gauge().value());
+    }
+
+    @Test
+    void record_KeepsNewestMeasurementPerSensor() {
+        when(sensorRegistry.findName(1)).thenReturn(Optional.of("Home"));
+
+        snapshot.record(List.of(measurement(1, 20.0, TIME), measurement(1, 21.0, TIME.plusMinutes(1))));
+        // запоздавшее измерение не откатывает снимок
+        snapshot.record(List.of(measurement(1, 5.0, TIME.minusHours(1))));
+        snapshot.offer("Home", new MeasurementDTO(-1.0, false, TIME.minusDays(1), null));
+
+        SensorMeasurementDTO current = snapshot.current("Home").orElseThrow();
+        assertEquals(21.0, current.getMeasurement().getValue());
+        assertEquals(TIME.plusMinutes(1), current.getMeasurement().getMeasurementDateTime());
+        assertTrue(snapshot.current("Garden").isEmpty());
+    }
+
+    @Test
+    void record_InsideTransaction_AppliesOnlyAfterCommit() {
+        when(sensorRegistry.findName(1)).thenReturn(Optional.of("Home"));
+        TransactionSynchronizationManager.initSynchronization();
+
+        snapshot.record(List.of(measurement(1, 20.0, TIME)));
+        assertTrue(snapshot.current("Home").isEmpty());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(20.0, snapshot.current("Home").orElseThrow().getMeasurement().getValue());
+    }
+}
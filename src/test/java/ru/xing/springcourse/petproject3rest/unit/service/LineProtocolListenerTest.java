@@ -0,0 +1,174 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
+import ru.xing.springcourse.petproject3rest.services.LatestMeasurementSnapshot;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.RainCounters;
+import ru.xing.springcourse.petproject3rest.services.LineProtocolListener;
+import ru.xing.springcourse.petproject3rest.services.SensorRateLimiter;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
+
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class LineProtocolListenerTest {
+    @Mock
+    private SensorRegistry sensorRegistry;
+
+    @Mock
+    private SensorRateLimiter rateLimiter;
+
+    @Mock
+    private MeasurementRepository measurementRepository;
+
+    @Mock
+    private LatestMeasurementSnapshot latestMeasurementSnapshot;
+
+    @Mock
+    private RainCounters rainCounters;
+
+    @Mock
+    private DataVersions dataVersions;
+
+    private SimpleMeterRegistry meterRegistry;
+    private LineProtocolListener listener;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (listener != null) {
+            listener.stop();
+        }
+    }
+
+    private void start(int queueCapacity, LineProtocolListener.BackpressurePolicy backpressure) {
+        listener = new LineProtocolListener(sensorRegistry, rateLimiter, measurementRepository, latestMeasurementSnapshot, rainCounters, dataVersions,
+                meterRegistry, true, "127.0.0.1", 0, 256, queueCapacity, 100, 20, backpressure);
+        listener.start();
+    }
+
+    private void send(String payload) throws Exception {
+        try (Socket socket = new Socket("127.0.0.1", listener.getLocalPort())) {
+            OutputStream out = socket.getOutputStream();
+            out.write(payload.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+    }
+
+    private double records(String result) {
+        return meterRegistry.get("ingest.line_protocol.records").tag("result", result).counter().count();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void listener_WritesParsedRecordsInBatches() throws Exception {
+        // Писатель переиспользует список группы - копируем на лету
+        List<Measurement> written = new CopyOnWriteArrayList<>();
+        when(measurementRepository.batchInsert(anyList())).thenAnswer(invocation -> {
+            written.addAll(invocation.getArgument(0, List.class));
+            return List.copyOf(invocation.getArgument(0, List.class));
+        });
+        when(sensorRegistry.findId("Sensor_Home")).thenReturn(Optional.of(7));
+        when(sensorRegistry.findId("Unknown")).thenReturn(Optional.empty());
+        start(1000, LineProtocolListener.BackpressurePolicy.PAUSE);
+
+        send("Sensor_Home,23.5,false,1700000000000\r\n" +
+                "Sensor_Home,oops,false\n" +
+                "Unknown,1.0,true\n" +
+                "\n" +
+                "Sensor_Home,-4.0,true");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (written.size() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertEquals(2, written.size());
+        assertEquals(23.5, written.get(0).getValue());
+        assertEquals(7, written.get(0).getSensor().getId());
+        assertTrue(written.get(1).isRaining());
+        assertEquals(2.0, records("accepted"));
+        assertEquals(2.0, records("rejected"));
+        assertTrue(meterRegistry.get("ingest.line_protocol.bytes").counter().count() > 0);
+        // Сенсор разрешается один раз на всё время работы
+        verify(sensorRegistry, times(1)).findId("Sensor_Home");
+
+        // Метрики писателя - те же, что у write-behind, под своим префиксом
+        listener.stop();
+        assertTrue(meterRegistry.get("ingest.line_protocol.flush.latency").timer().count() > 0);
+        assertEquals(2, meterRegistry.get("ingest.line_protocol.flush.size").summary().totalAmount());
+        assertEquals(0, meterRegistry.get("ingest.line_protocol.queue.depth").gauge().value());
+    }
+
+    @Test
+    void listener_DropsRateLimitedRecords() throws Exception {
+        when(sensorRegistry.findId("Sensor_Home")).thenReturn(Optional.of(7));
+        when(rateLimiter.tryAcquire(anyString(), anyInt())).thenReturn(0L, 1L);
+        start(1000, LineProtocolListener.BackpressurePolicy.PAUSE);
+
+        send("Sensor_Home,1.0,false\nSensor_Home,2.0,false\n");
+
+        verify(measurementRepository, timeout(5000)).batchInsert(anyList());
+        assertEquals(1.0, records("accepted"));
+        assertEquals(1.0, records("rate_limited"));
+    }
+
+    @Test
+    void listener_DropsRecords_WhenQueueIsFullAndPolicyIsDrop() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(sensorRegistry.findId("Sensor_Home")).thenReturn(Optional.of(7));
+        // Писатель "висит" на первой группе, очередь на 1 запись быстро заполняется
+        when(measurementRepository.batchInsert(anyList())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return List.of();
+        });
+        start(1, LineProtocolListener.BackpressurePolicy.DROP);
+
+        send("Sensor_Home,1.0,false\n");
+        verify(measurementRepository, timeout(5000)).batchInsert(anyList());
+        send("Sensor_Home,2.0,false\nSensor_Home,3.0,false\nSensor_Home,4.0,false\n");
+
+        long deadline = System.currentTimeMillis() + 5000;
+        while (records("accepted") + records("dropped") < 4 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+
+        assertEquals(2.0, records("accepted"));
+        assertEquals(2.0, records("dropped"));
+    }
+
+    @Test
+    void listener_DoesNotOpenSocket_WhenDisabled() {
+        listener = new LineProtocolListener(sensorRegistry, rateLimiter, measurementRepository, latestMeasurementSnapshot, rainCounters, dataVersions,
+                meterRegistry, false, "127.0.0.1", 0, 256, 10, 100, 20, LineProtocolListener.BackpressurePolicy.PAUSE);
+        listener.start();
+
+        assertFalse(listener.isRunning());
+    }
+}
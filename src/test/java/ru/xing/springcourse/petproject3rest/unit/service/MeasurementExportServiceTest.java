@@ -0,0 +1,149 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.xing.springcourse.petproject3rest.dto.ExportFormat;
+import ru.xing.springcourse.petproject3rest.services.MeasurementExportService;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
+import ru.xing.springcourse.petproject3rest.util.BusinessException;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class MeasurementExportServiceTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 1, 1, 10, 0, 30);
+
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PreparedStatement statement;
+
+    @Mock
+    private ResultSet resultSet;
+
+    @Mock
+    private SensorRegistry sensorRegistry;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MeasurementExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new MeasurementExportService(dataSource, sensorRegistry,
+                new ObjectMapper().findAndRegisterModules(), meterRegistry, 2);
+    }
+
+    private void stubRows() throws Exception {
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, true, false);
+        when(resultSet.getString(1)).thenReturn("Home", "Home", "Garden");
+        when(resultSet.getDouble(2)).thenReturn(20.5, -3.0, 11.25);
+        when(resultSet.getBoolean(3)).thenReturn(false, true, false);
+        when(resultSet.getTimestamp(4)).thenReturn(Timestamp.valueOf(TIME));
+    }
+
+    @Test
+    void exportCsv_WritesHeaderAndRowsInImportFormat() throws Exception {
+        stubRows();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long rows = exportService.export(exportService.filter(null, null, null, null), ExportFormat.CSV, false, out);
+
+        assertEquals(3, rows);
+        assertEquals("""
+                sensor,value,raining,measurement_date_time
+                Home,20.5,false,2024-01-01T10:00:30
+                Home,-3.0,true,2024-01-01T10:00:30
+                Garden,11.25,false,2024-01-01T10:00:30
+                """, out.toString(StandardCharsets.UTF_8));
+        // Серверный курсор: транзакция + fetch size
+        verify(connection).setAutoCommit(false);
+        verify(statement).setFetchSize(2);
+        verify(connection).close();
+
+        assertEquals(3, meterRegistry.get("measurement.export.rows").tag("format", "csv").counter().count());
+        assertEquals(out.size(), meterRegistry.get("measurement.export.bytes").tag("format", "csv").counter().count());
+        assertEquals(1, meterRegistry.get("measurement.export").tag("result", "completed").timer().count());
+        assertEquals(0, meterRegistry.get("measurement.export.active").gauge().value());
+    }
+
+    @Test
+    void exportNdjson_Gzip_WritesOneObjectPerLine() throws Exception {
+        stubRows();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.export(exportService.filter(null, null, null, null), ExportFormat.NDJSON, true, out);
+
+        String ndjson;
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ndjson = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals("""
+                {"sensorName":"Home","value":20.5,"raining":false,"measurementDateTime":"2024-01-01T10:00:30"}
+                {"sensorName":"Home","value":-3.0,"raining":true,"measurementDateTime":"2024-01-01T10:00:30"}
+                {"sensorName":"Garden","value":11.25,"raining":false,"measurementDateTime":"2024-01-01T10:00:30"}
+                """, ndjson);
+    }
+
+    @Test
+    void export_AppliesFilterInOrder() throws Exception {
+        when(sensorRegistry.findId("Home")).thenReturn(Optional.of(7));
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+
+        MeasurementExportService.ExportFilter filter =
+                exportService.filter("Home", TIME.minusDays(1), TIME, true);
+        long rows = exportService.export(filter, ExportFormat.CSV, false, new ByteArrayOutputStream());
+
+        assertEquals(0, rows);
+        verify(connection).prepareStatement(
+                "SELECT s.name, m.value, m.raining, m.measurement_date_time " +
+                        "FROM measurement m JOIN sensor s ON s.id = m.sensor WHERE 1 = 1" +
+                        " AND m.sensor = ? AND m.measurement_date_time >= ? AND m.measurement_date_time < ?" +
+                        " AND m.raining = ? ORDER BY m.measurement_date_time, m.id",
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        verify(statement).setObject(1, 7);
+        verify(statement).setObject(2, Timestamp.valueOf(TIME.minusDays(1)));
+        verify(statement).setObject(3, Timestamp.valueOf(TIME));
+        verify(statement).setObject(4, true);
+    }
+
+    @Test
+    void filter_RejectsUnknownSensorAndInvertedRange() {
+        when(sensorRegistry.findId("Ghost")).thenReturn(Optional.empty());
+
+        BusinessException unknown = assertThrows(BusinessException.class,
+                () -> exportService.filter("Ghost", null, null, null));
+        assertEquals("Sensor not found: Ghost", unknown.getMessage());
+
+        assertThrows(BusinessException.class, () -> exportService.filter(null, TIME, TIME.minusHours(1), null));
+        verifyNoInteractions(dataSource);
+    }
+}
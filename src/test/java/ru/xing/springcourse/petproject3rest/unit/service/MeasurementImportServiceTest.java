@@ -0,0 +1,262 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.postgresql.util.PSQLException;
+import org.postgresql.util.PSQLState;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import ru.xing.springcourse.petproject3rest.dto.ExportFormat;
+import ru.xing.springcourse.petproject3rest.dto.ImportFormat;
+import ru.xing.springcourse.petproject3rest.dto.ImportResultDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.services.LatestMeasurementSnapshot;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.RainCounters;
+import ru.xing.springcourse.petproject3rest.services.MeasurementExportService;
+import ru.xing.springcourse.petproject3rest.services.MeasurementImportService;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
+
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class MeasurementImportServiceTest {
+    @Mock
+    private DataSource dataSource;
+
+    @Mock
+    private Connection connection;
+
+    @Mock
+    private PGConnection pgConnection;
+
+    @Mock
+    private CopyManager copyManager;
+
+    @Mock
+    private SensorRegistry sensorRegistry;
+
+    @Mock
+    private LatestMeasurementSnapshot latestMeasurementSnapshot;
+
+    @Mock
+    private RainCounters rainCounters;
+
+    @Mock
+    private DataVersions dataVersions;
+
+    @TempDir
+    Path tempDir;
+
+    private MeasurementImportService importService;
+    private final List<String> copiedChunks = new ArrayList<>();
+    // COPY с этой подстрокой отклоняется целиком, как при нарушении CHECK
+    private String rejectedByDatabase;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        importService = new MeasurementImportService(dataSource, sensorRegistry, latestMeasurementSnapshot, rainCounters, dataVersions,
+                new ObjectMapper().findAndRegisterModules(),
+                Validation.buildDefaultValidatorFactory().getValidator(), 2, tempDir);
+
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+        when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+        when(copyManager.copyIn(anyString(), any(Reader.class))).thenAnswer(invocation -> {
+            StringWriter chunk = new StringWriter();
+            ((Reader) invocation.getArgument(1)).transferTo(chunk);
+            if (rejectedByDatabase != null && chunk.toString().contains(rejectedByDatabase)) {
+                throw new PSQLException("new row violates check constraint", PSQLState.CHECK_VIOLATION);
+            }
+            copiedChunks.add(chunk.toString());
+            return chunk.toString().lines().count();
+        });
+    }
+
+    @Test
+    void importCsv_CopiesValidRowsInChunksAndWritesErrorFile() throws Exception {
+        when(sensorRegistry.findId("Home")).thenReturn(Optional.of(1));
+        when(sensorRegistry.findId("Ghost")).thenReturn(Optional.empty());
+        String csv = """
+                sensor,value,raining,measurement_date_time
+                Home,20.5,false,2024-01-01 10:00:00
+                Home,200,false,2024-01-01 10:01:00
+                Home,21.0,yes,2024-01-01 10:02:00
+                Ghost,10,true,2024-01-01 10:03:00
+                Home,22.0,1,2024-01-01T10:04:00
+                Home,23.0,0,2024-01-01T10:05:00
+                """;
+
+        ImportResultDTO result = importService.importMeasurements(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ImportFormat.CSV);
+
+        assertEquals(3, result.getImported());
+        assertEquals(3, result.getRejected());
+        assertEquals(2, copiedChunks.size());
+        assertEquals("20.5,false,2024-01-01T10:00,1\n22.0,true,2024-01-01T10:04,1\n", copiedChunks.get(0));
+        // Сенсор разрешается один раз на имя
+        verify(sensorRegistry, times(1)).findId("Home");
+        // В снимок последних показаний - самая поздняя строка каждого загруженного чанка
+        verify(latestMeasurementSnapshot).offer("Home",
+                new MeasurementDTO(22.0, true, LocalDateTime.of(2024, 1, 1, 10, 4), null));
+        verify(latestMeasurementSnapshot).offer("Home",
+                new MeasurementDTO(23.0, false, LocalDateTime.of(2024, 1, 1, 10, 5), null));
+        // Дождевые строки учитываются только после загрузки чанка
+        verify(rainCounters).add(1, 1L);
+        verify(dataVersions, times(2)).touch(Set.of(1));
+
+        List<String> errors = Files.readAllLines(Path.of(result.getErrorFile()));
+        assertEquals(3, errors.size());
+        assertTrue(errors.get(0).startsWith("3\t"));
+        assertTrue(errors.get(2).contains("Sensor not found: Ghost"));
+    }
+
+    @Test
+    void importNdjson_RequiresTimestamp() throws Exception {
+        when(sensorRegistry.findId("Home")).thenReturn(Optional.of(1));
+        String ndjson = """
+                {"sensorName": "Home", "value": 10, "raining": true, "measurementDateTime": "2024-01-01T10:00:00"}
+                {"sensorName": "Home", "value": 11, "raining": false}
+                """;
+
+        ImportResultDTO result = importService.importMeasurements(
+                new ByteArrayInputStream(ndjson.getBytes(StandardCharsets.UTF_8)), ImportFormat.NDJSON);
+
+        assertEquals(1, result.getImported());
+        assertEquals(1, result.getRejected());
+    }
+
+    @Test
+    void import_DeletesErrorFile_WhenNothingRejected() throws Exception {
+        when(sensorRegistry.findId("Home")).thenReturn(Optional.of(1));
+
+        ImportResultDTO result = importService.importMeasurements(
+                new ByteArrayInputStream("Home,1,true,2024-01-01T00:00\n".getBytes(StandardCharsets.UTF_8)),
+                ImportFormat.CSV);
+
+        assertEquals(1, result.getImported());
+        assertNull(result.getErrorFile());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void importCsv_LoadsExportWithQuotedSensorNames() throws Exception {
+        PreparedStatement statement = mock(PreparedStatement.class);
+        ResultSet resultSet = mock(ResultSet.class);
+        when(connection.prepareStatement(anyString(), anyInt(), anyInt())).thenReturn(statement);
+        when(statement.executeQuery()).thenReturn(resultSet);
+        when(resultSet.next()).thenReturn(true, true, false);
+        when(resultSet.getString(1)).thenReturn("Home, \"North\"", "Line\nbreak");
+        when(resultSet.getDouble(2)).thenReturn(20.5, -3.0);
+        when(resultSet.getBoolean(3)).thenReturn(false, true);
+        when(resultSet.getTimestamp(4)).thenReturn(Timestamp.valueOf(LocalDateTime.of(2024, 1, 1, 10, 0)));
+        when(sensorRegistry.findId("Home, \"North\"")).thenReturn(Optional.of(1));
+        when(sensorRegistry.findId("Line\nbreak")).thenReturn(Optional.of(2));
+
+        MeasurementExportService exportService = new MeasurementExportService(dataSource, sensorRegistry,
+                new ObjectMapper().findAndRegisterModules(), new SimpleMeterRegistry(), 2);
+        ByteArrayOutputStream exported = new ByteArrayOutputStream();
+        exportService.export(exportService.filter(null, null, null, null), ExportFormat.CSV, false, exported);
+
+        assertTrue(exported.toString(StandardCharsets.UTF_8).contains("\"Home, \"\"North\"\"\",20.5,false"));
+
+        ImportResultDTO result = importService.importMeasurements(
+                new ByteArrayInputStream(exported.toByteArray()), ImportFormat.CSV);
+
+        assertEquals(2, result.getImported());
+        assertEquals(0, result.getRejected());
+        assertEquals("20.5,false,2024-01-01T10:00,1\n-3.0,true,2024-01-01T10:00,2\n", copiedChunks.get(0));
+    }
+
+    @Test
+    void importCsv_RejectsNonFiniteValues() throws Exception {
+        when(sensorRegistry.findId("Home")).thenReturn(Optional.of(1));
+        String csv = """
+                Home,NaN,false,2024-01-01 10:00:00
+                Home,Infinity,false,2024-01-01 10:01:00
+                Home,1e400,false,2024-01-01 10:02:00
+                Home,1,false,2024-01-01 10:03:00
+                """;
+
+        ImportResultDTO result = importService.importMeasurements(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ImportFormat.CSV);
+
+        assertEquals(1, result.getImported());
+        assertEquals(3, result.getRejected());
+    }
+
+    @Test
+    void importCsv_FailedCopyIsRetriedInHalvesAndRejectedRowsGoToErrorFile() throws Exception {
+        importService = new MeasurementImportService(dataSource, sensorRegistry, latestMeasurementSnapshot, rainCounters,
+                dataVersions, new ObjectMapper().findAndRegisterModules(),
+                Validation.buildDefaultValidatorFactory().getValidator(), 100, tempDir);
+        when(sensorRegistry.findId("Home")).thenReturn(Optional.of(1));
+        rejectedByDatabase = "T10:02";
+        String csv = """
+                Home,1,true,2024-01-01 10:00:00
+                Home,2,true,2024-01-01 10:01:00
+                Home,3,false,2024-01-01 10:02:00
+                Home,4,false,2024-01-01 10:03:00
+                Home,5,true,2024-01-01 10:04:00
+                """;
+
+        ImportResultDTO result = importService.importMeasurements(
+                new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8)), ImportFormat.CSV);
+
+        assertEquals(4, result.getImported());
+        assertEquals(1, result.getRejected());
+        assertEquals(4, copiedChunks.stream().mapToLong(chunk -> chunk.lines().count()).sum());
+        List<String> errors = Files.readAllLines(Path.of(result.getErrorFile()));
+        assertEquals(List.of("3\tRejected by database: new row violates check constraint\tHome,3,false,2024-01-01 10:02:00"),
+                errors);
+        // Счётчики - только по загруженным частям: строки 1-2 и 4-5
+        verify(rainCounters).add(1, 2L);
+        verify(rainCounters).add(1, 1L);
+        verifyNoMoreInteractions(rainCounters);
+    }
+
+    @Test
+    void import_ErrorFilesOfConcurrentImportsDoNotCollide() throws Exception {
+        when(sensorRegistry.findId("Home")).thenReturn(Optional.of(1));
+        when(sensorRegistry.findId("Ghost")).thenReturn(Optional.empty());
+        byte[] csv = "Home,1,true,2024-01-01T00:00\nGhost,1,true,2024-01-01T00:00\n".getBytes(StandardCharsets.UTF_8);
+
+        ImportResultDTO first = importService.importMeasurements(new ByteArrayInputStream(csv), ImportFormat.CSV);
+        ImportResultDTO second = importService.importMeasurements(new ByteArrayInputStream(csv), ImportFormat.CSV);
+
+        assertNotEquals(first.getErrorFile(), second.getErrorFile());
+        assertTrue(Files.exists(Path.of(first.getErrorFile())));
+        assertTrue(Files.exists(Path.of(second.getErrorFile())));
+    }
+}
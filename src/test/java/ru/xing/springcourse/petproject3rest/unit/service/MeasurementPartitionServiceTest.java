@@ -0,0 +1,184 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.CannotAcquireLockException;
+import ru.xing.springcourse.petproject3rest.config.MeasurementPartitionProperties;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementPartitionRepository;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementPartitionRepository.Partition;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRollupRepository;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.MeasurementPartitionService;
+import ru.xing.springcourse.petproject3rest.services.RainCounters;
+
+import java.time.Clock;
+import java.time.LocalDateTime;
+import java.time.Period;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class MeasurementPartitionServiceTest {
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 10, 15, 12, 30);
+    private static final LocalDateTime OCTOBER = LocalDateTime.of(2024, 10, 1, 0, 0);
+
+    @Mock
+    private MeasurementPartitionRepository measurementPartitionRepository;
+
+    @Mock
+    private MeasurementRollupRepository measurementRollupRepository;
+
+    @Mock
+    private DataVersions dataVersions;
+
+    @Mock
+    private RainCounters rainCounters;
+
+    private final MeasurementPartitionProperties properties = new MeasurementPartitionProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MeasurementPartitionService partitionService;
+
+    @BeforeEach
+    void setUp() {
+        partitionService = new MeasurementPartitionService(measurementPartitionRepository, measurementRollupRepository,
+                dataVersions, rainCounters, properties, meterRegistry,
+                Clock.fixed(NOW.toInstant(ZoneOffset.UTC), ZoneOffset.UTC));
+    }
+
+    private static Partition month(LocalDateTime from) {
+        return new Partition("p" + from.toLocalDate(), from, from.plusMonths(1));
+    }
+
+    @Test
+    void maintain_CreatesMissingPartitionsAhead() {
+        properties.setPremake(2);
+        when(measurementPartitionRepository.findPartitions()).thenReturn(List.of(month(OCTOBER)));
+        when(measurementPartitionRepository.createPartition(any(), any(), any(), any())).thenReturn(0L);
+
+        partitionService.maintain();
+
+        verify(measurementPartitionRepository).createPartition("measurement_p20241101", OCTOBER.plusMonths(1),
+                OCTOBER.plusMonths(2), properties.getLockTimeout());
+        verify(measurementPartitionRepository).createPartition("measurement_p20241201", OCTOBER.plusMonths(2),
+                OCTOBER.plusMonths(3), properties.getLockTimeout());
+        verify(measurementPartitionRepository, times(2)).createPartition(any(), any(), any(), any());
+        verify(measurementPartitionRepository, never()).removePartition(any(), anyBoolean(), any());
+        verifyNoInteractions(dataVersions);
+        assertEquals(2, meterRegistry.get("measurement.partitions.created").counter().count());
+    }
+
+    @Test
+    void maintain_MovesDefaultPartitionRowsIntoTheirPartition() {
+        properties.setPremake(0);
+        when(measurementPartitionRepository.findDefaultPartitionDays())
+                .thenReturn(List.of(LocalDateTime.of(2020, 1, 15, 0, 0), LocalDateTime.of(2020, 1, 20, 0, 0)));
+        when(measurementPartitionRepository.findPartitions()).thenReturn(List.of(month(OCTOBER)));
+        when(measurementPartitionRepository.createPartition(any(), any(), any(), any())).thenReturn(42L);
+
+        partitionService.maintain();
+
+        verify(measurementPartitionRepository).createPartition("measurement_p20200101", LocalDateTime.of(2020, 1, 1, 0, 0),
+                LocalDateTime.of(2020, 2, 1, 0, 0), properties.getLockTimeout());
+        verify(measurementPartitionRepository, never()).deleteFromDefaultPartition(any());
+        assertEquals(42, meterRegistry.get("measurement.partitions.default.moved").counter().count());
+    }
+
+    @Test
+    void maintain_NewIntervalFillsGapsBetweenExistingPartitions() {
+        properties.setInterval(MeasurementPartitionProperties.Interval.WEEK);
+        properties.setPremake(2);
+        when(measurementPartitionRepository.findPartitions()).thenReturn(List.of(month(OCTOBER)));
+        when(measurementPartitionRepository.createPartition(any(), any(), any(), any())).thenReturn(0L);
+
+        partitionService.maintain();
+
+        // Недели с 14.10 по 04.11: первые две внутри октября, от третьей остаётся 01.11-04.11
+        verify(measurementPartitionRepository).createPartition("measurement_p20241101", OCTOBER.plusMonths(1),
+                LocalDateTime.of(2024, 11, 4, 0, 0), properties.getLockTimeout());
+        verify(measurementPartitionRepository, times(1)).createPartition(any(), any(), any(), any());
+    }
+
+    @Test
+    void maintain_RemovesPartitionsPastRetentionWithTheirRollups() {
+        properties.setPremake(0);
+        properties.setRetention(Period.ofMonths(6));
+        properties.setRetentionMode(MeasurementPartitionProperties.RetentionMode.DETACH);
+        LocalDateTime march = LocalDateTime.of(2024, 3, 1, 0, 0);
+        when(measurementPartitionRepository.findPartitions())
+                .thenReturn(List.of(month(march), month(march.plusMonths(1)), month(march.plusMonths(2)), month(OCTOBER)));
+        when(measurementPartitionRepository.removePartition(any(), eq(false), any())).thenReturn(true);
+
+        partitionService.maintain();
+
+        // 15.10 - 6 месяцев = 15.04: апрель ещё хранится
+        verify(measurementPartitionRepository).removePartition("p2024-03-01", false, properties.getLockTimeout());
+        verify(measurementPartitionRepository, never()).removePartition(eq("p2024-04-01"), anyBoolean(), any());
+        verify(measurementRollupRepository).deleteBefore(march.plusMonths(1));
+        verify(measurementPartitionRepository).deleteIdempotencyKeysBefore(march.plusMonths(1));
+        verify(rainCounters).reconcile();
+        verify(dataVersions).touchAll();
+        assertEquals(1, meterRegistry.get("measurement.partitions.removed").tag("mode", "detach").counter().count());
+    }
+
+    @Test
+    void maintain_PartitionLockedByQueries_RetriedNextRunAndKeepsItsRollups() {
+        properties.setPremake(0);
+        properties.setRetention(Period.ofMonths(1));
+        LocalDateTime july = LocalDateTime.of(2024, 7, 1, 0, 0);
+        when(measurementPartitionRepository.findPartitions())
+                .thenReturn(List.of(month(july), month(july.plusMonths(1)), month(OCTOBER)));
+        when(measurementPartitionRepository.removePartition(eq("p2024-07-01"), eq(true), any())).thenReturn(true);
+        when(measurementPartitionRepository.removePartition(eq("p2024-08-01"), eq(true), any()))
+                .thenThrow(new CannotAcquireLockException("lock timeout"));
+
+        partitionService.maintain();
+
+        verify(measurementRollupRepository).deleteBefore(july.plusMonths(1));
+        verify(measurementPartitionRepository).deleteIdempotencyKeysBefore(july.plusMonths(1));
+    }
+
+    @Test
+    void maintain_DeletesDefaultPartitionRowsPastRetention() {
+        properties.setPremake(0);
+        properties.setRetention(Period.ofMonths(1));
+        when(measurementPartitionRepository.findDefaultPartitionDays()).thenReturn(List.of(LocalDateTime.of(2020, 1, 15, 0, 0)));
+        when(measurementPartitionRepository.findPartitions()).thenReturn(List.of(month(OCTOBER)));
+        when(measurementPartitionRepository.deleteFromDefaultPartition(OCTOBER.minusMonths(1))).thenReturn(3L);
+
+        partitionService.maintain();
+
+        verify(measurementPartitionRepository, never()).createPartition(any(), any(), any(), any());
+        verify(measurementRollupRepository).deleteBefore(OCTOBER.minusMonths(1));
+        verify(dataVersions).touchAll();
+    }
+
+    @Test
+    void maintain_Disabled_DoesNothing() {
+        properties.setEnabled(false);
+
+        partitionService.maintain();
+
+        verifyNoInteractions(measurementPartitionRepository, measurementRollupRepository, dataVersions);
+    }
+
+    @Test
+    void gaps_ReturnsUncoveredPartsInOrder() {
+        LocalDateTime day = LocalDateTime.of(2024, 10, 1, 0, 0);
+        List<Partition> existing = List.of(new Partition("a", day.plusDays(2), day.plusDays(4)),
+                new Partition("b", day.plusDays(5), day.plusDays(6)));
+
+        assertEquals(List.of(new Partition("measurement_p20241001", day, day.plusDays(2)),
+                        new Partition("measurement_p20241005", day.plusDays(4), day.plusDays(5)),
+                        new Partition("measurement_p20241007", day.plusDays(6), day.plusDays(7))),
+                MeasurementPartitionService.gaps(day, day.plusDays(7), existing));
+        assertEquals(List.of(), MeasurementPartitionService.gaps(day.plusDays(2), day.plusDays(3), existing));
+    }
+}
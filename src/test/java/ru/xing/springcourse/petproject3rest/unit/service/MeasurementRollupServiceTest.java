@@ -0,0 +1,70 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRollupRepository;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.MeasurementRollupService;
+import ru.xing.springcourse.petproject3rest.util.BusinessException;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class MeasurementRollupServiceTest {
+    private static final LocalDateTime DAY = LocalDateTime.of(2024, 10, 1, 0, 0);
+
+    @Mock
+    private MeasurementRollupRepository measurementRollupRepository;
+
+    @Mock
+    private DataVersions dataVersions;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private MeasurementRollupService rollupService;
+
+    @BeforeEach
+    void setUp() {
+        rollupService = new MeasurementRollupService(measurementRollupRepository, dataVersions, meterRegistry, 100);
+    }
+
+    @Test
+    void mergePending_DrainsFullBatchesUntilQueueIsShort() {
+        when(measurementRollupRepository.mergeDeltas(100)).thenReturn(100, 100, 7);
+
+        rollupService.mergePending();
+
+        verify(measurementRollupRepository, times(3)).mergeDeltas(100);
+        assertEquals(207, meterRegistry.get("measurement.rollup.merged").counter().count());
+    }
+
+    @Test
+    void rebuild_WidensRangeToWholeDaysAndRebuildsDayByDay() {
+        when(measurementRollupRepository.rebuild(any(), any())).thenReturn(10L, 20L, 30L);
+
+        long rows = rollupService.rebuild(DAY.plusHours(13), DAY.plusDays(2).plusMinutes(1));
+
+        assertEquals(60, rows);
+        verify(measurementRollupRepository).rebuild(DAY, DAY.plusDays(1));
+        verify(measurementRollupRepository).rebuild(DAY.plusDays(1), DAY.plusDays(2));
+        verify(measurementRollupRepository).rebuild(DAY.plusDays(2), DAY.plusDays(3));
+        verifyNoMoreInteractions(measurementRollupRepository);
+        verify(dataVersions).touchAll();
+    }
+
+    @Test
+    void rebuild_KeepsMidnightUpperBoundAndRejectsEmptyRange() {
+        rollupService.rebuild(DAY, DAY.plusDays(1));
+        verify(measurementRollupRepository).rebuild(DAY, DAY.plusDays(1));
+
+        assertThrows(BusinessException.class, () -> rollupService.rebuild(DAY, DAY));
+        verifyNoMoreInteractions(measurementRollupRepository);
+    }
+}
@@ -1,37 +1,82 @@
 package ru.xing.springcourse.petproject3rest.unit.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.Validation;
+import jakarta.validation.Validator;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.aop.framework.ProxyFactory;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.transaction.annotation.AnnotationTransactionAttributeSource;
+import org.springframework.transaction.interceptor.TransactionInterceptor;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.xing.springcourse.petproject3rest.config.ReadCacheProperties;
+import ru.xing.springcourse.petproject3rest.config.SharedCacheProperties;
+import ru.xing.springcourse.petproject3rest.dto.CursorPageDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBatchDTO;
+import ru.xing.springcourse.petproject3rest.dto.IngestResultDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBucketDTO;
 import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
+import ru.xing.springcourse.petproject3rest.dto.SensorReadingsDTO;
+import ru.xing.springcourse.petproject3rest.dto.SliceDTO;
 import ru.xing.springcourse.petproject3rest.models.Measurement;
 import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementAggregateRepository;
 import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
-import ru.xing.springcourse.petproject3rest.repositories.SensorRepository;
+import ru.xing.springcourse.petproject3rest.repositories.RollupResolution;
+import ru.xing.springcourse.petproject3rest.repositories.TableStatisticsRepository;
+import ru.xing.springcourse.petproject3rest.services.LatestMeasurementSnapshot;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.ReadCache;
+import ru.xing.springcourse.petproject3rest.services.RainCounters;
+import ru.xing.springcourse.petproject3rest.services.IdempotencyWindow;
 import ru.xing.springcourse.petproject3rest.services.MeasurementService;
+import ru.xing.springcourse.petproject3rest.services.MeasurementWriteBehindBuffer;
+import ru.xing.springcourse.petproject3rest.services.SensorRateLimiter;
+import ru.xing.springcourse.petproject3rest.services.SharedCache;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
 import ru.xing.springcourse.petproject3rest.util.BusinessException;
+import ru.xing.springcourse.petproject3rest.util.MeasurementCursor;
+import ru.xing.springcourse.petproject3rest.util.MeasurementFrameCodec;
 import ru.xing.springcourse.petproject3rest.util.MeasurementMapper;
+import ru.xing.springcourse.petproject3rest.util.TooManyRequestsException;
 
+import javax.sql.DataSource;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 public class MeasurementServiceTest {
     @Mock
-    private SensorRepository sensorRepository;
+    private SensorRegistry sensorRegistry;
 
     @Mock
     private MeasurementRepository measurementRepository;
@@ -39,12 +84,54 @@ public class MeasurementServiceTest {
     @Mock
     private MeasurementMapper measurementMapper;
 
+    @Mock
+    private MeasurementWriteBehindBuffer writeBehindBuffer;
+
+    @Mock
+    private IdempotencyWindow idempotencyWindow;
+
+    @Mock
+    private SensorRateLimiter rateLimiter;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    @Spy
+    private Validator validator = Validation.buildDefaultValidatorFactory().getValidator();
+
+    @Mock
+    private TableStatisticsRepository tableStatisticsRepository;
+
+    @Mock
+    private MeasurementAggregateRepository measurementAggregateRepository;
+
+    @Mock
+    private LatestMeasurementSnapshot latestMeasurementSnapshot;
+
+    @Mock
+    private RainCounters rainCounters;
+
+    @Mock
+    private DataVersions dataVersions;
+
+    @Spy
+    private ReadCache readCache = new ReadCache(new ReadCacheProperties(), localOnly(), mock(DataVersions.class),
+            new SimpleMeterRegistry());
+
     @InjectMocks
     private MeasurementService measurementService;
 
     private Sensor sensor;
     private Measurement measurement;
     private MeasurementDTO measurementDTO;
+    private MeasurementView measurementView;
+
+    // Без Redis: общий кэш только пропускает загрузку
+    private static SharedCache localOnly() {
+        SharedCacheProperties properties = new SharedCacheProperties();
+        properties.setEnabled(false);
+        return new SharedCache(null, properties, new SimpleMeterRegistry());
+    }
 
     @BeforeEach
     void setUp() {
@@ -59,6 +146,8 @@ public class MeasurementServiceTest {
         measurement.setMeasurementDateTime(LocalDateTime.now());
         measurement.setSensor(sensor);
 
+        measurementView = new MeasurementView(1, 1, 25.5, false, measurement.getMeasurementDateTime());
+
         measurementDTO = new MeasurementDTO();
         measurementDTO.setValue(25.5);
         measurementDTO.setRaining(false);
@@ -67,28 +156,28 @@ public class MeasurementServiceTest {
 
     @Test
     void addMeasurement_Success() {
-        when(sensorRepository.findByName("TestSensor")).thenReturn(Optional.of(sensor));
+        when(sensorRegistry.resolve("TestSensor")).thenReturn(Optional.of(sensor));
         when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class)))
                 .thenReturn(measurement);
-        when(measurementRepository.save(any(Measurement.class))).thenReturn(measurement);
+        when(measurementRepository.batchInsert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
 
         measurementService.addMeasurement("TestSensor", measurementDTO);
 
-        verify(sensorRepository, times(1)).findByName("TestSensor");
+        verify(sensorRegistry, times(1)).resolve("TestSensor");
         verify(measurementMapper, times(1)).toEntity(measurementDTO, sensor);
-        verify(measurementRepository, times(1)).save(measurement);
+        verify(measurementRepository, times(1)).batchInsert(List.of(measurement));
     }
 
     @Test
     void addMeasurement_ThrowsException_WhenSensorNotFound() {
-        when(sensorRepository.findByName("NonExistent")).thenReturn(Optional.empty());
+        when(sensorRegistry.resolve("NonExistent")).thenReturn(Optional.empty());
 
         BusinessException exception = assertThrows(BusinessException.class,
                 () -> measurementService.addMeasurement("NonExistent", measurementDTO));
 
         assertEquals("Sensor not found: NonExistent", exception.getMessage());
-        verify(sensorRepository, times(1)).findByName("NonExistent");
-        verify(measurementRepository, never()).save(any());
+        verify(sensorRegistry, times(1)).resolve("NonExistent");
+        verify(measurementRepository, never()).batchInsert(anyList());
     }
 
     @Test
@@ -96,40 +185,321 @@ public class MeasurementServiceTest {
         measurementDTO.setRaining(true);
         measurement.setRaining(true);
 
-        when(sensorRepository.findByName("TestSensor")).thenReturn(Optional.of(sensor));
+        when(sensorRegistry.resolve("TestSensor")).thenReturn(Optional.of(sensor));
         when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class)))
                 .thenReturn(measurement);
-        when(measurementRepository.save(any(Measurement.class))).thenReturn(measurement);
+        when(measurementRepository.batchInsert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
 
         measurementService.addMeasurement("TestSensor", measurementDTO);
 
-        verify(measurementRepository, times(1)).save(measurement);
+        verify(measurementRepository, times(1)).batchInsert(List.of(measurement));
         assertTrue(measurement.isRaining());
     }
 
+    @Test
+    void addMeasurement_SkipsRetry_WhenKeyIsInWindow() {
+        measurement.setIdempotencyKey("retry-1");
+        when(sensorRegistry.resolve("TestSensor")).thenReturn(Optional.of(sensor));
+        when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class))).thenReturn(measurement);
+        when(idempotencyWindow.isDuplicate("1:retry-1")).thenReturn(true);
+
+        measurementService.addMeasurement("TestSensor", measurementDTO);
+
+        verify(measurementRepository, never()).batchInsert(anyList());
+    }
+
+    @Test
+    void addMeasurements_CountsOnlyRowsInsertedByDatabase() {
+        // k1 уже занят в БД (записан другим экземпляром или выпал из окна)
+        Measurement stored = Measurement.builder().sensor(sensor).idempotencyKey("k1").raining(true).build();
+        Measurement fresh = Measurement.builder().sensor(sensor).idempotencyKey("k2").raining(true).build();
+        MeasurementBatchDTO batchDTO = MeasurementBatchDTO.builder()
+                .sensors(List.of(SensorReadingsDTO.builder()
+                        .sensorName("TestSensor")
+                        .measurements(List.of(measurementDTO, measurementDTO))
+                        .build()))
+                .build();
+
+        when(sensorRegistry.resolveAll(anyCollection())).thenReturn(Map.of("TestSensor", sensor));
+        when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class))).thenReturn(stored, fresh);
+        when(measurementRepository.batchInsert(anyList())).thenReturn(List.of(fresh));
+
+        assertEquals(1, measurementService.addMeasurements(batchDTO));
+
+        verify(latestMeasurementSnapshot).record(List.of(fresh));
+        verify(rainCounters).record(List.of(fresh));
+        verify(dataVersions).record(List.of(fresh));
+    }
+
+    @Test
+    void addMeasurements_DropsRepeatedKeysInsideBatch() {
+        Measurement first = Measurement.builder().sensor(sensor).idempotencyKey("k1").build();
+        Measurement repeated = Measurement.builder().sensor(sensor).idempotencyKey("k1").build();
+        Measurement unkeyed = Measurement.builder().sensor(sensor).build();
+        MeasurementBatchDTO batchDTO = MeasurementBatchDTO.builder()
+                .sensors(List.of(SensorReadingsDTO.builder()
+                        .sensorName("TestSensor")
+                        .measurements(List.of(measurementDTO, measurementDTO, measurementDTO))
+                        .build()))
+                .build();
+
+        when(sensorRegistry.resolveAll(anyCollection())).thenReturn(Map.of("TestSensor", sensor));
+        when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class)))
+                .thenReturn(first, repeated, unkeyed);
+        when(measurementRepository.batchInsert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        measurementService.addMeasurements(batchDTO);
+
+        verify(measurementRepository, times(1)).batchInsert(List.of(first, unkeyed));
+        verify(idempotencyWindow, times(1)).rememberAfterCommit(Set.of("1:k1"));
+        verify(latestMeasurementSnapshot).record(List.of(first, unkeyed));
+        verify(rainCounters).record(List.of(first, unkeyed));
+        verify(dataVersions).record(List.of(first, unkeyed));
+    }
+
+    @Test
+    void addMeasurement_QueuesMeasurement_WhenWriteBehindEnabled() {
+        when(sensorRegistry.resolve("TestSensor")).thenReturn(Optional.of(sensor));
+        when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class))).thenReturn(measurement);
+        when(writeBehindBuffer.isEnabled()).thenReturn(true);
+        when(writeBehindBuffer.offer(measurement)).thenReturn(true);
+
+        measurementService.addMeasurement("TestSensor", measurementDTO);
+
+        verify(writeBehindBuffer, times(1)).offer(measurement);
+        verify(measurementRepository, never()).batchInsert(anyList());
+    }
+
+    @Test
+    void addMeasurement_WriteBehind_RunsWithoutTransactionOrConnection() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        // Как бин Spring: прокси с транзакциями по аннотациям над тем же сервисом
+        ProxyFactory proxyFactory = new ProxyFactory(measurementService);
+        proxyFactory.setProxyTargetClass(true);
+        proxyFactory.addAdvice(new TransactionInterceptor(new DataSourceTransactionManager(dataSource),
+                new AnnotationTransactionAttributeSource()));
+        MeasurementService service = (MeasurementService) proxyFactory.getProxy();
+
+        when(sensorRegistry.resolve("TestSensor")).thenReturn(Optional.of(sensor));
+        when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class))).thenReturn(measurement);
+        when(writeBehindBuffer.isEnabled()).thenReturn(true);
+        when(writeBehindBuffer.offer(measurement)).thenAnswer(invocation -> {
+            assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+            return true;
+        });
+
+        service.addMeasurement("TestSensor", measurementDTO);
+
+        verify(writeBehindBuffer).offer(measurement);
+        verify(dataSource, never()).getConnection();
+    }
+
+    @Test
+    void addMeasurement_ThrowsTooManyRequests_WhenQueueIsFull() {
+        when(sensorRegistry.resolve("TestSensor")).thenReturn(Optional.of(sensor));
+        when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class))).thenReturn(measurement);
+        when(writeBehindBuffer.isEnabled()).thenReturn(true);
+        when(writeBehindBuffer.offer(measurement)).thenReturn(false);
+
+        assertThrows(TooManyRequestsException.class,
+                () -> measurementService.addMeasurement("TestSensor", measurementDTO));
+        verify(measurementRepository, never()).batchInsert(anyList());
+    }
+
+    @Test
+    void addMeasurement_ThrowsTooManyRequests_WhenSensorRateLimited() {
+        when(sensorRegistry.resolve("TestSensor")).thenReturn(Optional.of(sensor));
+        when(rateLimiter.tryAcquire("TestSensor", 1)).thenReturn(3L);
+
+        TooManyRequestsException exception = assertThrows(TooManyRequestsException.class,
+                () -> measurementService.addMeasurement("TestSensor", measurementDTO));
+
+        assertEquals(3, exception.getRetryAfterSeconds());
+        verify(measurementRepository, never()).batchInsert(anyList());
+    }
+
+    @Test
+    void addMeasurements_RejectsWholeBatch_WhenOneSensorRateLimited() {
+        Sensor other = new Sensor();
+        other.setId(2);
+        other.setName("Other");
+
+        MeasurementBatchDTO batchDTO = MeasurementBatchDTO.builder()
+                .sensors(List.of(
+                        SensorReadingsDTO.builder().sensorName("TestSensor").measurements(List.of(measurementDTO)).build(),
+                        SensorReadingsDTO.builder().sensorName("Other").measurements(List.of(measurementDTO, measurementDTO)).build(),
+                        SensorReadingsDTO.builder().sensorName("Other").measurements(List.of(measurementDTO)).build()))
+                .build();
+
+        when(sensorRegistry.resolveAll(anyCollection())).thenReturn(Map.of("TestSensor", sensor, "Other", other));
+        // Лимит считается по сумме измерений сенсора во всём пакете
+        lenient().when(rateLimiter.tryAcquire("TestSensor", 1)).thenReturn(0L);
+        when(rateLimiter.tryAcquire("Other", 3)).thenReturn(1L);
+
+        assertThrows(TooManyRequestsException.class, () -> measurementService.addMeasurements(batchDTO));
+        verify(measurementRepository, never()).batchInsert(anyList());
+    }
+
+    @Test
+    void addFrame_DecodesAndInsertsWholeFrame() {
+        ByteBuffer frame = MeasurementFrameCodec.encode(
+                new int[]{1, 1}, new long[]{0, 0}, new float[]{23.5f, 22.0f}, new boolean[]{false, true});
+
+        when(sensorRegistry.resolveById(1)).thenReturn(Optional.of(sensor));
+        when(sensorRegistry.findName(1)).thenReturn(Optional.of("TestSensor"));
+        when(measurementRepository.batchInsert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        assertEquals(2, measurementService.addFrame(frame));
+
+        verify(sensorRegistry, times(1)).resolveById(1);
+        verify(rateLimiter).tryAcquire("TestSensor", 2);
+        verify(measurementMapper, never()).toEntity(any(), any());
+    }
+
+    @Test
+    void addFrame_ThrowsException_WhenSensorNotFound() {
+        ByteBuffer frame = MeasurementFrameCodec.encode(
+                new int[]{42}, new long[]{0}, new float[]{23.5f}, new boolean[]{false});
+
+        when(sensorRegistry.resolveById(42)).thenReturn(Optional.empty());
+
+        BusinessException exception = assertThrows(BusinessException.class, () -> measurementService.addFrame(frame));
+
+        assertEquals("Sensor not found: id 42", exception.getMessage());
+        verify(measurementRepository, never()).batchInsert(anyList());
+    }
+
+    @Test
+    void addMeasurements_InsertsWholeBatchAtOnce() {
+        MeasurementBatchDTO batchDTO = MeasurementBatchDTO.builder()
+                .sensors(List.of(SensorReadingsDTO.builder()
+                        .sensorName("TestSensor")
+                        .measurements(List.of(measurementDTO, measurementDTO, measurementDTO))
+                        .build()))
+                .build();
+
+        when(sensorRegistry.resolveAll(anyCollection())).thenReturn(Map.of("TestSensor", sensor));
+        when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class))).thenReturn(measurement);
+        when(measurementRepository.batchInsert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        int result = measurementService.addMeasurements(batchDTO);
+
+        assertEquals(3, result);
+        verify(sensorRegistry, times(1)).resolveAll(anyCollection());
+        verify(measurementRepository, times(1)).batchInsert(anyList());
+        verify(measurementRepository, never()).save(any());
+    }
+
+    @Test
+    void addMeasurements_ThrowsException_WhenSensorNotFound() {
+        MeasurementBatchDTO batchDTO = MeasurementBatchDTO.builder()
+                .sensors(List.of(SensorReadingsDTO.builder()
+                        .sensorName("NonExistent")
+                        .measurements(List.of(measurementDTO))
+                        .build()))
+                .build();
+
+        when(sensorRegistry.resolveAll(anyCollection())).thenReturn(Map.of());
+
+        BusinessException exception = assertThrows(BusinessException.class,
+                () -> measurementService.addMeasurements(batchDTO));
+
+        assertEquals("Sensor not found: NonExistent", exception.getMessage());
+        verify(measurementRepository, never()).batchInsert(anyList());
+    }
+
+    @Test
+    void addMeasurements_ThrowsException_WhenBatchTooLarge() {
+        List<MeasurementDTO> readings = Collections.nCopies(MeasurementService.MAX_BATCH_SIZE + 1, measurementDTO);
+        MeasurementBatchDTO batchDTO = MeasurementBatchDTO.builder()
+                .sensors(List.of(SensorReadingsDTO.builder()
+                        .sensorName("TestSensor")
+                        .measurements(readings)
+                        .build()))
+                .build();
+
+        assertThrows(BusinessException.class, () -> measurementService.addMeasurements(batchDTO));
+        verify(sensorRegistry, never()).resolveAll(anyCollection());
+    }
+
+    @Test
+    void ingestStream_StoresValidLinesAndReportsInvalidOnes() throws Exception {
+        String body = """
+                {"sensorName": "TestSensor", "value": 23.5, "raining": false}
+                {"sensorName": "TestSensor", "value": 500, "raining": false}
+
+                not a json
+                {"sensorName": "Unknown", "value": 10, "raining": true}
+                {"sensorName": "TestSensor", "value": 11, "raining": true, "measurementDateTime": "2024-10-17T14:30:00"}
+                """;
+
+        when(sensorRegistry.resolve("TestSensor")).thenReturn(Optional.of(sensor));
+        when(sensorRegistry.resolve("Unknown")).thenReturn(Optional.empty());
+        when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class))).thenReturn(measurement);
+        when(measurementRepository.batchInsert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        IngestResultDTO result = measurementService.ingestStream(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(2, result.getAccepted());
+        assertEquals(3, result.getRejected());
+        assertEquals(List.of(2L, 4L, 5L), result.getErrors().stream().map(e -> e.line()).toList());
+        // Сенсор ищется один раз на весь поток
+        verify(sensorRegistry, times(1)).resolve("TestSensor");
+    }
+
+    @Test
+    void ingestStream_RejectsLinesOfSensorOverRateLimit() throws Exception {
+        String body = """
+                {"sensorName": "Noisy", "value": 1, "raining": false}
+                {"sensorName": "TestSensor", "value": 23.5, "raining": false}
+                not a json
+                {"sensorName": "Noisy", "value": 2, "raining": false}
+                """;
+        Sensor noisy = new Sensor();
+        noisy.setId(2);
+        noisy.setName("Noisy");
+
+        when(sensorRegistry.resolve("TestSensor")).thenReturn(Optional.of(sensor));
+        when(sensorRegistry.resolve("Noisy")).thenReturn(Optional.of(noisy));
+        when(measurementMapper.toEntity(any(MeasurementDTO.class), any(Sensor.class))).thenReturn(measurement);
+        when(rateLimiter.tryAcquire("Noisy", 2)).thenReturn(4L);
+        when(measurementRepository.batchInsert(anyList())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        IngestResultDTO result = measurementService.ingestStream(
+                new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1, result.getAccepted());
+        assertEquals(3, result.getRejected());
+        assertEquals(List.of(1L, 3L, 4L), result.getErrors().stream().map(e -> e.line()).toList());
+        assertEquals("Rate limit exceeded for sensor: Noisy", result.getErrors().get(0).message());
+        verify(rateLimiter).tryAcquire("TestSensor", 1);
+        verify(measurementRepository).batchInsert(List.of(measurement));
+    }
+
     @Test
     void getAllMeasurements_ReturnsPageOfMeasurements() {
-        List<Measurement> measurementList = Arrays.asList(measurement);
-        Page<Measurement> measurementPage = new PageImpl<>(measurementList);
+        Page<MeasurementView> measurementPage = new PageImpl<>(List.of(measurementView));
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(measurementRepository.findAll(pageable)).thenReturn(measurementPage);
-        when(measurementMapper.toDTO(any(Measurement.class))).thenReturn(measurementDTO);
+        when(measurementRepository.findAllViews(pageable)).thenReturn(measurementPage);
+        when(measurementMapper.toDTO(any(MeasurementView.class))).thenReturn(measurementDTO);
 
         Page<MeasurementDTO> result = measurementService.getAllMeasurements(pageable);
 
         assertNotNull(result);
         assertEquals(1, result.getTotalElements());
         assertEquals(25.5, result.getContent().get(0).getValue());
-        verify(measurementRepository, times(1)).findAll(pageable);
+        verify(measurementRepository, times(1)).findAllViews(pageable);
+        verify(measurementRepository, never()).findAll(any(Pageable.class));
     }
 
     @Test
     void getAllMeasurements_EmptyPage() {
-        Page<Measurement> emptyPage = new PageImpl<>(List.of());
+        Page<MeasurementView> emptyPage = new PageImpl<>(List.of());
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(measurementRepository.findAll(pageable)).thenReturn(emptyPage);
+        when(measurementRepository.findAllViews(pageable)).thenReturn(emptyPage);
 
         Page<MeasurementDTO> result = measurementService.getAllMeasurements(pageable);
 
@@ -139,77 +509,242 @@ public class MeasurementServiceTest {
 
     @Test
     void getMeasurementById_Success() {
-        when(measurementRepository.findById(1)).thenReturn(Optional.of(measurement));
-        when(measurementMapper.toDTO(measurement)).thenReturn(measurementDTO);
+        when(measurementRepository.findViewById(1)).thenReturn(Optional.of(measurementView));
+        when(measurementMapper.toDTO(measurementView)).thenReturn(measurementDTO);
 
         MeasurementDTO result = measurementService.getMeasurementById(1);
 
         assertNotNull(result);
         assertEquals(25.5, result.getValue());
         assertFalse(result.getRaining());
-        verify(measurementRepository, times(1)).findById(1);
+        verify(measurementRepository, times(1)).findViewById(1);
+    }
+
+    @Test
+    void getMeasurementById_RepeatedRead_ServedFromCache() {
+        when(measurementRepository.findViewById(1)).thenReturn(Optional.of(measurementView));
+        when(measurementMapper.toDTO(measurementView)).thenReturn(measurementDTO);
+
+        measurementService.getMeasurementById(1);
+        MeasurementDTO result = measurementService.getMeasurementById(1);
+
+        assertSame(measurementDTO, result);
+        verify(measurementRepository, times(1)).findViewById(1);
     }
 
     @Test
     void getMeasurementById_ThrowsException_WhenNotFound() {
-        when(measurementRepository.findById(999)).thenReturn(Optional.empty());
+        when(measurementRepository.findViewById(999)).thenReturn(Optional.empty());
 
         BusinessException exception = assertThrows(BusinessException.class,
                 () -> measurementService.getMeasurementById(999));
 
         assertEquals("Measurement not found: 999", exception.getMessage());
-        verify(measurementRepository, times(1)).findById(999);
+        verify(measurementRepository, times(1)).findViewById(999);
     }
 
     @Test
     void countRainingMeasurements_ReturnsCorrectCount() {
-        when(measurementRepository.countByRainingTrue()).thenReturn(42L);
+        when(rainCounters.total()).thenReturn(42L);
 
         long result = measurementService.countRainingMeasurements();
 
         assertEquals(42L, result);
-        verify(measurementRepository, times(1)).countByRainingTrue();
+        verify(measurementRepository, never()).countByRainingTrue();
     }
 
     @Test
     void countRainingMeasurements_ReturnsZero_WhenNoRaining() {
-        when(measurementRepository.countByRainingTrue()).thenReturn(0L);
+        when(rainCounters.total()).thenReturn(0L);
 
         long result = measurementService.countRainingMeasurements();
 
         assertEquals(0L, result);
     }
 
+    @Test
+    void countRainingMeasurements_ForSensor_ReadsItsCounter() {
+        when(sensorRegistry.findId("TestSensor")).thenReturn(Optional.of(1));
+        when(rainCounters.count(1)).thenReturn(7L);
+
+        assertEquals(7L, measurementService.countRainingMeasurements("TestSensor"));
+    }
+
+    @Test
+    void countRainingMeasurements_ForUnknownSensor_ThrowsException() {
+        when(sensorRegistry.findId("Ghost")).thenReturn(Optional.empty());
+
+        BusinessException exception = assertThrows(BusinessException.class,
+                () -> measurementService.countRainingMeasurements("Ghost"));
+
+        assertEquals("Sensor not found: Ghost", exception.getMessage());
+        verifyNoInteractions(rainCounters);
+    }
+
     @Test
     void getRainingMeasurements_ReturnsOnlyRainingOnes() {
         measurement.setRaining(true);
         measurementDTO.setRaining(true);
 
-        List<Measurement> rainingList = Arrays.asList(measurement);
-        Page<Measurement> rainingPage = new PageImpl<>(rainingList);
+        Page<MeasurementView> rainingPage = new PageImpl<>(List.of(
+                new MeasurementView(1, 1, 25.5, true, measurement.getMeasurementDateTime())));
         Pageable pageable = PageRequest.of(0, 20);
 
-        when(measurementRepository.findByRainingTrue(pageable)).thenReturn(rainingPage);
-        when(measurementMapper.toDTO(any(Measurement.class))).thenReturn(measurementDTO);
+        when(measurementRepository.findRainingViews(pageable)).thenReturn(rainingPage);
+        when(measurementMapper.toDTO(any(MeasurementView.class))).thenReturn(measurementDTO);
 
         Page<MeasurementDTO> result = measurementService.getRainingMeasurements(pageable);
 
         assertNotNull(result);
         assertEquals(1, result.getTotalElements());
         assertTrue(result.getContent().get(0).getRaining());
-        verify(measurementRepository, times(1)).findByRainingTrue(pageable);
+        verify(measurementRepository, times(1)).findRainingViews(pageable);
     }
 
     @Test
     void getRainingMeasurements_EmptyPage_WhenNoRaining() {
-        Page<Measurement> emptyPage = new PageImpl<>(List.of());
+        Page<MeasurementView> emptyPage = new PageImpl<>(List.of());
         Pageable pageable = PageRequest.of(0, 20);
 
-        when(measurementRepository.findByRainingTrue(pageable)).thenReturn(emptyPage);
+        when(measurementRepository.findRainingViews(pageable)).thenReturn(emptyPage);
 
         Page<MeasurementDTO> result = measurementService.getRainingMeasurements(pageable);
 
         assertNotNull(result);
         assertEquals(0, result.getTotalElements());
     }
+
+    @Test
+    void getMeasurementsAfter_ReturnsNextCursor_WhenMoreRowsExist() {
+        MeasurementView second = new MeasurementView(2, 1, 20.0, false, LocalDateTime.now());
+        MeasurementView third = new MeasurementView(3, 1, 21.0, false, LocalDateTime.now());
+
+        when(measurementRepository.seek(MeasurementCursor.SortKey.ID, Sort.Direction.ASC, null, false, 3))
+                .thenReturn(List.of(measurementView, second, third));
+        when(measurementMapper.toDTO(any(MeasurementView.class))).thenReturn(measurementDTO);
+
+        CursorPageDTO<MeasurementDTO> page = measurementService.getMeasurementsAfter(
+                null, 2, MeasurementCursor.SortKey.ID, Sort.Direction.ASC, false);
+
+        assertEquals(2, page.getContent().size());
+        assertTrue(page.isHasNext());
+        assertEquals(2, MeasurementCursor.decode(page.getNextCursor()).id());
+    }
+
+    @Test
+    void getMeasurementsAfter_TakesSortFromCursor() {
+        MeasurementCursor cursor = new MeasurementCursor(MeasurementCursor.SortKey.MEASUREMENT_DATE_TIME,
+                Sort.Direction.DESC, LocalDateTime.of(2024, 1, 1, 0, 0), 10);
+
+        when(measurementRepository.seek(MeasurementCursor.SortKey.MEASUREMENT_DATE_TIME, Sort.Direction.DESC,
+                cursor, true, 21)).thenReturn(List.of(measurementView));
+        when(measurementMapper.toDTO(measurementView)).thenReturn(measurementDTO);
+
+        CursorPageDTO<MeasurementDTO> page = measurementService.getMeasurementsAfter(
+                cursor.encode(), 20, MeasurementCursor.SortKey.ID, Sort.Direction.ASC, true);
+
+        assertEquals(1, page.getContent().size());
+        assertFalse(page.isHasNext());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getMeasurementsSlice_DoesNotCount_WhenTotalNotRequested() {
+        Pageable pageable = PageRequest.of(0, 10);
+        when(measurementRepository.findAllViewsBy(pageable)).thenReturn(new SliceImpl<>(List.of(measurementView), pageable, false));
+        when(measurementMapper.toDTO(measurementView)).thenReturn(measurementDTO);
+
+        SliceDTO<MeasurementDTO> result = measurementService.getMeasurementsSlice(pageable, false);
+
+        assertEquals(1, result.getContent().size());
+        assertFalse(result.isHasNext());
+        assertNull(result.getApproximateTotal());
+        verify(measurementRepository, never()).findAll(any(Pageable.class));
+        verifyNoInteractions(tableStatisticsRepository);
+    }
+
+    @Test
+    void getRainingMeasurementsSlice_UsesPlannerEstimate() {
+        Pageable pageable = PageRequest.of(0, 10);
+        when(measurementRepository.findRainingViewsBy(pageable)).thenReturn(new SliceImpl<>(List.of(), pageable, false));
+        when(tableStatisticsRepository.estimateQueryRows(TableStatisticsRepository.RAINING_MEASUREMENTS_QUERY))
+                .thenReturn(1_000_000L);
+
+        SliceDTO<MeasurementDTO> result = measurementService.getRainingMeasurementsSlice(pageable, true);
+
+        assertEquals(1_000_000L, result.getApproximateTotal());
+        verify(measurementRepository, never()).countByRainingTrue();
+    }
+
+    @Test
+    void aggregate_ResolvesSensorsAndPassesBucketWidth() {
+        LocalDateTime from = LocalDateTime.of(2024, 10, 1, 0, 0);
+        LocalDateTime to = from.plusDays(1);
+        MeasurementBucketDTO bucket = new MeasurementBucketDTO("TestSensor", from, 18.0, 24.0, 21.0, 12, 0.25);
+        when(sensorRegistry.findId("TestSensor")).thenReturn(Optional.of(1));
+        when(sensorRegistry.findId("Garden")).thenReturn(Optional.of(2));
+        when(measurementAggregateRepository.aggregate(RollupResolution.MINUTE, List.of(1, 2), from, to,
+                Duration.ofMinutes(5))).thenReturn(List.of(bucket));
+
+        List<MeasurementBucketDTO> result =
+                measurementService.aggregate(List.of("TestSensor", "Garden", "TestSensor"), from, to, "5m");
+
+        assertEquals(List.of(bucket), result);
+    }
+
+    @Test
+    void aggregate_PicksCoarsestRollupThatFitsBucketAndRange() {
+        LocalDateTime from = LocalDateTime.of(2024, 10, 1, 0, 0);
+        when(sensorRegistry.findId("TestSensor")).thenReturn(Optional.of(1));
+
+        measurementService.aggregate(List.of("TestSensor"), from, from.plusDays(30), "1d");
+        measurementService.aggregate(List.of("TestSensor"), from, from.plusDays(30), "6h");
+        // 90m не кратно часу - только минутные агрегаты
+        measurementService.aggregate(List.of("TestSensor"), from, from.plusDays(1), "90m");
+        // граница окна внутри часа
+        measurementService.aggregate(List.of("TestSensor"), from.plusMinutes(30), from.plusDays(1), "1h");
+
+        verify(measurementAggregateRepository).aggregate(RollupResolution.DAY, List.of(1), from, from.plusDays(30),
+                Duration.ofDays(1));
+        verify(measurementAggregateRepository).aggregate(RollupResolution.HOUR, List.of(1), from, from.plusDays(30),
+                Duration.ofHours(6));
+        verify(measurementAggregateRepository).aggregate(RollupResolution.MINUTE, List.of(1), from, from.plusDays(1),
+                Duration.ofMinutes(90));
+        verify(measurementAggregateRepository).aggregate(RollupResolution.MINUTE, List.of(1), from.plusMinutes(30),
+                from.plusDays(1), Duration.ofHours(1));
+    }
+
+    @Test
+    void aggregate_FallsBackToRawMeasurementsForUnalignedRange() {
+        LocalDateTime from = LocalDateTime.of(2024, 10, 1, 0, 0, 30);
+        when(sensorRegistry.findId("TestSensor")).thenReturn(Optional.of(1));
+
+        measurementService.aggregate(List.of("TestSensor"), from, from.plusHours(1), "5m");
+
+        verify(measurementAggregateRepository).aggregate(List.of(1), from, from.plusHours(1), Duration.ofMinutes(5));
+        verifyNoMoreInteractions(measurementAggregateRepository);
+    }
+
+    @Test
+    void aggregate_RejectsInvalidRequestsBeforeQuerying() {
+        LocalDateTime from = LocalDateTime.of(2024, 10, 1, 0, 0);
+        when(sensorRegistry.findId("Ghost")).thenReturn(Optional.empty());
+
+        assertThrows(BusinessException.class,
+                () -> measurementService.aggregate(List.of("TestSensor"), from, from.plusDays(1), "fortnight"));
+        assertThrows(BusinessException.class,
+                () -> measurementService.aggregate(List.of("TestSensor"), from, from.plusDays(1), "30s"));
+        assertThrows(BusinessException.class,
+                () -> measurementService.aggregate(List.of("TestSensor"), from, from, "1h"));
+        // год по минутам - больше MAX_AGGREGATE_BUCKETS интервалов
+        assertThrows(BusinessException.class,
+                () -> measurementService.aggregate(List.of("TestSensor"), from, from.plusYears(1), "1m"));
+        assertThrows(BusinessException.class,
+                () -> measurementService.aggregate(List.of(), from, from.plusDays(1), "1h"));
+        BusinessException unknown = assertThrows(BusinessException.class,
+                () -> measurementService.aggregate(List.of("Ghost"), from, from.plusDays(1), "1h"));
+        assertEquals("Sensor not found: Ghost", unknown.getMessage());
+
+        verifyNoInteractions(measurementAggregateRepository);
+    }
 }
@@ -0,0 +1,138 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
+import ru.xing.springcourse.petproject3rest.services.LatestMeasurementSnapshot;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.IdempotencyWindow;
+import ru.xing.springcourse.petproject3rest.services.RainCounters;
+import ru.xing.springcourse.petproject3rest.services.MeasurementWriteBehindBuffer;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class MeasurementWriteBehindBufferTest {
+    @Mock
+    private MeasurementRepository measurementRepository;
+
+    @Mock
+    private LatestMeasurementSnapshot latestMeasurementSnapshot;
+
+    @Mock
+    private RainCounters rainCounters;
+
+    @Mock
+    private DataVersions dataVersions;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final IdempotencyWindow idempotencyWindow =
+            new IdempotencyWindow(meterRegistry, 100, Duration.ofMinutes(10), Clock.systemUTC());
+    private MeasurementWriteBehindBuffer buffer;
+
+    @AfterEach
+    void tearDown() {
+        if (buffer != null) {
+            buffer.stop();
+        }
+    }
+
+    @Test
+    void offer_RejectsMeasurements_WhenNotStarted() {
+        buffer = new MeasurementWriteBehindBuffer(measurementRepository, latestMeasurementSnapshot, rainCounters, dataVersions, idempotencyWindow, meterRegistry, true, 10, 5, 50);
+
+        assertFalse(buffer.offer(measurement()));
+    }
+
+    @Test
+    void offer_RejectsMeasurements_WhenQueueIsFull() {
+        // Огромный интервал - писатель не успеет освободить очередь
+        buffer = new MeasurementWriteBehindBuffer(measurementRepository, latestMeasurementSnapshot, rainCounters, dataVersions, idempotencyWindow, meterRegistry, true, 2, 100, 60_000);
+        buffer.start();
+
+        int accepted = 0;
+        for (int i = 0; i < 10; i++) {
+            if (buffer.offer(measurement())) {
+                accepted++;
+            }
+        }
+
+        assertTrue(accepted < 10);
+    }
+
+    @Test
+    void stop_DrainsQueueInGroups() {
+        List<Integer> flushes = new CopyOnWriteArrayList<>();
+        when(measurementRepository.batchInsert(anyList())).thenAnswer(invocation -> {
+            int size = ((List<?>) invocation.getArgument(0)).size();
+            flushes.add(size);
+            return invocation.getArgument(0);
+        });
+
+        buffer = new MeasurementWriteBehindBuffer(measurementRepository, latestMeasurementSnapshot, rainCounters, dataVersions, idempotencyWindow, meterRegistry, true, 1000, 10, 60_000);
+        buffer.start();
+        for (int i = 0; i < 25; i++) {
+            assertTrue(buffer.offer(measurement()));
+        }
+        buffer.stop();
+
+        assertEquals(25, flushes.stream().mapToInt(Integer::intValue).sum());
+        assertTrue(flushes.stream().allMatch(size -> size <= 10));
+        assertEquals(0, buffer.getQueueDepth());
+        assertEquals(25, meterRegistry.summary("measurement.write_behind.flush.size").totalAmount());
+    }
+
+    @Test
+    void flush_Failed_ForgetsKeysSoRetryIsWritten() {
+        when(measurementRepository.batchInsert(anyList())).thenThrow(new DataAccessResourceFailureException("down"));
+        Measurement keyed = measurement();
+        keyed.setIdempotencyKey("k1");
+        // Ключ запомнен при постановке в очередь, как в MeasurementService
+        idempotencyWindow.remember(IdempotencyWindow.key(1, "k1"));
+
+        buffer = new MeasurementWriteBehindBuffer(measurementRepository, latestMeasurementSnapshot, rainCounters, dataVersions, idempotencyWindow, meterRegistry, true, 10, 5, 60_000);
+        buffer.start();
+        assertTrue(buffer.offer(keyed));
+        buffer.stop();
+
+        assertFalse(idempotencyWindow.isDuplicate(IdempotencyWindow.key(1, "k1")));
+        assertEquals(1, meterRegistry.counter("measurement.write_behind.dropped").count());
+        verifyNoInteractions(rainCounters, dataVersions);
+    }
+
+    @Test
+    void start_DoesNothing_WhenDisabled() {
+        buffer = new MeasurementWriteBehindBuffer(measurementRepository, latestMeasurementSnapshot, rainCounters, dataVersions, idempotencyWindow, meterRegistry, false, 10, 5, 50);
+        buffer.start();
+
+        assertFalse(buffer.isRunning());
+        assertFalse(buffer.offer(measurement()));
+        verify(measurementRepository, never()).batchInsert(anyList());
+    }
+
+    private Measurement measurement() {
+        Sensor sensor = new Sensor();
+        sensor.setId(1);
+        return Measurement.builder()
+                .sensor(sensor)
+                .value(20.0)
+                .raining(false)
+                .measurementDateTime(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,92 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementRollupRepository;
+import ru.xing.springcourse.petproject3rest.services.RainCounters;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class RainCountersTest {
+
+    @Mock
+    private MeasurementRollupRepository measurementRollupRepository;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RainCounters rainCounters;
+
+    @BeforeEach
+    void setUp() {
+        rainCounters = new RainCounters(measurementRollupRepository, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Measurement measurement(int sensorId, boolean raining) {
+        Sensor sensor = new Sensor();
+        sensor.setId(sensorId);
+        return Measurement.builder().value(10.0).raining(raining).sensor(sensor).build();
+    }
+
+    @Test
+    void record_CountsOnlyRainingMeasurementsPerSensor() {
+        rainCounters.record(List.of(measurement(1, true), measurement(1, true),
+                measurement(1, false), measurement(2, true)));
+
+        assertEquals(3, rainCounters.total());
+        assertEquals(2, rainCounters.count(1));
+        assertEquals(1, rainCounters.count(2));
+        assertEquals(0, rainCounters.count(3));
+        assertEquals(3, meterRegistry.get("measurement.raining.count").gauge().value());
+    }
+
+    @Test
+    void record_InsideTransaction_AppliesOnlyAfterCommit() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        rainCounters.record(List.of(measurement(1, true)));
+        assertEquals(0, rainCounters.total());
+
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(1, rainCounters.total());
+        assertEquals(1, rainCounters.count(1));
+    }
+
+    @Test
+    void reconcile_ReplacesCountersWithDatabaseValuesAndKeepsCounting() {
+        rainCounters.add(1, 5);
+        rainCounters.add(2, 3);
+        // Сенсор 2 в БД без дождевых строк, сенсор 3 записан другим экземпляром
+        when(measurementRollupRepository.countRainingPerSensor()).thenReturn(Map.of(1, 4L, 3, 6L));
+
+        rainCounters.reconcile();
+
+        assertEquals(10, rainCounters.total());
+        assertEquals(4, rainCounters.count(1));
+        assertEquals(0, rainCounters.count(2));
+        assertEquals(6, rainCounters.count(3));
+
+        rainCounters.add(1, 2);
+        assertEquals(12, rainCounters.total());
+        assertEquals(6, rainCounters.count(1));
+    }
+}
@@ -0,0 +1,214 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import ru.xing.springcourse.petproject3rest.config.ReadCacheProperties;
+import ru.xing.springcourse.petproject3rest.config.SharedCacheProperties;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBucketDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorDTO;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.ReadCache;
+import ru.xing.springcourse.petproject3rest.services.SharedCache;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReadCacheTest {
+
+    @Mock
+    private DataVersions dataVersions;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final ReadCacheProperties properties = new ReadCacheProperties();
+    private final SharedCacheProperties sharedProperties = new SharedCacheProperties();
+    private SharedCache sharedCache;
+    private ReadCache readCache;
+
+    @BeforeEach
+    void setUp() {
+        // Без Redis: только L1
+        sharedProperties.setEnabled(false);
+        sharedCache = new SharedCache(null, sharedProperties, meterRegistry);
+        readCache = new ReadCache(properties, sharedCache, dataVersions, meterRegistry);
+    }
+
+    // Считает обращения к "базе"
+    private static <T> Supplier<T> counting(AtomicInteger loads, T value) {
+        return () -> {
+            loads.incrementAndGet();
+            return value;
+        };
+    }
+
+    private static SensorDTO sensor(String name) {
+        return SensorDTO.builder().name(name).build();
+    }
+
+    @Test
+    void constructor_SubscribesToDataVersions() {
+        verify(dataVersions).addListener(readCache);
+    }
+
+    @Test
+    void measurement_LoadsOnceAndPublishesStats() {
+        AtomicInteger loads = new AtomicInteger();
+        MeasurementDTO dto = new MeasurementDTO(20.0, false, null, null);
+
+        assertSame(dto, readCache.measurement(1, counting(loads, dto)));
+        assertSame(dto, readCache.measurement(1, counting(loads, dto)));
+        assertSame(dto, readCache.measurement(1, counting(loads, dto)));
+
+        assertEquals(1, loads.get());
+        assertEquals(2.0 / 3, meterRegistry.get("cache.hit.ratio").tag("cache", "measurements").gauge().value(), 1e-9);
+        assertEquals(1, meterRegistry.get("cache.loads").tag("cache", "measurements").functionTimer().count());
+        assertEquals(2, meterRegistry.get("cache.gets").tag("cache", "measurements").tag("result", "hit")
+                .functionCounter().count());
+    }
+
+    @Test
+    void measurement_NotFound_IsNotCached() {
+        AtomicInteger loads = new AtomicInteger();
+        Supplier<MeasurementDTO> missing = () -> {
+            loads.incrementAndGet();
+            throw new IllegalStateException("not found");
+        };
+
+        assertThrows(IllegalStateException.class, () -> readCache.measurement(1, missing));
+        assertThrows(IllegalStateException.class, () -> readCache.measurement(1, missing));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void sensorsChanged_InvalidatesOnlyWrittenSensorsAndAllPages() {
+        AtomicInteger sensor1Loads = new AtomicInteger();
+        AtomicInteger sensor2Loads = new AtomicInteger();
+        AtomicInteger pageLoads = new AtomicInteger();
+        AtomicInteger measurementLoads = new AtomicInteger();
+        Page<SensorDTO> page = new PageImpl<>(List.of(sensor("A"), sensor("B")));
+        MeasurementDTO dto = new MeasurementDTO(20.0, false, null, null);
+
+        readCache.sensor(1, 20, counting(sensor1Loads, sensor("A")));
+        readCache.sensor(1, 5, counting(sensor1Loads, sensor("A")));
+        readCache.sensor(2, 20, counting(sensor2Loads, sensor("B")));
+        readCache.sensorPage(PageRequest.of(0, 20), counting(pageLoads, page));
+        readCache.measurement(7, counting(measurementLoads, dto));
+
+        readCache.sensorsChanged(List.of(1), false);
+
+        readCache.sensor(1, 20, counting(sensor1Loads, sensor("A")));
+        readCache.sensor(1, 5, counting(sensor1Loads, sensor("A")));
+        readCache.sensor(2, 20, counting(sensor2Loads, sensor("B")));
+        readCache.sensorPage(PageRequest.of(0, 20), counting(pageLoads, page));
+        readCache.measurement(7, counting(measurementLoads, dto));
+
+        assertEquals(4, sensor1Loads.get());
+        assertEquals(1, sensor2Loads.get());
+        assertEquals(2, pageLoads.get());
+        assertEquals(1, measurementLoads.get());
+    }
+
+    @Test
+    void allChanged_InvalidatesEverything() {
+        AtomicInteger loads = new AtomicInteger();
+        MeasurementDTO dto = new MeasurementDTO(20.0, false, null, null);
+
+        readCache.measurement(1, counting(loads, dto));
+        readCache.sensor(2, 20, counting(loads, sensor("B")));
+        readCache.allChanged(false);
+        readCache.measurement(1, counting(loads, dto));
+        readCache.sensor(2, 20, counting(loads, sensor("B")));
+
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void measurementPage_CachesOnlyFirstPagesSeparatelyForRaining() {
+        AtomicInteger loads = new AtomicInteger();
+        Page<MeasurementDTO> page = new PageImpl<>(List.of());
+
+        readCache.measurementPage(false, PageRequest.of(0, 20), counting(loads, page));
+        readCache.measurementPage(false, PageRequest.of(0, 20), counting(loads, page));
+        readCache.measurementPage(true, PageRequest.of(0, 20), counting(loads, page));
+        readCache.measurementPage(false, PageRequest.of(properties.getFirstPages(), 20), counting(loads, page));
+        readCache.measurementPage(false, PageRequest.of(properties.getFirstPages(), 20), counting(loads, page));
+
+        assertEquals(4, loads.get());
+    }
+
+    @Test
+    void measurementPage_LoadInFlightDuringWrite_IsNotServedAfterIt() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        Page<MeasurementDTO> stale = new PageImpl<>(List.of());
+        Page<MeasurementDTO> fresh = new PageImpl<>(List.of(new MeasurementDTO(20.0, false, null, null)));
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+
+        // Чтение началось до коммита записи и закончилось после сброса
+        CompletableFuture<Page<MeasurementDTO>> inFlight = CompletableFuture.supplyAsync(() ->
+                readCache.measurementPage(false, PageRequest.of(0, 20), () -> {
+                    loading.countDown();
+                    try {
+                        assertTrue(committed.await(5, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    loads.incrementAndGet();
+                    return stale;
+                }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        readCache.sensorsChanged(List.of(1), false);
+        committed.countDown();
+        assertSame(stale, inFlight.get(5, TimeUnit.SECONDS));
+
+        assertSame(fresh, readCache.measurementPage(false, PageRequest.of(0, 20), counting(loads, fresh)));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void aggregate_InvalidatedOnlyByWritesToItsSensors() {
+        AtomicInteger loads = new AtomicInteger();
+        List<MeasurementBucketDTO> buckets = List.of();
+        LocalDateTime from = LocalDateTime.of(2024, 10, 1, 0, 0);
+        LocalDateTime to = from.plusDays(1);
+
+        readCache.aggregate(List.of(1, 2), from, to, Duration.ofHours(1), counting(loads, buckets));
+        readCache.sensorsChanged(List.of(3), false);
+        readCache.aggregate(List.of(1, 2), from, to, Duration.ofHours(1), counting(loads, buckets));
+        assertEquals(1, loads.get());
+
+        readCache.sensorsChanged(List.of(2), true);
+        readCache.aggregate(List.of(1, 2), from, to, Duration.ofHours(1), counting(loads, buckets));
+        readCache.aggregate(List.of(1, 2), from, to, Duration.ofMinutes(30), counting(loads, buckets));
+        assertEquals(3, loads.get());
+    }
+
+    @Test
+    void disabled_AlwaysLoads() {
+        properties.setEnabled(false);
+        readCache = new ReadCache(properties, sharedCache, dataVersions, meterRegistry);
+        AtomicInteger loads = new AtomicInteger();
+
+        readCache.sensor(1, 20, counting(loads, sensor("A")));
+        readCache.sensor(1, 20, counting(loads, sensor("A")));
+
+        assertEquals(2, loads.get());
+    }
+}
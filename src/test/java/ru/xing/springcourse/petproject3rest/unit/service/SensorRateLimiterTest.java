@@ -0,0 +1,95 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.xing.springcourse.petproject3rest.config.RateLimitProperties;
+import ru.xing.springcourse.petproject3rest.services.SensorRateLimiter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SensorRateLimiterTest {
+    private final AtomicLong now = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private SimpleMeterRegistry meterRegistry;
+    private RateLimitProperties properties;
+    private SensorRateLimiter rateLimiter;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        properties = new RateLimitProperties();
+        properties.getDefaults().setRate(10);
+        properties.getDefaults().setBurst(5);
+        rateLimiter = new SensorRateLimiter(properties, meterRegistry, now::get);
+    }
+
+    @Test
+    void tryAcquire_AllowsBurstThenRejects() {
+        for (int i = 0; i < 5; i++) {
+            assertEquals(0, rateLimiter.tryAcquire("Sensor", 1));
+        }
+
+        assertEquals(1, rateLimiter.tryAcquire("Sensor", 1));
+        assertEquals(1.0, meterRegistry.get("ingest.rate_limit.rejected").tag("sensor", "Sensor").counter().count());
+    }
+
+    @Test
+    void tryAcquire_RefillsOverTime() {
+        for (int i = 0; i < 5; i++) {
+            rateLimiter.tryAcquire("Sensor", 1);
+        }
+        assertTrue(rateLimiter.tryAcquire("Sensor", 1) > 0);
+
+        // 10 измерений в секунду - через 100 мс освобождается одно место
+        now.addAndGet(TimeUnit.MILLISECONDS.toNanos(100));
+
+        assertEquals(0, rateLimiter.tryAcquire("Sensor", 1));
+        assertTrue(rateLimiter.tryAcquire("Sensor", 1) > 0);
+    }
+
+    @Test
+    void tryAcquire_AdmitsLargeBatchOnlyWhenBucketIsFull() {
+        assertEquals(0, rateLimiter.tryAcquire("Sensor", 50));
+
+        // После пачки сенсор "отрабатывает" 5 секунд
+        assertEquals(5, rateLimiter.tryAcquire("Sensor", 1));
+    }
+
+    @Test
+    void tryAcquire_UsesPerSensorOverride() {
+        RateLimitProperties.Limit strict = new RateLimitProperties.Limit();
+        strict.setRate(1);
+        strict.setBurst(1);
+        properties.getSensors().put("Noisy", strict);
+
+        assertEquals(0, rateLimiter.tryAcquire("Noisy", 1));
+        assertTrue(rateLimiter.tryAcquire("Noisy", 1) > 0);
+        assertEquals(0, rateLimiter.tryAcquire("Quiet", 1));
+        assertEquals(0, rateLimiter.tryAcquire("Quiet", 1));
+    }
+
+    @Test
+    void tryAcquire_AlwaysAllows_WhenDisabled() {
+        properties.setEnabled(false);
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, rateLimiter.tryAcquire("Sensor", 1));
+        }
+        assertEquals(0, rateLimiter.bucketCount());
+    }
+
+    @Test
+    void evictIdleBuckets_RemovesOnlyRefilledBuckets() {
+        rateLimiter.tryAcquire("Idle", 1);
+        now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+        rateLimiter.tryAcquire("Busy", 5);
+
+        rateLimiter.evictIdleBuckets();
+
+        assertEquals(1, rateLimiter.bucketCount());
+        assertTrue(rateLimiter.tryAcquire("Busy", 1) > 0);
+    }
+}
@@ -0,0 +1,106 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.SensorRepository;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class SensorRegistryTest {
+    @Mock
+    private SensorRepository sensorRepository;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SensorRegistry sensorRegistry;
+    private Sensor sensor;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        sensorRegistry = new SensorRegistry(sensorRepository, meterRegistry);
+
+        sensor = new Sensor();
+        sensor.setId(7);
+        sensor.setName("TestSensor");
+    }
+
+    @Test
+    void resolve_UsesReferenceWithoutQuery_AfterWarmUp() {
+        when(sensorRepository.findAll()).thenReturn(List.of(sensor));
+        when(sensorRepository.getReferenceById(7)).thenReturn(sensor);
+
+        sensorRegistry.warmUp();
+        Optional<Sensor> result = sensorRegistry.resolve("TestSensor");
+
+        assertTrue(result.isPresent());
+        assertEquals(7, result.get().getId());
+        verify(sensorRepository, never()).findByName(anyString());
+        assertEquals(1.0, meterRegistry.counter("sensor.registry.lookups", "result", "hit").count());
+    }
+
+    @Test
+    void resolve_FallsBackToRepository_OnColdMiss() {
+        when(sensorRepository.findByName("TestSensor")).thenReturn(Optional.of(sensor));
+        when(sensorRepository.getReferenceById(7)).thenReturn(sensor);
+
+        sensorRegistry.resolve("TestSensor");
+        sensorRegistry.resolve("TestSensor");
+
+        verify(sensorRepository, times(1)).findByName("TestSensor");
+        assertEquals(1.0, meterRegistry.counter("sensor.registry.lookups", "result", "miss").count());
+        assertEquals(1.0, meterRegistry.counter("sensor.registry.lookups", "result", "hit").count());
+    }
+
+    @Test
+    void resolve_ReturnsEmpty_WhenSensorUnknown() {
+        when(sensorRepository.findByName("Unknown")).thenReturn(Optional.empty());
+
+        assertTrue(sensorRegistry.resolve("Unknown").isEmpty());
+    }
+
+    @Test
+    void resolveById_LoadsOnceAndRemembersName() {
+        when(sensorRepository.findById(7)).thenReturn(Optional.of(sensor));
+        when(sensorRepository.getReferenceById(7)).thenReturn(sensor);
+
+        assertTrue(sensorRegistry.resolveById(7).isPresent());
+        assertTrue(sensorRegistry.resolveById(7).isPresent());
+
+        verify(sensorRepository, times(1)).findById(7);
+        assertEquals(Optional.of("TestSensor"), sensorRegistry.findName(7));
+        // Имя тоже зарегистрировано - поиск по имени идёт без запроса
+        assertEquals(Optional.of(7), sensorRegistry.findId("TestSensor"));
+        verify(sensorRepository, never()).findByName(anyString());
+    }
+
+    @Test
+    void resolveAll_LoadsMissesWithSingleQuery() {
+        Sensor other = new Sensor();
+        other.setId(8);
+        other.setName("Other");
+
+        sensorRegistry.register(sensor);
+        when(sensorRepository.findByNameIn(List.of("Other", "Unknown"))).thenReturn(List.of(other));
+        when(sensorRepository.getReferenceById(7)).thenReturn(sensor);
+        when(sensorRepository.getReferenceById(8)).thenReturn(other);
+
+        Map<String, Sensor> result = sensorRegistry.resolveAll(List.of("TestSensor", "Other", "Unknown"));
+
+        assertEquals(2, result.size());
+        assertSame(other, result.get("Other"));
+        verify(sensorRepository, times(1)).findByNameIn(List.of("Other", "Unknown"));
+    }
+}
@@ -1,26 +1,50 @@
 package ru.xing.springcourse.petproject3rest.unit.service;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+import ru.xing.springcourse.petproject3rest.config.ReadCacheProperties;
+import ru.xing.springcourse.petproject3rest.config.SharedCacheProperties;
+import ru.xing.springcourse.petproject3rest.dto.CursorPageDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
 import ru.xing.springcourse.petproject3rest.dto.SensorDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorMeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorSummaryDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorView;
+import ru.xing.springcourse.petproject3rest.dto.SliceDTO;
 import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.repositories.MeasurementAggregateRepository;
 import ru.xing.springcourse.petproject3rest.repositories.MeasurementRepository;
 import ru.xing.springcourse.petproject3rest.repositories.SensorRepository;
+import ru.xing.springcourse.petproject3rest.repositories.TableStatisticsRepository;
+import ru.xing.springcourse.petproject3rest.services.DataVersions;
+import ru.xing.springcourse.petproject3rest.services.ReadCache;
+import ru.xing.springcourse.petproject3rest.services.LatestMeasurementSnapshot;
+import ru.xing.springcourse.petproject3rest.services.SensorRegistry;
 import ru.xing.springcourse.petproject3rest.services.SensorService;
+import ru.xing.springcourse.petproject3rest.services.SharedCache;
 import ru.xing.springcourse.petproject3rest.util.BusinessException;
+import ru.xing.springcourse.petproject3rest.util.MeasurementCursor;
+import ru.xing.springcourse.petproject3rest.util.MeasurementMapper;
 import ru.xing.springcourse.petproject3rest.util.SensorMapper;
 
+import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -38,12 +62,41 @@ public class SensorServiceTest {
     @Mock
     private MeasurementRepository measurementRepository;
 
+    @Mock
+    private SensorRegistry sensorRegistry;
+
+    @Mock
+    private TableStatisticsRepository tableStatisticsRepository;
+
+    @Mock
+    private MeasurementMapper measurementMapper;
+
+    @Mock
+    private LatestMeasurementSnapshot latestMeasurementSnapshot;
+
+    @Mock
+    private MeasurementAggregateRepository measurementAggregateRepository;
+
+    @Mock
+    private DataVersions dataVersions;
+
+    @Spy
+    private ReadCache readCache = new ReadCache(new ReadCacheProperties(), localOnly(), mock(DataVersions.class),
+            new SimpleMeterRegistry());
+
     @InjectMocks
     private SensorService sensorService;
 
     private Sensor sensor;
     private SensorDTO sensorDTO;
 
+    // Без Redis: общий кэш только пропускает загрузку
+    private static SharedCache localOnly() {
+        SharedCacheProperties properties = new SharedCacheProperties();
+        properties.setEnabled(false);
+        return new SharedCache(null, properties, new SimpleMeterRegistry());
+    }
+
     @BeforeEach
     void setUp() {
         sensor = new Sensor();
@@ -58,60 +111,110 @@ public class SensorServiceTest {
     }
 
     @Test
-    void getSensorByName_Success() {
-        when(sensorRepository.findWithMeasurementsByName("TestSensor")).thenReturn(Optional.of(sensor));
-        when(sensorMapper.toDTO(sensor)).thenReturn(sensorDTO);
+    void getSensorByName_ReturnsSummaryAndRecentWindowWithCursor() {
+        LocalDateTime time = LocalDateTime.of(2024, 10, 1, 12, 0);
+        SensorSummaryDTO summary = new SensorSummaryDTO(1000, time.minusDays(30), time, 20.0, 0.1);
+        MeasurementView newest = new MeasurementView(12, 1, 20.0, false, time);
+        MeasurementView older = new MeasurementView(11, 1, 21.0, false, time.minusMinutes(1));
+        MeasurementDTO dto = new MeasurementDTO(20.0, false, time, null);
+        when(sensorRegistry.findId("TestSensor")).thenReturn(Optional.of(1));
+        when(measurementAggregateRepository.summarize(List.of(1))).thenReturn(Map.of(1, summary));
+        when(measurementRepository.seekBySensor(1, null, null, Sort.Direction.DESC, null, 2))
+                .thenReturn(List.of(newest, older));
+        when(measurementMapper.toDTO(newest)).thenReturn(dto);
+
+        SensorDTO result = sensorService.getSensorByName("TestSensor", 1);
 
-        SensorDTO result = sensorService.getSensorByName("TestSensor");
-
-        assertNotNull(result);
         assertEquals("TestSensor", result.getName());
-        // Проверяем вызов правильного метода
-        verify(sensorRepository, times(1)).findWithMeasurementsByName("TestSensor");
-        verify(sensorMapper, times(1)).toDTO(sensor);
+        assertEquals(summary, result.getSummary());
+        assertEquals(List.of(dto), result.getMeasurements());
+        // Курсор продолжает листание через getSensorMeasurements
+        MeasurementCursor cursor = MeasurementCursor.decode(result.getNextCursor());
+        assertEquals(12, cursor.id());
+        assertEquals(Sort.Direction.DESC, cursor.direction());
+        // Коллекция измерений сущности не загружается
+        verifyNoInteractions(sensorRepository, sensorMapper);
+    }
+
+    @Test
+    void getSensorByName_CapsRecentWindow() {
+        when(sensorRegistry.findId("TestSensor")).thenReturn(Optional.of(1));
+        when(measurementAggregateRepository.summarize(List.of(1))).thenReturn(Map.of());
+
+        SensorDTO capped = sensorService.getSensorByName("TestSensor", 1_000_000);
+        SensorDTO metadataOnly = sensorService.getSensorByName("TestSensor", 0);
+
+        assertEquals(SensorSummaryDTO.empty(), capped.getSummary());
+        verify(measurementRepository).seekBySensor(1, null, null, Sort.Direction.DESC, null,
+                SensorService.MAX_RECENT_MEASUREMENTS + 1);
+        assertEquals(List.of(), metadataOnly.getMeasurements());
+        assertNull(metadataOnly.getNextCursor());
+        verifyNoMoreInteractions(measurementRepository);
     }
 
     @Test
     void getSensorByName_ThrowsException_WhenNotFound() {
-        when(sensorRepository.findWithMeasurementsByName("NonExistent")).thenReturn(Optional.empty());
+        when(sensorRegistry.findId("NonExistent")).thenReturn(Optional.empty());
 
         BusinessException exception = assertThrows(BusinessException.class,
-                () -> sensorService.getSensorByName("NonExistent"));
+                () -> sensorService.getSensorByName("NonExistent", 20));
 
         assertEquals("Sensor not found", exception.getMessage());
-        // Проверяем новый метод
-        verify(sensorRepository, times(1)).findWithMeasurementsByName("NonExistent");
-        verify(sensorMapper, never()).toDTO(any());
+        verifyNoInteractions(measurementRepository, measurementAggregateRepository);
     }
 
     @Test
     void getAllSensors_ReturnsPageOfSensors() {
-        List<Sensor> sensorList = Arrays.asList(sensor);
-        Page<Sensor> sensorPage = new PageImpl<>(sensorList);
+        SensorView sensorView = new SensorView(1, "TestSensor");
+        SensorView idleView = new SensorView(2, "Idle");
+        SensorSummaryDTO summary = new SensorSummaryDTO(10, LocalDateTime.of(2024, 1, 1, 0, 0),
+                LocalDateTime.of(2024, 1, 2, 0, 0), 23.5, 0.2);
+        Page<SensorView> sensorPage = new PageImpl<>(List.of(sensorView, idleView));
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(sensorRepository.findAll(pageable)).thenReturn(sensorPage);
-        when(sensorMapper.toDTO(any(Sensor.class))).thenReturn(sensorDTO);
+        when(sensorRepository.findAllViews(pageable)).thenReturn(sensorPage);
+        when(measurementAggregateRepository.summarize(List.of(1, 2))).thenReturn(Map.of(1, summary));
+        when(sensorMapper.toDTO(sensorView, summary)).thenReturn(sensorDTO);
 
         Page<SensorDTO> result = sensorService.getAllSensors(pageable);
 
         assertNotNull(result);
-        assertEquals(1, result.getTotalElements());
+        assertEquals(2, result.getTotalElements());
         assertEquals("TestSensor", result.getContent().get(0).getName());
-        verify(sensorRepository, times(1)).findAll(pageable);
+        // Сводка всей страницы - одним агрегатным запросом, сами измерения не читаются
+        verify(measurementAggregateRepository, times(1)).summarize(List.of(1, 2));
+        verify(sensorMapper).toDTO(idleView, SensorSummaryDTO.empty());
+        verifyNoInteractions(measurementRepository);
+        verify(sensorRepository, never()).findAll(any(Pageable.class));
+    }
+
+    @Test
+    void getSensorByName_AfterWriteToAnotherSensor_ServedFromCache() {
+        when(sensorRegistry.findId("TestSensor")).thenReturn(Optional.of(1));
+        when(measurementAggregateRepository.summarize(List.of(1))).thenReturn(Map.of());
+
+        SensorDTO first = sensorService.getSensorByName("TestSensor", 0);
+        readCache.sensorsChanged(List.of(2), false);
+        SensorDTO second = sensorService.getSensorByName("TestSensor", 0);
+        readCache.sensorsChanged(List.of(1), false);
+        sensorService.getSensorByName("TestSensor", 0);
+
+        assertSame(first, second);
+        verify(measurementAggregateRepository, times(2)).summarize(List.of(1));
     }
 
     @Test
     void getAllSensors_EmptyPage() {
-        Page<Sensor> emptyPage = new PageImpl<>(List.of());
+        Page<SensorView> emptyPage = new PageImpl<>(List.of());
         Pageable pageable = PageRequest.of(0, 10);
 
-        when(sensorRepository.findAll(pageable)).thenReturn(emptyPage);
+        when(sensorRepository.findAllViews(pageable)).thenReturn(emptyPage);
 
         Page<SensorDTO> result = sensorService.getAllSensors(pageable);
 
         assertNotNull(result);
         assertEquals(0, result.getTotalElements());
+        verifyNoInteractions(measurementRepository, measurementAggregateRepository);
     }
 
     @Test
@@ -123,6 +226,8 @@ public class SensorServiceTest {
 
         verify(sensorRepository, times(1)).findByName("NewSensor");
         verify(sensorRepository, times(1)).save(any(Sensor.class));
+        verify(sensorRegistry, times(1)).register(sensor);
+        verify(dataVersions).touch(List.of(1));
     }
 
     @Test
@@ -142,10 +247,89 @@ public class SensorServiceTest {
         // Этот тест проверит валидацию, если она настроена через @NotBlank
         // В реальности Spring Validation обработает это до вызова метода
         when(sensorRepository.findByName("")).thenReturn(Optional.empty());
+        when(sensorRepository.save(any(Sensor.class))).thenReturn(sensor);
 
         sensorService.registerSensor("");
 
         verify(sensorRepository, times(1)).save(any(Sensor.class));
     }
-}
 
+    @Test
+    void getSensorsSlice_SkipsCountAndAddsApproximateTotal() {
+        Pageable pageable = PageRequest.of(0, 10);
+        SensorView sensorView = new SensorView(1, "TestSensor");
+        when(sensorRepository.findAllViewsBy(pageable)).thenReturn(new SliceImpl<>(List.of(sensorView), pageable, true));
+        when(measurementAggregateRepository.summarize(List.of(1))).thenReturn(Map.of());
+        when(sensorMapper.toDTO(sensorView, SensorSummaryDTO.empty())).thenReturn(sensorDTO);
+        when(tableStatisticsRepository.estimateTableRows(TableStatisticsRepository.SENSOR_TABLE)).thenReturn(42L);
+
+        SliceDTO<SensorDTO> result = sensorService.getSensorsSlice(pageable, true);
+
+        assertEquals(List.of(sensorDTO), result.getContent());
+        assertTrue(result.isHasNext());
+        assertEquals(42L, result.getApproximateTotal());
+        verify(sensorRepository, never()).findAll(any(Pageable.class));
+    }
+
+    @Test
+    void getSensorMeasurements_SeeksWindowAndContinuesFromCursor() {
+        LocalDateTime from = LocalDateTime.of(2024, 10, 1, 0, 0);
+        LocalDateTime to = from.plusDays(1);
+        MeasurementView first = new MeasurementView(12, 1, 20.0, false, from.plusHours(3));
+        MeasurementView second = new MeasurementView(11, 1, 21.0, false, from.plusHours(2));
+        MeasurementView extra = new MeasurementView(10, 1, 22.0, true, from.plusHours(1));
+        MeasurementDTO dto = new MeasurementDTO(20.0, false, from.plusHours(3), null);
+        when(sensorRegistry.findId("TestSensor")).thenReturn(Optional.of(1));
+        when(measurementRepository.seekBySensor(1, from, to, Sort.Direction.DESC, null, 3))
+                .thenReturn(List.of(first, second, extra));
+        when(measurementMapper.toDTO(any(MeasurementView.class))).thenReturn(dto);
+
+        CursorPageDTO<MeasurementDTO> page =
+                sensorService.getSensorMeasurements("TestSensor", from, to, null, 2, Sort.Direction.DESC);
+
+        assertEquals(2, page.getContent().size());
+        assertTrue(page.isHasNext());
+        MeasurementCursor cursor = MeasurementCursor.decode(page.getNextCursor());
+        assertEquals(second.measurementDateTime(), cursor.measurementDateTime());
+        assertEquals(11, cursor.id());
+
+        // Направление следующей страницы берётся из курсора
+        when(measurementRepository.seekBySensor(1, from, to, Sort.Direction.DESC, cursor, 3)).thenReturn(List.of(extra));
+
+        CursorPageDTO<MeasurementDTO> next = sensorService.getSensorMeasurements(
+                "TestSensor", from, to, page.getNextCursor(), 2, Sort.Direction.ASC);
+
+        assertEquals(1, next.getContent().size());
+        assertFalse(next.isHasNext());
+        assertNull(next.getNextCursor());
+    }
+
+    @Test
+    void getSensorMeasurements_RejectsUnknownSensorInvertedWindowAndIdCursor() {
+        LocalDateTime now = LocalDateTime.now();
+        when(sensorRegistry.findId("Ghost")).thenReturn(Optional.empty());
+        when(sensorRegistry.findId("TestSensor")).thenReturn(Optional.of(1));
+        String idCursor = new MeasurementCursor(MeasurementCursor.SortKey.ID, Sort.Direction.DESC, null, 5).encode();
+
+        assertEquals("Sensor not found: Ghost", assertThrows(BusinessException.class, () ->
+                sensorService.getSensorMeasurements("Ghost", null, null, null, 20, Sort.Direction.DESC)).getMessage());
+        assertThrows(BusinessException.class, () ->
+                sensorService.getSensorMeasurements("TestSensor", now, now.minusDays(1), null, 20, Sort.Direction.DESC));
+        assertThrows(BusinessException.class, () ->
+                sensorService.getSensorMeasurements("TestSensor", null, null, idCursor, 20, Sort.Direction.DESC));
+        verifyNoInteractions(measurementRepository);
+    }
+
+    @Test
+    void getCurrentReadings_ServesSnapshotWithOptionalNameFilter() {
+        LocalDateTime now = LocalDateTime.now();
+        SensorMeasurementDTO home = new SensorMeasurementDTO("Home", new MeasurementDTO(20.0, false, now, null));
+        when(latestMeasurementSnapshot.current()).thenReturn(List.of(home));
+        when(latestMeasurementSnapshot.current("Home")).thenReturn(Optional.of(home));
+        when(latestMeasurementSnapshot.current("Ghost")).thenReturn(Optional.empty());
+
+        assertEquals(List.of(home), sensorService.getCurrentReadings(null));
+        assertEquals(List.of(home), sensorService.getCurrentReadings(List.of("Home", "Ghost", "Home")));
+        verifyNoInteractions(sensorRepository, measurementRepository);
+    }
+}
@@ -0,0 +1,195 @@
+package ru.xing.springcourse.petproject3rest.unit.service;
+
+import com.github.fppt.jedismock.RedisServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.connection.RedisStandaloneConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceClientConfiguration;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import ru.xing.springcourse.petproject3rest.config.SharedCacheProperties;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorDTO;
+import ru.xing.springcourse.petproject3rest.services.SharedCache;
+import ru.xing.springcourse.petproject3rest.util.CacheValueCodec;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Redis - jedis-mock в том же процессе
+public class SharedCacheTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 10, 1, 12, 0);
+
+    private final SharedCacheProperties properties = new SharedCacheProperties();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private RedisServer server;
+    private LettuceConnectionFactory connectionFactory;
+    private SharedCache sharedCache;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = RedisServer.newRedisServer().start();
+        connectionFactory = new LettuceConnectionFactory(
+                new RedisStandaloneConfiguration(server.getHost(), server.getBindPort()),
+                LettuceClientConfiguration.builder().commandTimeout(Duration.ofMillis(500)).build());
+        connectionFactory.afterPropertiesSet();
+        connectionFactory.start();
+
+        properties.setRetryInterval(Duration.ZERO);
+        sharedCache = available(new SharedCache(connectionFactory, properties, meterRegistry));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        connectionFactory.destroy();
+        server.stop();
+    }
+
+    private static SharedCache available(SharedCache sharedCache) {
+        sharedCache.probe();
+        assertTrue(sharedCache.isAvailable());
+        return sharedCache;
+    }
+
+    private static Supplier<SensorDTO> counting(AtomicInteger loads, String name) {
+        return () -> {
+            loads.incrementAndGet();
+            return SensorDTO.builder().name(name).measurements(List.of(new MeasurementDTO(20.5, true, TIME, null)))
+                    .build();
+        };
+    }
+
+    private SensorDTO sensor(SharedCache cache, int sensorId, Supplier<SensorDTO> loader) {
+        return cache.get("sensor", String.valueOf(sensorId), List.of(sensorId), CacheValueCodec.SENSOR, loader);
+    }
+
+    @Test
+    void get_MissLoadsAndStores_HitDecodes() {
+        AtomicInteger loads = new AtomicInteger();
+
+        SensorDTO loaded = sensor(sharedCache, 1, counting(loads, "A"));
+        SensorDTO cached = sensor(sharedCache, 1, counting(loads, "A"));
+
+        assertEquals(1, loads.get());
+        assertEquals("A", cached.getName());
+        assertEquals(loaded.getMeasurements(), cached.getMeasurements());
+        assertEquals(1, meterRegistry.get("cache.shared.gets").tag("result", "hit").counter().count());
+        assertEquals(1, meterRegistry.get("cache.shared.gets").tag("result", "miss").counter().count());
+    }
+
+    @Test
+    void invalidate_MakesOnlyWrittenSensorsMiss() {
+        AtomicInteger loads1 = new AtomicInteger();
+        AtomicInteger loads2 = new AtomicInteger();
+        sensor(sharedCache, 1, counting(loads1, "A"));
+        sensor(sharedCache, 2, counting(loads2, "B"));
+
+        assertTrue(sharedCache.invalidate(List.of(1)));
+        sensor(sharedCache, 1, counting(loads1, "A"));
+        sensor(sharedCache, 2, counting(loads2, "B"));
+
+        assertEquals(2, loads1.get());
+        assertEquals(1, loads2.get());
+
+        assertTrue(sharedCache.invalidateAll());
+        sensor(sharedCache, 2, counting(loads2, "B"));
+        assertEquals(2, loads2.get());
+    }
+
+    @Test
+    void get_ConcurrentMissOnTwoInstances_LoadsOnce() throws Exception {
+        SharedCache other = available(new SharedCache(connectionFactory, properties, new SimpleMeterRegistry()));
+        AtomicInteger loads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        CompletableFuture<SensorDTO> first = CompletableFuture.supplyAsync(() -> sensor(sharedCache, 1, () -> {
+            loading.countDown();
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return counting(loads, "A").get();
+        }));
+        assertTrue(loading.await(5, TimeUnit.SECONDS));
+        // Второй экземпляр видит блокировку и ждёт результат первого
+        CompletableFuture<SensorDTO> second = CompletableFuture.supplyAsync(() -> sensor(other, 1, counting(loads, "A")));
+        Thread.sleep(100);
+        release.countDown();
+
+        assertEquals("A", first.get(5, TimeUnit.SECONDS).getName());
+        assertEquals("A", second.get(5, TimeUnit.SECONDS).getName());
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void get_RedisDown_FallsBackToLoaderAndRecoversOnProbe() throws Exception {
+        AtomicInteger loads = new AtomicInteger();
+        int port = server.getBindPort();
+        server.stop();
+
+        assertEquals("A", sensor(sharedCache, 1, counting(loads, "A")).getName());
+        assertFalse(sharedCache.isAvailable());
+        assertEquals(1, meterRegistry.get("cache.shared.errors").counter().count());
+
+        // Пока Redis недоступен, к нему не обращаемся
+        assertEquals("A", sensor(sharedCache, 1, counting(loads, "A")).getName());
+        assertFalse(sharedCache.invalidate(List.of(1)));
+        assertEquals(1, meterRegistry.get("cache.shared.errors").counter().count());
+        assertEquals(0, meterRegistry.get("cache.shared.available").gauge().value());
+
+        AtomicInteger recoveries = new AtomicInteger();
+        sharedCache.addRecoveryListener(recoveries::incrementAndGet);
+        server = RedisServer.newRedisServer(port).start();
+        // Lettuce переподключается сам, probe лишь проверяет PING
+        for (int i = 0; i < 50 && !sharedCache.isAvailable(); i++) {
+            Thread.sleep(100);
+            sharedCache.probe();
+        }
+
+        assertTrue(sharedCache.isAvailable());
+        assertEquals(1, recoveries.get());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void offerLatest_KeepsNewerReading() {
+        MeasurementDTO older = new MeasurementDTO(10.0, false, TIME, null);
+        MeasurementDTO newer = new MeasurementDTO(11.0, true, TIME.plusNanos(1), null);
+        MeasurementDTO other = new MeasurementDTO(-3.0, false, TIME.minusDays(400), null);
+
+        assertTrue(sharedCache.offerLatest(Map.of(1, newer, 2, other)));
+        assertTrue(sharedCache.offerLatest(Map.of(1, older)));
+
+        assertEquals(Map.of(1, newer), sharedCache.latest(List.of(1, 3)));
+        assertEquals(Map.of(1, newer, 2, other), sharedCache.latest());
+    }
+
+    @Test
+    void disabled_NeverTouchesRedis() {
+        SharedCacheProperties disabled = new SharedCacheProperties();
+        disabled.setEnabled(false);
+        SharedCache local = new SharedCache(null, disabled, new SimpleMeterRegistry());
+        AtomicInteger loads = new AtomicInteger();
+
+        local.probe();
+        sensor(local, 1, counting(loads, "A"));
+        sensor(local, 1, counting(loads, "A"));
+
+        assertFalse(local.isAvailable());
+        assertEquals(2, loads.get());
+        assertTrue(local.latest().isEmpty());
+    }
+}
@@ -0,0 +1,68 @@
+package ru.xing.springcourse.petproject3rest.unit.util;
+
+import org.junit.jupiter.api.Test;
+import ru.xing.springcourse.petproject3rest.util.AdaptiveConcurrencyLimiter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveConcurrencyLimiterTest {
+    private static final long FAST = 5_000_000L;
+    private static final long SLOW = 100_000_000L;
+
+    @Test
+    void tryAcquire_RejectsAboveLimit() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 1, 10, 1.5);
+
+        assertTrue(limiter.tryAcquire());
+        assertTrue(limiter.tryAcquire());
+        assertFalse(limiter.tryAcquire());
+
+        limiter.release(FAST, false);
+        assertTrue(limiter.tryAcquire());
+    }
+
+    @Test
+    void limitShrinks_WhenLatencyRises() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(50, 4, 200, 1.5);
+        runSamples(limiter, FAST, 50, 100);
+
+        int before = limiter.getLimit();
+        runSamples(limiter, SLOW, 50, 30);
+
+        assertTrue(limiter.getLimit() < before, "limit should shrink: " + before + " -> " + limiter.getLimit());
+    }
+
+    @Test
+    void limitGrows_WhenLatencyIsStableAndLimitIsUsed() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(10, 4, 200, 1.5);
+
+        runSamples(limiter, FAST, 10, 50);
+
+        assertTrue(limiter.getLimit() > 10);
+    }
+
+    @Test
+    void limitNeverDropsBelowMinimum_OnErrors() {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(20, 4, 200, 1.5);
+
+        for (int i = 0; i < 100; i++) {
+            assertTrue(limiter.tryAcquire());
+            limiter.release(FAST, true);
+        }
+
+        assertEquals(4, limiter.getLimit());
+    }
+
+    // Держим concurrency запросов в работе и завершаем их с заданной латентностью
+    private void runSamples(AdaptiveConcurrencyLimiter limiter, long rtt, int concurrency, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            int acquired = 0;
+            while (acquired < concurrency && limiter.tryAcquire()) {
+                acquired++;
+            }
+            for (int i = 0; i < acquired; i++) {
+                limiter.release(rtt, false);
+            }
+        }
+    }
+}
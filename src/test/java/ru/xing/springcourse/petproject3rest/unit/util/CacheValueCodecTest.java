@@ -0,0 +1,62 @@
+package ru.xing.springcourse.petproject3rest.unit.util;
+
+import org.junit.jupiter.api.Test;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementBucketDTO;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorDTO;
+import ru.xing.springcourse.petproject3rest.dto.SensorSummaryDTO;
+import ru.xing.springcourse.petproject3rest.util.CacheValueCodec;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CacheValueCodecTest {
+    private static final LocalDateTime TIME = LocalDateTime.of(2024, 10, 1, 12, 0, 30, 123_456_789);
+
+    @Test
+    void sensor_RoundTripsWithNullableFields() throws IOException {
+        SensorDTO sensor = new SensorDTO("Сенсор", new SensorSummaryDTO(2, TIME, TIME.plusHours(1), null, 0.5),
+                List.of(new MeasurementDTO(20.5, true, TIME, "key-1"), new MeasurementDTO(-1.0, null, null, null)),
+                "cursor");
+        SensorDTO bare = SensorDTO.builder().name("A").build();
+
+        assertEquals(sensor, CacheValueCodec.decode(CacheValueCodec.SENSOR,
+                CacheValueCodec.encode(CacheValueCodec.SENSOR, sensor)));
+        assertEquals(bare, CacheValueCodec.decode(CacheValueCodec.SENSOR,
+                CacheValueCodec.encode(CacheValueCodec.SENSOR, bare)));
+    }
+
+    @Test
+    void buckets_RoundTrip() throws IOException {
+        List<MeasurementBucketDTO> buckets = List.of(new MeasurementBucketDTO("A", TIME, -2.0, 3.5, 1.25, 4, 0.25));
+
+        assertEquals(buckets, CacheValueCodec.decode(CacheValueCodec.BUCKETS,
+                CacheValueCodec.encode(CacheValueCodec.BUCKETS, buckets)));
+    }
+
+    @Test
+    void reading_StartsWithTimeComparableByBytes() throws IOException {
+        byte[] earlier = CacheValueCodec.encode(CacheValueCodec.READING, new MeasurementDTO(99.0, true, TIME, null));
+        byte[] later = CacheValueCodec.encode(CacheValueCodec.READING,
+                new MeasurementDTO(-99.0, false, TIME.plusNanos(1), null));
+
+        assertTrue(Arrays.compareUnsigned(later, 0, CacheValueCodec.READING_TIME_BYTES,
+                earlier, 0, CacheValueCodec.READING_TIME_BYTES) > 0);
+        assertEquals(new MeasurementDTO(-99.0, false, TIME.plusNanos(1), null),
+                CacheValueCodec.decode(CacheValueCodec.READING, later));
+    }
+
+    @Test
+    void decode_RejectsTruncatedAndTrailingBytes() {
+        byte[] bytes = CacheValueCodec.encode(CacheValueCodec.SENSOR, SensorDTO.builder().name("A").build());
+
+        assertThrows(IOException.class,
+                () -> CacheValueCodec.decode(CacheValueCodec.SENSOR, Arrays.copyOf(bytes, bytes.length - 1)));
+        assertThrows(IOException.class,
+                () -> CacheValueCodec.decode(CacheValueCodec.SENSOR, Arrays.copyOf(bytes, bytes.length + 1)));
+    }
+}
@@ -0,0 +1,41 @@
+package ru.xing.springcourse.petproject3rest.unit.util;
+
+import org.junit.jupiter.api.Test;
+import ru.xing.springcourse.petproject3rest.util.CsvFields;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CsvFieldsTest {
+    @Test
+    void quote_OnlyFieldsThatNeedIt() {
+        assertEquals("Home", CsvFields.quote("Home"));
+        assertEquals("\"a,b\"", CsvFields.quote("a,b"));
+        assertEquals("\"say \"\"hi\"\"\"", CsvFields.quote("say \"hi\""));
+        assertEquals("\"two\nlines\"", CsvFields.quote("two\nlines"));
+    }
+
+    @Test
+    void split_UnquotesAndTrimsOnlyUnquotedFields() {
+        assertEquals(List.of("a,b", " 1 ", "x", ""), CsvFields.split("\"a,b\",\" 1 \", x ,"));
+        assertEquals(List.of("say \"hi\"", "2"), CsvFields.split("\"say \"\"hi\"\"\",2"));
+        assertEquals(List.of("two\nlines", "3"), CsvFields.split("\"two\nlines\",3"));
+    }
+
+    @Test
+    void split_RoundTripsQuotedFields() {
+        List<String> fields = List.of("Home, \"North\"", "20.5", "line\r\nbreak", "");
+        String record = String.join(",", fields.stream().map(CsvFields::quote).toList());
+
+        assertTrue(CsvFields.isComplete(record));
+        assertEquals(fields, CsvFields.split(record));
+    }
+
+    @Test
+    void split_RejectsMalformedQuotes() {
+        assertFalse(CsvFields.isComplete("\"open,1"));
+        assertThrows(IllegalArgumentException.class, () -> CsvFields.split("\"open,1"));
+        assertThrows(IllegalArgumentException.class, () -> CsvFields.split("\"a\"b,1"));
+    }
+}
@@ -0,0 +1,45 @@
+package ru.xing.springcourse.petproject3rest.unit.util;
+
+import org.junit.jupiter.api.Test;
+import ru.xing.springcourse.petproject3rest.util.LineProtocolParser;
+import ru.xing.springcourse.petproject3rest.util.LineProtocolParser.LineRecord;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LineProtocolParserTest {
+
+    @Test
+    void parse_ReadsAllFields() {
+        LineRecord record = LineProtocolParser.parse("Sensor_Home, 23.5 ,TRUE,2024-10-17T14:30:00");
+
+        assertEquals("Sensor_Home", record.sensorName());
+        assertEquals(23.5, record.value());
+        assertTrue(record.raining());
+        assertEquals(LocalDateTime.of(2024, 10, 17, 14, 30), record.measurementDateTime());
+    }
+
+    @Test
+    void parse_AcceptsEpochMillisAndMissingTimestamp() {
+        LineRecord withMillis = LineProtocolParser.parse("Sensor_Home,1,false,1700000000000");
+        LineRecord withoutTimestamp = LineProtocolParser.parse("Sensor_Home,1,false");
+
+        assertEquals(LocalDateTime.ofInstant(Instant.ofEpochMilli(1_700_000_000_000L), ZoneId.systemDefault()),
+                withMillis.measurementDateTime());
+        assertNotNull(withoutTimestamp.measurementDateTime());
+    }
+
+    @Test
+    void parse_RejectsMalformedLines() {
+        assertThrows(IllegalArgumentException.class, () -> LineProtocolParser.parse("Sensor_Home,1"));
+        assertThrows(IllegalArgumentException.class, () -> LineProtocolParser.parse(",1,false"));
+        assertThrows(IllegalArgumentException.class, () -> LineProtocolParser.parse("Sensor_Home,abc,false"));
+        assertThrows(IllegalArgumentException.class, () -> LineProtocolParser.parse("Sensor_Home,101,false"));
+        assertThrows(IllegalArgumentException.class, () -> LineProtocolParser.parse("Sensor_Home,1,yes"));
+        assertThrows(IllegalArgumentException.class, () -> LineProtocolParser.parse("Sensor_Home,1,false,yesterday"));
+        assertThrows(IllegalArgumentException.class, () -> LineProtocolParser.parse("Sensor_Home,1,false,1,2"));
+    }
+}
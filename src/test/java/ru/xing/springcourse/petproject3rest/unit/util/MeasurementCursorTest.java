@@ -0,0 +1,53 @@
+package ru.xing.springcourse.petproject3rest.unit.util;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import ru.xing.springcourse.petproject3rest.dto.MeasurementView;
+import ru.xing.springcourse.petproject3rest.util.BusinessException;
+import ru.xing.springcourse.petproject3rest.util.MeasurementCursor;
+
+import java.time.LocalDateTime;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MeasurementCursorTest {
+
+    @Test
+    void encode_RoundTripsTimeCursor() {
+        MeasurementView last = new MeasurementView(421, 1, 23.5, false,
+                LocalDateTime.of(2024, 10, 17, 14, 30, 0, 123_000_000));
+
+        MeasurementCursor cursor = MeasurementCursor.after(last,
+                MeasurementCursor.SortKey.MEASUREMENT_DATE_TIME, Sort.Direction.DESC);
+
+        assertEquals(cursor, MeasurementCursor.decode(cursor.encode()));
+        assertFalse(cursor.encode().contains("="));
+    }
+
+    @Test
+    void encode_RoundTripsIdCursorWithoutTime() {
+        MeasurementView last = new MeasurementView(7, 1, 23.5, false, LocalDateTime.now());
+
+        MeasurementCursor decoded = MeasurementCursor.decode(
+                MeasurementCursor.after(last, MeasurementCursor.SortKey.ID, Sort.Direction.ASC).encode());
+
+        assertEquals(7, decoded.id());
+        assertNull(decoded.measurementDateTime());
+        assertEquals(Sort.Direction.ASC, decoded.direction());
+    }
+
+    @Test
+    void decode_RejectsGarbage() {
+        assertThrows(BusinessException.class, () -> MeasurementCursor.decode("not a cursor!"));
+        assertThrows(BusinessException.class, () -> MeasurementCursor.decode("SUR8REVTQw"));
+        // Курсор по времени без времени
+        assertThrows(BusinessException.class, () -> MeasurementCursor.decode(
+                new MeasurementCursor(MeasurementCursor.SortKey.MEASUREMENT_DATE_TIME, Sort.Direction.ASC, null, 1).encode()));
+    }
+
+    @Test
+    void sortKey_RejectsUnknownField() {
+        assertEquals(MeasurementCursor.SortKey.MEASUREMENT_DATE_TIME, MeasurementCursor.SortKey.fromParam("measurementDateTime"));
+        assertThrows(BusinessException.class, () -> MeasurementCursor.SortKey.fromParam("value"));
+    }
+}
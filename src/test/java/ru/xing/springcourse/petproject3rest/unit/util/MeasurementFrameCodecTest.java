@@ -0,0 +1,92 @@
+package ru.xing.springcourse.petproject3rest.unit.util;
+
+import org.junit.jupiter.api.Test;
+import ru.xing.springcourse.petproject3rest.models.Measurement;
+import ru.xing.springcourse.petproject3rest.models.Sensor;
+import ru.xing.springcourse.petproject3rest.util.BusinessException;
+import ru.xing.springcourse.petproject3rest.util.MeasurementFrameCodec;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MeasurementFrameCodecTest {
+    private final Sensor sensor = new Sensor();
+
+    MeasurementFrameCodecTest() {
+        sensor.setId(7);
+        sensor.setName("TestSensor");
+    }
+
+    @Test
+    void decode_ReturnsMeasurementsInFrameOrder() {
+        long millis = 1_700_000_000_000L;
+        ByteBuffer frame = MeasurementFrameCodec.encode(
+                new int[]{7, 7}, new long[]{millis, millis + 1000}, new float[]{23.4f, -5.0f}, new boolean[]{false, true});
+
+        assertEquals(MeasurementFrameCodec.HEADER_SIZE + 2 * MeasurementFrameCodec.RECORD_SIZE, frame.remaining());
+
+        List<Measurement> measurements = MeasurementFrameCodec.decode(frame, id -> id == 7 ? sensor : null);
+
+        assertEquals(2, measurements.size());
+        assertEquals(23.4, measurements.get(0).getValue());
+        assertFalse(measurements.get(0).isRaining());
+        assertEquals(LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault()),
+                measurements.get(0).getMeasurementDateTime());
+        assertEquals(-5.0, measurements.get(1).getValue());
+        assertTrue(measurements.get(1).isRaining());
+        assertSame(sensor, measurements.get(1).getSensor());
+    }
+
+    @Test
+    void decode_UsesCurrentTime_WhenTimestampIsZero() {
+        ByteBuffer frame = MeasurementFrameCodec.encode(
+                new int[]{7}, new long[]{0}, new float[]{1.0f}, new boolean[]{false});
+
+        Measurement measurement = MeasurementFrameCodec.decode(frame, id -> sensor).get(0);
+
+        assertNotNull(measurement.getMeasurementDateTime());
+        assertTrue(measurement.getMeasurementDateTime().isAfter(LocalDateTime.now().minusMinutes(1)));
+    }
+
+    @Test
+    void decode_Rejects_TruncatedFrame() {
+        ByteBuffer frame = MeasurementFrameCodec.encode(
+                new int[]{7, 7}, new long[]{0, 0}, new float[]{1.0f, 2.0f}, new boolean[]{false, false});
+        frame.limit(frame.limit() - 3);
+
+        BusinessException exception = assertThrows(BusinessException.class,
+                () -> MeasurementFrameCodec.decode(frame, id -> sensor));
+        assertTrue(exception.getMessage().startsWith("Invalid frame"));
+    }
+
+    @Test
+    void decode_Rejects_BadMagicAndShortHeader() {
+        assertThrows(BusinessException.class,
+                () -> MeasurementFrameCodec.decode(ByteBuffer.wrap(new byte[]{'{', '"', 1, 0, 0}), id -> sensor));
+        assertThrows(BusinessException.class,
+                () -> MeasurementFrameCodec.decode(ByteBuffer.wrap(new byte[]{0x4D}), id -> sensor));
+    }
+
+    @Test
+    void decode_Rejects_ValueOutOfRange() {
+        ByteBuffer frame = MeasurementFrameCodec.encode(
+                new int[]{7}, new long[]{0}, new float[]{Float.NaN}, new boolean[]{false});
+
+        assertThrows(BusinessException.class, () -> MeasurementFrameCodec.decode(frame, id -> sensor));
+    }
+
+    @Test
+    void decode_Rejects_UnknownSensor() {
+        ByteBuffer frame = MeasurementFrameCodec.encode(
+                new int[]{99}, new long[]{0}, new float[]{1.0f}, new boolean[]{false});
+
+        BusinessException exception = assertThrows(BusinessException.class,
+                () -> MeasurementFrameCodec.decode(frame, id -> null));
+        assertEquals("Sensor not found: id 99", exception.getMessage());
+    }
+}